@@ -19,6 +19,7 @@
  * limitations under the License.
  */
 
+import { useEffect } from 'react';
 import AgentEdit from './components/AgentEdit';
 import ControlTray from './components/console/control-tray/ControlTray';
 import ErrorScreen from './components/demo/ErrorScreen';
@@ -34,6 +35,8 @@ import { LiveAPIProvider } from './contexts/LiveAPIContext';
 import { useAgent, useUI } from './lib/state';
 import { AGENT_THEMES } from '@/lib/presets/agents';
 import { useAutoSetupBaseAccount } from '@/hooks/useBaseAccount';
+import { listenForNativeRoutes } from '@/lib/routes';
+import { useWallpaper } from '@/hooks/useWallpaper';
 
 const API_KEY = process.env.GEMINI_API_KEY || '';
 
@@ -80,10 +83,21 @@ function App() {
   } = useUI();
   const { current } = useAgent();
 
+  // Listeners are attached now; let the Android shell deliver queued events
+  useEffect(() => {
+    const stopRoutes = listenForNativeRoutes();
+    window.Android?.notifyPageReady?.();
+    return stopRoutes;
+  }, []);
+
   const currentTheme = AGENT_THEMES.find(t => t.id === current.theme) || AGENT_THEMES[0];
+  const wallpaperUrl = useWallpaper();
+  const background = wallpaperUrl
+    ? `center / cover no-repeat url("${wallpaperUrl}")`
+    : currentTheme.css;
 
   return (
-    <div className="App" style={{ background: currentTheme.css }}>
+    <div className="App" style={{ background }}>
       <LiveAPIProvider apiKey={API_KEY}>
         <ErrorScreen />
         <Header />
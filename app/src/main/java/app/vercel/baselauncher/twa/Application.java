@@ -15,15 +15,121 @@
  */
 package app.vercel.baselauncher.twa;
 
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+import android.webkit.WebView;
 
+import java.io.FileInputStream;
+import java.io.IOException;
 
 public class Application extends android.app.Application {
-
-  
+  private static final String TAG = "Application";
 
   @Override
   public void onCreate() {
       super.onCreate();
-      
+
+      // The auth process runs nothing but the auth WebView. The startup graph would map the
+      // key-value log and pump the SMS queue a second time, so it only runs in the launcher.
+      String processName = currentProcessName();
+      if (processName != null && processName.endsWith(":" + AuthActivity.PROCESS_SUFFIX)) {
+          // WebView refuses to share a data directory between processes on P+, so the auth
+          // process gets its own before any WebView is created there
+          if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+              WebView.setDataDirectorySuffix(AuthActivity.PROCESS_SUFFIX);
+          }
+          return;
+      }
+
+      buildStartupGraph().start(this);
+  }
+
+  /**
+   * Name of this process on every API level: getProcessName() on P+, otherwise the kernel's
+   * cmdline, with ActivityManager as a last resort
+   */
+  private String currentProcessName() {
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+          return getProcessName();
+      }
+      try {
+          FileInputStream in = new FileInputStream("/proc/self/cmdline");
+          try {
+              byte[] bytes = new byte[256];
+              int length = in.read(bytes);
+              int end = 0;
+              while (end < Math.max(length, 0) && bytes[end] != 0) {
+                  end++;
+              }
+              if (end > 0) {
+                  return new String(bytes, 0, end, "UTF-8");
+              }
+          } finally {
+              in.close();
+          }
+      } catch (IOException e) {
+          Log.e(TAG, "Error reading process name: " + e.getMessage());
+      }
+      ActivityManager am = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+      if (am != null && am.getRunningAppProcesses() != null) {
+          int pid = Process.myPid();
+          for (ActivityManager.RunningAppProcessInfo info : am.getRunningAppProcesses()) {
+              if (info.pid == pid) {
+                  return info.processName;
+              }
+          }
+      }
+      return null;
+  }
+
+  /**
+   * Cold start only does what the first frame needs; everything else waits for it
+   */
+  private StartupGraph buildStartupGraph() {
+      final Context context = this;
+      return new StartupGraph()
+          // Binding is asynchronous; LauncherActivity still binds early for the TWA launch
+          .add(new StartupGraph.Task("customTabs", StartupGraph.Priority.AFTER_FIRST_FRAME, false) {
+              @Override
+              protected void run() {
+                  CustomTabsSessionManager.get(context).bind();
+              }
+          })
+          // Replays the log off the main thread before the page's first read
+          .add(new StartupGraph.Task("keyValueStore", StartupGraph.Priority.AFTER_FIRST_FRAME, false) {
+              @Override
+              protected void run() {
+                  MappedKeyValueStore.get(context);
+              }
+          })
+          // Picks up SMS still queued when the process last died
+          .add(new StartupGraph.Task("smsQueue", StartupGraph.Priority.IDLE, false, "keyValueStore") {
+              @Override
+              protected void run() {
+                  SmsSendQueue.get(context);
+              }
+          })
+          .add(new StartupGraph.Task("installedApps", StartupGraph.Priority.IDLE, false) {
+              @Override
+              protected void run() {
+                  InstalledAppsCache.get(context).getJson();
+              }
+          })
+          .add(new StartupGraph.Task("contactIndex", StartupGraph.Priority.IDLE, false) {
+              @Override
+              protected void run() {
+                  PhoneNumberIndex.get(context).warm();
+                  ContactListIndex.get(context).warm();
+              }
+          })
+          .add(new StartupGraph.Task("widgetPrefetch", StartupGraph.Priority.IDLE, false) {
+              @Override
+              protected void run() {
+                  WidgetPrefetchJobService.schedule(context);
+              }
+          });
   }
 }
@@ -0,0 +1,206 @@
+/*
+ * BasePhone Auth Activity
+ * Hosts the wallet auth flow in its own process so the launcher process stays small
+ */
+package app.vercel.baselauncher.twa;
+
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.Gravity;
+import android.view.View;
+import android.view.Window;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+import android.widget.LinearLayout;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+public class AuthActivity extends Activity {
+    private static final String TAG = "AuthActivity";
+    private static final String EXTRA_URL = "url";
+
+    // Process name suffix from the manifest; also used as the WebView data directory suffix
+    public static final String PROCESS_SUFFIX = "auth";
+
+    private WebView authWebView;
+    private DocumentStartScripts documentStartScripts;
+    private boolean resultDelivered = false;
+
+    /**
+     * Open the auth flow for a URL in the auth process
+     */
+    public static void start(Context context, String url) {
+        Intent intent = new Intent(context, AuthActivity.class);
+        intent.putExtra(EXTRA_URL, url);
+        context.startActivity(intent);
+    }
+
+    @SuppressLint("SetJavaScriptEnabled")
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        requestWindowFeature(Window.FEATURE_NO_TITLE);
+
+        String url = getIntent().getStringExtra(EXTRA_URL);
+        if (url == null) {
+            finish();
+            return;
+        }
+
+        LinearLayout layout = new LinearLayout(this);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        layout.setBackgroundColor(Color.WHITE);
+
+        // Header bar with close button, matching the in-process popup
+        LinearLayout header = new LinearLayout(this);
+        header.setOrientation(LinearLayout.HORIZONTAL);
+        header.setGravity(Gravity.CENTER_VERTICAL);
+        header.setBackgroundColor(Color.parseColor("#0052FF"));
+        header.setPadding(16, 16, 16, 16);
+
+        TextView title = new TextView(this);
+        title.setText("Connect Wallet");
+        title.setTextColor(Color.WHITE);
+        title.setTextSize(18);
+        title.setLayoutParams(new LinearLayout.LayoutParams(0, LinearLayout.LayoutParams.WRAP_CONTENT, 1));
+        header.addView(title);
+
+        TextView closeBtn = new TextView(this);
+        closeBtn.setText("✕");
+        closeBtn.setTextColor(Color.WHITE);
+        closeBtn.setTextSize(24);
+        closeBtn.setPadding(16, 0, 16, 0);
+        closeBtn.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                finish();
+            }
+        });
+        header.addView(closeBtn);
+
+        layout.addView(header, new LinearLayout.LayoutParams(
+            LinearLayout.LayoutParams.MATCH_PARENT,
+            LinearLayout.LayoutParams.WRAP_CONTENT
+        ));
+
+        final ProgressBar progressBar = new ProgressBar(this, null, android.R.attr.progressBarStyleHorizontal);
+        progressBar.setIndeterminate(true);
+        layout.addView(progressBar, new LinearLayout.LayoutParams(
+            LinearLayout.LayoutParams.MATCH_PARENT,
+            8
+        ));
+
+        authWebView = new WebView(this);
+        layout.addView(authWebView, new LinearLayout.LayoutParams(
+            LinearLayout.LayoutParams.MATCH_PARENT,
+            LinearLayout.LayoutParams.MATCH_PARENT
+        ));
+        setContentView(layout);
+
+        WebSettings settings = authWebView.getSettings();
+        settings.setJavaScriptEnabled(true);
+        settings.setDomStorageEnabled(true);
+        settings.setDatabaseEnabled(true);
+        settings.setUserAgentString(settings.getUserAgentString().replace("; wv", "")); // Remove WebView marker
+        settings.setMixedContentMode(WebSettings.MIXED_CONTENT_ALWAYS_ALLOW);
+        CookieManager.getInstance().setAcceptThirdPartyCookies(authWebView, true);
+
+        // The auth page is short-lived; let its renderer be reclaimed first when hidden
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            authWebView.setRendererPriorityPolicy(WebView.RENDERER_PRIORITY_BOUND, true);
+        }
+
+        documentStartScripts = new DocumentStartScripts(authWebView);
+        documentStartScripts.add("authSuccessHandler", WebViewActivity.AUTH_SUCCESS_HANDLER_JS,
+            WebViewActivity.AUTH_ORIGIN_RULES);
+
+        authWebView.setWebViewClient(new WebViewClient() {
+            @Override
+            public void onPageStarted(WebView view, String url, Bitmap favicon) {
+                super.onPageStarted(view, url, favicon);
+                progressBar.setVisibility(View.VISIBLE);
+                handleCallbackUrl(url);
+            }
+
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                super.onPageFinished(view, url);
+                progressBar.setVisibility(View.GONE);
+                documentStartScripts.onPageFinished(url);
+            }
+
+            @Override
+            public boolean shouldOverrideUrlLoading(WebView view, String url) {
+                return handleCallbackUrl(url);
+            }
+
+            @Override
+            public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
+                return handleCallbackUrl(request.getUrl().toString());
+            }
+        });
+
+        authWebView.loadUrl(url);
+    }
+
+    /**
+     * Hand a wallet address from a callback URL back to the launcher
+     */
+    private boolean handleCallbackUrl(String url) {
+        if (url == null || resultDelivered) {
+            return false;
+        }
+        if (!url.startsWith("basephone://") && !url.contains("callback")) {
+            return false;
+        }
+        Uri uri = Uri.parse(url);
+        String address = uri.getQueryParameter("address");
+        if (address == null || address.isEmpty()) {
+            return false;
+        }
+
+        Log.d(TAG, "Auth complete, returning address to launcher");
+        resultDelivered = true;
+
+        // WebViewActivity is singleTask, so this arrives through onNewIntent -> handleIntent
+        Intent result = new Intent(Intent.ACTION_VIEW,
+            new Uri.Builder().scheme("basephone").authority("auth")
+                .appendQueryParameter("address", address).build(),
+            this, WebViewActivity.class);
+        startActivity(result);
+        finish();
+        return true;
+    }
+
+    @Override
+    public void onBackPressed() {
+        if (authWebView != null && authWebView.canGoBack()) {
+            authWebView.goBack();
+        } else {
+            super.onBackPressed();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (documentStartScripts != null) {
+            documentStartScripts.clear();
+        }
+        if (authWebView != null) {
+            authWebView.destroy();
+            authWebView = null;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * BasePhone Badge Notification Listener
+ * Feeds notification posts and removals into the badge store
+ */
+package app.vercel.baselauncher.twa;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.provider.Settings;
+import android.service.notification.NotificationListenerService;
+import android.service.notification.StatusBarNotification;
+import android.util.Log;
+
+public class BadgeNotificationListener extends NotificationListenerService {
+    private static final String TAG = "BadgeListener";
+
+    private static BadgeNotificationListener connected;
+
+    /**
+     * Whether the user has granted notification access to the launcher
+     */
+    public static boolean hasAccess(Context context) {
+        String enabled = Settings.Secure.getString(context.getContentResolver(),
+            "enabled_notification_listeners");
+        ComponentName self = new ComponentName(context, BadgeNotificationListener.class);
+        return enabled != null && enabled.contains(self.flattenToString());
+    }
+
+    /**
+     * Active notifications from the connected listener, or null when not connected
+     */
+    static StatusBarNotification[] getActive() {
+        BadgeNotificationListener listener = connected;
+        if (listener == null) {
+            return null;
+        }
+        try {
+            return listener.getActiveNotifications();
+        } catch (Exception e) {
+            // Thrown if the listener was unbound between the check and the call
+            Log.e(TAG, "Error reading active notifications: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void onListenerConnected() {
+        super.onListenerConnected();
+        connected = this;
+        BadgeStore.get(this).onListenerConnected();
+    }
+
+    @Override
+    public void onListenerDisconnected() {
+        super.onListenerDisconnected();
+        connected = null;
+        BadgeStore.get(this).onListenerDisconnected();
+    }
+
+    @Override
+    public void onNotificationPosted(StatusBarNotification sbn) {
+        BadgeStore.get(this).markDirty(sbn.getPackageName());
+    }
+
+    @Override
+    public void onNotificationRemoved(StatusBarNotification sbn) {
+        BadgeStore.get(this).markDirty(sbn.getPackageName());
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * BasePhone Badge Store
+ * Per-package unread notification counts, coalesced into one update per window
+ */
+package app.vercel.baselauncher.twa;
+
+import android.app.Notification;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.service.notification.StatusBarNotification;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A burst of notifications (a busy group chat can post dozens in a second) only marks
+ * packages dirty. Once per window the dirty packages are recounted from a single
+ * getActiveNotifications() call, and only counts that actually changed reach the listener.
+ * Updates run on the main thread, where NotificationListenerService callbacks arrive.
+ */
+public class BadgeStore {
+    // Coalescing window; a few frames, so a burst becomes one update
+    private static final long COALESCE_MS = 100;
+
+    /**
+     * Receives changed counts; a count of 0 means the badge should be cleared
+     */
+    public interface Listener {
+        void onBadgesChanged(Map<String, Integer> changed);
+    }
+
+    private static BadgeStore instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Written on the main thread, read from the JavaBridge thread
+    private final Map<String, Integer> counts = new ConcurrentHashMap<>();
+    private final Set<String> dirty = new HashSet<>();
+    private boolean allDirty = false;
+    private boolean flushScheduled = false;
+    private Listener listener;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled = false;
+            flush();
+        }
+    };
+
+    public static synchronized BadgeStore get(Context context) {
+        if (instance == null) {
+            instance = new BadgeStore();
+        }
+        return instance;
+    }
+
+    private BadgeStore() {
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Current counts as a JSON object of package name to count
+     */
+    public String getCountsJson() {
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        try {
+            out.beginObject();
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                out.name(entry.getKey()).value(entry.getValue());
+            }
+            out.endObject();
+            return out.finish();
+        } catch (RuntimeException e) {
+            out.reset();
+            throw e;
+        }
+    }
+
+    void onListenerConnected() {
+        allDirty = true;
+        scheduleFlush();
+    }
+
+    void onListenerDisconnected() {
+        // Counts can't be kept current without the listener; clear every badge
+        Map<String, Integer> changed = new HashMap<>();
+        for (String packageName : counts.keySet()) {
+            changed.put(packageName, 0);
+        }
+        counts.clear();
+        dirty.clear();
+        allDirty = false;
+        notifyChanged(changed);
+    }
+
+    void markDirty(String packageName) {
+        dirty.add(packageName);
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        mainHandler.postDelayed(flushRunnable, COALESCE_MS);
+    }
+
+    private void flush() {
+        StatusBarNotification[] active = BadgeNotificationListener.getActive();
+        if (active == null) {
+            return;
+        }
+
+        Map<String, Integer> fresh = new HashMap<>();
+        for (StatusBarNotification sbn : active) {
+            String packageName = sbn.getPackageName();
+            if (!allDirty && !dirty.contains(packageName)) {
+                continue;
+            }
+            if (!countsAsUnread(sbn)) {
+                continue;
+            }
+            Integer current = fresh.get(packageName);
+            fresh.put(packageName, current == null ? 1 : current + 1);
+        }
+
+        Set<String> recount = new HashSet<>(allDirty ? counts.keySet() : dirty);
+        recount.addAll(fresh.keySet());
+        dirty.clear();
+        allDirty = false;
+
+        Map<String, Integer> changed = new HashMap<>();
+        for (String packageName : recount) {
+            Integer now = fresh.get(packageName);
+            Integer before = counts.get(packageName);
+            int nowCount = now != null ? now : 0;
+            int beforeCount = before != null ? before : 0;
+            if (nowCount == beforeCount) {
+                continue;
+            }
+            if (nowCount == 0) {
+                counts.remove(packageName);
+            } else {
+                counts.put(packageName, nowCount);
+            }
+            changed.put(packageName, nowCount);
+        }
+        notifyChanged(changed);
+    }
+
+    /**
+     * Group summaries duplicate their children, and ongoing notifications (music,
+     * navigation, downloads) aren't unread items
+     */
+    private static boolean countsAsUnread(StatusBarNotification sbn) {
+        Notification notification = sbn.getNotification();
+        if ((notification.flags & Notification.FLAG_GROUP_SUMMARY) != 0) {
+            return false;
+        }
+        return !sbn.isOngoing();
+    }
+
+    private void notifyChanged(Map<String, Integer> changed) {
+        if (!changed.isEmpty() && listener != null) {
+            listener.onBadgesChanged(changed);
+        }
+    }
+}
@@ -6,8 +6,10 @@ package app.vercel.baselauncher.twa;
 
 import android.Manifest;
 import android.app.Activity;
+import android.app.AlertDialog;
 import android.content.ContentResolver;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
@@ -15,6 +17,7 @@ import android.content.pm.ApplicationInfo;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
+import android.os.SystemClock;
 import android.provider.ContactsContract;
 import android.provider.AlarmClock;
 import android.webkit.JavascriptInterface;
@@ -22,28 +25,94 @@ import android.widget.Toast;
 import android.util.Log;
 
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BasePhoneBridge {
     private static final String TAG = "BasePhoneBridge";
     private Context context;
     private Activity activity;
+    private NativeEventDispatcher dispatcher;
+    private JankMonitor jankMonitor;
+    private NativeAudioCapture audioCapture;
+    private LauncherWidgetHost widgetHost;
+    private final AtomicInteger smsBatches = new AtomicInteger();
+    // Nesting of bridge calls on the JavaBridge thread, see beginCall
+    private final AtomicInteger callDepth = new AtomicInteger();
     
     public static final int PERMISSION_REQUEST_CODE = 1001;
+    
+    private static final int CONTACTS_PAGE_LIMIT = 100;
+    static final String[] PHONE_PROJECTION = new String[]{
+        ContactsContract.CommonDataKinds.Phone.CONTACT_ID,
+        ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME,
+        ContactsContract.CommonDataKinds.Phone.NUMBER,
+        ContactsContract.CommonDataKinds.Phone.TYPE
+    };
 
     public BasePhoneBridge(Context context, Activity activity) {
         this.context = context;
         this.activity = activity;
     }
 
+    public void setDispatcher(NativeEventDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    public void setJankMonitor(JankMonitor jankMonitor) {
+        this.jankMonitor = jankMonitor;
+    }
+
+    public void setAudioCapture(NativeAudioCapture audioCapture) {
+        this.audioCapture = audioCapture;
+    }
+
+    public void setWidgetHost(LauncherWidgetHost widgetHost) {
+        this.widgetHost = widgetHost;
+    }
+
+    /**
+     * Page announces it will call notifyPageReady() once its listeners are attached
+     */
+    @JavascriptInterface
+    public void expectPageReady() {
+        long callStart = beginCall("expectPageReady");
+        try {
+            if (dispatcher != null) {
+                dispatcher.expectPageReady();
+            }
+        } finally {
+            recordCall("expectPageReady", callStart);
+        }
+    }
+
+    /**
+     * Page is ready to receive native events
+     */
+    @JavascriptInterface
+    public void notifyPageReady() {
+        long callStart = beginCall("notifyPageReady");
+        try {
+            if (dispatcher != null) {
+                dispatcher.onPageReady();
+            }
+        } finally {
+            recordCall("notifyPageReady", callStart);
+        }
+    }
+
     /**
      * Launch an app by package name
      */
     @JavascriptInterface
     public boolean launchApp(String packageName) {
+        long callStart = beginCall("launchApp");
         try {
             Intent launchIntent = context.getPackageManager().getLaunchIntentForPackage(packageName);
             if (launchIntent != null) {
@@ -57,6 +126,8 @@ public class BasePhoneBridge {
         } catch (Exception e) {
             Log.e(TAG, "Error launching app: " + e.getMessage());
             return false;
+        } finally {
+            recordCall("launchApp", callStart);
         }
     }
 
@@ -65,11 +136,14 @@ public class BasePhoneBridge {
      */
     @JavascriptInterface
     public boolean isAppInstalled(String packageName) {
+        long callStart = beginCall("isAppInstalled");
         try {
             context.getPackageManager().getPackageInfo(packageName, 0);
             return true;
         } catch (PackageManager.NameNotFoundException e) {
             return false;
+        } finally {
+            recordCall("isAppInstalled", callStart);
         }
     }
 
@@ -78,30 +152,48 @@ public class BasePhoneBridge {
      */
     @JavascriptInterface
     public String getInstalledApps() {
-        JSONArray apps = new JSONArray();
+        long callStart = beginCall("getInstalledApps");
         try {
-            Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
-            mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
-            
-            PackageManager pm = context.getPackageManager();
-            List<ResolveInfo> resolveInfos = pm.queryIntentActivities(mainIntent, 0);
-            
-            for (ResolveInfo resolveInfo : resolveInfos) {
-                try {
-                    JSONObject app = new JSONObject();
-                    String pkgName = resolveInfo.activityInfo.packageName;
-                    app.put("packageName", pkgName);
-                    app.put("appName", resolveInfo.loadLabel(pm).toString());
-                    app.put("isSystemApp", (resolveInfo.activityInfo.applicationInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0);
-                    apps.put(app);
-                } catch (JSONException e) {
-                    Log.e(TAG, "Error adding app to list: " + e.getMessage());
-                }
-            }
+            return InstalledAppsCache.get(context).getJson();
         } catch (Exception e) {
             Log.e(TAG, "Error getting installed apps: " + e.getMessage());
+            return "[]";
+        } finally {
+            recordCall("getInstalledApps", callStart);
+        }
+    }
+
+    /**
+     * Write the launcher app list with one PackageManager query and one pass over the results,
+     * in the sorter's locale order with each app's section header
+     */
+    static void writeInstalledApps(PackageManager pm, LocaleCollation.Sorter sorter, BridgeJsonWriter out) {
+        Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
+        mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+        
+        List<ResolveInfo> resolveInfos = pm.queryIntentActivities(mainIntent, 0);
+        
+        // Keyed by position, so labels are loaded once and reused when writing
+        List<String> labels = new ArrayList<>(resolveInfos.size());
+        List<LocaleCollation.Keyed<Integer>> order = new ArrayList<>(resolveInfos.size());
+        for (int i = 0; i < resolveInfos.size(); i++) {
+            String label = resolveInfos.get(i).loadLabel(pm).toString();
+            labels.add(label);
+            order.add(sorter.key(i, label));
+        }
+        sorter.sort(order);
+        
+        out.beginArray();
+        for (LocaleCollation.Keyed<Integer> app : order) {
+            ResolveInfo resolveInfo = resolveInfos.get(app.value);
+            out.beginObject()
+                .name("packageName").value(resolveInfo.activityInfo.packageName)
+                .name("appName").value(labels.get(app.value))
+                .name("isSystemApp").value((resolveInfo.activityInfo.applicationInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0)
+                .name("section").value(app.section)
+                .endObject();
         }
-        return apps.toString();
+        out.endArray();
     }
 
     /**
@@ -109,6 +201,7 @@ public class BasePhoneBridge {
      */
     @JavascriptInterface
     public boolean makeCall(String phoneNumber) {
+        long callStart = beginCall("makeCall");
         try {
             // Clean the phone number
             String cleanNumber = phoneNumber.replaceAll("[^0-9+]", "");
@@ -131,6 +224,8 @@ public class BasePhoneBridge {
         } catch (Exception e) {
             Log.e(TAG, "Error making call: " + e.getMessage());
             return false;
+        } finally {
+            recordCall("makeCall", callStart);
         }
     }
 
@@ -139,6 +234,7 @@ public class BasePhoneBridge {
      */
     @JavascriptInterface
     public boolean sendSMS(String phoneNumber, String message) {
+        long callStart = beginCall("sendSMS");
         try {
             String cleanNumber = phoneNumber.replaceAll("[^0-9+]", "");
             
@@ -152,6 +248,132 @@ public class BasePhoneBridge {
         } catch (Exception e) {
             Log.e(TAG, "Error sending SMS: " + e.getMessage());
             return false;
+        } finally {
+            recordCall("sendSMS", callStart);
+        }
+    }
+
+    /**
+     * Send one SMS to each recipient directly, without opening the messaging app, once the
+     * user confirms the batch in a native dialog. Returns a batch id, or an empty string.
+     * The answer arrives as an smsBatch event keyed by batch id, {confirmed, ids}, and the
+     * queued messages' status changes as smsStatus events.
+     */
+    @JavascriptInterface
+    public String queueSms(String recipientsJson, String message) {
+        if (!hasPermission(Manifest.permission.SEND_SMS)) {
+            requestPermission(Manifest.permission.SEND_SMS);
+            return "";
+        }
+        long callStart = beginCall("queueSms");
+        try {
+            List<String> numbers = new ArrayList<>();
+            JSONArray recipients = new JSONArray(recipientsJson);
+            for (int i = 0; i < recipients.length(); i++) {
+                numbers.add(recipients.optString(i));
+            }
+            if (numbers.isEmpty()) {
+                return "";
+            }
+            String batchId = "sms-batch-" + smsBatches.incrementAndGet();
+            confirmSmsBatch(batchId, numbers, message);
+            return batchId;
+        } catch (Exception e) {
+            Log.e(TAG, "Error queueing SMS: " + e.getMessage());
+            return "";
+        } finally {
+            recordCall("queueSms", callStart);
+        }
+    }
+
+    private void confirmSmsBatch(final String batchId, final List<String> numbers, final String message) {
+        activity.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (activity.isFinishing()) {
+                    reportSmsBatch(batchId, false, null);
+                    return;
+                }
+                // Sending costs the user money, so the page alone can't start it
+                final boolean[] answered = new boolean[1];
+                new AlertDialog.Builder(activity)
+                    .setTitle(R.string.smsConfirmTitle)
+                    .setMessage(activity.getResources().getQuantityString(
+                        R.plurals.smsConfirmMessage, numbers.size(), numbers.size(), message))
+                    .setPositiveButton(R.string.smsConfirmSend, new DialogInterface.OnClickListener() {
+                        @Override
+                        public void onClick(DialogInterface dialog, int which) {
+                            answered[0] = true;
+                            reportSmsBatch(batchId, true, SmsSendQueue.get(context).enqueue(numbers, message));
+                        }
+                    })
+                    .setNegativeButton(android.R.string.cancel, null)
+                    .setOnDismissListener(new DialogInterface.OnDismissListener() {
+                        @Override
+                        public void onDismiss(DialogInterface dialog) {
+                            if (!answered[0]) {
+                                answered[0] = true;
+                                reportSmsBatch(batchId, false, null);
+                            }
+                        }
+                    })
+                    .show();
+            }
+        });
+    }
+
+    private void reportSmsBatch(String batchId, boolean confirmed, List<String> ids) {
+        if (dispatcher == null) {
+            return;
+        }
+        try {
+            JSONObject detail = new JSONObject();
+            detail.put("confirmed", confirmed);
+            detail.put("ids", new JSONArray(ids != null ? ids : new ArrayList<String>()));
+            JSONObject batch = new JSONObject();
+            batch.put(batchId, detail);
+            dispatcher.dispatchMergedEvent("smsBatch", batch);
+        } catch (Exception e) {
+            Log.e(TAG, "Error reporting SMS batch: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get every queued, sending and recently finished SMS, oldest first
+     */
+    @JavascriptInterface
+    public String getSmsQueue() {
+        long callStart = beginCall("getSmsQueue");
+        try {
+            return SmsSendQueue.get(context).getQueueJson();
+        } finally {
+            recordCall("getSmsQueue", callStart);
+        }
+    }
+
+    /**
+     * Cancel a queued SMS that hasn't started sending
+     */
+    @JavascriptInterface
+    public void cancelSms(String id) {
+        long callStart = beginCall("cancelSms");
+        try {
+            SmsSendQueue.get(context).cancel(id);
+        } finally {
+            recordCall("cancelSms", callStart);
+        }
+    }
+
+    /**
+     * Forget delivered, failed and cancelled SMS
+     */
+    @JavascriptInterface
+    public void clearSmsQueue() {
+        long callStart = beginCall("clearSmsQueue");
+        try {
+            SmsSendQueue.get(context).clearFinished();
+        } finally {
+            recordCall("clearSmsQueue", callStart);
         }
     }
 
@@ -160,6 +382,7 @@ public class BasePhoneBridge {
      */
     @JavascriptInterface
     public boolean sendWhatsApp(String phoneNumber, String message) {
+        long callStart = beginCall("sendWhatsApp");
         try {
             // Remove all non-digit chars except +
             String cleanNumber = phoneNumber.replaceAll("[^0-9+]", "");
@@ -193,6 +416,8 @@ public class BasePhoneBridge {
         } catch (Exception e) {
             Log.e(TAG, "Error sending WhatsApp: " + e.getMessage());
             return false;
+        } finally {
+            recordCall("sendWhatsApp", callStart);
         }
     }
 
@@ -201,106 +426,223 @@ public class BasePhoneBridge {
      */
     @JavascriptInterface
     public String searchContacts(String query) {
-        JSONArray contacts = new JSONArray();
-        
         if (!hasPermission(Manifest.permission.READ_CONTACTS)) {
             requestPermission(Manifest.permission.READ_CONTACTS);
-            return contacts.toString();
+            return "[]";
         }
         
+        long callStart = beginCall("searchContacts");
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
         try {
-            ContentResolver cr = context.getContentResolver();
-            String selection = ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME + " LIKE ?";
-            String[] selectionArgs = new String[]{"%" + query + "%"};
-            
-            Cursor cursor = cr.query(
-                ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
-                new String[]{
-                    ContactsContract.CommonDataKinds.Phone.CONTACT_ID,
-                    ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME,
-                    ContactsContract.CommonDataKinds.Phone.NUMBER,
-                    ContactsContract.CommonDataKinds.Phone.TYPE
-                },
-                selection,
-                selectionArgs,
-                ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME + " ASC"
-            );
-            
-            if (cursor != null) {
-                while (cursor.moveToNext()) {
-                    try {
-                        JSONObject contact = new JSONObject();
-                        contact.put("id", cursor.getString(0));
-                        contact.put("name", cursor.getString(1));
-                        contact.put("phone", cursor.getString(2));
-                        contact.put("type", getPhoneTypeLabel(cursor.getInt(3)));
-                        contacts.put(contact);
-                    } catch (JSONException e) {
-                        Log.e(TAG, "Error parsing contact: " + e.getMessage());
-                    }
-                }
-                cursor.close();
-            }
+            writeContactSearch(context.getContentResolver(), query, out);
+            return out.finish();
         } catch (Exception e) {
             Log.e(TAG, "Error searching contacts: " + e.getMessage());
+            out.reset();
+            return "[]";
+        } finally {
+            recordCall("searchContacts", callStart);
         }
-        
-        return contacts.toString();
     }
 
     /**
-     * Get all contacts (limited to first 100)
+     * Write phone rows whose display name contains the query
+     */
+    static void writeContactSearch(ContentResolver cr, String query, BridgeJsonWriter out) {
+        String selection = ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME + " LIKE ?";
+        String[] selectionArgs = new String[]{"%" + query + "%"};
+        writePhoneRows(cr, selection, selectionArgs, out);
+    }
+
+    /**
+     * Get all contacts (limited to first 100), in the user's locale order
      */
     @JavascriptInterface
     public String getContacts() {
-        JSONArray contacts = new JSONArray();
+        long callStart = beginCall("getContacts");
+        try {
+            return getContactsPage(0, CONTACTS_PAGE_LIMIT);
+        } finally {
+            recordCall("getContacts", callStart);
+        }
+    }
+
+    /**
+     * Get a page of contacts in the user's locale order, each with its section header
+     */
+    @JavascriptInterface
+    public String getContactsPage(int offset, int limit) {
+        if (!hasPermission(Manifest.permission.READ_CONTACTS)) {
+            requestPermission(Manifest.permission.READ_CONTACTS);
+            return "[]";
+        }
         
+        long callStart = beginCall("getContactsPage");
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        try {
+            ContactListIndex.get(context).writePage(offset, limit, out);
+            return out.finish();
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting contacts: " + e.getMessage());
+            out.reset();
+            return "[]";
+        } finally {
+            recordCall("getContactsPage", callStart);
+        }
+    }
+
+    /**
+     * Get contact section headers (A-Z, or the locale's own) with their offset and size
+     */
+    @JavascriptInterface
+    public String getContactSections() {
         if (!hasPermission(Manifest.permission.READ_CONTACTS)) {
             requestPermission(Manifest.permission.READ_CONTACTS);
-            return contacts.toString();
+            return "[]";
         }
         
+        long callStart = beginCall("getContactSections");
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        try {
+            ContactListIndex.get(context).writeSections(out);
+            return out.finish();
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting contact sections: " + e.getMessage());
+            out.reset();
+            return "[]";
+        } finally {
+            recordCall("getContactSections", callStart);
+        }
+    }
+
+    /**
+     * Apply a batch of contact inserts, updates and deletes in the background and return
+     * its job id, or an empty string. Progress arrives as contactBatchProgress events and
+     * per-operation results as contactBatchComplete, keyed by job id.
+     */
+    @JavascriptInterface
+    public String applyContactBatch(String opsJson) {
+        if (!hasPermission(Manifest.permission.WRITE_CONTACTS)) {
+            requestPermission(Manifest.permission.WRITE_CONTACTS);
+            return "";
+        }
+        long callStart = beginCall("applyContactBatch");
+        try {
+            return ContactBatchWriter.get(context).submit(opsJson, new ContactBatchWriter.Listener() {
+                @Override
+                public void onProgress(String jobId, int done, int total) {
+                    if (dispatcher == null) {
+                        return;
+                    }
+                    BridgeJsonWriter out = BridgeJsonWriter.obtain();
+                    try {
+                        String progress = out.beginObject()
+                            .name("jobId").value(jobId)
+                            .name("done").value(done)
+                            .name("total").value(total)
+                            .endObject()
+                            .finish();
+                        dispatcher.dispatchEventJson("event:contactBatchProgress", "contactBatchProgress", progress);
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error reporting contact batch progress: " + e.getMessage());
+                        out.reset();
+                    }
+                }
+
+                @Override
+                public void onComplete(String jobId, String resultsJson) {
+                    if (dispatcher == null) {
+                        return;
+                    }
+                    BridgeJsonWriter out = BridgeJsonWriter.obtain();
+                    try {
+                        // Keyed per job, so completions of concurrent jobs are all delivered
+                        String complete = out.beginObject()
+                            .name(jobId).rawValue(resultsJson)
+                            .endObject()
+                            .finish();
+                        dispatcher.dispatchEventJson("event:contactBatchComplete:" + jobId,
+                            "contactBatchComplete", complete);
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error reporting contact batch: " + e.getMessage());
+                        out.reset();
+                    }
+                }
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Error starting contact batch: " + e.getMessage());
+            return "";
+        } finally {
+            recordCall("applyContactBatch", callStart);
+        }
+    }
+
+    /**
+     * Encode phone rows straight from the cursor in a single pass
+     */
+    static void writePhoneRows(ContentResolver cr, String selection, String[] selectionArgs,
+                               BridgeJsonWriter out) {
         Cursor cursor = null;
         try {
-            ContentResolver cr = context.getContentResolver();
             cursor = cr.query(
                 ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
-                new String[]{
-                    ContactsContract.CommonDataKinds.Phone.CONTACT_ID,
-                    ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME,
-                    ContactsContract.CommonDataKinds.Phone.NUMBER,
-                    ContactsContract.CommonDataKinds.Phone.TYPE
-                },
-                null,
-                null,
+                PHONE_PROJECTION,
+                selection,
+                selectionArgs,
                 ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME + " ASC"
             );
             
+            out.beginArray();
             if (cursor != null) {
-                int count = 0;
-                while (cursor.moveToNext() && count < 100) {
-                    try {
-                        JSONObject contact = new JSONObject();
-                        contact.put("id", cursor.getString(0));
-                        contact.put("name", cursor.getString(1));
-                        contact.put("phone", cursor.getString(2));
-                        contact.put("type", getPhoneTypeLabel(cursor.getInt(3)));
-                        contacts.put(contact);
-                        count++;
-                    } catch (JSONException e) {
-                        Log.e(TAG, "Error parsing contact: " + e.getMessage());
-                    }
+                while (cursor.moveToNext()) {
+                    out.beginObject()
+                        .name("id").value(cursor.getString(0))
+                        .name("name").value(cursor.getString(1))
+                        .name("phone").value(cursor.getString(2))
+                        .name("type").value(getPhoneTypeLabel(cursor.getInt(3)))
+                        .endObject();
                 }
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error getting contacts: " + e.getMessage());
+            out.endArray();
         } finally {
             if (cursor != null) {
                 cursor.close();
             }
         }
-        
-        return contacts.toString();
+    }
+
+    /**
+     * Get a page of recent calls, newest first. Pass 0 for the first page, then nextBeforeId.
+     */
+    @JavascriptInterface
+    public String getRecentCalls(long beforeId, int limit) {
+        if (!hasPermission(Manifest.permission.READ_CALL_LOG)) {
+            requestPermission(Manifest.permission.READ_CALL_LOG);
+            return "{\"calls\":[],\"nextBeforeId\":-1}";
+        }
+        long callStart = beginCall("getRecentCalls");
+        try {
+            return CallLogRepository.get(context).getPage(beforeId, limit);
+        } finally {
+            recordCall("getRecentCalls", callStart);
+        }
+    }
+
+    /**
+     * Get a page of SMS conversations with last message, unread count and contact name
+     */
+    @JavascriptInterface
+    public String getConversations(int offset, int limit) {
+        if (!hasPermission(Manifest.permission.READ_SMS)) {
+            requestPermission(Manifest.permission.READ_SMS);
+            return "{\"conversations\":[],\"total\":0,\"nextOffset\":-1}";
+        }
+        long callStart = beginCall("getConversations");
+        try {
+            return SmsConversationIndex.get(context).getPage(offset, limit);
+        } finally {
+            recordCall("getConversations", callStart);
+        }
     }
 
     /**
@@ -308,6 +650,7 @@ public class BasePhoneBridge {
      */
     @JavascriptInterface
     public boolean navigateTo(String destination) {
+        long callStart = beginCall("navigateTo");
         try {
             Uri gmmIntentUri = Uri.parse("google.navigation:q=" + Uri.encode(destination));
             Intent mapIntent = new Intent(Intent.ACTION_VIEW, gmmIntentUri);
@@ -327,6 +670,78 @@ public class BasePhoneBridge {
         } catch (Exception e) {
             Log.e(TAG, "Error navigating: " + e.getMessage());
             return false;
+        } finally {
+            recordCall("navigateTo", callStart);
+        }
+    }
+
+    /**
+     * Get the cached device location without waiting for a new fix
+     */
+    @JavascriptInterface
+    public String getLocation() {
+        CachedLocationProvider locationProvider = CachedLocationProvider.get(context);
+        if (!locationProvider.hasAnyLocationPermission()) {
+            requestPermission(Manifest.permission.ACCESS_COARSE_LOCATION);
+            return "{}";
+        }
+        long callStart = beginCall("getLocation");
+        try {
+            locationProvider.start();
+            return locationProvider.getCachedLocationJson();
+        } finally {
+            recordCall("getLocation", callStart);
+        }
+    }
+
+    /**
+     * Set how old a cached location may be and which accuracy tier refreshes it
+     */
+    @JavascriptInterface
+    public void setLocationPolicy(long freshnessMs, String accuracy) {
+        long callStart = beginCall("setLocationPolicy");
+        try {
+            CachedLocationProvider.get(context).setPolicy(freshnessMs, accuracy);
+        } finally {
+            recordCall("setLocationPolicy", callStart);
+        }
+    }
+
+    /**
+     * Declare a widget endpoint to refresh in the background. The URL may use {lat} and {lon}.
+     */
+    @JavascriptInterface
+    public boolean setPrefetchEndpoint(String key, String urlTemplate) {
+        long callStart = beginCall("setPrefetchEndpoint");
+        try {
+            if (urlTemplate == null || urlTemplate.isEmpty()) {
+                new WidgetPrefetchStore(context).removeEndpoint(key);
+            } else if (!WidgetPrefetcher.isHttpUrl(urlTemplate)) {
+                Log.w(TAG, "Rejected prefetch endpoint with a non-http(s) URL: " + key);
+                return false;
+            } else {
+                new WidgetPrefetchStore(context).putEndpoint(key, urlTemplate);
+                WidgetPrefetchJobService.schedule(context);
+            }
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error setting prefetch endpoint: " + e.getMessage());
+            return false;
+        } finally {
+            recordCall("setPrefetchEndpoint", callStart);
+        }
+    }
+
+    /**
+     * Get the last background-fetched response for a widget endpoint
+     */
+    @JavascriptInterface
+    public String getPrefetchedData(String key) {
+        long callStart = beginCall("getPrefetchedData");
+        try {
+            return new WidgetPrefetchStore(context).getResponseJson(key);
+        } finally {
+            recordCall("getPrefetchedData", callStart);
         }
     }
 
@@ -335,6 +750,7 @@ public class BasePhoneBridge {
      */
     @JavascriptInterface
     public boolean setAlarm(int hour, int minute, String label) {
+        long callStart = beginCall("setAlarm");
         try {
             Intent alarmIntent = new Intent(AlarmClock.ACTION_SET_ALARM);
             alarmIntent.putExtra(AlarmClock.EXTRA_HOUR, hour);
@@ -349,6 +765,8 @@ public class BasePhoneBridge {
         } catch (Exception e) {
             Log.e(TAG, "Error setting alarm: " + e.getMessage());
             return false;
+        } finally {
+            recordCall("setAlarm", callStart);
         }
     }
 
@@ -357,6 +775,7 @@ public class BasePhoneBridge {
      */
     @JavascriptInterface
     public boolean setTimer(int seconds, String label) {
+        long callStart = beginCall("setTimer");
         try {
             Intent timerIntent = new Intent(AlarmClock.ACTION_SET_TIMER);
             timerIntent.putExtra(AlarmClock.EXTRA_LENGTH, seconds);
@@ -370,6 +789,8 @@ public class BasePhoneBridge {
         } catch (Exception e) {
             Log.e(TAG, "Error setting timer: " + e.getMessage());
             return false;
+        } finally {
+            recordCall("setTimer", callStart);
         }
     }
 
@@ -378,6 +799,7 @@ public class BasePhoneBridge {
      */
     @JavascriptInterface
     public boolean openContacts() {
+        long callStart = beginCall("openContacts");
         try {
             Intent contactsIntent = new Intent(Intent.ACTION_VIEW);
             contactsIntent.setData(ContactsContract.Contacts.CONTENT_URI);
@@ -387,6 +809,8 @@ public class BasePhoneBridge {
         } catch (Exception e) {
             Log.e(TAG, "Error opening contacts: " + e.getMessage());
             return false;
+        } finally {
+            recordCall("openContacts", callStart);
         }
     }
 
@@ -395,6 +819,7 @@ public class BasePhoneBridge {
      */
     @JavascriptInterface
     public boolean openUrl(String url) {
+        long callStart = beginCall("openUrl");
         try {
             String fullUrl = url;
             if (!url.startsWith("http://") && !url.startsWith("https://")) {
@@ -407,6 +832,8 @@ public class BasePhoneBridge {
         } catch (Exception e) {
             Log.e(TAG, "Error opening URL: " + e.getMessage());
             return false;
+        } finally {
+            recordCall("openUrl", callStart);
         }
     }
 
@@ -415,6 +842,7 @@ public class BasePhoneBridge {
      */
     @JavascriptInterface
     public boolean searchWeb(String query) {
+        long callStart = beginCall("searchWeb");
         try {
             String searchUrl = "https://www.google.com/search?q=" + Uri.encode(query);
             Intent searchIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(searchUrl));
@@ -424,6 +852,24 @@ public class BasePhoneBridge {
         } catch (Exception e) {
             Log.e(TAG, "Error searching web: " + e.getMessage());
             return false;
+        } finally {
+            recordCall("searchWeb", callStart);
+        }
+    }
+
+    /**
+     * Run wallet auth popups in a separate process instead of an in-app dialog
+     */
+    @JavascriptInterface
+    public void setAuthInSeparateProcess(boolean enabled) {
+        long callStart = beginCall("setAuthInSeparateProcess");
+        try {
+            context.getSharedPreferences(WebViewActivity.SETTINGS_PREFS, Context.MODE_PRIVATE)
+                .edit()
+                .putBoolean(WebViewActivity.PREF_AUTH_IN_SEPARATE_PROCESS, enabled)
+                .apply();
+        } finally {
+            recordCall("setAuthInSeparateProcess", callStart);
         }
     }
 
@@ -432,9 +878,14 @@ public class BasePhoneBridge {
      */
     @JavascriptInterface
     public void showToast(String message) {
-        activity.runOnUiThread(() -> {
-            Toast.makeText(context, message, Toast.LENGTH_SHORT).show();
-        });
+        long callStart = beginCall("showToast");
+        try {
+            activity.runOnUiThread(() -> {
+                Toast.makeText(context, message, Toast.LENGTH_SHORT).show();
+            });
+        } finally {
+            recordCall("showToast", callStart);
+        }
     }
 
     /**
@@ -442,17 +893,522 @@ public class BasePhoneBridge {
      */
     @JavascriptInterface
     public void requestPermissions() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            String[] permissions = {
-                Manifest.permission.READ_CONTACTS,
-                Manifest.permission.CALL_PHONE,
-                Manifest.permission.SEND_SMS
-            };
-            activity.requestPermissions(permissions, PERMISSION_REQUEST_CODE);
+        long callStart = beginCall("requestPermissions");
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                String[] permissions = {
+                    Manifest.permission.READ_CONTACTS,
+                    Manifest.permission.CALL_PHONE,
+                    Manifest.permission.SEND_SMS
+                };
+                activity.requestPermissions(permissions, PERMISSION_REQUEST_CODE);
+            }
+        } finally {
+            recordCall("requestPermissions", callStart);
+        }
+    }
+
+    /**
+     * Get the URL of the system wallpaper scaled to the screen, or "" if there is none yet.
+     * A wallpaperChanged event follows once it has been decoded, and on every change.
+     */
+    @JavascriptInterface
+    public String getWallpaperUrl() {
+        // Reading the wallpaper file needs storage access on Android 8.1 to 12
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1
+                && Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU
+                && !hasPermission(Manifest.permission.READ_EXTERNAL_STORAGE)) {
+            requestPermission(Manifest.permission.READ_EXTERNAL_STORAGE);
+            return "";
+        }
+        long callStart = beginCall("getWallpaperUrl");
+        try {
+            String url = WallpaperProvider.get(context).getUrl();
+            return url != null ? url : "";
+        } finally {
+            recordCall("getWallpaperUrl", callStart);
+        }
+    }
+
+    /**
+     * Read a value from the native key-value store, or null. Served from memory.
+     */
+    @JavascriptInterface
+    public String kvGet(String key) {
+        long callStart = beginCall("kvGet");
+        try {
+            return MappedKeyValueStore.get(context).get(key);
+        } finally {
+            recordCall("kvGet", callStart);
+        }
+    }
+
+    /**
+     * Get every stored entry whose key starts with prefix, as a JSON object
+     */
+    @JavascriptInterface
+    public String kvGetAll(String prefix) {
+        long callStart = beginCall("kvGetAll");
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        try {
+            out.beginObject();
+            for (Map.Entry<String, String> entry : MappedKeyValueStore.get(context).getAll(prefix).entrySet()) {
+                out.name(entry.getKey()).value(entry.getValue());
+            }
+            out.endObject();
+            return out.finish();
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading store: " + e.getMessage());
+            out.reset();
+            return "{}";
+        } finally {
+            recordCall("kvGetAll", callStart);
+        }
+    }
+
+    /**
+     * Store a value; null removes the key
+     */
+    @JavascriptInterface
+    public boolean kvPut(String key, String value) {
+        if (key == null) {
+            return false;
+        }
+        long callStart = beginCall("kvPut");
+        try {
+            MappedKeyValueStore.get(context).put(key, value);
+            return true;
+        } finally {
+            recordCall("kvPut", callStart);
+        }
+    }
+
+    /**
+     * Apply a JSON object of changes atomically; null values remove their keys
+     */
+    @JavascriptInterface
+    public boolean kvBatch(String changesJson) {
+        long callStart = beginCall("kvBatch");
+        try {
+            JSONObject json = new JSONObject(changesJson);
+            Map<String, String> changes = new HashMap<>();
+            Iterator<String> keys = json.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                changes.put(key, json.isNull(key) ? null : json.getString(key));
+            }
+            MappedKeyValueStore.get(context).apply(changes);
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error applying key-value batch: " + e.getMessage());
+            return false;
+        } finally {
+            recordCall("kvBatch", callStart);
+        }
+    }
+
+    /**
+     * Get cached wallet balances (raw hex) for the wallet and ERC-20 contracts given as a
+     * JSON array. Refreshes in the background when stale; results arrive as walletBalances events.
+     */
+    @JavascriptInterface
+    public String getWalletBalances(String address, String tokenContractsJson) {
+        long callStart = beginCall("getWalletBalances");
+        try {
+            List<String> tokens = new ArrayList<>();
+            if (tokenContractsJson != null && !tokenContractsJson.isEmpty()) {
+                JSONArray array = new JSONArray(tokenContractsJson);
+                for (int i = 0; i < array.length(); i++) {
+                    tokens.add(array.getString(i));
+                }
+            }
+            return WalletRpcClient.get(context).getBalances(address, tokens);
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting wallet balances: " + e.getMessage());
+            return "{}";
+        } finally {
+            recordCall("getWalletBalances", callStart);
+        }
+    }
+
+    /**
+     * Use another JSON-RPC endpoint for wallet reads, e.g. a local node; empty restores Base mainnet.
+     * Only https is accepted, except in debug builds.
+     */
+    @JavascriptInterface
+    public boolean setRpcEndpoint(String endpoint) {
+        long callStart = beginCall("setRpcEndpoint");
+        try {
+            return WalletRpcClient.get(context).setEndpoint(endpoint);
+        } finally {
+            recordCall("setRpcEndpoint", callStart);
+        }
+    }
+
+    /**
+     * Start native microphone capture. PCM16 mono frames arrive on a MessagePort handed to the
+     * page in a "basephone-audio" window message; failures arrive as a nativeAudioError event.
+     */
+    @JavascriptInterface
+    public boolean startNativeAudio(final int sampleRate, final int frameSamples) {
+        if (audioCapture == null) {
+            return false;
+        }
+        if (!hasPermission(Manifest.permission.RECORD_AUDIO)) {
+            requestPermission(Manifest.permission.RECORD_AUDIO);
+            return false;
+        }
+        long callStart = beginCall("startNativeAudio");
+        try {
+            activity.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (!audioCapture.start(sampleRate, frameSamples) && dispatcher != null) {
+                        dispatcher.dispatchEvent("nativeAudioError", null);
+                    }
+                }
+            });
+            return true;
+        } finally {
+            recordCall("startNativeAudio", callStart);
+        }
+    }
+
+    @JavascriptInterface
+    public void stopNativeAudio() {
+        if (audioCapture == null) {
+            return;
+        }
+        long callStart = beginCall("stopNativeAudio");
+        try {
+            activity.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    audioCapture.stop();
+                }
+            });
+        } finally {
+            recordCall("stopNativeAudio", callStart);
+        }
+    }
+
+    /**
+     * Get native capture counters: frames captured, delivered, dropped and backpressure
+     */
+    @JavascriptInterface
+    public String getNativeAudioStats() {
+        long callStart = beginCall("getNativeAudioStats");
+        try {
+            return audioCapture != null ? audioCapture.getStatsJson() : "{}";
+        } finally {
+            recordCall("getNativeAudioStats", callStart);
+        }
+    }
+
+    /**
+     * Get the app widget providers the user can add
+     */
+    @JavascriptInterface
+    public String getWidgetProviders() {
+        if (widgetHost == null) {
+            return "[]";
+        }
+        long callStart = beginCall("getWidgetProviders");
+        try {
+            return widgetHost.getProvidersJson();
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting widget providers: " + e.getMessage());
+            return "[]";
+        } finally {
+            recordCall("getWidgetProviders", callStart);
+        }
+    }
+
+    /**
+     * Get hosted widgets. Each frame is an image at frameUrl?v=version; widgetFrames events
+     * carry new versions by widget id.
+     */
+    @JavascriptInterface
+    public String getWidgets() {
+        if (widgetHost == null) {
+            return "[]";
+        }
+        long callStart = beginCall("getWidgets");
+        try {
+            return widgetHost.getWidgetsJson();
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting widgets: " + e.getMessage());
+            return "[]";
+        } finally {
+            recordCall("getWidgets", callStart);
+        }
+    }
+
+    /**
+     * Add a widget by flattened provider component. The bind and configure screens may
+     * show first; the result arrives as a widgetAdded event.
+     */
+    @JavascriptInterface
+    public boolean addWidget(final String provider, final int widthDp, final int heightDp) {
+        if (widgetHost == null) {
+            return false;
+        }
+        long callStart = beginCall("addWidget");
+        try {
+            activity.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    widgetHost.addWidget(provider, widthDp, heightDp);
+                }
+            });
+            return true;
+        } finally {
+            recordCall("addWidget", callStart);
+        }
+    }
+
+    @JavascriptInterface
+    public void removeWidget(final int appWidgetId) {
+        if (widgetHost == null) {
+            return;
+        }
+        long callStart = beginCall("removeWidget");
+        try {
+            activity.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    widgetHost.removeWidget(appWidgetId);
+                }
+            });
+        } finally {
+            recordCall("removeWidget", callStart);
+        }
+    }
+
+    @JavascriptInterface
+    public void resizeWidget(final int appWidgetId, final int widthDp, final int heightDp) {
+        if (widgetHost == null) {
+            return;
+        }
+        long callStart = beginCall("resizeWidget");
+        try {
+            activity.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    widgetHost.resizeWidget(appWidgetId, widthDp, heightDp);
+                }
+            });
+        } finally {
+            recordCall("resizeWidget", callStart);
+        }
+    }
+
+    /**
+     * Cap how often a widget's frame is re-rendered, 1 to 30 per second
+     */
+    @JavascriptInterface
+    public void setWidgetFrameRate(final int appWidgetId, final int fps) {
+        if (widgetHost == null) {
+            return;
+        }
+        long callStart = beginCall("setWidgetFrameRate");
+        try {
+            activity.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    widgetHost.setFrameRate(appWidgetId, fps);
+                }
+            });
+        } finally {
+            recordCall("setWidgetFrameRate", callStart);
+        }
+    }
+
+    /**
+     * Forward a tap on the widget's image, in dp from its top-left corner
+     */
+    @JavascriptInterface
+    public void tapWidget(final int appWidgetId, final float xDp, final float yDp) {
+        if (widgetHost == null) {
+            return;
+        }
+        long callStart = beginCall("tapWidget");
+        try {
+            activity.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    widgetHost.tap(appWidgetId, xDp, yDp);
+                }
+            });
+        } finally {
+            recordCall("tapWidget", callStart);
+        }
+    }
+
+    /**
+     * Get unread notification counts by package name; changes arrive as badgesChanged events
+     */
+    @JavascriptInterface
+    public String getBadgeCounts() {
+        long callStart = beginCall("getBadgeCounts");
+        try {
+            return BadgeStore.get(context).getCountsJson();
+        } finally {
+            recordCall("getBadgeCounts", callStart);
+        }
+    }
+
+    /**
+     * Check if the launcher has notification access for badges
+     */
+    @JavascriptInterface
+    public boolean hasNotificationAccess() {
+        long callStart = beginCall("hasNotificationAccess");
+        try {
+            return BadgeNotificationListener.hasAccess(context);
+        } finally {
+            recordCall("hasNotificationAccess", callStart);
+        }
+    }
+
+    /**
+     * Open the system screen where the user grants notification access
+     */
+    @JavascriptInterface
+    public boolean openNotificationAccessSettings() {
+        long callStart = beginCall("openNotificationAccessSettings");
+        try {
+            Intent intent = new Intent("android.settings.ACTION_NOTIFICATION_LISTENER_SETTINGS");
+            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            context.startActivity(intent);
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error opening notification access settings: " + e.getMessage());
+            return false;
+        } finally {
+            recordCall("openNotificationAccessSettings", callStart);
+        }
+    }
+
+    /**
+     * Open a named interaction window for frame-time stats, e.g. "drawerScroll"
+     */
+    @JavascriptInterface
+    public void beginInteraction(String name) {
+        long callStart = beginCall("beginInteraction");
+        try {
+            if (jankMonitor != null) {
+                jankMonitor.beginInteraction(name);
+            }
+        } finally {
+            recordCall("beginInteraction", callStart);
+        }
+    }
+
+    /**
+     * Close the interaction window opened with beginInteraction
+     */
+    @JavascriptInterface
+    public void endInteraction(String name) {
+        long callStart = beginCall("endInteraction");
+        try {
+            if (jankMonitor != null) {
+                jankMonitor.endInteraction(name);
+            }
+        } finally {
+            recordCall("endInteraction", callStart);
+        }
+    }
+
+    /**
+     * Get frame-time and jank aggregates per interaction
+     */
+    @JavascriptInterface
+    public String getFrameStats() {
+        long callStart = beginCall("getFrameStats");
+        try {
+            return jankMonitor != null ? jankMonitor.getStatsJson() : "{}";
+        } finally {
+            recordCall("getFrameStats", callStart);
+        }
+    }
+
+    /**
+     * Clear frame-time aggregates, e.g. before measuring one interaction
+     */
+    @JavascriptInterface
+    public void resetFrameStats() {
+        long callStart = beginCall("resetFrameStats");
+        try {
+            if (jankMonitor != null) {
+                jankMonitor.reset();
+            }
+        } finally {
+            recordCall("resetFrameStats", callStart);
+        }
+    }
+
+    /**
+     * Get recent main-thread and bridge stalls, newest first, with stacks and the bridge call
+     * in flight
+     */
+    @JavascriptInterface
+    public String getStallIncidents() {
+        long callStart = beginCall("getStallIncidents");
+        try {
+            return StallWatchdog.get(context).getIncidentsJson();
+        } finally {
+            recordCall("getStallIncidents", callStart);
+        }
+    }
+
+    @JavascriptInterface
+    public void clearStallIncidents() {
+        long callStart = beginCall("clearStallIncidents");
+        try {
+            StallWatchdog.get(context).clear();
+        } finally {
+            recordCall("clearStallIncidents", callStart);
+        }
+    }
+
+    /**
+     * Report stalls longer than this many milliseconds (default 1000)
+     */
+    @JavascriptInterface
+    public void setStallThreshold(int thresholdMs) {
+        long callStart = beginCall("setStallThreshold");
+        try {
+            StallWatchdog.get(context).setThresholdMs(thresholdMs);
+        } finally {
+            recordCall("setStallThreshold", callStart);
         }
     }
 
     // Helper methods
+
+    /**
+     * Every @JavascriptInterface method starts with this and calls recordCall in a finally
+     * block, so stalls and timings are attributed to the call in flight. A bridge method
+     * called from another one (getContacts, isAppInstalled) only counts as the outer call.
+     */
+    private long beginCall(String name) {
+        if (callDepth.getAndIncrement() == 0) {
+            StallWatchdog.get(context).beginBridgeCall(name);
+        }
+        return SystemClock.uptimeMillis();
+    }
+
+    private void recordCall(String name, long startMs) {
+        if (callDepth.decrementAndGet() > 0) {
+            return;
+        }
+        StallWatchdog.get(context).endBridgeCall();
+        if (jankMonitor != null) {
+            jankMonitor.recordBridgeCall(name, startMs, SystemClock.uptimeMillis());
+        }
+    }
+
     private boolean hasPermission(String permission) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             return context.checkSelfPermission(permission) == PackageManager.PERMISSION_GRANTED;
@@ -466,7 +1422,7 @@ public class BasePhoneBridge {
         }
     }
 
-    private String getPhoneTypeLabel(int type) {
+    static String getPhoneTypeLabel(int type) {
         switch (type) {
             case ContactsContract.CommonDataKinds.Phone.TYPE_HOME:
                 return "home";
@@ -0,0 +1,226 @@
+/*
+ * BasePhone Bridge JSON Writer
+ * Reusable, per-thread JSON encoder for bridge responses
+ */
+package app.vercel.baselauncher.twa;
+
+/**
+ * Writes JSON straight into a pooled StringBuilder, without building an org.json tree.
+ * Bridge calls arrive on the JavaBridge thread, so each thread keeps one writer and reuses
+ * its buffer between calls.
+ *
+ * <pre>
+ * BridgeJsonWriter out = BridgeJsonWriter.obtain();
+ * out.beginArray();
+ * out.beginObject().name("id").value(1).endObject();
+ * out.endArray();
+ * String json = out.finish();
+ * </pre>
+ */
+public final class BridgeJsonWriter {
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+    // Don't pin a huge buffer after one unusually large response
+    private static final int MAX_RETAINED_CAPACITY = 512 * 1024;
+    private static final int MAX_DEPTH = 32;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<BridgeJsonWriter> POOL = new ThreadLocal<BridgeJsonWriter>() {
+        @Override
+        protected BridgeJsonWriter initialValue() {
+            return new BridgeJsonWriter();
+        }
+    };
+
+    private StringBuilder buffer = new StringBuilder(INITIAL_CAPACITY);
+    // Per nesting level: whether a value has been written, so the next one needs a comma
+    private final boolean[] hasValue = new boolean[MAX_DEPTH];
+    private int depth = 0;
+    private boolean afterName = false;
+    private boolean inUse = false;
+
+    private BridgeJsonWriter() {
+    }
+
+    /**
+     * Get this thread's writer, or a fresh one if it is already in use further up the stack
+     */
+    public static BridgeJsonWriter obtain() {
+        BridgeJsonWriter writer = POOL.get();
+        if (writer.inUse) {
+            writer = new BridgeJsonWriter();
+        }
+        writer.inUse = true;
+        return writer;
+    }
+
+    /**
+     * Return the encoded JSON and release the writer for the next call on this thread
+     */
+    public String finish() {
+        String json = buffer.toString();
+        reset();
+        return json;
+    }
+
+    /**
+     * Release the writer without producing output, e.g. after an error
+     */
+    public void reset() {
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            buffer = new StringBuilder(INITIAL_CAPACITY);
+        } else {
+            buffer.setLength(0);
+        }
+        depth = 0;
+        afterName = false;
+        inUse = false;
+    }
+
+    public BridgeJsonWriter beginArray() {
+        beforeValue();
+        buffer.append('[');
+        push();
+        return this;
+    }
+
+    public BridgeJsonWriter endArray() {
+        depth--;
+        buffer.append(']');
+        return this;
+    }
+
+    public BridgeJsonWriter beginObject() {
+        beforeValue();
+        buffer.append('{');
+        push();
+        return this;
+    }
+
+    public BridgeJsonWriter endObject() {
+        depth--;
+        buffer.append('}');
+        return this;
+    }
+
+    public BridgeJsonWriter name(String name) {
+        if (hasValue[depth - 1]) {
+            buffer.append(',');
+        }
+        hasValue[depth - 1] = true;
+        writeString(name);
+        buffer.append(':');
+        afterName = true;
+        return this;
+    }
+
+    public BridgeJsonWriter value(String value) {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    public BridgeJsonWriter value(long value) {
+        beforeValue();
+        buffer.append(value);
+        return this;
+    }
+
+    public BridgeJsonWriter value(double value) {
+        beforeValue();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            buffer.append("null");
+        } else {
+            buffer.append(value);
+        }
+        return this;
+    }
+
+    public BridgeJsonWriter value(boolean value) {
+        beforeValue();
+        buffer.append(value);
+        return this;
+    }
+
+    public BridgeJsonWriter nullValue() {
+        beforeValue();
+        buffer.append("null");
+        return this;
+    }
+
+    /**
+     * Append an already-encoded JSON value verbatim
+     */
+    public BridgeJsonWriter rawValue(String json) {
+        beforeValue();
+        buffer.append(json);
+        return this;
+    }
+
+    private void push() {
+        hasValue[depth++] = false;
+    }
+
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (hasValue[depth - 1]) {
+                buffer.append(',');
+            }
+            hasValue[depth - 1] = true;
+        }
+    }
+
+    /**
+     * Quote and escape a string. Also escapes U+2028/U+2029, which are valid JSON but end a
+     * line in older JavaScript engines when the result is evaluated as script.
+     */
+    private void writeString(String value) {
+        StringBuilder out = buffer;
+        out.append('"');
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String replacement;
+            if (c == '"') {
+                replacement = "\\\"";
+            } else if (c == '\\') {
+                replacement = "\\\\";
+            } else if (c == '\n') {
+                replacement = "\\n";
+            } else if (c == '\r') {
+                replacement = "\\r";
+            } else if (c == '\t') {
+                replacement = "\\t";
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                replacement = null;
+            } else {
+                continue;
+            }
+            // Copy the clean run in one call instead of char by char
+            if (start < i) {
+                out.append(value, start, i);
+            }
+            if (replacement != null) {
+                out.append(replacement);
+            } else {
+                out.append("\\u")
+                    .append(HEX[(c >> 12) & 0xf])
+                    .append(HEX[(c >> 8) & 0xf])
+                    .append(HEX[(c >> 4) & 0xf])
+                    .append(HEX[c & 0xf]);
+            }
+            start = i + 1;
+        }
+        if (start < length) {
+            out.append(value, start, length);
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * BasePhone Cached Location Provider
+ * Serves the last known fix instantly and refreshes it passively in the background
+ */
+package app.vercel.baselauncher.twa;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+public class CachedLocationProvider {
+    private static final String TAG = "CachedLocationProvider";
+
+    public static final String ACCURACY_PASSIVE = "passive";
+    public static final String ACCURACY_COARSE = "coarse";
+    public static final String ACCURACY_FINE = "fine";
+
+    // Weather only needs a city-level fix, so half an hour old is still good enough
+    private static final long DEFAULT_FRESHNESS_MS = 30 * 60 * 1000L;
+    private static final float PASSIVE_MIN_DISTANCE_M = 500f;
+    // A single update that hasn't answered by then (no fix, provider gone) is abandoned
+    private static final long REFRESH_TIMEOUT_MS = 60 * 1000L;
+
+    private static CachedLocationProvider instance;
+
+    private final LocationManager locationManager;
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private volatile Location cachedLocation;
+    private volatile long freshnessBudgetMs = DEFAULT_FRESHNESS_MS;
+    private volatile String accuracyTier = ACCURACY_COARSE;
+    private boolean listening = false;
+    private boolean refreshInFlight = false;
+
+    private final LocationListener passiveListener = new LocationListener() {
+        @Override
+        public void onLocationChanged(Location location) {
+            offer(location);
+        }
+
+        @Override
+        public void onStatusChanged(String provider, int status, Bundle extras) {
+        }
+
+        @Override
+        public void onProviderEnabled(String provider) {
+        }
+
+        @Override
+        public void onProviderDisabled(String provider) {
+        }
+    };
+
+    private final LocationListener refreshListener = new LocationListener() {
+        @Override
+        public void onLocationChanged(Location location) {
+            finishRefresh();
+            offer(location);
+        }
+
+        @Override
+        public void onStatusChanged(String provider, int status, Bundle extras) {
+        }
+
+        @Override
+        public void onProviderEnabled(String provider) {
+        }
+
+        @Override
+        public void onProviderDisabled(String provider) {
+            cancelRefresh();
+        }
+    };
+
+    private final Runnable refreshTimeout = new Runnable() {
+        @Override
+        public void run() {
+            Log.w(TAG, "Location refresh timed out");
+            cancelRefresh();
+        }
+    };
+
+    public static synchronized CachedLocationProvider get(Context context) {
+        if (instance == null) {
+            instance = new CachedLocationProvider(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private CachedLocationProvider(Context context) {
+        this.context = context;
+        this.locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+    }
+
+    /**
+     * Configure how old a cached fix may be and which providers may be woken to refresh it
+     */
+    public void setPolicy(long freshnessBudgetMs, String accuracyTier) {
+        if (freshnessBudgetMs > 0) {
+            this.freshnessBudgetMs = freshnessBudgetMs;
+        }
+        if (ACCURACY_PASSIVE.equals(accuracyTier)
+                || ACCURACY_COARSE.equals(accuracyTier)
+                || ACCURACY_FINE.equals(accuracyTier)) {
+            this.accuracyTier = accuracyTier;
+        }
+        synchronized (this) {
+            if (listening) {
+                // Re-register so the passive interval follows the new budget
+                stop();
+                start();
+            }
+        }
+    }
+
+    /**
+     * Start listening for fixes other apps already requested. This never powers up a radio.
+     */
+    public synchronized void start() {
+        if (listening || locationManager == null || !hasAnyLocationPermission()) {
+            return;
+        }
+        try {
+            seedFromLastKnown();
+            locationManager.requestLocationUpdates(
+                LocationManager.PASSIVE_PROVIDER,
+                freshnessBudgetMs / 2,
+                PASSIVE_MIN_DISTANCE_M,
+                passiveListener,
+                Looper.getMainLooper()
+            );
+            listening = true;
+        } catch (SecurityException | IllegalArgumentException e) {
+            Log.e(TAG, "Error starting passive location updates: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stop all location updates
+     */
+    public synchronized void stop() {
+        if (locationManager == null) {
+            return;
+        }
+        try {
+            locationManager.removeUpdates(passiveListener);
+            locationManager.removeUpdates(refreshListener);
+        } catch (SecurityException e) {
+            Log.e(TAG, "Error stopping location updates: " + e.getMessage());
+        }
+        listening = false;
+        finishRefresh();
+    }
+
+    /**
+     * Return the cached fix as JSON without blocking. Kicks off a background refresh
+     * when the fix is older than the freshness budget.
+     */
+    public String getCachedLocationJson() {
+        Location location = cachedLocation;
+        if (location == null) {
+            seedFromLastKnown();
+            location = cachedLocation;
+        }
+
+        if (location == null) {
+            requestRefresh();
+            return "{}";
+        }
+
+        long ageMs = ageMillis(location);
+        boolean stale = ageMs > freshnessBudgetMs;
+        if (stale) {
+            requestRefresh();
+        }
+
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        try {
+            return out.beginObject()
+                .name("latitude").value(location.getLatitude())
+                .name("longitude").value(location.getLongitude())
+                .name("accuracy").value(location.hasAccuracy() ? location.getAccuracy() : -1)
+                .name("provider").value(location.getProvider())
+                .name("ageMs").value(ageMs)
+                .name("stale").value(stale)
+                .endObject()
+                .finish();
+        } catch (RuntimeException e) {
+            out.reset();
+            throw e;
+        }
+    }
+
+    /**
+     * Return the cached fix, or null if none is known yet
+     */
+    public Location getCachedLocation() {
+        if (cachedLocation == null) {
+            seedFromLastKnown();
+        }
+        return cachedLocation;
+    }
+
+    public boolean hasAnyLocationPermission() {
+        return hasPermission(Manifest.permission.ACCESS_COARSE_LOCATION)
+                || hasPermission(Manifest.permission.ACCESS_FINE_LOCATION);
+    }
+
+    private void seedFromLastKnown() {
+        if (locationManager == null || !hasAnyLocationPermission()) {
+            return;
+        }
+        try {
+            for (String provider : locationManager.getProviders(false)) {
+                offer(locationManager.getLastKnownLocation(provider));
+            }
+        } catch (SecurityException e) {
+            Log.e(TAG, "Error reading last known location: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Ask the tier's provider for a single fresh fix, unless one is already on its way
+     */
+    private void requestRefresh() {
+        if (locationManager == null || ACCURACY_PASSIVE.equals(accuracyTier)) {
+            return;
+        }
+        final String provider;
+        if (ACCURACY_FINE.equals(accuracyTier)
+                && hasPermission(Manifest.permission.ACCESS_FINE_LOCATION)
+                && locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER)) {
+            provider = LocationManager.GPS_PROVIDER;
+        } else if (hasAnyLocationPermission()
+                && locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER)) {
+            provider = LocationManager.NETWORK_PROVIDER;
+        } else {
+            return;
+        }
+
+        synchronized (this) {
+            if (refreshInFlight) {
+                return;
+            }
+            refreshInFlight = true;
+        }
+        // Arm the timeout first: a fix delivered straight away cancels it in finishRefresh(),
+        // where posting it afterwards would leave it armed against the next refresh
+        mainHandler.postDelayed(refreshTimeout, REFRESH_TIMEOUT_MS);
+        try {
+            locationManager.requestSingleUpdate(provider, refreshListener, Looper.getMainLooper());
+        } catch (SecurityException | IllegalArgumentException e) {
+            Log.e(TAG, "Error requesting location refresh: " + e.getMessage());
+            finishRefresh();
+        }
+    }
+
+    /**
+     * The single update answered or was removed; the next stale read may refresh again
+     */
+    private synchronized void finishRefresh() {
+        mainHandler.removeCallbacks(refreshTimeout);
+        refreshInFlight = false;
+    }
+
+    /**
+     * Give up on the single update still pending
+     */
+    private synchronized void cancelRefresh() {
+        if (locationManager != null) {
+            try {
+                locationManager.removeUpdates(refreshListener);
+            } catch (SecurityException e) {
+                Log.e(TAG, "Error cancelling location refresh: " + e.getMessage());
+            }
+        }
+        finishRefresh();
+    }
+
+    /**
+     * Keep the newer of the cached fix and the candidate, preferring accuracy on ties.
+     * Fixes arrive from both listeners and the bridge thread, so the compare and swap is locked.
+     */
+    private synchronized void offer(Location candidate) {
+        if (candidate == null) {
+            return;
+        }
+        Location current = cachedLocation;
+        if (current == null) {
+            cachedLocation = candidate;
+            return;
+        }
+        long candidateAge = ageMillis(candidate);
+        long currentAge = ageMillis(current);
+        if (candidateAge < currentAge
+                || (candidateAge == currentAge && candidate.getAccuracy() < current.getAccuracy())) {
+            cachedLocation = candidate;
+        }
+    }
+
+    private static long ageMillis(Location location) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return (SystemClock.elapsedRealtimeNanos() - location.getElapsedRealtimeNanos()) / 1000000L;
+        }
+        return System.currentTimeMillis() - location.getTime();
+    }
+
+    private boolean hasPermission(String permission) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return context.checkSelfPermission(permission) == PackageManager.PERMISSION_GRANTED;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * BasePhone Call Log Repository
+ * Keyset-paged call log with an in-memory head that syncs incrementally
+ */
+package app.vercel.baselauncher.twa;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.provider.CallLog;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CallLogRepository {
+    private static final String TAG = "CallLogRepository";
+
+    // Understood by the call log provider, same key as ContactsContract.LIMIT_PARAM_KEY
+    private static final String LIMIT_PARAM = "limit";
+    // How many of the newest calls are kept in memory for an instant first page
+    private static final int HEAD_SIZE = 200;
+    private static final int MAX_PAGE_SIZE = 200;
+
+    private static final String[] PROJECTION = new String[]{
+        CallLog.Calls._ID,
+        CallLog.Calls.NUMBER,
+        CallLog.Calls.TYPE,
+        CallLog.Calls.DATE,
+        CallLog.Calls.DURATION,
+        CallLog.Calls.CACHED_NAME
+    };
+
+    private static CallLogRepository instance;
+
+    private final ContentResolver resolver;
+    private final PhoneNumberIndex numberIndex;
+    private final Handler syncHandler;
+
+    // Newest first; guarded by this
+    private List<CallEntry> head;
+    private long lastSeenId = -1;
+    private boolean observing = false;
+
+    static class CallEntry {
+        final long id;
+        final String number;
+        final int type;
+        final long date;
+        final long duration;
+        final String cachedName;
+
+        CallEntry(Cursor cursor) {
+            this.id = cursor.getLong(0);
+            this.number = cursor.getString(1);
+            this.type = cursor.getInt(2);
+            this.date = cursor.getLong(3);
+            this.duration = cursor.getLong(4);
+            this.cachedName = cursor.getString(5);
+        }
+    }
+
+    private final ContentObserver callLogObserver;
+
+    public static synchronized CallLogRepository get(Context context) {
+        if (instance == null) {
+            instance = new CallLogRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    CallLogRepository(Context context) {
+        this.resolver = context.getContentResolver();
+        this.numberIndex = PhoneNumberIndex.get(context);
+
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        this.syncHandler = new Handler(thread.getLooper());
+        this.callLogObserver = new ContentObserver(syncHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                syncNewCalls();
+            }
+        };
+    }
+
+    /**
+     * Get a page of calls, newest first. Pass beforeId <= 0 for the first page, then the
+     * returned nextBeforeId for the following ones.
+     *
+     * @return {calls: [...], nextBeforeId: id or -1 when there are no more}
+     */
+    public String getPage(long beforeId, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<CallEntry> page;
+
+        if (beforeId <= 0) {
+            page = headPage(pageSize);
+        } else {
+            page = query(CallLog.Calls._ID + " < ?", new String[]{String.valueOf(beforeId)},
+                CallLog.Calls._ID + " DESC", pageSize);
+            if (page == null) {
+                page = new ArrayList<>();
+            }
+        }
+
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        try {
+            out.beginObject().name("calls").beginArray();
+            for (CallEntry entry : page) {
+                write(entry, out);
+            }
+            out.endArray()
+                .name("nextBeforeId").value(page.size() < pageSize ? -1 : page.get(page.size() - 1).id)
+                .endObject();
+            return out.finish();
+        } catch (RuntimeException e) {
+            out.reset();
+            throw e;
+        }
+    }
+
+    private synchronized List<CallEntry> headPage(int pageSize) {
+        if (head == null) {
+            List<CallEntry> loaded = loadHead();
+            if (loaded == null) {
+                // Not cached, so the next read tries again instead of serving an empty log
+                return new ArrayList<>();
+            }
+            startObserving();
+        }
+        if (pageSize >= head.size()) {
+            return new ArrayList<>(head);
+        }
+        return new ArrayList<>(head.subList(0, pageSize));
+    }
+
+    /**
+     * Query the newest calls into the head. Returns null, leaving the head unset, if the
+     * query failed. Caller holds the lock.
+     */
+    private List<CallEntry> loadHead() {
+        List<CallEntry> loaded = query(null, null, CallLog.Calls._ID + " DESC", HEAD_SIZE);
+        if (loaded != null) {
+            head = loaded;
+            lastSeenId = loaded.isEmpty() ? 0 : loaded.get(0).id;
+        }
+        return loaded;
+    }
+
+    /**
+     * Pull only the rows added since the newest one we have. A change that added nothing
+     * was an edit or delete, so the head is dropped and reloaded on the next read. A full
+     * head's worth of new rows may have skipped some, so the head is reloaded whole.
+     */
+    private void syncNewCalls() {
+        long sinceId;
+        synchronized (this) {
+            if (head == null) {
+                return;
+            }
+            sinceId = lastSeenId;
+        }
+
+        List<CallEntry> added = query(CallLog.Calls._ID + " > ?", new String[]{String.valueOf(sinceId)},
+            CallLog.Calls._ID + " DESC", HEAD_SIZE);
+
+        synchronized (this) {
+            if (head == null || lastSeenId != sinceId) {
+                return;
+            }
+            if (added == null || added.isEmpty()) {
+                head = null;
+                return;
+            }
+            if (added.size() >= HEAD_SIZE) {
+                // Rows between the oldest added one and our newest were never read
+                if (loadHead() == null) {
+                    head = null;
+                }
+                return;
+            }
+            List<CallEntry> merged = new ArrayList<>(Math.min(HEAD_SIZE, added.size() + head.size()));
+            merged.addAll(added);
+            for (CallEntry entry : head) {
+                if (merged.size() >= HEAD_SIZE) {
+                    break;
+                }
+                merged.add(entry);
+            }
+            head = merged;
+            lastSeenId = added.get(0).id;
+        }
+    }
+
+    private void startObserving() {
+        if (observing) {
+            return;
+        }
+        resolver.registerContentObserver(CallLog.Calls.CONTENT_URI, true, callLogObserver);
+        observing = true;
+    }
+
+    /**
+     * Query up to limit calls, or null if the query failed
+     */
+    private List<CallEntry> query(String selection, String[] selectionArgs, String sortOrder, int limit) {
+        List<CallEntry> entries = new ArrayList<>();
+        Uri uri = CallLog.Calls.CONTENT_URI.buildUpon()
+            .appendQueryParameter(LIMIT_PARAM, String.valueOf(limit))
+            .build();
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(uri, PROJECTION, selection, selectionArgs, sortOrder);
+            if (cursor != null) {
+                while (cursor.moveToNext() && entries.size() < limit) {
+                    entries.add(new CallEntry(cursor));
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading call log: " + e.getMessage());
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return entries;
+    }
+
+    private void write(CallEntry entry, BridgeJsonWriter out) {
+        out.beginObject()
+            .name("id").value(entry.id)
+            .name("number").value(entry.number)
+            .name("type").value(getCallTypeLabel(entry.type))
+            .name("date").value(entry.date)
+            .name("duration").value(entry.duration);
+
+        PhoneNumberIndex.Entry contact = numberIndex.lookup(entry.number);
+        if (contact != null) {
+            out.name("contactId").value(contact.contactId);
+            out.name("name").value(contact.name);
+        } else if (entry.cachedName != null) {
+            out.name("name").value(entry.cachedName);
+        }
+        out.endObject();
+    }
+
+    private static String getCallTypeLabel(int type) {
+        switch (type) {
+            case CallLog.Calls.INCOMING_TYPE:
+                return "incoming";
+            case CallLog.Calls.OUTGOING_TYPE:
+                return "outgoing";
+            case CallLog.Calls.MISSED_TYPE:
+                return "missed";
+            case CallLog.Calls.REJECTED_TYPE:
+                return "rejected";
+            default:
+                return "other";
+        }
+    }
+}
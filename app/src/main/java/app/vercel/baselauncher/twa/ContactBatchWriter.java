@@ -0,0 +1,422 @@
+/*
+ * BasePhone Contact Batch Writer
+ * Bulk contact inserts, updates and deletes in chunked provider transactions
+ */
+package app.vercel.baselauncher.twa;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.provider.ContactsContract;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A job is a JSON array of operations:
+ * {op:"insert", name, phone, type}, {op:"update", id, name?, phone?, oldPhone?, type?} or
+ * {op:"delete", id}, where id is a contact id as returned by the contact reads and type is
+ * home, mobile, work or other. Operations are grouped into applyBatch transactions of at
+ * most {@link #MAX_OPS_PER_BATCH} provider operations, never splitting one contact, and
+ * run on a worker thread. After each transaction the contact indexes are patched from
+ * what was written, and their observers skip the one change notification it caused, so
+ * nothing is re-read from the provider. Other notifications, such as a sync adapter's
+ * edits, still drop the indexes. An update or delete that matched no rows is reported
+ * as failed and isn't patched in.
+ */
+public class ContactBatchWriter {
+    private static final String TAG = "ContactBatchWriter";
+
+    // The contacts provider rejects batches over 500 operations
+    private static final int MAX_OPS_PER_BATCH = 400;
+
+    /**
+     * Receives progress and results on the worker thread
+     */
+    public interface Listener {
+        void onProgress(String jobId, int done, int total);
+        /**
+         * @param resultsJson one {index, ok, id?, error?} per operation, in order
+         */
+        void onComplete(String jobId, String resultsJson);
+    }
+
+    /**
+     * The outcome of one operation
+     */
+    static class Result {
+        final int index;
+        final boolean ok;
+        final String id;
+        final String error;
+
+        Result(int index, boolean ok, String id, String error) {
+            this.index = index;
+            this.ok = ok;
+            this.id = id;
+            this.error = error;
+        }
+    }
+
+    /**
+     * One contact change as written, for patching the indexes
+     */
+    static class Written {
+        static final int INSERT = 0;
+        static final int UPDATE = 1;
+        static final int DELETE = 2;
+
+        final int kind;
+        final String contactId;
+        // Null when unchanged
+        final String name;
+        final String phone;
+        final String oldPhone;
+        final String type;
+
+        Written(int kind, String contactId, String name, String phone, String oldPhone, String type) {
+            this.kind = kind;
+            this.contactId = contactId;
+            this.name = name;
+            this.phone = phone;
+            this.oldPhone = oldPhone;
+            this.type = type;
+        }
+    }
+
+    private static ContactBatchWriter instance;
+
+    private final Context context;
+    private final ContentResolver resolver;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    private final AtomicInteger jobCounter = new AtomicInteger();
+
+    public static synchronized ContactBatchWriter get(Context context) {
+        if (instance == null) {
+            instance = new ContactBatchWriter(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ContactBatchWriter(Context context) {
+        this.context = context;
+        this.resolver = context.getContentResolver();
+    }
+
+    /**
+     * Queue a job and return its id. Throws if the operations aren't a JSON array.
+     */
+    public String submit(String opsJson, final Listener listener) throws JSONException {
+        final JSONArray ops = new JSONArray(opsJson);
+        final String jobId = "contacts-" + jobCounter.incrementAndGet();
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                runJob(jobId, ops, listener);
+            }
+        });
+        return jobId;
+    }
+
+    private void runJob(String jobId, JSONArray ops, Listener listener) {
+        int total = ops.length();
+        Result[] results = new Result[total];
+        int index = 0;
+        while (index < total) {
+            // Fill one transaction with whole contacts
+            ArrayList<ContentProviderOperation> batch = new ArrayList<>();
+            List<Integer> chunk = new ArrayList<>();
+            List<Integer> firstOp = new ArrayList<>();
+            while (index < total) {
+                JSONObject op = ops.optJSONObject(index);
+                List<ContentProviderOperation> built;
+                try {
+                    built = build(op, batch.size());
+                } catch (IllegalArgumentException e) {
+                    results[index] = failure(index, e.getMessage());
+                    index++;
+                    continue;
+                }
+                if (!batch.isEmpty() && batch.size() + built.size() > MAX_OPS_PER_BATCH) {
+                    break;
+                }
+                chunk.add(index);
+                firstOp.add(batch.size());
+                batch.addAll(built);
+                index++;
+            }
+            if (!batch.isEmpty()) {
+                applyChunk(ops, chunk, firstOp, batch, results);
+            }
+            listener.onProgress(jobId, index, total);
+        }
+
+        listener.onComplete(jobId, encode(results));
+    }
+
+    private static String encode(Result[] results) {
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        try {
+            out.beginArray();
+            for (Result result : results) {
+                out.beginObject()
+                    .name("index").value(result.index)
+                    .name("ok").value(result.ok);
+                if (result.id != null) {
+                    out.name("id").value(result.id);
+                }
+                if (result.error != null) {
+                    out.name("error").value(result.error);
+                }
+                out.endObject();
+            }
+            out.endArray();
+            return out.finish();
+        } catch (RuntimeException e) {
+            out.reset();
+            throw e;
+        }
+    }
+
+    private void applyChunk(JSONArray ops, List<Integer> chunk, List<Integer> firstOp,
+                            ArrayList<ContentProviderOperation> batch, Result[] results) {
+        long start = SystemClock.uptimeMillis();
+        PhoneNumberIndex numberIndex = PhoneNumberIndex.get(context);
+        ContactListIndex listIndex = ContactListIndex.get(context);
+        numberIndex.beginSelfWrite();
+        listIndex.beginSelfWrite();
+        ContentProviderResult[] applied;
+        try {
+            applied = resolver.applyBatch(ContactsContract.AUTHORITY, batch);
+        } catch (Exception e) {
+            // Rolled back, possibly only to the last yield point
+            Log.e(TAG, "Error applying contact batch: " + e.getMessage());
+            numberIndex.endSelfWrite(false);
+            listIndex.endSelfWrite(false);
+            for (int i : chunk) {
+                results[i] = failure(i, e.getMessage());
+            }
+            return;
+        }
+
+        // New raw contacts only learn their aggregate contact id after the transaction
+        Map<Long, Integer> insertedRawIds = new HashMap<>();
+        for (int c = 0; c < chunk.size(); c++) {
+            JSONObject op = ops.optJSONObject(chunk.get(c));
+            if ("insert".equals(op.optString("op")) && applied[firstOp.get(c)].uri != null) {
+                insertedRawIds.put(ContentUris.parseId(applied[firstOp.get(c)].uri), chunk.get(c));
+            }
+        }
+        Map<Integer, String> contactIds = lookupContactIds(insertedRawIds);
+
+        List<Written> written = new ArrayList<>();
+        for (int c = 0; c < chunk.size(); c++) {
+            int i = chunk.get(c);
+            int opIndex = firstOp.get(c);
+            JSONObject op = ops.optJSONObject(i);
+            String kind = op.optString("op");
+            String name = optString(op, "name");
+            String phone = optString(op, "phone");
+            String type = optString(op, "type");
+            if ("insert".equals(kind)) {
+                String contactId = contactIds.get(i);
+                results[i] = success(i, contactId);
+                if (contactId != null) {
+                    written.add(new Written(Written.INSERT, contactId, name, phone, null, type != null ? type : "mobile"));
+                }
+            } else if ("update".equals(kind)) {
+                String contactId = op.optString("id");
+                // Same order as build(): the name row, then the phone row
+                boolean nameMatched = name == null || matched(applied[opIndex++]);
+                boolean phoneMatched = phone == null || matched(applied[opIndex]);
+                if (nameMatched && phoneMatched) {
+                    results[i] = success(i, contactId);
+                } else {
+                    results[i] = failure(i, !nameMatched ? "No such contact" : "No phone matching oldPhone");
+                }
+                // Patch in only the rows that were actually written
+                String writtenName = nameMatched ? name : null;
+                String writtenPhone = phoneMatched ? phone : null;
+                if (writtenName != null || writtenPhone != null) {
+                    written.add(new Written(Written.UPDATE, contactId, writtenName, writtenPhone,
+                        writtenPhone != null ? optString(op, "oldPhone") : null,
+                        writtenPhone != null ? type : null));
+                }
+            } else {
+                String contactId = op.optString("id");
+                if (matched(applied[opIndex])) {
+                    results[i] = success(i, contactId);
+                    written.add(new Written(Written.DELETE, contactId, null, null, null, null));
+                } else {
+                    results[i] = failure(i, "No such contact");
+                }
+            }
+        }
+        numberIndex.applyWritten(written);
+        listIndex.applyWritten(written);
+        numberIndex.endSelfWrite(true);
+        listIndex.endSelfWrite(true);
+        Log.d(TAG, "Wrote " + chunk.size() + " contacts in " + batch.size() + " operations, "
+            + (SystemClock.uptimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Provider operations for one request. Back references are relative to base, the
+     * position of the first operation in the batch.
+     */
+    private static List<ContentProviderOperation> build(JSONObject op, int base) {
+        if (op == null) {
+            throw new IllegalArgumentException("Not an object");
+        }
+        String kind = op.optString("op");
+        String name = optString(op, "name");
+        String phone = optString(op, "phone");
+        int type = phoneType(optString(op, "type"));
+        List<ContentProviderOperation> built = new ArrayList<>();
+
+        if ("insert".equals(kind)) {
+            if (TextUtils.isEmpty(name) || TextUtils.isEmpty(phone)) {
+                throw new IllegalArgumentException("Insert needs name and phone");
+            }
+            // Yield points between contacts let other provider clients in during a big import
+            built.add(ContentProviderOperation.newInsert(ContactsContract.RawContacts.CONTENT_URI)
+                .withValue(ContactsContract.RawContacts.ACCOUNT_TYPE, null)
+                .withValue(ContactsContract.RawContacts.ACCOUNT_NAME, null)
+                .withYieldAllowed(true)
+                .build());
+            built.add(ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+                .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, base)
+                .withValue(ContactsContract.Data.MIMETYPE,
+                    ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE)
+                .withValue(ContactsContract.CommonDataKinds.StructuredName.DISPLAY_NAME, name)
+                .build());
+            built.add(ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+                .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, base)
+                .withValue(ContactsContract.Data.MIMETYPE,
+                    ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE)
+                .withValue(ContactsContract.CommonDataKinds.Phone.NUMBER, phone)
+                .withValue(ContactsContract.CommonDataKinds.Phone.TYPE, type)
+                .build());
+            return built;
+        }
+
+        String contactId = optString(op, "id");
+        if (TextUtils.isEmpty(contactId)) {
+            throw new IllegalArgumentException("Missing contact id");
+        }
+        if ("delete".equals(kind)) {
+            built.add(ContentProviderOperation.newDelete(ContactsContract.RawContacts.CONTENT_URI)
+                .withSelection(ContactsContract.RawContacts.CONTACT_ID + "=?", new String[]{contactId})
+                .withYieldAllowed(true)
+                .build());
+            return built;
+        }
+        if (!"update".equals(kind)) {
+            throw new IllegalArgumentException("Unknown op: " + kind);
+        }
+
+        String dataSelection = ContactsContract.Data.CONTACT_ID + "=? AND " + ContactsContract.Data.MIMETYPE + "=?";
+        if (name != null) {
+            built.add(ContentProviderOperation.newUpdate(ContactsContract.Data.CONTENT_URI)
+                .withSelection(dataSelection, new String[]{contactId,
+                    ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE})
+                .withValue(ContactsContract.CommonDataKinds.StructuredName.DISPLAY_NAME, name)
+                .build());
+        }
+        if (phone != null) {
+            String oldPhone = optString(op, "oldPhone");
+            if (oldPhone == null) {
+                throw new IllegalArgumentException("Phone update needs oldPhone");
+            }
+            ContentProviderOperation.Builder update = ContentProviderOperation.newUpdate(ContactsContract.Data.CONTENT_URI)
+                .withSelection(dataSelection + " AND " + ContactsContract.CommonDataKinds.Phone.NUMBER + "=?",
+                    new String[]{contactId, ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE, oldPhone})
+                .withValue(ContactsContract.CommonDataKinds.Phone.NUMBER, phone);
+            if (op.has("type")) {
+                update.withValue(ContactsContract.CommonDataKinds.Phone.TYPE, type);
+            }
+            built.add(update.build());
+        }
+        if (built.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to update");
+        }
+        return built;
+    }
+
+    /**
+     * Aggregate contact ids for new raw contacts, in one query
+     */
+    private Map<Integer, String> lookupContactIds(Map<Long, Integer> rawIds) {
+        Map<Integer, String> contactIds = new HashMap<>();
+        if (rawIds.isEmpty()) {
+            return contactIds;
+        }
+        String selection = ContactsContract.RawContacts._ID + " IN (" + TextUtils.join(",", rawIds.keySet()) + ")";
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(ContactsContract.RawContacts.CONTENT_URI,
+                new String[]{ContactsContract.RawContacts._ID, ContactsContract.RawContacts.CONTACT_ID},
+                selection, null, null);
+            if (cursor != null) {
+                while (cursor.moveToNext()) {
+                    Integer index = rawIds.get(cursor.getLong(0));
+                    if (index != null) {
+                        contactIds.put(index, cursor.getString(1));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading new contact ids: " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return contactIds;
+    }
+
+    /**
+     * Whether an update or delete touched at least one row
+     */
+    private static boolean matched(ContentProviderResult result) {
+        return result.count != null && result.count > 0;
+    }
+
+    private static int phoneType(String type) {
+        if ("home".equals(type)) {
+            return ContactsContract.CommonDataKinds.Phone.TYPE_HOME;
+        } else if ("work".equals(type)) {
+            return ContactsContract.CommonDataKinds.Phone.TYPE_WORK;
+        } else if ("other".equals(type)) {
+            return ContactsContract.CommonDataKinds.Phone.TYPE_OTHER;
+        }
+        return ContactsContract.CommonDataKinds.Phone.TYPE_MOBILE;
+    }
+
+    private static String optString(JSONObject op, String key) {
+        return op.has(key) && !op.isNull(key) ? op.optString(key) : null;
+    }
+
+    private static Result success(int index, String contactId) {
+        return new Result(index, true, contactId, null);
+    }
+
+    private static Result failure(int index, String error) {
+        return new Result(index, false, null, error != null ? error : "failed");
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * BasePhone Contact List Index
+ * Phone contacts in locale order with A-Z sections, sorted once per change
+ */
+package app.vercel.baselauncher.twa;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The provider sorts DISPLAY_NAME with its own collation, which ignores the user's locale.
+ * This index reads the phone table once, sorts it with {@link LocaleCollation} and keeps
+ * the sorted rows and their sections, so pages and section headers are plain reads until
+ * contacts or the locale change.
+ */
+public class ContactListIndex {
+    private static final String TAG = "ContactListIndex";
+
+    private static ContactListIndex instance;
+
+    private final Context context;
+    private final ContentResolver resolver;
+    private volatile Snapshot snapshot;
+    private boolean observing = false;
+    // Changes we wrote ourselves are patched in, so their notifications are skipped
+    private final SelfWriteFilter selfWrites = new SelfWriteFilter();
+
+    static class Row {
+        final String id;
+        final String name;
+        final String phone;
+        final String type;
+
+        Row(String id, String name, String phone, String type) {
+            this.id = id;
+            this.name = name;
+            this.phone = phone;
+            this.type = type;
+        }
+    }
+
+    private static class Snapshot {
+        final List<LocaleCollation.Keyed<Row>> rows;
+        final List<LocaleCollation.Section> sections;
+
+        Snapshot(List<LocaleCollation.Keyed<Row>> rows, List<LocaleCollation.Section> sections) {
+            this.rows = rows;
+            this.sections = sections;
+        }
+    }
+
+    private final ContentObserver contactsObserver = new ContentObserver(new Handler(Looper.getMainLooper())) {
+        @Override
+        public void onChange(boolean selfChange) {
+            if (selfWrites.consume()) {
+                return;
+            }
+            // Rebuilt lazily on the next read
+            snapshot = null;
+        }
+    };
+
+    public static synchronized ContactListIndex get(Context context) {
+        if (instance == null) {
+            instance = new ContactListIndex(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    ContactListIndex(Context context) {
+        this.context = context;
+        this.resolver = context.getContentResolver();
+        LocaleCollation.get(context).addListener(new Runnable() {
+            @Override
+            public void run() {
+                snapshot = null;
+            }
+        });
+    }
+
+    /**
+     * Write up to limit contacts starting at offset, in locale order. Builds the index on
+     * first use, so call it off the main thread.
+     */
+    public void writePage(int offset, int limit, BridgeJsonWriter out) {
+        List<LocaleCollation.Keyed<Row>> rows = current().rows;
+        int start = Math.max(0, Math.min(offset, rows.size()));
+        int end = limit > 0 ? Math.min(rows.size(), start + limit) : rows.size();
+        out.beginArray();
+        for (int i = start; i < end; i++) {
+            LocaleCollation.Keyed<Row> keyed = rows.get(i);
+            Row row = keyed.value;
+            out.beginObject()
+                .name("id").value(row.id)
+                .name("name").value(row.name)
+                .name("phone").value(row.phone)
+                .name("type").value(row.type)
+                .name("section").value(keyed.section)
+                .endObject();
+        }
+        out.endArray();
+    }
+
+    /**
+     * Write the section headers with the offset of their first contact and their size
+     */
+    public void writeSections(BridgeJsonWriter out) {
+        out.beginArray();
+        for (LocaleCollation.Section section : current().sections) {
+            out.beginObject()
+                .name("label").value(section.label)
+                .name("offset").value(section.offset)
+                .name("count").value(section.count)
+                .endObject();
+        }
+        out.endArray();
+    }
+
+    /**
+     * Build the index ahead of the first read. Call it off the main thread.
+     */
+    public void warm() {
+        current();
+    }
+
+    /**
+     * Patch the sorted rows with contacts written by {@link ContactBatchWriter}. Only the
+     * changed rows get new collation keys; the rest keep theirs and are re-sorted.
+     */
+    synchronized void applyWritten(List<ContactBatchWriter.Written> written) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return;
+        }
+        LocaleCollation.Sorter sorter = LocaleCollation.get(context).newSorter();
+        List<LocaleCollation.Keyed<Row>> rows = new ArrayList<>(current.rows);
+        for (ContactBatchWriter.Written change : written) {
+            if (change.kind == ContactBatchWriter.Written.INSERT) {
+                Row row = new Row(change.contactId, change.name, change.phone, change.type);
+                rows.add(sorter.key(row, row.name));
+                continue;
+            }
+            for (int i = rows.size() - 1; i >= 0; i--) {
+                Row row = rows.get(i).value;
+                if (!change.contactId.equals(row.id)) {
+                    continue;
+                }
+                if (change.kind == ContactBatchWriter.Written.DELETE) {
+                    rows.remove(i);
+                    continue;
+                }
+                boolean phoneChanged = change.phone != null && row.phone != null && row.phone.equals(change.oldPhone);
+                if (change.name == null && !phoneChanged) {
+                    continue;
+                }
+                Row updated = new Row(row.id,
+                    change.name != null ? change.name : row.name,
+                    phoneChanged ? change.phone : row.phone,
+                    phoneChanged && change.type != null ? change.type : row.type);
+                rows.set(i, change.name != null ? sorter.key(updated, updated.name)
+                    : new LocaleCollation.Keyed<>(updated, rows.get(i).key, rows.get(i).section));
+            }
+        }
+        sorter.sort(rows);
+        snapshot = new Snapshot(rows, LocaleCollation.sections(rows));
+    }
+
+    /**
+     * A transaction whose changes will be patched in with applyWritten is about to run
+     */
+    void beginSelfWrite() {
+        selfWrites.begin();
+    }
+
+    /**
+     * The transaction returned. A failed one may have committed up to a yield point,
+     * so the index is dropped and rebuilt on the next read.
+     */
+    void endSelfWrite(boolean applied) {
+        if (applied) {
+            selfWrites.end();
+        } else {
+            selfWrites.cancel();
+            snapshot = null;
+        }
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        return current != null ? current : rebuild();
+    }
+
+    private synchronized Snapshot rebuild() {
+        if (snapshot != null) {
+            return snapshot;
+        }
+        LocaleCollation.Sorter sorter = LocaleCollation.get(context).newSorter();
+        List<LocaleCollation.Keyed<Row>> rows = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(
+                ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
+                BasePhoneBridge.PHONE_PROJECTION,
+                null,
+                null,
+                null
+            );
+            if (cursor != null) {
+                while (cursor.moveToNext()) {
+                    Row row = new Row(cursor.getString(0), cursor.getString(1), cursor.getString(2),
+                        BasePhoneBridge.getPhoneTypeLabel(cursor.getInt(3)));
+                    rows.add(sorter.key(row, row.name));
+                }
+            }
+            startObserving();
+        } catch (SecurityException e) {
+            // Not cached, so the index fills in once the permission is granted
+            Log.w(TAG, "No contacts permission, index left empty");
+            return new Snapshot(Collections.<LocaleCollation.Keyed<Row>>emptyList(),
+                Collections.<LocaleCollation.Section>emptyList());
+        } catch (Exception e) {
+            Log.e(TAG, "Error building contact list: " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        sorter.sort(rows);
+        Snapshot built = new Snapshot(rows, LocaleCollation.sections(rows));
+        snapshot = built;
+        return built;
+    }
+
+    private void startObserving() {
+        if (observing) {
+            return;
+        }
+        resolver.registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, contactsObserver);
+        observing = true;
+    }
+}
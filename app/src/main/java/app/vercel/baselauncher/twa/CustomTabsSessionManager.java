@@ -0,0 +1,157 @@
+/*
+ * BasePhone Custom Tabs Session Manager
+ * Keeps one warmed-up browser session for the TWA launch and auth hand-offs
+ */
+package app.vercel.baselauncher.twa;
+
+import android.app.Activity;
+import android.content.ComponentName;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.browser.customtabs.CustomTabsClient;
+import androidx.browser.customtabs.CustomTabsIntent;
+import androidx.browser.customtabs.CustomTabsService;
+import androidx.browser.customtabs.CustomTabsServiceConnection;
+import androidx.browser.customtabs.CustomTabsSession;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CustomTabsSessionManager {
+    private static final String TAG = "CustomTabsSession";
+    private static final String CHROME_PACKAGE = "com.android.chrome";
+
+    // Where passkey and OAuth hand-offs usually land first
+    private static final List<String> LIKELY_AUTH_URLS = Arrays.asList(
+        "https://keys.coinbase.com/",
+        "https://accounts.google.com/",
+        "https://appleid.apple.com/"
+    );
+
+    private static CustomTabsSessionManager instance;
+
+    private final Context context;
+    private CustomTabsClient client;
+    private CustomTabsSession session;
+    private CustomTabsServiceConnection connection;
+    private String providerPackage;
+
+    public static synchronized CustomTabsSessionManager get(Context context) {
+        if (instance == null) {
+            instance = new CustomTabsSessionManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private CustomTabsSessionManager(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Bind to the browser, warm it up and pre-resolve the launch and auth URLs.
+     * Cheap to call repeatedly; only the first call binds.
+     */
+    public synchronized void bind() {
+        if (connection != null) {
+            return;
+        }
+        providerPackage = CustomTabsClient.getPackageName(context, Arrays.asList(CHROME_PACKAGE));
+        if (providerPackage == null) {
+            Log.d(TAG, "No Custom Tabs provider installed");
+            return;
+        }
+
+        connection = new CustomTabsServiceConnection() {
+            @Override
+            public void onCustomTabsServiceConnected(ComponentName name, CustomTabsClient connectedClient) {
+                synchronized (CustomTabsSessionManager.this) {
+                    client = connectedClient;
+                    client.warmup(0);
+                    session = client.newSession(null);
+                }
+                // A separate handle on the TWA's own session, for the page's postMessage channel
+                TwaMessageChannel.get(context).attach(connectedClient);
+                mayLaunchLikelyUrls();
+            }
+
+            @Override
+            public void onServiceDisconnected(ComponentName name) {
+                synchronized (CustomTabsSessionManager.this) {
+                    client = null;
+                    session = null;
+                    // Allow the next bind() to reconnect
+                    connection = null;
+                }
+                TwaMessageChannel.get(context).detach();
+            }
+        };
+
+        try {
+            if (!CustomTabsClient.bindCustomTabsService(context, providerPackage, connection)) {
+                connection = null;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error binding Custom Tabs service: " + e.getMessage());
+            connection = null;
+        }
+    }
+
+    /**
+     * Hint that a URL is about to be opened so the browser can preconnect
+     */
+    public void mayLaunchUrl(String url) {
+        CustomTabsSession current;
+        synchronized (this) {
+            current = session;
+        }
+        if (current != null && url != null) {
+            current.mayLaunchUrl(Uri.parse(url), null, null);
+        }
+    }
+
+    /**
+     * Open a URL in a Custom Tab on the warm session
+     *
+     * @return false if no browser session is available, so the caller can fall back
+     */
+    public boolean launch(Activity activity, String url) {
+        CustomTabsSession current;
+        synchronized (this) {
+            current = session;
+        }
+        if (current == null) {
+            bind();
+            return false;
+        }
+        try {
+            CustomTabsIntent customTabsIntent = new CustomTabsIntent.Builder(current).build();
+            customTabsIntent.launchUrl(activity, Uri.parse(url));
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error launching Custom Tab: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void mayLaunchLikelyUrls() {
+        CustomTabsSession current;
+        synchronized (this) {
+            current = session;
+        }
+        if (current == null) {
+            return;
+        }
+        // The launch URL is the most likely; auth pages are lower-priority candidates
+        List<Bundle> others = new ArrayList<>();
+        for (String url : LIKELY_AUTH_URLS) {
+            Bundle bundle = new Bundle();
+            bundle.putParcelable(CustomTabsService.KEY_URL, Uri.parse(url));
+            others.add(bundle);
+        }
+        current.mayLaunchUrl(Uri.parse(context.getString(R.string.launchUrl)), null, others);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * BasePhone Document Start Scripts
+ * Native-provided scripts installed once per WebView to run before the page's own scripts
+ */
+package app.vercel.baselauncher.twa;
+
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.WebView;
+
+import androidx.webkit.ScriptHandler;
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class DocumentStartScripts {
+    private static final String TAG = "DocumentStartScripts";
+
+    private final WebView webView;
+    private final boolean nativeSupport;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    private static class Entry {
+        final String script;
+        final Set<String> originRules;
+        ScriptHandler handler;
+
+        Entry(String script, Set<String> originRules) {
+            this.script = script;
+            this.originRules = originRules;
+        }
+    }
+
+    public DocumentStartScripts(WebView webView) {
+        this.webView = webView;
+        this.nativeSupport = WebViewFeature.isFeatureSupported(WebViewFeature.DOCUMENT_START_SCRIPT);
+    }
+
+    /**
+     * Install a script for every document whose origin matches one of the rules.
+     * Rules follow the androidx.webkit format: "*", "https://host" or "https://*.host".
+     * Must be called on the main thread.
+     */
+    public void add(String key, String script, Set<String> originRules) {
+        remove(key);
+        Entry entry = new Entry(script, originRules);
+        if (nativeSupport) {
+            try {
+                entry.handler = WebViewCompat.addDocumentStartJavaScript(webView, script, originRules);
+            } catch (Exception e) {
+                Log.e(TAG, "Error adding document start script " + key + ": " + e.getMessage());
+            }
+        }
+        entries.put(key, entry);
+    }
+
+    public void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null && entry.handler != null) {
+            entry.handler.remove();
+        }
+    }
+
+    /**
+     * Fallback for WebViews without document-start support: evaluate the scripts that
+     * were not installed natively, once per finished document.
+     */
+    public void onPageFinished(String url) {
+        if (url == null) {
+            return;
+        }
+        Uri uri = Uri.parse(url);
+        for (Entry entry : entries.values()) {
+            if (entry.handler == null && matchesAnyRule(uri, entry.originRules)) {
+                webView.evaluateJavascript(entry.script, null);
+            }
+        }
+    }
+
+    public void clear() {
+        for (Entry entry : entries.values()) {
+            if (entry.handler != null) {
+                entry.handler.remove();
+            }
+        }
+        entries.clear();
+    }
+
+    private static boolean matchesAnyRule(Uri uri, Set<String> rules) {
+        String scheme = uri.getScheme();
+        String host = uri.getHost();
+        if (scheme == null || host == null) {
+            return false;
+        }
+        for (String rule : rules) {
+            if ("*".equals(rule)) {
+                return true;
+            }
+            Uri ruleUri = Uri.parse(rule);
+            String ruleHost = ruleUri.getHost();
+            if (!scheme.equalsIgnoreCase(ruleUri.getScheme()) || ruleHost == null) {
+                continue;
+            }
+            if (ruleHost.startsWith("*.")) {
+                if (host.toLowerCase().endsWith(ruleHost.substring(1).toLowerCase())) {
+                    return true;
+                }
+            } else if (host.equalsIgnoreCase(ruleHost)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
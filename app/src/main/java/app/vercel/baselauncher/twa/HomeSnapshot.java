@@ -0,0 +1,256 @@
+/*
+ * BasePhone Home Snapshot
+ * Last rendered home screen, shown as a placeholder while the WebView boots
+ */
+package app.vercel.baselauncher.twa;
+
+import android.app.Activity;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.PixelCopy;
+import android.view.View;
+import android.view.ViewGroup;
+import android.webkit.WebView;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class HomeSnapshot {
+    private static final String TAG = "HomeSnapshot";
+
+    // Stored at a fraction of screen size; it only has to look right for a moment
+    private static final float SCALE = 0.5f;
+    private static final int JPEG_QUALITY = 80;
+    private static final long FADE_DURATION_MS = 200;
+    // Reveal the WebView anyway if the page never reports ready, e.g. offline
+    private static final long REVEAL_TIMEOUT_MS = 10000;
+    private static final long VISUAL_STATE_REQUEST_ID = 38;
+
+    // One writer for the whole process so overlapping captures land in order
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor();
+
+    private final Activity activity;
+    private final WebView webView;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private ImageView placeholder;
+    private boolean revealed = false;
+
+    private final Runnable revealTimeout = new Runnable() {
+        @Override
+        public void run() {
+            Log.w(TAG, "Page not ready in time, revealing WebView");
+            reveal();
+        }
+    };
+
+    public HomeSnapshot(Activity activity, WebView webView) {
+        this.activity = activity;
+        this.webView = webView;
+    }
+
+    /**
+     * Build the content view: the WebView, covered by the last snapshot if there is one
+     */
+    public View createContentView() {
+        FrameLayout root = new FrameLayout(activity);
+        root.addView(webView, new FrameLayout.LayoutParams(
+            ViewGroup.LayoutParams.MATCH_PARENT,
+            ViewGroup.LayoutParams.MATCH_PARENT
+        ));
+
+        Bitmap bitmap = load();
+        if (bitmap == null) {
+            revealed = true;
+            return root;
+        }
+
+        placeholder = new ImageView(activity);
+        placeholder.setScaleType(ImageView.ScaleType.FIT_XY);
+        placeholder.setImageBitmap(bitmap);
+        root.addView(placeholder, new FrameLayout.LayoutParams(
+            ViewGroup.LayoutParams.MATCH_PARENT,
+            ViewGroup.LayoutParams.MATCH_PARENT
+        ));
+        mainHandler.postDelayed(revealTimeout, REVEAL_TIMEOUT_MS);
+        return root;
+    }
+
+    /**
+     * The page is ready; cross-fade once its content has actually been drawn
+     */
+    public void onPageReady() {
+        if (revealed) {
+            return;
+        }
+        if (WebViewFeature.isFeatureSupported(WebViewFeature.VISUAL_STATE_CALLBACK)) {
+            WebViewCompat.postVisualStateCallback(webView, VISUAL_STATE_REQUEST_ID,
+                new WebViewCompat.VisualStateCallback() {
+                    @Override
+                    public void onComplete(long requestId) {
+                        reveal();
+                    }
+                });
+        } else {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    reveal();
+                }
+            });
+        }
+    }
+
+    /**
+     * Capture the live home screen, downscaled, and write it to disk off the main thread.
+     * Only the live page is captured, never the placeholder itself.
+     */
+    public void capture() {
+        if (!revealed || webView.getWidth() == 0 || webView.getHeight() == 0) {
+            return;
+        }
+        final File target = getFile();
+        final Bitmap bitmap = Bitmap.createBitmap(
+            Math.max(1, Math.round(webView.getWidth() * SCALE)),
+            Math.max(1, Math.round(webView.getHeight() * SCALE)),
+            Bitmap.Config.ARGB_8888
+        );
+
+        // PixelCopy reads the hardware-rendered frame; drawing a WebView to a software canvas is slow
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && activity.getWindow() != null) {
+            int[] location = new int[2];
+            webView.getLocationInWindow(location);
+            Rect source = new Rect(location[0], location[1],
+                location[0] + webView.getWidth(), location[1] + webView.getHeight());
+            try {
+                PixelCopy.request(activity.getWindow(), source, bitmap,
+                    new PixelCopy.OnPixelCopyFinishedListener() {
+                        @Override
+                        public void onPixelCopyFinished(int copyResult) {
+                            if (copyResult == PixelCopy.SUCCESS) {
+                                write(bitmap, target);
+                            } else {
+                                bitmap.recycle();
+                            }
+                        }
+                    }, mainHandler);
+            } catch (IllegalArgumentException e) {
+                // Window has no surface any more
+                bitmap.recycle();
+            }
+            return;
+        }
+
+        try {
+            Canvas canvas = new Canvas(bitmap);
+            canvas.scale(SCALE, SCALE);
+            webView.draw(canvas);
+            write(bitmap, target);
+        } catch (Exception e) {
+            Log.e(TAG, "Error capturing snapshot: " + e.getMessage());
+            bitmap.recycle();
+        }
+    }
+
+    public void destroy() {
+        mainHandler.removeCallbacks(revealTimeout);
+        if (placeholder != null) {
+            placeholder.animate().cancel();
+        }
+    }
+
+    private void reveal() {
+        if (revealed) {
+            return;
+        }
+        revealed = true;
+        mainHandler.removeCallbacks(revealTimeout);
+        final ImageView view = placeholder;
+        if (view == null) {
+            return;
+        }
+        view.animate()
+            .alpha(0f)
+            .setDuration(FADE_DURATION_MS)
+            .withEndAction(new Runnable() {
+                @Override
+                public void run() {
+                    ViewGroup parent = (ViewGroup) view.getParent();
+                    if (parent != null) {
+                        parent.removeView(view);
+                    }
+                    view.setImageDrawable(null);
+                    placeholder = null;
+                }
+            });
+    }
+
+    private Bitmap load() {
+        File file = getFile();
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            // Half the memory of ARGB_8888 and fast to decode; banding doesn't matter here
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading snapshot: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void write(final Bitmap bitmap, final File target) {
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                File temp = new File(target.getPath() + ".tmp");
+                FileOutputStream out = null;
+                try {
+                    out = new FileOutputStream(temp);
+                    bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+                    out.close();
+                    out = null;
+                    // Rename so a crash mid-write never leaves a torn snapshot behind
+                    if (!temp.renameTo(target)) {
+                        Log.w(TAG, "Could not replace snapshot");
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Error writing snapshot: " + e.getMessage());
+                } finally {
+                    if (out != null) {
+                        try {
+                            out.close();
+                        } catch (IOException ignored) {
+                        }
+                    }
+                    bitmap.recycle();
+                }
+            }
+        });
+    }
+
+    /**
+     * One snapshot per orientation so a rotated start never shows a stretched screen
+     */
+    private File getFile() {
+        boolean landscape = activity.getResources().getConfiguration().orientation
+            == Configuration.ORIENTATION_LANDSCAPE;
+        return new File(activity.getFilesDir(), landscape ? "home_snapshot_land.jpg" : "home_snapshot.jpg");
+    }
+}
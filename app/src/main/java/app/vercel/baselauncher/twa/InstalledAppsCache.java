@@ -0,0 +1,94 @@
+/*
+ * BasePhone Installed Apps Cache
+ * Encoded launcher app list, rebuilt only when packages or the locale change
+ */
+package app.vercel.baselauncher.twa;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.util.Log;
+
+public class InstalledAppsCache {
+    private static final String TAG = "InstalledAppsCache";
+
+    private static InstalledAppsCache instance;
+
+    private final Context context;
+    private volatile String cachedJson;
+    private boolean receiverRegistered = false;
+
+    private final BroadcastReceiver packageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate();
+        }
+    };
+
+    public static synchronized InstalledAppsCache get(Context context) {
+        if (instance == null) {
+            instance = new InstalledAppsCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private InstalledAppsCache(Context context) {
+        this.context = context;
+        // Labels and their order are both locale-specific
+        LocaleCollation.get(context).addListener(new Runnable() {
+            @Override
+            public void run() {
+                invalidate();
+            }
+        });
+    }
+
+    /**
+     * Get the launcher app list as JSON, querying PackageManager only after a package change
+     */
+    public String getJson() {
+        String json = cachedJson;
+        if (json != null) {
+            return json;
+        }
+        synchronized (this) {
+            if (cachedJson != null) {
+                return cachedJson;
+            }
+            registerReceiver();
+            BridgeJsonWriter out = BridgeJsonWriter.obtain();
+            try {
+                BasePhoneBridge.writeInstalledApps(context.getPackageManager(),
+                    LocaleCollation.get(context).newSorter(), out);
+                cachedJson = out.finish();
+            } catch (RuntimeException e) {
+                out.reset();
+                throw e;
+            }
+            return cachedJson;
+        }
+    }
+
+    public void invalidate() {
+        cachedJson = null;
+    }
+
+    private void registerReceiver() {
+        if (receiverRegistered) {
+            return;
+        }
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+        try {
+            context.registerReceiver(packageReceiver, filter);
+            receiverRegistered = true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error registering package receiver: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * BasePhone Jank Monitor
+ * Frame durations per interaction window, tagged with the bridge calls that overlapped them
+ */
+package app.vercel.baselauncher.twa;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.FrameMetrics;
+import android.view.MotionEvent;
+import android.view.Window;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An interaction window opens on touch down (or when the page calls beginInteraction) and
+ * closes a short while after the finger lifts, so flings are included. Every frame rendered
+ * inside a window counts towards that interaction; frames over the display's deadline are
+ * janky. A window that overlapped a bridge call is tagged with the call names, since a slow
+ * JavascriptInterface call blocks the page's main thread.
+ *
+ * FrameMetrics is used on API 24+, Choreographer frame deltas below that.
+ */
+public class JankMonitor {
+    private static final String TAG = "JankMonitor";
+
+    private static final String TOUCH_INTERACTION = "touch";
+    // Keep a window open after the finger lifts so fling frames are counted
+    private static final long SETTLE_MS = 500;
+    // Recent bridge calls kept for overlap checks
+    private static final int MAX_RECENT_CALLS = 64;
+    // Frame duration histogram in 1 ms buckets; the last bucket collects everything slower
+    private static final int HISTOGRAM_BUCKETS = 101;
+
+    private final Activity activity;
+    private final Handler mainHandler;
+    private final long frameDeadlineNanos;
+    private HandlerThread metricsThread;
+    private Object frameMetricsListener;
+
+    // Guarded by this; frames arrive on the metrics thread, touches on the main thread
+    private final Map<String, InteractionStats> stats = new LinkedHashMap<>();
+    private final int[] allFrames = new int[HISTOGRAM_BUCKETS];
+    private ActiveWindow current;
+    private final ArrayDeque<BridgeCall> recentCalls = new ArrayDeque<>();
+    private long lastVsyncNanos = 0;
+
+    private final Runnable closeWindow = new Runnable() {
+        @Override
+        public void run() {
+            endInteraction(null);
+        }
+    };
+
+    private final Choreographer.FrameCallback choreographerCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            boolean open;
+            synchronized (JankMonitor.this) {
+                if (lastVsyncNanos != 0) {
+                    recordFrame(frameTimeNanos - lastVsyncNanos);
+                }
+                lastVsyncNanos = frameTimeNanos;
+                open = current != null;
+            }
+            if (open) {
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+    };
+
+    private static class ActiveWindow {
+        final String name;
+        final long startMs;
+        int frames;
+        int jankyFrames;
+
+        ActiveWindow(String name, long startMs) {
+            this.name = name;
+            this.startMs = startMs;
+        }
+    }
+
+    private static class BridgeCall {
+        final String name;
+        final long startMs;
+        final long endMs;
+
+        BridgeCall(String name, long startMs, long endMs) {
+            this.name = name;
+            this.startMs = startMs;
+            this.endMs = endMs;
+        }
+    }
+
+    private static class InteractionStats {
+        int windows;
+        int jankyWindows;
+        long frames;
+        long jankyFrames;
+        int bridgeWindows;
+        long bridgeJankyFrames;
+        long worstFrameNanos;
+        final int[] histogram = new int[HISTOGRAM_BUCKETS];
+        final Set<String> bridgeCalls = new LinkedHashSet<>();
+    }
+
+    public JankMonitor(Activity activity) {
+        this.activity = activity;
+        this.mainHandler = new Handler(activity.getMainLooper());
+        Display display = activity.getWindowManager().getDefaultDisplay();
+        float refreshRate = display != null ? display.getRefreshRate() : 60f;
+        if (refreshRate < 1f) {
+            refreshRate = 60f;
+        }
+        this.frameDeadlineNanos = (long) (1_000_000_000L / refreshRate);
+    }
+
+    /**
+     * Start listening for frames. Call from onResume.
+     */
+    public void start() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N || frameMetricsListener != null) {
+            return;
+        }
+        metricsThread = new HandlerThread(TAG);
+        metricsThread.start();
+        Window.OnFrameMetricsAvailableListener listener =
+            new Window.OnFrameMetricsAvailableListener() {
+                @Override
+                public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics,
+                                                    int dropCountSinceLastInvocation) {
+                    long duration = frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION);
+                    synchronized (JankMonitor.this) {
+                        recordFrame(duration);
+                    }
+                }
+            };
+        activity.getWindow().addOnFrameMetricsAvailableListener(listener, new Handler(metricsThread.getLooper()));
+        frameMetricsListener = listener;
+    }
+
+    /**
+     * Stop listening for frames and close any open window. Call from onPause.
+     */
+    public void stop() {
+        endInteraction(null);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && frameMetricsListener != null) {
+            try {
+                activity.getWindow().removeOnFrameMetricsAvailableListener(
+                    (Window.OnFrameMetricsAvailableListener) frameMetricsListener);
+            } catch (IllegalArgumentException e) {
+                // Already removed with the window
+            }
+            frameMetricsListener = null;
+        }
+        if (metricsThread != null) {
+            metricsThread.quitSafely();
+            metricsThread = null;
+        }
+    }
+
+    /**
+     * Feed every touch event from Activity.dispatchTouchEvent
+     */
+    public void onTouchEvent(MotionEvent event) {
+        int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN) {
+            mainHandler.removeCallbacks(closeWindow);
+            synchronized (this) {
+                if (current != null && !TOUCH_INTERACTION.equals(current.name)) {
+                    // A page-named interaction is already open; let it own these frames
+                    return;
+                }
+            }
+            beginInteraction(TOUCH_INTERACTION);
+        } else if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            synchronized (this) {
+                if (current == null || !TOUCH_INTERACTION.equals(current.name)) {
+                    return;
+                }
+            }
+            mainHandler.postDelayed(closeWindow, SETTLE_MS);
+        }
+    }
+
+    /**
+     * Open a named interaction window, closing any window that is still open
+     */
+    public void beginInteraction(String name) {
+        boolean startChoreographer;
+        synchronized (this) {
+            closeCurrent();
+            current = new ActiveWindow(name != null ? name : TOUCH_INTERACTION, SystemClock.uptimeMillis());
+            startChoreographer = Build.VERSION.SDK_INT < Build.VERSION_CODES.N;
+        }
+        if (startChoreographer) {
+            runOnMain(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (JankMonitor.this) {
+                        lastVsyncNanos = 0;
+                    }
+                    Choreographer.getInstance().postFrameCallback(choreographerCallback);
+                }
+            });
+        }
+    }
+
+    /**
+     * Close the open window. A non-null name only closes a window with that name.
+     */
+    public void endInteraction(String name) {
+        synchronized (this) {
+            if (current == null || (name != null && !name.equals(current.name))) {
+                return;
+            }
+            closeCurrent();
+        }
+    }
+
+    /**
+     * Record a finished bridge call. Called from the JavaBridge thread.
+     */
+    public void recordBridgeCall(String name, long startMs, long endMs) {
+        synchronized (this) {
+            recentCalls.addLast(new BridgeCall(name, startMs, endMs));
+            while (recentCalls.size() > MAX_RECENT_CALLS) {
+                recentCalls.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * Aggregates per interaction as JSON for the page
+     */
+    public synchronized String getStatsJson() {
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        try {
+            out.beginObject()
+                .name("frameDeadlineMs").value(frameDeadlineNanos / 1e6)
+                .name("source").value(Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? "frameMetrics" : "choreographer")
+                .name("allFrames").beginObject();
+            writePercentiles(allFrames, out);
+            out.endObject().name("interactions").beginObject();
+            for (Map.Entry<String, InteractionStats> entry : stats.entrySet()) {
+                InteractionStats s = entry.getValue();
+                out.name(entry.getKey()).beginObject()
+                    .name("windows").value(s.windows)
+                    .name("jankyWindows").value(s.jankyWindows)
+                    .name("frames").value(s.frames)
+                    .name("jankyFrames").value(s.jankyFrames)
+                    .name("worstFrameMs").value(s.worstFrameNanos / 1e6)
+                    .name("bridgeWindows").value(s.bridgeWindows)
+                    .name("bridgeJankyFrames").value(s.bridgeJankyFrames)
+                    .name("bridgeCalls").beginArray();
+                for (String call : s.bridgeCalls) {
+                    out.value(call);
+                }
+                out.endArray();
+                writePercentiles(s.histogram, out);
+                out.endObject();
+            }
+            out.endObject().endObject();
+            return out.finish();
+        } catch (RuntimeException e) {
+            out.reset();
+            throw e;
+        }
+    }
+
+    public synchronized void reset() {
+        stats.clear();
+        for (int i = 0; i < allFrames.length; i++) {
+            allFrames[i] = 0;
+        }
+    }
+
+    /**
+     * Human-readable aggregates for Activity.dump, i.e. adb shell dumpsys activity
+     */
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("JankMonitor: deadline " + (frameDeadlineNanos / 1e6) + "ms, "
+            + "p50/p90/p99 " + formatPercentiles(allFrames));
+        for (Map.Entry<String, InteractionStats> entry : stats.entrySet()) {
+            InteractionStats s = entry.getValue();
+            writer.print(prefix);
+            writer.println("  " + entry.getKey()
+                + ": windows=" + s.windows + " (janky " + s.jankyWindows + ")"
+                + " frames=" + s.frames + " (janky " + s.jankyFrames + ")"
+                + " worst=" + (s.worstFrameNanos / 1e6) + "ms"
+                + " p50/p90/p99 " + formatPercentiles(s.histogram)
+                + " bridgeWindows=" + s.bridgeWindows + " (janky frames " + s.bridgeJankyFrames + ")"
+                + (s.bridgeCalls.isEmpty() ? "" : " calls=" + s.bridgeCalls));
+        }
+    }
+
+    // Caller holds the lock
+    private void recordFrame(long durationNanos) {
+        allFrames[bucket(durationNanos)]++;
+        if (current == null) {
+            return;
+        }
+        current.frames++;
+        boolean janky = durationNanos > frameDeadlineNanos;
+        if (janky) {
+            current.jankyFrames++;
+        }
+        InteractionStats s = statsFor(current.name);
+        s.histogram[bucket(durationNanos)]++;
+        if (durationNanos > s.worstFrameNanos) {
+            s.worstFrameNanos = durationNanos;
+        }
+    }
+
+    // Caller holds the lock
+    private void closeCurrent() {
+        ActiveWindow window = current;
+        if (window == null) {
+            return;
+        }
+        current = null;
+        mainHandler.removeCallbacks(closeWindow);
+
+        long endMs = SystemClock.uptimeMillis();
+        List<String> overlapping = new ArrayList<>();
+        Iterator<BridgeCall> it = recentCalls.iterator();
+        while (it.hasNext()) {
+            BridgeCall call = it.next();
+            if (call.endMs < window.startMs) {
+                // Older than any window still to come
+                it.remove();
+            } else if (call.startMs <= endMs) {
+                overlapping.add(call.name);
+            }
+        }
+
+        InteractionStats s = statsFor(window.name);
+        s.windows++;
+        s.frames += window.frames;
+        s.jankyFrames += window.jankyFrames;
+        if (window.jankyFrames > 0) {
+            s.jankyWindows++;
+        }
+        if (!overlapping.isEmpty()) {
+            s.bridgeWindows++;
+            s.bridgeJankyFrames += window.jankyFrames;
+            s.bridgeCalls.addAll(overlapping);
+        }
+    }
+
+    private InteractionStats statsFor(String name) {
+        InteractionStats s = stats.get(name);
+        if (s == null) {
+            s = new InteractionStats();
+            stats.put(name, s);
+        }
+        return s;
+    }
+
+    private static int bucket(long durationNanos) {
+        return (int) Math.min(HISTOGRAM_BUCKETS - 1, Math.max(0, durationNanos / 1_000_000L));
+    }
+
+    private static void writePercentiles(int[] histogram, BridgeJsonWriter out) {
+        out.name("p50Ms").value(percentile(histogram, 0.50))
+            .name("p90Ms").value(percentile(histogram, 0.90))
+            .name("p99Ms").value(percentile(histogram, 0.99));
+    }
+
+    private static String formatPercentiles(int[] histogram) {
+        return percentile(histogram, 0.50) + "/" + percentile(histogram, 0.90) + "/"
+            + percentile(histogram, 0.99) + "ms";
+    }
+
+    /**
+     * Upper bound of the bucket holding the given fraction of frames; 0 with no frames
+     */
+    private static int percentile(int[] histogram, double fraction) {
+        long total = 0;
+        for (int count : histogram) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= threshold) {
+                return i + 1;
+            }
+        }
+        return histogram.length;
+    }
+
+    private void runOnMain(Runnable runnable) {
+        if (Looper.myLooper() == activity.getMainLooper()) {
+            runnable.run();
+        } else {
+            mainHandler.post(runnable);
+        }
+    }
+}
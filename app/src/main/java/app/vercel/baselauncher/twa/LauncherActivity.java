@@ -20,6 +20,7 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 
+import androidx.browser.customtabs.CustomTabsCallback;
 
 
 public class LauncherActivity
@@ -30,6 +31,11 @@ public class LauncherActivity
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        // Application only binds after the first frame, so on a cold start this call binds
+        // first. The TWA launch opens its own connection and session; it gains the warmup,
+        // which starts the browser process while the splash shows, and our handle on its
+        // session carries the page's postMessage channel.
+        CustomTabsSessionManager.get(this).bind();
         super.onCreate(savedInstanceState);
         // Setting an orientation crashes the app due to the transparent background on Android 8.0
         // Oreo and below. We only set the orientation on Oreo and above. This only affects the
@@ -42,12 +48,19 @@ public class LauncherActivity
         }
     }
 
+    @Override
+    protected CustomTabsCallback getCustomTabsCallback() {
+        // Whichever of our two handles registers last gets the session's events
+        return TwaMessageChannel.get(this).wrap(super.getCustomTabsCallback());
+    }
+
     @Override
     protected Uri getLaunchingUrl() {
         // Get the original launch Url.
         Uri uri = super.getLaunchingUrl();
 
-        
+        // Deep links may differ from the default URL warmed at bind time
+        CustomTabsSessionManager.get(this).mayLaunchUrl(uri.toString());
 
         return uri;
     }
@@ -0,0 +1,658 @@
+/*
+ * BasePhone Launcher Widget Host
+ * Hosts Android app widgets off-screen and streams their frames to the page
+ */
+package app.vercel.baselauncher.twa;
+
+import android.app.Activity;
+import android.appwidget.AppWidgetHost;
+import android.appwidget.AppWidgetHostView;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProviderInfo;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewParent;
+import android.webkit.WebResourceResponse;
+import android.widget.FrameLayout;
+import android.widget.RemoteViews;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Each widget's AppWidgetHostView lives in a zero-sized container attached to the window,
+ * so RemoteViews, adapters and click handlers behave as on any launcher, but nothing is
+ * shown natively. Invalidations mark a dirty region; at most fps times a second the region
+ * is redrawn into the widget's bitmap, which is encoded off the main thread and served to
+ * the page from shouldInterceptRequest at {@link #FRAME_PATH}&lt;id&gt;.png?v=&lt;version&gt;.
+ * Nothing renders while the launcher is hidden; updates pile up as dirty regions instead.
+ */
+public class LauncherWidgetHost {
+    private static final String TAG = "LauncherWidgetHost";
+
+    // Stable across launches; the system keeps widget ids per host id
+    private static final int HOST_ID = 1024;
+    static final int REQUEST_BIND_WIDGET = 2001;
+    static final int REQUEST_CONFIGURE_WIDGET = 2002;
+
+    static final String FRAME_PATH = "/__basephone/widgets/";
+    private static final String PREFS_NAME = "basephone_widgets";
+    // Most widgets are clocks, lists and weather; a few frames a second looks live
+    private static final int DEFAULT_FPS = 4;
+    private static final int MAX_FPS = 30;
+
+    /**
+     * Receives frame and binding results on the main thread
+     */
+    public interface Listener {
+        void onWidgetFrame(int appWidgetId, int version);
+        void onWidgetAdded(int appWidgetId, String provider, boolean success);
+    }
+
+    private static class Frame {
+        final byte[] png;
+        final int version;
+
+        Frame(byte[] png, int version) {
+            this.png = png;
+            this.version = version;
+        }
+    }
+
+    private class Slot {
+        final int id;
+        final HostView view;
+        int widthDp;
+        int heightDp;
+        int fps;
+
+        Bitmap bitmap;
+        Canvas canvas;
+        final Rect dirty = new Rect();
+        long lastRenderMs;
+        boolean renderScheduled;
+
+        // Second buffer handed to the encoder, so rendering never waits on it
+        Bitmap encodeBitmap;
+        Canvas encodeCanvas;
+        boolean encoding;
+        boolean encodePending;
+        int version;
+
+        final Runnable renderRunnable = new Runnable() {
+            @Override
+            public void run() {
+                renderScheduled = false;
+                render(Slot.this);
+            }
+        };
+
+        Slot(int id, HostView view, int widthDp, int heightDp, int fps) {
+            this.id = id;
+            this.view = view;
+            this.widthDp = widthDp;
+            this.heightDp = heightDp;
+            this.fps = fps;
+        }
+    }
+
+    /**
+     * Reports updates and invalidations instead of drawing itself on screen
+     */
+    private class HostView extends AppWidgetHostView {
+        private final Rect descendantRect = new Rect();
+
+        HostView(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void updateAppWidget(RemoteViews remoteViews) {
+            super.updateAppWidget(remoteViews);
+            markDirty(getAppWidgetId(), null);
+        }
+
+        // API 26+ with hardware acceleration: exact region of the invalidated view
+        @Override
+        public void onDescendantInvalidated(View child, View target) {
+            super.onDescendantInvalidated(child, target);
+            descendantRect.set(0, 0, target.getWidth(), target.getHeight());
+            offsetDescendantRectToMyCoords(target, descendantRect);
+            markDirty(getAppWidgetId(), descendantRect);
+        }
+
+        // Older releases; the rect isn't in our coordinates yet, so redraw everything
+        @Override
+        public ViewParent invalidateChildInParent(int[] location, Rect dirty) {
+            markDirty(getAppWidgetId(), null);
+            return super.invalidateChildInParent(location, dirty);
+        }
+    }
+
+    private class Host extends AppWidgetHost {
+        Host(Context context) {
+            super(context, HOST_ID);
+        }
+
+        @Override
+        protected AppWidgetHostView onCreateView(Context context, int appWidgetId, AppWidgetProviderInfo appWidget) {
+            return new HostView(context);
+        }
+    }
+
+    private final Activity activity;
+    private final AppWidgetManager appWidgetManager;
+    private final Host host;
+    private final SharedPreferences prefs;
+    private final FrameLayout surface;
+    private final float density;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService encoder = Executors.newSingleThreadExecutor();
+    private final Paint copyPaint = new Paint();
+
+    // Slots are only touched on the main thread; frames are read from the WebView's IO thread
+    private final SparseArray<Slot> slots = new SparseArray<>();
+    private final Map<Integer, Frame> frames = new ConcurrentHashMap<>();
+    private boolean visible = false;
+    private Listener listener;
+
+    // Widget waiting on the bind or configure activity
+    private int pendingId = AppWidgetManager.INVALID_APPWIDGET_ID;
+    private String pendingProvider;
+    private int pendingWidthDp;
+    private int pendingHeightDp;
+
+    public LauncherWidgetHost(Activity activity) {
+        this.activity = activity;
+        this.appWidgetManager = AppWidgetManager.getInstance(activity);
+        this.host = new Host(activity.getApplicationContext());
+        this.prefs = activity.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.density = activity.getResources().getDisplayMetrics().density;
+        copyPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+
+        // Zero-sized, so hosted views are attached and laid out but never shown or touched
+        surface = new FrameLayout(activity);
+        activity.addContentView(surface, new FrameLayout.LayoutParams(0, 0));
+
+        restore();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Render while the launcher is visible; while hidden, stop listening for updates.
+     * The system redelivers missed updates when listening resumes.
+     */
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+        try {
+            if (visible) {
+                host.startListening();
+            } else {
+                host.stopListening();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error toggling widget updates: " + e.getMessage());
+        }
+        for (int i = 0; i < slots.size(); i++) {
+            Slot slot = slots.valueAt(i);
+            if (visible) {
+                scheduleRender(slot);
+            } else {
+                mainHandler.removeCallbacks(slot.renderRunnable);
+                slot.renderScheduled = false;
+            }
+        }
+    }
+
+    /**
+     * Bind a provider and, if it has one, run its configure activity. The outcome arrives
+     * through {@link Listener#onWidgetAdded}. Call on the main thread.
+     */
+    public void addWidget(String provider, int widthDp, int heightDp) {
+        ComponentName component = provider != null ? ComponentName.unflattenFromString(provider) : null;
+        if (component == null || pendingId != AppWidgetManager.INVALID_APPWIDGET_ID) {
+            notifyAdded(AppWidgetManager.INVALID_APPWIDGET_ID, provider, false);
+            return;
+        }
+        pendingId = host.allocateAppWidgetId();
+        pendingProvider = provider;
+        pendingWidthDp = widthDp;
+        pendingHeightDp = heightDp;
+        try {
+            if (appWidgetManager.bindAppWidgetIdIfAllowed(pendingId, component)) {
+                configurePending();
+                return;
+            }
+            // Launchers aren't allowed to bind until the user says so, once per provider
+            Intent intent = new Intent(AppWidgetManager.ACTION_APPWIDGET_BIND);
+            intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, pendingId);
+            intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_PROVIDER, component);
+            activity.startActivityForResult(intent, REQUEST_BIND_WIDGET);
+        } catch (Exception e) {
+            Log.e(TAG, "Error binding widget: " + e.getMessage());
+            finishPending(false);
+        }
+    }
+
+    /**
+     * Handle the bind and configure results; returns false for other request codes
+     */
+    public boolean onActivityResult(int requestCode, int resultCode) {
+        if (requestCode != REQUEST_BIND_WIDGET && requestCode != REQUEST_CONFIGURE_WIDGET) {
+            return false;
+        }
+        if (pendingId == AppWidgetManager.INVALID_APPWIDGET_ID) {
+            return true;
+        }
+        if (resultCode != Activity.RESULT_OK) {
+            finishPending(false);
+        } else if (requestCode == REQUEST_BIND_WIDGET) {
+            configurePending();
+        } else {
+            finishPending(true);
+        }
+        return true;
+    }
+
+    public void removeWidget(int appWidgetId) {
+        Slot slot = slots.get(appWidgetId);
+        if (slot != null) {
+            mainHandler.removeCallbacks(slot.renderRunnable);
+            surface.removeView(slot.view);
+            slots.remove(appWidgetId);
+        }
+        frames.remove(appWidgetId);
+        prefs.edit().remove(String.valueOf(appWidgetId)).apply();
+        host.deleteAppWidgetId(appWidgetId);
+    }
+
+    public void resizeWidget(int appWidgetId, int widthDp, int heightDp) {
+        Slot slot = slots.get(appWidgetId);
+        if (slot == null || widthDp <= 0 || heightDp <= 0) {
+            return;
+        }
+        slot.widthDp = widthDp;
+        slot.heightDp = heightDp;
+        applySize(slot);
+        save(slot);
+        markDirty(appWidgetId, null);
+    }
+
+    public void setFrameRate(int appWidgetId, int fps) {
+        Slot slot = slots.get(appWidgetId);
+        if (slot == null) {
+            return;
+        }
+        slot.fps = Math.max(1, Math.min(MAX_FPS, fps));
+        save(slot);
+    }
+
+    /**
+     * Deliver a tap at a point in dp, so click PendingIntents fire as they would on screen
+     */
+    public void tap(int appWidgetId, float xDp, float yDp) {
+        Slot slot = slots.get(appWidgetId);
+        if (slot == null) {
+            return;
+        }
+        float x = xDp * density;
+        float y = yDp * density;
+        long now = SystemClock.uptimeMillis();
+        MotionEvent down = MotionEvent.obtain(now, now, MotionEvent.ACTION_DOWN, x, y, 0);
+        MotionEvent up = MotionEvent.obtain(now, now + 50, MotionEvent.ACTION_UP, x, y, 0);
+        slot.view.dispatchTouchEvent(down);
+        slot.view.dispatchTouchEvent(up);
+        down.recycle();
+        up.recycle();
+    }
+
+    /**
+     * Serve a widget frame for an intercepted request, or null if the URL isn't one.
+     * Called on the WebView's IO thread.
+     */
+    public WebResourceResponse interceptFrame(Uri uri) {
+        String path = uri.getPath();
+        if (path == null || !path.startsWith(FRAME_PATH) || !path.endsWith(".png")) {
+            return null;
+        }
+        Frame frame = null;
+        try {
+            int id = Integer.parseInt(path.substring(FRAME_PATH.length(), path.length() - 4));
+            frame = frames.get(id);
+        } catch (NumberFormatException e) {
+            // Falls through to a 404
+        }
+        if (frame == null) {
+            return new WebResourceResponse("image/png", null, 404, "Not Found",
+                Collections.<String, String>emptyMap(), new ByteArrayInputStream(new byte[0]));
+        }
+        // URLs carry the version, so a cached frame is never stale
+        return new WebResourceResponse("image/png", null, 200, "OK",
+            Collections.singletonMap("Cache-Control", "max-age=300"),
+            new ByteArrayInputStream(frame.png));
+    }
+
+    /**
+     * Providers the user can add, as JSON
+     */
+    public String getProvidersJson() {
+        PackageManager pm = activity.getPackageManager();
+        List<AppWidgetProviderInfo> providers = appWidgetManager.getInstalledProviders();
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        try {
+            out.beginArray();
+            for (AppWidgetProviderInfo info : providers) {
+                out.beginObject()
+                    .name("provider").value(info.provider.flattenToString())
+                    .name("packageName").value(info.provider.getPackageName())
+                    .name("label").value(info.loadLabel(pm))
+                    .name("minWidth").value(Math.round(info.minWidth / density))
+                    .name("minHeight").value(Math.round(info.minHeight / density))
+                    .name("resizeMode").value(info.resizeMode)
+                    .endObject();
+            }
+            out.endArray();
+            return out.finish();
+        } catch (RuntimeException e) {
+            out.reset();
+            throw e;
+        }
+    }
+
+    /**
+     * Hosted widgets with their size, frame rate and latest frame version, as JSON
+     */
+    public String getWidgetsJson() {
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        try {
+            out.beginArray();
+            for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+                int[] config = parseConfig(String.valueOf(entry.getValue()));
+                int id;
+                try {
+                    id = Integer.parseInt(entry.getKey());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                AppWidgetProviderInfo info = appWidgetManager.getAppWidgetInfo(id);
+                if (info == null || config == null) {
+                    continue;
+                }
+                Frame frame = frames.get(id);
+                out.beginObject()
+                    .name("id").value(id)
+                    .name("provider").value(info.provider.flattenToString())
+                    .name("widthDp").value(config[0])
+                    .name("heightDp").value(config[1])
+                    .name("fps").value(config[2])
+                    .name("version").value(frame != null ? frame.version : 0)
+                    .name("frameUrl").value(FRAME_PATH + id + ".png")
+                    .endObject();
+            }
+            out.endArray();
+            return out.finish();
+        } catch (RuntimeException e) {
+            out.reset();
+            throw e;
+        }
+    }
+
+    public void destroy() {
+        mainHandler.removeCallbacksAndMessages(null);
+        try {
+            host.stopListening();
+        } catch (Exception e) {
+            Log.e(TAG, "Error stopping widget host: " + e.getMessage());
+        }
+        encoder.shutdown();
+    }
+
+    private void configurePending() {
+        AppWidgetProviderInfo info = appWidgetManager.getAppWidgetInfo(pendingId);
+        if (info == null) {
+            finishPending(false);
+            return;
+        }
+        if (info.configure == null) {
+            finishPending(true);
+            return;
+        }
+        try {
+            host.startAppWidgetConfigureActivityForResult(activity, pendingId, 0,
+                REQUEST_CONFIGURE_WIDGET, null);
+        } catch (Exception e) {
+            Log.e(TAG, "Error starting widget configuration: " + e.getMessage());
+            finishPending(false);
+        }
+    }
+
+    private void finishPending(boolean success) {
+        int id = pendingId;
+        String provider = pendingProvider;
+        pendingId = AppWidgetManager.INVALID_APPWIDGET_ID;
+        pendingProvider = null;
+        if (success) {
+            Slot slot = createSlot(id, pendingWidthDp, pendingHeightDp, DEFAULT_FPS);
+            if (slot != null) {
+                save(slot);
+            } else {
+                success = false;
+            }
+        }
+        if (!success) {
+            host.deleteAppWidgetId(id);
+        }
+        notifyAdded(id, provider, success);
+    }
+
+    private void notifyAdded(int id, String provider, boolean success) {
+        if (listener != null) {
+            listener.onWidgetAdded(id, provider, success);
+        }
+    }
+
+    private void restore() {
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            int[] config = parseConfig(String.valueOf(entry.getValue()));
+            Slot slot = null;
+            try {
+                if (config != null) {
+                    slot = createSlot(Integer.parseInt(entry.getKey()), config[0], config[1], config[2]);
+                }
+            } catch (NumberFormatException e) {
+                // Dropped below
+            }
+            if (slot == null) {
+                // Provider uninstalled or the id no longer exists
+                prefs.edit().remove(entry.getKey()).apply();
+            }
+        }
+    }
+
+    private Slot createSlot(int id, int widthDp, int heightDp, int fps) {
+        AppWidgetProviderInfo info = appWidgetManager.getAppWidgetInfo(id);
+        if (info == null) {
+            return null;
+        }
+        HostView view = (HostView) host.createView(activity, id, info);
+        Slot slot = new Slot(id, view, widthDp, heightDp, fps);
+        slots.put(id, slot);
+        surface.addView(view, new FrameLayout.LayoutParams(0, 0));
+        applySize(slot);
+        markDirty(id, null);
+        return slot;
+    }
+
+    private void applySize(Slot slot) {
+        int width = Math.round(slot.widthDp * density);
+        int height = Math.round(slot.heightDp * density);
+        FrameLayout.LayoutParams params = (FrameLayout.LayoutParams) slot.view.getLayoutParams();
+        params.width = width;
+        params.height = height;
+        slot.view.setLayoutParams(params);
+        slot.view.updateAppWidgetSize(null, slot.widthDp, slot.heightDp, slot.widthDp, slot.heightDp);
+        if (slot.bitmap == null || slot.bitmap.getWidth() != width || slot.bitmap.getHeight() != height) {
+            slot.bitmap = Bitmap.createBitmap(Math.max(1, width), Math.max(1, height), Bitmap.Config.ARGB_8888);
+            slot.canvas = new Canvas(slot.bitmap);
+            // The encoder may still hold the old one; a new pair is made on the next encode
+            slot.encodeBitmap = null;
+            slot.encodeCanvas = null;
+        }
+    }
+
+    private void save(Slot slot) {
+        prefs.edit()
+            .putString(String.valueOf(slot.id), slot.widthDp + "," + slot.heightDp + "," + slot.fps)
+            .apply();
+    }
+
+    private static int[] parseConfig(String value) {
+        String[] parts = value.split(",");
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            return new int[]{
+                Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2])
+            };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void markDirty(int appWidgetId, Rect region) {
+        Slot slot = slots.get(appWidgetId);
+        if (slot == null || slot.bitmap == null) {
+            // Views report their first update before the slot exists; createSlot marks it
+            return;
+        }
+        if (region == null) {
+            slot.dirty.set(0, 0, slot.bitmap.getWidth(), slot.bitmap.getHeight());
+        } else {
+            slot.dirty.union(region);
+        }
+        scheduleRender(slot);
+    }
+
+    private void scheduleRender(Slot slot) {
+        if (!visible || slot.renderScheduled || slot.dirty.isEmpty()) {
+            return;
+        }
+        long due = slot.lastRenderMs + 1000 / slot.fps;
+        slot.renderScheduled = true;
+        mainHandler.postAtTime(slot.renderRunnable, Math.max(due, SystemClock.uptimeMillis()));
+    }
+
+    private void render(Slot slot) {
+        if (!visible || slot.dirty.isEmpty() || slots.get(slot.id) != slot) {
+            return;
+        }
+        HostView view = slot.view;
+        int width = slot.bitmap.getWidth();
+        int height = slot.bitmap.getHeight();
+        if (view.isLayoutRequested() || view.getWidth() != width || view.getHeight() != height) {
+            view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+            view.layout(0, 0, width, height);
+        }
+
+        if (!slot.dirty.intersect(0, 0, width, height)) {
+            slot.dirty.setEmpty();
+            return;
+        }
+        // Only the dirty region is cleared and redrawn
+        Canvas canvas = slot.canvas;
+        canvas.save();
+        canvas.clipRect(slot.dirty);
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        try {
+            view.draw(canvas);
+        } catch (Exception e) {
+            // Some RemoteViews only draw with hardware acceleration
+            Log.e(TAG, "Error drawing widget " + slot.id + ": " + e.getMessage());
+        }
+        canvas.restore();
+        slot.dirty.setEmpty();
+        slot.lastRenderMs = SystemClock.uptimeMillis();
+        requestEncode(slot);
+    }
+
+    private void requestEncode(final Slot slot) {
+        if (slot.encoding) {
+            // The newest render is encoded as soon as the current one is done
+            slot.encodePending = true;
+            return;
+        }
+        if (slot.encodeBitmap == null) {
+            slot.encodeBitmap = Bitmap.createBitmap(slot.bitmap.getWidth(), slot.bitmap.getHeight(),
+                Bitmap.Config.ARGB_8888);
+            slot.encodeCanvas = new Canvas(slot.encodeBitmap);
+        }
+        slot.encodeCanvas.drawBitmap(slot.bitmap, 0, 0, copyPaint);
+        slot.encoding = true;
+        final Bitmap snapshot = slot.encodeBitmap;
+        try {
+            encoder.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(
+                        snapshot.getWidth() * snapshot.getHeight() / 2);
+                    snapshot.compress(Bitmap.CompressFormat.PNG, 100, out);
+                    final byte[] png = out.toByteArray();
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onEncoded(slot, png);
+                        }
+                    });
+                }
+            });
+        } catch (Exception e) {
+            // Executor shut down with the activity
+            slot.encoding = false;
+        }
+    }
+
+    private void onEncoded(Slot slot, byte[] png) {
+        slot.encoding = false;
+        if (slots.get(slot.id) != slot) {
+            return;
+        }
+        slot.version++;
+        frames.put(slot.id, new Frame(png, slot.version));
+        if (listener != null) {
+            listener.onWidgetFrame(slot.id, slot.version);
+        }
+        if (slot.encodePending) {
+            slot.encodePending = false;
+            requestEncode(slot);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * BasePhone Locale Collation
+ * Locale-aware sort keys and section labels for the app and contact indexes
+ */
+package app.vercel.baselauncher.twa;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.icu.text.AlphabeticIndex;
+import android.os.Build;
+import android.util.Log;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Indexes compute one CollationKey per record while they build, sort on the keys (a byte
+ * comparison, not a string comparison) and store the result in order with its section
+ * label, so queries only read. Listeners hear about locale changes and drop their indexes.
+ */
+public class LocaleCollation {
+    private static final String TAG = "LocaleCollation";
+
+    private static final String OTHER_SECTION = "#";
+
+    private static LocaleCollation instance;
+
+    private final Context context;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private boolean receiverRegistered = false;
+
+    private final BroadcastReceiver localeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Log.d(TAG, "Locale changed to " + Locale.getDefault());
+            for (Runnable listener : listeners) {
+                listener.run();
+            }
+        }
+    };
+
+    public static synchronized LocaleCollation get(Context context) {
+        if (instance == null) {
+            instance = new LocaleCollation(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private LocaleCollation(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Run the listener whenever the device locale changes
+     */
+    public synchronized void addListener(Runnable listener) {
+        listeners.add(listener);
+        if (receiverRegistered) {
+            return;
+        }
+        try {
+            context.registerReceiver(localeReceiver, new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
+            receiverRegistered = true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error registering locale receiver: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A sorter for the current locale. Collators aren't thread-safe, so each index build
+     * takes its own.
+     */
+    public Sorter newSorter() {
+        return new Sorter(Locale.getDefault());
+    }
+
+    /**
+     * A record waiting to be sorted
+     */
+    public static class Keyed<T> {
+        public final T value;
+        public final String section;
+        final CollationKey key;
+
+        Keyed(T value, CollationKey key, String section) {
+            this.value = value;
+            this.key = key;
+            this.section = section;
+        }
+    }
+
+    public static class Sorter {
+        private final Locale locale;
+        private final Collator collator;
+        // android.icu.text.AlphabeticIndex.ImmutableIndex on N+, else null
+        private final Object alphabeticIndex;
+
+        private static final Comparator<Keyed<?>> KEY_ORDER = new Comparator<Keyed<?>>() {
+            @Override
+            public int compare(Keyed<?> a, Keyed<?> b) {
+                return a.key.compareTo(b.key);
+            }
+        };
+
+        Sorter(Locale locale) {
+            this.locale = locale;
+            collator = Collator.getInstance(locale);
+            // Accents break ties ("e" before "é") but case doesn't, and "Émile" sorts among the E's
+            collator.setStrength(Collator.SECONDARY);
+            alphabeticIndex = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? buildIndex(locale) : null;
+        }
+
+        /**
+         * Compute the sort key and section for a record
+         */
+        public <T> Keyed<T> key(T value, String name) {
+            String label = name != null ? name.trim() : "";
+            return new Keyed<>(value, collator.getCollationKey(label), section(label));
+        }
+
+        /**
+         * Sort records by their keys; records with equal keys keep their order
+         */
+        public <T> void sort(List<Keyed<T>> records) {
+            Collections.sort(records, KEY_ORDER);
+        }
+
+        /**
+         * Section header for a name: the locale's own buckets where ICU is available
+         * (kana rows, Hangul initials, ...), otherwise the uppercased first letter
+         */
+        String section(String name) {
+            if (name.isEmpty()) {
+                return OTHER_SECTION;
+            }
+            if (alphabeticIndex != null) {
+                return icuSection(name);
+            }
+            // Strip accents so "Á" files under A
+            String base = Normalizer.normalize(name.substring(0, name.offsetByCodePoints(0, 1)),
+                Normalizer.Form.NFD);
+            int first = base.codePointAt(0);
+            if (!Character.isLetter(first)) {
+                return OTHER_SECTION;
+            }
+            return new String(Character.toChars(first)).toUpperCase(locale);
+        }
+
+        private String icuSection(String name) {
+            AlphabeticIndex.ImmutableIndex<?> index = (AlphabeticIndex.ImmutableIndex<?>) alphabeticIndex;
+            AlphabeticIndex.Bucket<?> bucket = index.getBucket(index.getBucketIndex(name));
+            if (bucket.getLabelType() != AlphabeticIndex.Bucket.LabelType.NORMAL) {
+                return OTHER_SECTION;
+            }
+            return bucket.getLabel();
+        }
+
+        private static Object buildIndex(Locale locale) {
+            try {
+                // Latin buckets too, so English names in a non-Latin locale still get letters
+                return new AlphabeticIndex<String>(locale)
+                    .addLabels(Locale.ENGLISH)
+                    .buildImmutableIndex();
+            } catch (Exception e) {
+                Log.e(TAG, "Error building alphabetic index: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Section headers in sorted order, each with its first position and size
+     */
+    static <T> List<Section> sections(List<Keyed<T>> sorted) {
+        List<Section> sections = new ArrayList<>();
+        Section current = null;
+        for (int i = 0; i < sorted.size(); i++) {
+            String label = sorted.get(i).section;
+            if (current == null || !current.label.equals(label)) {
+                current = new Section(label, i);
+                sections.add(current);
+            }
+            current.count++;
+        }
+        return sections;
+    }
+
+    public static class Section {
+        public final String label;
+        public final int offset;
+        public int count;
+
+        Section(String label, int offset) {
+            this.label = label;
+            this.offset = offset;
+        }
+    }
+}
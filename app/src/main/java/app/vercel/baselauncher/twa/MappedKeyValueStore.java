@@ -0,0 +1,315 @@
+/*
+ * BasePhone Mapped Key-Value Store
+ * Launcher state in a memory-mapped append log, outside WebView storage
+ */
+package app.vercel.baselauncher.twa;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Reads come from an in-memory map. Every write, single or batched, appends one record to
+ * the mapped file: [int length][int crc32][ops], each op [byte type][int keyLen][key]
+ * [int valueLen][value]. A write is a memcpy into the page cache, so it survives the
+ * process dying at any point; a record torn mid-write fails its checksum and is discarded
+ * whole on the next open, which makes batches atomic. When the log fills up, the live
+ * entries are rewritten as a single record into a new file that replaces the old one.
+ */
+public class MappedKeyValueStore {
+    private static final String TAG = "MappedKeyValueStore";
+
+    private static final String FILE_NAME = "basephone_kv.log";
+    // "BPKV"
+    private static final int MAGIC = 0x42504B56;
+    private static final int FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int INITIAL_CAPACITY = 256 * 1024;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static MappedKeyValueStore instance;
+
+    private final File file;
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+    private final CRC32 crc = new CRC32();
+
+    // Guarded by this
+    private RandomAccessFile raf;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int writePosition;
+
+    public static synchronized MappedKeyValueStore get(Context context) {
+        if (instance == null) {
+            instance = new MappedKeyValueStore(new File(context.getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    /**
+     * A store over its own file; the app uses {@link #get(Context)}
+     */
+    MappedKeyValueStore(File file) {
+        this.file = file;
+        try {
+            open();
+        } catch (IOException e) {
+            // Reads and writes still work in memory; the next compaction retries the file
+            Log.e(TAG, "Error opening store: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Value for a key, or null. Never touches the file.
+     */
+    public String get(String key) {
+        return key != null ? values.get(key) : null;
+    }
+
+    /**
+     * All entries whose key starts with prefix; an empty prefix returns everything
+     */
+    public Map<String, String> getAll(String prefix) {
+        Map<String, String> result = new HashMap<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (prefix == null || entry.getKey().startsWith(prefix)) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Set a key; a null value removes it
+     */
+    public void put(String key, String value) {
+        apply(Collections.singletonMap(key, value));
+    }
+
+    /**
+     * Apply several changes as one record, so after a crash either all or none are visible.
+     * Null values remove their keys.
+     */
+    public synchronized void apply(Map<String, String> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() != null) {
+                values.put(change.getKey(), change.getValue());
+            } else {
+                values.remove(change.getKey());
+            }
+        }
+        try {
+            byte[] payload = encode(changes);
+            if (buffer == null || writePosition + RECORD_HEADER_BYTES + payload.length > capacity) {
+                // The map already holds this change, so the rewritten file includes it
+                compact();
+                return;
+            }
+            append(payload);
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing store: " + e.getMessage());
+        }
+    }
+
+    private void open() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        boolean fresh = raf.length() < FILE_HEADER_BYTES;
+        if (fresh) {
+            raf.setLength(INITIAL_CAPACITY);
+        }
+        capacity = (int) raf.length();
+        buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        if (fresh || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            if (!fresh) {
+                Log.w(TAG, "Unrecognized store file, starting empty");
+                clearFrom(0);
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            writePosition = FILE_HEADER_BYTES;
+            return;
+        }
+        replay();
+    }
+
+    /**
+     * Apply every intact record in order, stopping at the first empty or torn one
+     */
+    private void replay() {
+        int position = FILE_HEADER_BYTES;
+        int records = 0;
+        while (position + RECORD_HEADER_BYTES <= capacity) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER_BYTES + length > capacity) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.position(position + RECORD_HEADER_BYTES);
+            buffer.get(payload);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(position + 4) || !decode(payload)) {
+                Log.w(TAG, "Discarding torn record at " + position);
+                break;
+            }
+            position += RECORD_HEADER_BYTES + length;
+            records++;
+        }
+        writePosition = position;
+        // Leftovers of a torn record must not be mistaken for a record later
+        if (writePosition + RECORD_HEADER_BYTES <= capacity && buffer.getInt(writePosition) != 0) {
+            clearFrom(writePosition);
+        }
+        Log.d(TAG, "Replayed " + records + " records, " + values.size() + " keys");
+    }
+
+    private boolean decode(byte[] payload) {
+        Map<String, String> changes = new HashMap<>();
+        int position = 0;
+        try {
+            while (position < payload.length) {
+                byte op = payload[position++];
+                int keyLength = readInt(payload, position);
+                position += 4;
+                String key = new String(payload, position, keyLength, UTF_8);
+                position += keyLength;
+                if (op == OP_PUT) {
+                    int valueLength = readInt(payload, position);
+                    position += 4;
+                    changes.put(key, new String(payload, position, valueLength, UTF_8));
+                    position += valueLength;
+                } else if (op == OP_DELETE) {
+                    changes.put(key, null);
+                } else {
+                    return false;
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            return false;
+        }
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() != null) {
+                values.put(change.getKey(), change.getValue());
+            } else {
+                values.remove(change.getKey());
+            }
+        }
+        return true;
+    }
+
+    private static byte[] encode(Map<String, String> changes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            byte[] key = change.getKey().getBytes(UTF_8);
+            out.writeByte(change.getValue() != null ? OP_PUT : OP_DELETE);
+            out.writeInt(key.length);
+            out.write(key);
+            if (change.getValue() != null) {
+                byte[] value = change.getValue().getBytes(UTF_8);
+                out.writeInt(value.length);
+                out.write(value);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private void append(byte[] payload) {
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        // Payload before header, so a record is only ever visible once it is complete
+        buffer.position(writePosition + RECORD_HEADER_BYTES);
+        buffer.put(payload);
+        buffer.putInt(writePosition + 4, (int) crc.getValue());
+        buffer.putInt(writePosition, payload.length);
+        writePosition += RECORD_HEADER_BYTES + payload.length;
+    }
+
+    /**
+     * Rewrite the live entries as one record into a new file, growing it if they would fill
+     * more than half, then swap it in
+     */
+    private void compact() throws IOException {
+        byte[] snapshot = encode(values);
+        int needed = FILE_HEADER_BYTES + RECORD_HEADER_BYTES + snapshot.length;
+        int newCapacity = Math.max(INITIAL_CAPACITY, capacity);
+        while (needed * 2 > newCapacity) {
+            newCapacity *= 2;
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        RandomAccessFile tmpFile = new RandomAccessFile(tmp, "rw");
+        try {
+            tmpFile.setLength(0);
+            tmpFile.setLength(newCapacity);
+            crc.reset();
+            crc.update(snapshot, 0, snapshot.length);
+            tmpFile.writeInt(MAGIC);
+            tmpFile.writeInt(FORMAT_VERSION);
+            tmpFile.writeInt(snapshot.length);
+            tmpFile.writeInt((int) crc.getValue());
+            tmpFile.write(snapshot);
+            // The rename is only safe once the new file is on disk
+            tmpFile.getFD().sync();
+        } finally {
+            tmpFile.close();
+        }
+
+        close();
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Could not replace store file");
+        }
+        raf = new RandomAccessFile(file, "rw");
+        capacity = (int) raf.length();
+        buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        writePosition = needed;
+        Log.d(TAG, "Compacted " + values.size() + " keys into " + capacity + " bytes");
+    }
+
+    private void close() {
+        buffer = null;
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing store: " + e.getMessage());
+            }
+            raf = null;
+        }
+    }
+
+    private void clearFrom(int position) {
+        for (int i = position; i < capacity; i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    private static int readInt(byte[] bytes, int position) {
+        return ((bytes[position] & 0xff) << 24)
+            | ((bytes[position + 1] & 0xff) << 16)
+            | ((bytes[position + 2] & 0xff) << 8)
+            | (bytes[position + 3] & 0xff);
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * BasePhone Native Audio Capture
+ * Microphone PCM for the voice assistant, delivered over a WebMessagePort
+ */
+package app.vercel.baselauncher.twa;
+
+import android.annotation.SuppressLint;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Base64;
+import android.util.Log;
+import android.webkit.WebView;
+
+import androidx.webkit.WebMessageCompat;
+import androidx.webkit.WebMessagePortCompat;
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+
+/**
+ * A capture thread reads fixed-size frames of 16-bit mono PCM from AudioRecord into a ring
+ * of preallocated slots; the main thread drains the ring and posts each frame to the page
+ * as an ArrayBuffer (base64 on WebViews without ArrayBuffer messages). When delivery falls
+ * behind, the oldest frame is dropped rather than letting latency grow, and the counters
+ * say how often that happened.
+ *
+ * The page receives its port in a window message whose data is {@link #PORT_MESSAGE}.
+ * If the microphone fails mid-capture, capture stops and the listener is told on the
+ * main thread.
+ */
+public class NativeAudioCapture {
+    private static final String TAG = "NativeAudioCapture";
+
+    static final String PORT_MESSAGE = "basephone-audio";
+    private static final int DEFAULT_SAMPLE_RATE = 16000;
+    // 20 ms at 16 kHz
+    private static final int DEFAULT_FRAME_SAMPLES = 320;
+    private static final int MIN_FRAME_SAMPLES = 80;
+    private static final int MAX_FRAME_SAMPLES = 4096;
+    // About 0.6 s of 20 ms frames; more than this is latency nobody wants
+    private static final int RING_SLOTS = 32;
+
+    /**
+     * Told on the main thread when capture stops on its own
+     */
+    public interface Listener {
+        void onCaptureError(String reason);
+    }
+
+    private final WebView webView;
+    private final String origin;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private Listener listener;
+
+    // Ring buffer; guarded by ringLock
+    private final Object ringLock = new Object();
+    private byte[][] ring;
+    private int readIndex;
+    private int queued;
+    private boolean drainScheduled;
+
+    // The capture in progress, or null; set and cleared on the main thread
+    private volatile Capture capture;
+    private WebMessagePortCompat nativePort;
+    private boolean arrayBuffers;
+    private int sampleRate;
+    private int frameSamples;
+
+    // Counters; written under ringLock, reset on each start
+    private long framesCaptured;
+    private long framesDelivered;
+    private long framesDropped;
+    private long backpressureDrains;
+    private int maxQueued;
+    private long readErrors;
+
+    private final Runnable drainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * One capture thread and the recorder only it reads from. The recorder is released by
+     * stop() once the thread has exited, or by the thread itself if stop() gave up waiting,
+     * so it is never released under a read in progress.
+     */
+    private final class Capture implements Runnable {
+        final AudioRecord record;
+        final int frameBytes;
+        final Thread thread;
+        volatile boolean running = true;
+        // Guarded by this
+        private boolean exited;
+        private boolean abandoned;
+
+        Capture(AudioRecord record, int frameBytes) {
+            this.record = record;
+            this.frameBytes = frameBytes;
+            this.thread = new Thread(this, TAG);
+        }
+
+        @Override
+        public void run() {
+            try {
+                captureLoop(this);
+            } finally {
+                boolean releaseHere;
+                synchronized (this) {
+                    exited = true;
+                    releaseHere = abandoned;
+                }
+                if (releaseHere) {
+                    releaseRecord(record);
+                }
+            }
+        }
+
+        /**
+         * Stop the thread and release the recorder, here if the thread exits in time
+         */
+        void finish() {
+            running = false;
+            // Unblocks a read waiting for data
+            stopRecording(record);
+            try {
+                thread.join(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            boolean releaseHere;
+            synchronized (this) {
+                releaseHere = exited;
+                abandoned = !exited;
+            }
+            if (releaseHere) {
+                releaseRecord(record);
+            } else {
+                Log.w(TAG, "Capture thread still reading; it releases the recorder on exit");
+            }
+        }
+    }
+
+    public NativeAudioCapture(WebView webView, String origin) {
+        this.webView = webView;
+        this.origin = origin;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start capturing and hand the page a fresh message port. Call on the main thread
+     * with RECORD_AUDIO already granted.
+     *
+     * @return false if capture could not start
+     */
+    @SuppressLint("MissingPermission")
+    public boolean start(int requestedSampleRate, int requestedFrameSamples) {
+        stop();
+        if (!WebViewFeature.isFeatureSupported(WebViewFeature.CREATE_WEB_MESSAGE_CHANNEL)
+                || !WebViewFeature.isFeatureSupported(WebViewFeature.POST_WEB_MESSAGE)
+                || !WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_PORT_POST_MESSAGE)) {
+            Log.w(TAG, "WebMessagePort not supported by this WebView");
+            return false;
+        }
+
+        sampleRate = requestedSampleRate > 0 ? requestedSampleRate : DEFAULT_SAMPLE_RATE;
+        frameSamples = requestedFrameSamples > 0 ? requestedFrameSamples : DEFAULT_FRAME_SAMPLES;
+        frameSamples = Math.max(MIN_FRAME_SAMPLES, Math.min(MAX_FRAME_SAMPLES, frameSamples));
+        final int frameBytes = frameSamples * 2;
+
+        int minBuffer = AudioRecord.getMinBufferSize(sampleRate,
+            AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        if (minBuffer <= 0) {
+            Log.e(TAG, "Unsupported sample rate: " + sampleRate);
+            return false;
+        }
+        AudioRecord record = null;
+        try {
+            // VOICE_RECOGNITION skips the AGC and noise shaping meant for calls
+            record = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, sampleRate,
+                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT,
+                Math.max(minBuffer, frameBytes * 2));
+            if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+                throw new IllegalStateException("AudioRecord not initialized");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error creating AudioRecord: " + e.getMessage());
+            if (record != null) {
+                releaseRecord(record);
+            }
+            return false;
+        }
+
+        synchronized (ringLock) {
+            ring = new byte[RING_SLOTS][frameBytes];
+            readIndex = 0;
+            queued = 0;
+            drainScheduled = false;
+            framesCaptured = 0;
+            framesDelivered = 0;
+            framesDropped = 0;
+            backpressureDrains = 0;
+            maxQueued = 0;
+            readErrors = 0;
+        }
+
+        WebMessagePortCompat[] ports = WebViewCompat.createWebMessageChannel(webView);
+        nativePort = ports[0];
+        arrayBuffers = WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_ARRAY_BUFFER);
+        WebViewCompat.postWebMessage(webView,
+            new WebMessageCompat(PORT_MESSAGE, new WebMessagePortCompat[]{ports[1]}),
+            Uri.parse(origin));
+
+        record.startRecording();
+        Capture started = new Capture(record, frameBytes);
+        capture = started;
+        started.thread.start();
+        Log.d(TAG, "Capturing " + sampleRate + " Hz in " + frameSamples + "-sample frames");
+        return true;
+    }
+
+    /**
+     * Stop capturing and close the port. Safe to call when not running.
+     */
+    public void stop() {
+        Capture stopping = capture;
+        capture = null;
+        if (stopping != null) {
+            stopping.finish();
+        }
+        mainHandler.removeCallbacks(drainRunnable);
+        if (nativePort != null) {
+            try {
+                nativePort.close();
+            } catch (Exception e) {
+                Log.e(TAG, "Error closing port: " + e.getMessage());
+            }
+            nativePort = null;
+        }
+    }
+
+    public boolean isRunning() {
+        Capture current = capture;
+        return current != null && current.running;
+    }
+
+    /**
+     * Capture and delivery counters as JSON
+     */
+    public String getStatsJson() {
+        synchronized (ringLock) {
+            BridgeJsonWriter out = BridgeJsonWriter.obtain();
+            try {
+                out.beginObject()
+                    .name("running").value(isRunning())
+                    .name("sampleRate").value(sampleRate)
+                    .name("frameSamples").value(frameSamples)
+                    .name("frameMs").value(sampleRate > 0 ? frameSamples * 1000.0 / sampleRate : 0)
+                    .name("arrayBuffers").value(arrayBuffers)
+                    .name("framesCaptured").value(framesCaptured)
+                    .name("framesDelivered").value(framesDelivered)
+                    .name("framesDropped").value(framesDropped)
+                    .name("backpressureDrains").value(backpressureDrains)
+                    .name("queued").value(queued)
+                    .name("maxQueued").value(maxQueued)
+                    .name("readErrors").value(readErrors)
+                    .endObject();
+                return out.finish();
+            } catch (RuntimeException e) {
+                out.reset();
+                throw e;
+            }
+        }
+    }
+
+    private void captureLoop(Capture run) {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        int frameBytes = run.frameBytes;
+        byte[] frame = new byte[frameBytes];
+        while (run.running) {
+            // Fill a whole frame; read() may return less than asked
+            int filled = 0;
+            while (run.running && filled < frameBytes) {
+                int read = run.record.read(frame, filled, frameBytes - filled);
+                if (read < 0) {
+                    if (!run.running) {
+                        // stop() stopped the recorder under this read
+                        break;
+                    }
+                    synchronized (ringLock) {
+                        readErrors++;
+                    }
+                    Log.e(TAG, "AudioRecord read error: " + read);
+                    run.running = false;
+                    onReadError(run, read);
+                    break;
+                }
+                filled += read;
+            }
+            if (filled < frameBytes) {
+                break;
+            }
+            enqueue(run, frame);
+        }
+    }
+
+    /**
+     * Release the recorder and port and tell the listener, unless a stop or a new start
+     * has already replaced this capture thread
+     */
+    private void onReadError(final Capture run, final int error) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (capture != run) {
+                    return;
+                }
+                stop();
+                if (listener != null) {
+                    listener.onCaptureError("read error " + error);
+                }
+            }
+        });
+    }
+
+    private void enqueue(Capture run, byte[] frame) {
+        synchronized (ringLock) {
+            // A thread stop() gave up on must not write into the next capture's ring
+            if (!run.running) {
+                return;
+            }
+            framesCaptured++;
+            if (queued == RING_SLOTS) {
+                // Delivery can't keep up; drop the oldest so latency stays bounded
+                readIndex = (readIndex + 1) % RING_SLOTS;
+                queued--;
+                framesDropped++;
+            }
+            int writeIndex = (readIndex + queued) % RING_SLOTS;
+            System.arraycopy(frame, 0, ring[writeIndex], 0, frame.length);
+            queued++;
+            if (queued > maxQueued) {
+                maxQueued = queued;
+            }
+            if (!drainScheduled) {
+                drainScheduled = true;
+                mainHandler.post(drainRunnable);
+            }
+        }
+    }
+
+    /**
+     * Post every queued frame to the page. Runs on the main thread.
+     */
+    private void drain() {
+        WebMessagePortCompat port = nativePort;
+        boolean fellBehind = false;
+        while (true) {
+            byte[] payload;
+            synchronized (ringLock) {
+                if (queued == 0 || port == null) {
+                    drainScheduled = false;
+                    return;
+                }
+                if (queued > 1 && !fellBehind) {
+                    // More than one frame waiting means the main thread fell behind capture
+                    backpressureDrains++;
+                    fellBehind = true;
+                }
+                payload = ring[readIndex].clone();
+                readIndex = (readIndex + 1) % RING_SLOTS;
+                queued--;
+            }
+            try {
+                if (arrayBuffers) {
+                    port.postMessage(new WebMessageCompat(payload));
+                } else {
+                    port.postMessage(new WebMessageCompat(Base64.encodeToString(payload, Base64.NO_WRAP)));
+                }
+                synchronized (ringLock) {
+                    framesDelivered++;
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error posting audio frame: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void stopRecording(AudioRecord record) {
+        try {
+            if (record.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
+                record.stop();
+            }
+        } catch (IllegalStateException e) {
+            // Already stopped
+        }
+    }
+
+    private static void releaseRecord(AudioRecord record) {
+        stopRecording(record);
+        record.release();
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * BasePhone Native Event Dispatcher
+ * Single ordered path for native-to-page messages, flushed once per frame after the page is ready
+ */
+package app.vercel.baselauncher.twa;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+import android.webkit.WebView;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class NativeEventDispatcher {
+    private static final String TAG = "NativeEventDispatcher";
+
+    // A page that promised a ready signal but never sends it (e.g. its bundle threw) is
+    // treated as ready after this long, so the queue and the snapshot cover are released
+    private static final long READY_TIMEOUT_MS = 5000;
+
+    private final WebView webView;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Keyed so a newer message replaces an older one that hasn't been delivered yet
+    private final LinkedHashMap<String, String> pending = new LinkedHashMap<>();
+    private int anonymousCounter = 0;
+    // Accumulated details of undelivered merged events, by queue key
+    private final Map<String, JSONObject> mergedDetails = new HashMap<>();
+
+    // All state below is only touched on the main thread
+    private boolean pageReady = false;
+    private boolean pageSignalsReady = false;
+    private boolean pageFinished = false;
+    private boolean flushScheduled = false;
+    private Runnable pageReadyListener;
+
+    private final Choreographer.FrameCallback flushCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            flushScheduled = false;
+            flush();
+        }
+    };
+
+    private final Runnable readyTimeout = new Runnable() {
+        @Override
+        public void run() {
+            Log.w(TAG, "Page never signalled ready, flushing anyway");
+            markReady();
+        }
+    };
+
+    public NativeEventDispatcher(WebView webView) {
+        this.webView = webView;
+    }
+
+    /**
+     * Queue a script. A later script with the same key replaces this one if it has not run yet.
+     * Pass a null key for messages that must never be merged.
+     */
+    public void dispatchScript(final String key, final String script) {
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                String queueKey = key != null ? key : "#" + (anonymousCounter++);
+                // Remove first so the replacement moves to the back and keeps causal order
+                pending.remove(queueKey);
+                pending.put(queueKey, script);
+                scheduleFlush();
+            }
+        });
+    }
+
+    /**
+     * Queue a window CustomEvent, merged with any pending event of the same name
+     */
+    public void dispatchEvent(String eventName, JSONObject detail) {
+        dispatchEventJson("event:" + eventName, eventName, detail != null ? detail.toString() : null);
+    }
+
+    /**
+     * Queue a window CustomEvent whose detail is already encoded, e.g. by
+     * {@link BridgeJsonWriter}. A later event with the same key replaces this one if it has
+     * not been delivered yet.
+     */
+    public void dispatchEventJson(String key, String eventName, String detailJson) {
+        String js = "if(window.dispatchEvent) { window.dispatchEvent(new CustomEvent("
+            + JSONObject.quote(eventName)
+            + (detailJson != null ? ", { detail: " + detailJson + " }" : "")
+            + ")); }";
+        dispatchScript(key, js);
+    }
+
+    /**
+     * Queue a window CustomEvent whose detail is a map of changes. If an earlier one has not
+     * been delivered yet, the new changes are merged into it, so the page never misses a key.
+     */
+    public void dispatchMergedEvent(final String eventName, final JSONObject changes) {
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                String queueKey = "event:" + eventName;
+                JSONObject detail = mergedDetails.get(queueKey);
+                if (detail == null || !pending.containsKey(queueKey)) {
+                    detail = new JSONObject();
+                    mergedDetails.put(queueKey, detail);
+                }
+                Iterator<String> keys = changes.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    try {
+                        detail.put(key, changes.get(key));
+                    } catch (JSONException e) {
+                        Log.e(TAG, "Error merging event detail: " + e.getMessage());
+                    }
+                }
+                dispatchEvent(eventName, detail);
+            }
+        });
+    }
+
+    /**
+     * Run on the main thread each time a document becomes ready
+     */
+    public void setPageReadyListener(Runnable listener) {
+        this.pageReadyListener = listener;
+    }
+
+    /**
+     * A new document started loading; hold messages until it is ready again
+     */
+    public void onPageStarted() {
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                pageReady = false;
+                pageSignalsReady = false;
+                pageFinished = false;
+                mainHandler.removeCallbacks(readyTimeout);
+            }
+        });
+    }
+
+    /**
+     * The document finished loading. Pages that announced an explicit ready signal keep
+     * the queue held until they send it; older bundles are treated as ready now.
+     */
+    public void onPageFinished() {
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                pageFinished = true;
+                if (!pageSignalsReady) {
+                    markReady();
+                } else {
+                    startReadyTimeout();
+                }
+            }
+        });
+    }
+
+    /**
+     * The page will call {@link #onPageReady()} once its listeners are attached
+     */
+    public void expectPageReady() {
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                pageSignalsReady = true;
+                if (pageFinished) {
+                    startReadyTimeout();
+                }
+            }
+        });
+    }
+
+    /**
+     * The page has attached its listeners and can receive messages
+     */
+    public void onPageReady() {
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                markReady();
+            }
+        });
+    }
+
+    public void destroy() {
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                pending.clear();
+                mergedDetails.clear();
+                pageReady = false;
+                pageReadyListener = null;
+                mainHandler.removeCallbacks(readyTimeout);
+                if (flushScheduled) {
+                    Choreographer.getInstance().removeFrameCallback(flushCallback);
+                    flushScheduled = false;
+                }
+            }
+        });
+    }
+
+    private void startReadyTimeout() {
+        if (pageReady) {
+            return;
+        }
+        mainHandler.removeCallbacks(readyTimeout);
+        mainHandler.postDelayed(readyTimeout, READY_TIMEOUT_MS);
+    }
+
+    private void markReady() {
+        mainHandler.removeCallbacks(readyTimeout);
+        if (pageReady) {
+            return;
+        }
+        pageReady = true;
+        scheduleFlush();
+        if (pageReadyListener != null) {
+            pageReadyListener.run();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!pageReady || flushScheduled || pending.isEmpty()) {
+            return;
+        }
+        flushScheduled = true;
+        Choreographer.getInstance().postFrameCallback(flushCallback);
+    }
+
+    /**
+     * Send every pending message in one evaluateJavascript call
+     */
+    private void flush() {
+        if (!pageReady || pending.isEmpty()) {
+            return;
+        }
+        StringBuilder js = new StringBuilder();
+        Iterator<Map.Entry<String, String>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            // Isolate each message so one failure doesn't drop the rest of the batch
+            js.append("try {\n").append(it.next().getValue()).append("\n} catch(e) { console.error(e); }\n");
+            it.remove();
+        }
+        mergedDetails.clear();
+        try {
+            webView.evaluateJavascript(js.toString(), null);
+        } catch (Exception e) {
+            Log.e(TAG, "Error flushing native events: " + e.getMessage());
+        }
+    }
+
+    private void runOnMain(Runnable runnable) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            runnable.run();
+        } else {
+            mainHandler.post(runnable);
+        }
+    }
+}
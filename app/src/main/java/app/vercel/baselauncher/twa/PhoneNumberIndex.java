@@ -0,0 +1,283 @@
+/*
+ * BasePhone Phone Number Index
+ * In-memory number-to-contact lookup, built in one pass over the phone table
+ */
+package app.vercel.baselauncher.twa;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class PhoneNumberIndex {
+    private static final String TAG = "PhoneNumberIndex";
+
+    // Matching on the trailing digits lets "+1 415 555 0100" and "(415) 555-0100" meet
+    private static final int MATCH_DIGITS = 9;
+
+    private static PhoneNumberIndex instance;
+
+    private final ContentResolver resolver;
+    private volatile Table index;
+    private boolean observing = false;
+    // Changes we wrote ourselves are patched in, so their notifications are skipped
+    private final SelfWriteFilter selfWrites = new SelfWriteFilter();
+
+    public static class Entry {
+        public final String contactId;
+        public final String name;
+
+        Entry(String contactId, String name) {
+            this.contactId = contactId;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Numbers by key, plus each contact's keys so a change to one contact touches only its
+     * own numbers. Lookups read byKey without locking; writers lock the table.
+     */
+    private static class Table {
+        final Map<String, Entry> byKey = new ConcurrentHashMap<>();
+        // Guarded by this
+        final Map<String, Set<String>> keysByContact = new HashMap<>();
+
+        synchronized void put(String key, Entry entry) {
+            Entry previous = byKey.put(key, entry);
+            if (previous != null && !previous.contactId.equals(entry.contactId)) {
+                unlink(previous.contactId, key);
+            }
+            Set<String> keys = keysByContact.get(entry.contactId);
+            if (keys == null) {
+                keys = new HashSet<>();
+                keysByContact.put(entry.contactId, keys);
+            }
+            keys.add(key);
+        }
+
+        synchronized void remove(String key) {
+            Entry previous = byKey.remove(key);
+            if (previous != null) {
+                unlink(previous.contactId, key);
+            }
+        }
+
+        private void unlink(String contactId, String key) {
+            Set<String> keys = keysByContact.get(contactId);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByContact.remove(contactId);
+                }
+            }
+        }
+    }
+
+    private final ContentObserver contactsObserver = new ContentObserver(new Handler(Looper.getMainLooper())) {
+        @Override
+        public void onChange(boolean selfChange) {
+            if (selfWrites.consume()) {
+                return;
+            }
+            // Rebuilt lazily on the next lookup
+            index = null;
+        }
+    };
+
+    public static synchronized PhoneNumberIndex get(Context context) {
+        if (instance == null) {
+            instance = new PhoneNumberIndex(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private PhoneNumberIndex(Context context) {
+        this.resolver = context.getContentResolver();
+    }
+
+    /**
+     * Find the contact for a phone number, or null. Builds the index on first use,
+     * so call it off the main thread.
+     */
+    public Entry lookup(String number) {
+        String key = normalize(number);
+        if (key == null) {
+            return null;
+        }
+        Table current = index;
+        if (current == null) {
+            current = rebuild();
+        }
+        return current.byKey.get(key);
+    }
+
+    /**
+     * Add or replace a single number without rebuilding, e.g. after writing a contact
+     */
+    public void put(String number, String contactId, String name) {
+        String key = normalize(number);
+        Table current = index;
+        if (key != null && current != null) {
+            current.put(key, new Entry(contactId, name));
+        }
+    }
+
+    /**
+     * Patch the index with contacts written by {@link ContactBatchWriter}
+     */
+    void applyWritten(List<ContactBatchWriter.Written> written) {
+        Table current = index;
+        if (current == null) {
+            return;
+        }
+        synchronized (current) {
+            for (ContactBatchWriter.Written change : written) {
+                if (change.kind == ContactBatchWriter.Written.INSERT) {
+                    put(change.phone, change.contactId, change.name);
+                    continue;
+                }
+                Set<String> keys = current.keysByContact.get(change.contactId);
+                List<String> contactKeys = keys != null ? new ArrayList<>(keys) : new ArrayList<String>();
+                String name = null;
+                for (String key : contactKeys) {
+                    Entry entry = current.byKey.get(key);
+                    name = entry != null ? entry.name : name;
+                    if (change.kind == ContactBatchWriter.Written.DELETE) {
+                        current.remove(key);
+                    } else if (change.name != null) {
+                        current.put(key, new Entry(change.contactId, change.name));
+                    }
+                }
+                if (change.kind == ContactBatchWriter.Written.UPDATE && change.phone != null) {
+                    String oldKey = normalize(change.oldPhone);
+                    if (oldKey != null) {
+                        current.remove(oldKey);
+                    }
+                    put(change.phone, change.contactId, change.name != null ? change.name : name);
+                }
+            }
+        }
+    }
+
+    /**
+     * A transaction whose changes will be patched in with applyWritten is about to run
+     */
+    void beginSelfWrite() {
+        selfWrites.begin();
+    }
+
+    /**
+     * The transaction returned. A failed one may have committed up to a yield point,
+     * so the index is dropped and rebuilt on the next read.
+     */
+    void endSelfWrite(boolean applied) {
+        if (applied) {
+            selfWrites.end();
+        } else {
+            selfWrites.cancel();
+            index = null;
+        }
+    }
+
+    /**
+     * Build the index ahead of the first lookup. Call it off the main thread.
+     */
+    public void warm() {
+        if (index == null) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Drop the index so the next lookup rebuilds it
+     */
+    public void invalidate() {
+        index = null;
+    }
+
+    private synchronized Table rebuild() {
+        if (index != null) {
+            return index;
+        }
+        Table built = new Table();
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(
+                ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
+                new String[]{
+                    ContactsContract.CommonDataKinds.Phone.CONTACT_ID,
+                    ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME,
+                    ContactsContract.CommonDataKinds.Phone.NUMBER
+                },
+                null,
+                null,
+                null
+            );
+            if (cursor != null) {
+                while (cursor.moveToNext()) {
+                    String key = normalize(cursor.getString(2));
+                    if (key != null && !built.byKey.containsKey(key)) {
+                        built.put(key, new Entry(cursor.getString(0), cursor.getString(1)));
+                    }
+                }
+            }
+            startObserving();
+        } catch (SecurityException e) {
+            // Not cached, so the index fills in once the permission is granted
+            Log.w(TAG, "No contacts permission, index left empty");
+            return built;
+        } catch (Exception e) {
+            // Not cached either, so a transient failure doesn't leave the index empty
+            Log.e(TAG, "Error building phone index: " + e.getMessage());
+            return built;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        index = built;
+        return built;
+    }
+
+    private void startObserving() {
+        if (observing) {
+            return;
+        }
+        resolver.registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, contactsObserver);
+        observing = true;
+    }
+
+    /**
+     * Reduce a number to its trailing digits; null if it has none
+     */
+    static String normalize(String number) {
+        if (number == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(number.length());
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        if (digits.length() == 0) {
+            return null;
+        }
+        return digits.length() > MATCH_DIGITS
+            ? digits.substring(digits.length() - MATCH_DIGITS)
+            : digits.toString();
+    }
+}
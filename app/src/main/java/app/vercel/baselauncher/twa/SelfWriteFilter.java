@@ -0,0 +1,63 @@
+/*
+ * BasePhone Self Write Filter
+ * Tells a content observer which change notifications our own writes caused
+ */
+package app.vercel.baselauncher.twa;
+
+import android.os.SystemClock;
+
+/**
+ * Counts the notifications still expected from transactions we wrote and patched into an
+ * index ourselves. Each transaction is expected to notify once; the observer skips that
+ * many notifications and treats any beyond them, e.g. a sync adapter's edit, as a real
+ * change. Unused credits expire shortly after the transaction, so a write that happened
+ * not to notify can't hide a later change for long.
+ */
+final class SelfWriteFilter {
+    // Change notifications for a transaction can arrive shortly after it returns
+    private static final long GRACE_MS = 1000;
+
+    private int expected = 0;
+    private long expiresAt = 0;
+
+    /**
+     * Call before applying a transaction; its notification may arrive before it returns
+     */
+    synchronized void begin() {
+        if (expected > 0 && SystemClock.uptimeMillis() >= expiresAt) {
+            expected = 0;
+        }
+        expected++;
+        expiresAt = Long.MAX_VALUE;
+    }
+
+    /**
+     * Call after the transaction committed
+     */
+    synchronized void end() {
+        expiresAt = SystemClock.uptimeMillis() + GRACE_MS;
+    }
+
+    /**
+     * Call after the transaction failed; drops every outstanding credit
+     */
+    synchronized void cancel() {
+        expected = 0;
+        expiresAt = 0;
+    }
+
+    /**
+     * @return true if this notification is accounted for by one of our own transactions
+     */
+    synchronized boolean consume() {
+        if (expected == 0) {
+            return false;
+        }
+        if (SystemClock.uptimeMillis() >= expiresAt) {
+            expected = 0;
+            return false;
+        }
+        expected--;
+        return true;
+    }
+}
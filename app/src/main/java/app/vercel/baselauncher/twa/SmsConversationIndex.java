@@ -0,0 +1,479 @@
+/*
+ * BasePhone SMS Conversation Index
+ * Per-thread summaries seeded from the SMS provider and kept current thread by thread
+ */
+package app.vercel.baselauncher.twa;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.provider.Telephony;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class SmsConversationIndex {
+    private static final String TAG = "SmsConversationIndex";
+    private static final int MAX_PAGE_SIZE = 100;
+    // Previews only need the start of the message
+    private static final int SNIPPET_LENGTH = 120;
+
+    // One row per thread: its latest message, with the body as the snippet
+    private static final String[] CONVERSATION_PROJECTION = new String[]{
+        Telephony.Sms.Conversations.THREAD_ID,
+        Telephony.Sms._ID,
+        Telephony.Sms.ADDRESS,
+        Telephony.Sms.Conversations.SNIPPET,
+        Telephony.Sms.DATE,
+        Telephony.Sms.TYPE
+    };
+
+    private static final String[] ID_PROJECTION = new String[]{
+        Telephony.Sms._ID,
+        Telephony.Sms.THREAD_ID
+    };
+
+    private static SmsConversationIndex instance;
+
+    private final ContentResolver resolver;
+    private final PhoneNumberIndex numberIndex;
+    private final Handler syncHandler;
+    private final ContentObserver smsObserver;
+    private final Runnable syncRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sync();
+        }
+    };
+
+    // Guarded by this
+    private Map<Long, Conversation> threads;
+    private List<Conversation> sorted;
+    private long lastSeenId = -1;
+    private boolean observing = false;
+    // What notifications touched since the last sync
+    private final Set<Long> changedMessages = new HashSet<>();
+    private final Set<Long> changedThreads = new HashSet<>();
+    private boolean changedUnknown = false;
+
+    /**
+     * Immutable, so pages can be written outside the lock while sync() replaces entries
+     */
+    static class Conversation {
+        final long threadId;
+        final long lastMessageId;
+        final String address;
+        final String snippet;
+        final long date;
+        final int type;
+        final int unreadCount;
+
+        Conversation(long threadId, long lastMessageId, String address, String snippet, long date,
+                     int type, int unreadCount) {
+            this.threadId = threadId;
+            this.lastMessageId = lastMessageId;
+            this.address = address;
+            this.snippet = snippet;
+            this.date = date;
+            this.type = type;
+            this.unreadCount = unreadCount;
+        }
+
+        Conversation withUnreadCount(int count) {
+            return count == unreadCount ? this
+                : new Conversation(threadId, lastMessageId, address, snippet, date, type, count);
+        }
+    }
+
+    private static final Comparator<Conversation> NEWEST_FIRST = new Comparator<Conversation>() {
+        @Override
+        public int compare(Conversation a, Conversation b) {
+            return a.date < b.date ? 1 : (a.date > b.date ? -1 : 0);
+        }
+    };
+
+    public static synchronized SmsConversationIndex get(Context context) {
+        if (instance == null) {
+            instance = new SmsConversationIndex(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    SmsConversationIndex(Context context) {
+        this.resolver = context.getContentResolver();
+        this.numberIndex = PhoneNumberIndex.get(context);
+
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        this.syncHandler = new Handler(thread.getLooper());
+        this.smsObserver = new ContentObserver(syncHandler) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                onSmsChanged(uri);
+                // A burst of notifications already queued here collapses into one sync
+                syncHandler.removeCallbacks(syncRunnable);
+                syncHandler.post(syncRunnable);
+            }
+        };
+    }
+
+    /**
+     * Get a page of conversations, most recent first
+     *
+     * @return {conversations: [...], total, nextOffset: offset or -1 when there are no more}
+     */
+    public String getPage(int offset, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<Conversation> page;
+        int total;
+        synchronized (this) {
+            if (!ensureBuilt()) {
+                return "{\"conversations\":[],\"total\":0,\"nextOffset\":-1}";
+            }
+            total = sorted.size();
+            int from = Math.max(0, Math.min(offset, total));
+            int to = Math.min(total, from + pageSize);
+            page = new ArrayList<>(sorted.subList(from, to));
+        }
+
+        int next = Math.max(0, offset) + page.size();
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        try {
+            out.beginObject().name("conversations").beginArray();
+            for (Conversation conversation : page) {
+                write(conversation, out);
+            }
+            out.endArray()
+                .name("total").value(total)
+                .name("nextOffset").value(next < total ? next : -1)
+                .endObject();
+            return out.finish();
+        } catch (RuntimeException e) {
+            out.reset();
+            throw e;
+        }
+    }
+
+    /**
+     * Seed from the provider's per-thread summaries on first use, or after a failed build
+     *
+     * @return false if the provider could not be read, leaving the index unbuilt
+     */
+    private boolean ensureBuilt() {
+        if (threads != null) {
+            return true;
+        }
+        if (!seed()) {
+            return false;
+        }
+        startObserving();
+        return true;
+    }
+
+    /**
+     * Replace every thread from Sms.Conversations, which returns one row per thread (its
+     * latest message), so the cost follows the number of threads rather than messages
+     *
+     * @return false if the provider could not be read
+     */
+    private boolean seed() {
+        Map<Long, Conversation> seeded = readConversations(null);
+        Map<Long, Integer> unread = seeded != null ? countUnread(null) : null;
+        if (seeded == null || unread == null) {
+            return false;
+        }
+        long newest = 0;
+        for (Map.Entry<Long, Conversation> entry : seeded.entrySet()) {
+            Integer count = unread.get(entry.getKey());
+            entry.setValue(entry.getValue().withUnreadCount(count == null ? 0 : count));
+            newest = Math.max(newest, entry.getValue().lastMessageId);
+        }
+        threads = seeded;
+        lastSeenId = newest;
+        resort();
+        return true;
+    }
+
+    /**
+     * Record what a provider notification touched. The SMS provider notifies the changed
+     * row (content://sms/123) or thread (content://sms/conversations/7); anything broader
+     * leaves us guessing and re-seeds.
+     */
+    synchronized void onSmsChanged(Uri uri) {
+        List<String> segments = uri != null ? uri.getPathSegments() : null;
+        long id = -1;
+        if (segments != null && !segments.isEmpty()) {
+            try {
+                id = Long.parseLong(segments.get(segments.size() - 1));
+            } catch (NumberFormatException e) {
+                id = -1;
+            }
+        }
+        if (id <= 0) {
+            changedUnknown = true;
+        } else if (segments.size() >= 2 && "conversations".equals(segments.get(segments.size() - 2))) {
+            changedThreads.add(id);
+        } else {
+            changedMessages.add(id);
+        }
+    }
+
+    /**
+     * Bring the threads touched since the last sync up to date. Read-flag flips, outbox to
+     * sent moves and new messages each cost one summary and one unread query for their
+     * own threads; only changes we can't place re-seed every thread.
+     */
+    synchronized void sync() {
+        Set<Long> messageIds = new HashSet<>(changedMessages);
+        Set<Long> threadIds = new HashSet<>(changedThreads);
+        boolean unknown = changedUnknown;
+        changedMessages.clear();
+        changedThreads.clear();
+        changedUnknown = false;
+        if (threads == null) {
+            return;
+        }
+        if (unknown || !addThreadsOf(messageIds, threadIds) || !addThreadsWithNewMessages(threadIds)) {
+            if (!seed()) {
+                // Rebuilt on the next read
+                threads = null;
+                sorted = null;
+            }
+            return;
+        }
+        if (threadIds.isEmpty()) {
+            return;
+        }
+        String selection = Telephony.Sms.THREAD_ID + " IN (" + join(threadIds) + ")";
+        Map<Long, Conversation> changed = readConversations(selection);
+        Map<Long, Integer> unread = changed != null ? countUnread(selection) : null;
+        if (changed == null || unread == null) {
+            threads = null;
+            sorted = null;
+            return;
+        }
+        // Replace, never mutate, so a page being written keeps a consistent row
+        for (Long threadId : threadIds) {
+            Conversation conversation = changed.get(threadId);
+            if (conversation == null) {
+                // No messages left in the thread
+                threads.remove(threadId);
+                continue;
+            }
+            Integer count = unread.get(threadId);
+            threads.put(threadId, conversation.withUnreadCount(count == null ? 0 : count));
+        }
+        resort();
+    }
+
+    /**
+     * Map changed message ids to their threads. A deleted message is only found through
+     * the thread it was the latest of.
+     *
+     * @return false if a message can't be placed in any thread
+     */
+    private boolean addThreadsOf(Set<Long> messageIds, Set<Long> threadIds) {
+        if (messageIds.isEmpty()) {
+            return true;
+        }
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(
+                Telephony.Sms.CONTENT_URI,
+                ID_PROJECTION,
+                Telephony.Sms._ID + " IN (" + join(messageIds) + ")",
+                null,
+                null
+            );
+            if (cursor == null) {
+                return false;
+            }
+            while (cursor.moveToNext()) {
+                messageIds.remove(cursor.getLong(0));
+                threadIds.add(cursor.getLong(1));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading changed SMS: " + e.getMessage());
+            return false;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        for (Conversation conversation : threads.values()) {
+            if (messageIds.remove(conversation.lastMessageId)) {
+                threadIds.add(conversation.threadId);
+            }
+        }
+        return messageIds.isEmpty();
+    }
+
+    /**
+     * Catch rows added without a row-level notification. Reads only ids, no bodies.
+     *
+     * @return false if the provider could not be read
+     */
+    private boolean addThreadsWithNewMessages(Set<Long> threadIds) {
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(
+                Telephony.Sms.CONTENT_URI,
+                ID_PROJECTION,
+                Telephony.Sms._ID + " > ?",
+                new String[]{String.valueOf(lastSeenId)},
+                null
+            );
+            if (cursor == null) {
+                return false;
+            }
+            while (cursor.moveToNext()) {
+                lastSeenId = Math.max(lastSeenId, cursor.getLong(0));
+                threadIds.add(cursor.getLong(1));
+            }
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading new SMS: " + e.getMessage());
+            return false;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Read the latest message of every thread matching the selection, or null on failure
+     */
+    private Map<Long, Conversation> readConversations(String selection) {
+        Map<Long, Conversation> result = new HashMap<>();
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(
+                Telephony.Sms.Conversations.CONTENT_URI,
+                CONVERSATION_PROJECTION,
+                selection,
+                null,
+                null
+            );
+            if (cursor == null) {
+                return null;
+            }
+            while (cursor.moveToNext()) {
+                long threadId = cursor.getLong(0);
+                long id = cursor.getLong(1);
+                Conversation previous = result.get(threadId);
+                // Two messages with the same timestamp both match; keep the newer row
+                if (previous != null && previous.lastMessageId > id) {
+                    continue;
+                }
+                result.put(threadId, new Conversation(threadId, id, cursor.getString(2),
+                    snippet(cursor.getString(3)), cursor.getLong(4), cursor.getInt(5), 0));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading SMS conversations: " + e.getMessage());
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Count unread inbox messages per thread, reading only thread_id, or null on failure
+     */
+    private Map<Long, Integer> countUnread(String threadSelection) {
+        Map<Long, Integer> counts = new HashMap<>();
+        String selection = Telephony.Sms.READ + " = 0";
+        if (threadSelection != null) {
+            selection += " AND " + threadSelection;
+        }
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(
+                Telephony.Sms.Inbox.CONTENT_URI,
+                new String[]{Telephony.Sms.THREAD_ID},
+                selection,
+                null,
+                null
+            );
+            if (cursor == null) {
+                return null;
+            }
+            while (cursor.moveToNext()) {
+                long threadId = cursor.getLong(0);
+                Integer count = counts.get(threadId);
+                counts.put(threadId, count == null ? 1 : count + 1);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error counting unread SMS: " + e.getMessage());
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return counts;
+    }
+
+    private static String join(Set<Long> ids) {
+        StringBuilder joined = new StringBuilder();
+        for (Long id : ids) {
+            if (joined.length() > 0) {
+                joined.append(',');
+            }
+            joined.append(id);
+        }
+        return joined.toString();
+    }
+
+    private void resort() {
+        List<Conversation> list = new ArrayList<>(threads.values());
+        Collections.sort(list, NEWEST_FIRST);
+        sorted = list;
+    }
+
+    private void startObserving() {
+        if (observing) {
+            return;
+        }
+        resolver.registerContentObserver(Telephony.Sms.CONTENT_URI, true, smsObserver);
+        observing = true;
+    }
+
+    private void write(Conversation conversation, BridgeJsonWriter out) {
+        out.beginObject()
+            .name("threadId").value(conversation.threadId)
+            .name("address").value(conversation.address)
+            .name("snippet").value(conversation.snippet)
+            .name("date").value(conversation.date)
+            .name("outgoing").value(conversation.type == Telephony.Sms.MESSAGE_TYPE_SENT)
+            .name("unreadCount").value(conversation.unreadCount);
+
+        PhoneNumberIndex.Entry contact = numberIndex.lookup(conversation.address);
+        if (contact != null) {
+            out.name("contactId").value(contact.contactId);
+            out.name("name").value(contact.name);
+        }
+        out.endObject();
+    }
+
+    private static String snippet(String body) {
+        if (body == null || body.length() <= SNIPPET_LENGTH) {
+            return body;
+        }
+        return body.substring(0, SNIPPET_LENGTH);
+    }
+}
@@ -0,0 +1,734 @@
+/*
+ * BasePhone SMS Send Queue
+ * Direct SMS sending with multipart splitting, per-carrier throttling and delivery reports
+ */
+package app.vercel.baselauncher.twa;
+
+import android.app.Activity;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.telephony.SmsManager;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Messages are sent one at a time, in order, on a worker thread. Each one is split into
+ * parts by the carrier's rules and sent with a sent and a delivered PendingIntent per part,
+ * which {@link SmsStatusReceiver} routes back here, even into a restarted process. Every
+ * state change is written to {@link MappedKeyValueStore} before anything else happens, so
+ * the queue survives process death. A message that was mid-send when the process died is
+ * never resent blindly: its reports get a grace period to arrive, then it is marked failed.
+ *
+ * The platform prompts the user once an app sends more than 30 messages in 30 minutes, so
+ * each carrier (SIM subscription) gets a sliding window of that size; messages over the
+ * limit wait for the window instead of triggering the prompt. The window's send times are
+ * stored too, so a restart doesn't reset it.
+ *
+ * A delivery report carries the SMSC's status report PDU; a permanent failure in it marks
+ * the message failed.
+ */
+public class SmsSendQueue {
+    private static final String TAG = "SmsSendQueue";
+
+    static final String ACTION_SENT = "app.vercel.baselauncher.twa.SMS_SENT";
+    static final String ACTION_DELIVERED = "app.vercel.baselauncher.twa.SMS_DELIVERED";
+    static final String EXTRA_MESSAGE_ID = "messageId";
+    static final String EXTRA_PART = "part";
+    // Filled in by the platform on delivery reports
+    static final String EXTRA_PDU = "pdu";
+    static final String EXTRA_FORMAT = "format";
+
+    // Outcome of one part's delivery report
+    static final int DELIVERY_COMPLETE = 0;
+    static final int DELIVERY_PENDING = 1;
+    static final int DELIVERY_FAILED = 2;
+
+    private static final String KEY_PREFIX = "sms_queue:";
+    // Wall-clock send times per subscription, as a JSON array
+    private static final String THROTTLE_PREFIX = "sms_throttle:";
+    private static final int RATE_LIMIT_MESSAGES = 30;
+    private static final long RATE_WINDOW_MS = 30 * 60 * 1000;
+    // Radio hiccups are retried; anything else fails the message
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 30 * 1000;
+    // How long sent reports may take before the message is given up on
+    private static final long SENT_TIMEOUT_MS = 2 * 60 * 1000;
+
+    static final String STATUS_QUEUED = "queued";
+    static final String STATUS_SENDING = "sending";
+    static final String STATUS_SENT = "sent";
+    static final String STATUS_DELIVERED = "delivered";
+    static final String STATUS_FAILED = "failed";
+    static final String STATUS_CANCELLED = "cancelled";
+
+    /**
+     * Hands messages to the radio. The default goes through SmsManager; a stand-in can
+     * record the calls and answer with {@link #onSentReport} and {@link #onDeliveryReport}.
+     */
+    public interface Sender {
+        ArrayList<String> divideMessage(int subscriptionId, String body);
+        void send(int subscriptionId, String to, ArrayList<String> parts,
+                  ArrayList<PendingIntent> sentIntents, ArrayList<PendingIntent> deliveryIntents);
+        // The carrier to throttle against, or -1 when there is only one
+        int defaultSubscriptionId();
+    }
+
+    /**
+     * Receives status changes as message id to state, on the worker thread
+     */
+    public interface Listener {
+        void onStatusChanged(String id, JSONObject state);
+    }
+
+    private static SmsSendQueue instance;
+
+    private final Context context;
+    private final MappedKeyValueStore store;
+    private final Handler worker;
+    private final Sender sender;
+    private Listener listener;
+
+    // Touched only on the worker thread
+    private final Map<String, JSONObject> messages = new HashMap<>();
+    // Oldest first, in System.currentTimeMillis() so they stay valid across reboots
+    private final Map<Integer, ArrayDeque<Long>> sendTimes = new HashMap<>();
+    private String inFlightId;
+    private long sequence;
+
+    private final Runnable pumpRunnable = new Runnable() {
+        @Override
+        public void run() {
+            pump();
+        }
+    };
+
+    public static synchronized SmsSendQueue get(Context context) {
+        if (instance == null) {
+            instance = new SmsSendQueue(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private SmsSendQueue(Context context) {
+        this(context, MappedKeyValueStore.get(context), new SystemSender(), newWorkerLooper());
+    }
+
+    /**
+     * A queue over the given store, radio and worker looper; tests pass stand-ins
+     */
+    SmsSendQueue(Context context, MappedKeyValueStore store, Sender sender, Looper looper) {
+        this.context = context;
+        this.store = store;
+        this.sender = sender;
+        this.worker = new Handler(looper);
+        worker.post(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    private static Looper newWorkerLooper() {
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        return thread.getLooper();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Queue one message per recipient and return their ids in recipient order
+     */
+    public List<String> enqueue(List<String> recipients, String body) {
+        final List<JSONObject> queued = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (String recipient : recipients) {
+            String to = recipient != null ? recipient.replaceAll("[^0-9+]", "") : "";
+            if (to.isEmpty()) {
+                continue;
+            }
+            JSONObject message = new JSONObject();
+            long seq;
+            synchronized (this) {
+                seq = sequence++;
+            }
+            String id = "sms-" + now + "-" + seq;
+            try {
+                message.put("id", id);
+                message.put("seq", seq);
+                message.put("to", to);
+                message.put("body", body);
+                message.put("status", STATUS_QUEUED);
+                message.put("createdAt", now);
+                message.put("attempts", 0);
+            } catch (JSONException e) {
+                Log.e(TAG, "Error queueing SMS: " + e.getMessage());
+                continue;
+            }
+            queued.add(message);
+            ids.add(id);
+        }
+        worker.post(new Runnable() {
+            @Override
+            public void run() {
+                Map<String, String> changes = new HashMap<>();
+                for (JSONObject message : queued) {
+                    messages.put(message.optString("id"), message);
+                    changes.put(KEY_PREFIX + message.optString("id"), message.toString());
+                }
+                // One record, so a crash never keeps half of a recipient list
+                store.apply(changes);
+                for (JSONObject message : queued) {
+                    notifyChanged(message);
+                }
+                pump();
+            }
+        });
+        return ids;
+    }
+
+    /**
+     * Cancel a message that hasn't started sending
+     */
+    public void cancel(final String id) {
+        worker.post(new Runnable() {
+            @Override
+            public void run() {
+                JSONObject message = messages.get(id);
+                if (message != null && STATUS_QUEUED.equals(message.optString("status"))) {
+                    update(message, STATUS_CANCELLED, null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Forget messages that are finished: delivered, failed, cancelled, or sent more than a
+     * day ago without a delivery report
+     */
+    public void clearFinished() {
+        worker.post(new Runnable() {
+            @Override
+            public void run() {
+                long dayAgo = System.currentTimeMillis() - 24 * 60 * 60 * 1000;
+                Map<String, String> changes = new HashMap<>();
+                for (JSONObject message : new ArrayList<>(messages.values())) {
+                    String status = message.optString("status");
+                    boolean finished = STATUS_DELIVERED.equals(status) || STATUS_FAILED.equals(status)
+                        || STATUS_CANCELLED.equals(status)
+                        || (STATUS_SENT.equals(status) && message.optLong("createdAt") < dayAgo);
+                    if (finished) {
+                        messages.remove(message.optString("id"));
+                        changes.put(KEY_PREFIX + message.optString("id"), null);
+                    }
+                }
+                store.apply(changes);
+            }
+        });
+    }
+
+    /**
+     * Every known message, oldest first, as a JSON array. Reads the store, so it works
+     * from any thread. Stored values are our own JSON, so they are copied through as-is.
+     */
+    public String getQueueJson() {
+        List<Map.Entry<String, String>> all = new ArrayList<>();
+        for (Map.Entry<String, String> entry : store.getAll(KEY_PREFIX).entrySet()) {
+            if (idAge(entry.getKey()) != null) {
+                all.add(entry);
+            }
+        }
+        Collections.sort(all, new Comparator<Map.Entry<String, String>>() {
+            @Override
+            public int compare(Map.Entry<String, String> a, Map.Entry<String, String> b) {
+                long[] ageA = idAge(a.getKey());
+                long[] ageB = idAge(b.getKey());
+                int byTime = Long.compare(ageA[0], ageB[0]);
+                return byTime != 0 ? byTime : Long.compare(ageA[1], ageB[1]);
+            }
+        });
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        try {
+            out.beginArray();
+            for (Map.Entry<String, String> entry : all) {
+                out.rawValue(entry.getValue());
+            }
+            out.endArray();
+            return out.finish();
+        } catch (RuntimeException e) {
+            out.reset();
+            throw e;
+        }
+    }
+
+    /**
+     * {createdAt, seq} from a stored key, which embeds the "sms-createdAt-seq" id, or null
+     * for keys we didn't write
+     */
+    private static long[] idAge(String key) {
+        String id = key.substring(KEY_PREFIX.length());
+        int dash = id.lastIndexOf('-');
+        if (!id.startsWith("sms-") || dash <= 4) {
+            return null;
+        }
+        try {
+            return new long[]{Long.parseLong(id.substring(4, dash)), Long.parseLong(id.substring(dash + 1))};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A sent report for one part, from {@link SmsStatusReceiver}
+     */
+    void onSentReport(final String id, final int part, final int resultCode) {
+        worker.post(new Runnable() {
+            @Override
+            public void run() {
+                handleSent(id, resultCode);
+            }
+        });
+    }
+
+    /**
+     * A delivery report for one part, from {@link SmsStatusReceiver}
+     *
+     * @param outcome DELIVERY_COMPLETE, DELIVERY_PENDING or DELIVERY_FAILED
+     */
+    void onDeliveryReport(final String id, final int part, final int outcome) {
+        worker.post(new Runnable() {
+            @Override
+            public void run() {
+                handleDelivered(id, outcome);
+            }
+        });
+    }
+
+    /**
+     * Map a status report's status, as returned by SmsMessage.getStatus(), to a delivery
+     * outcome. GSM carries the TP-Status octet; CDMA packs its error class and status code
+     * into the upper bits.
+     */
+    static int deliveryOutcome(int status, String format) {
+        if ("3gpp2".equals(format)) {
+            int errorClass = (status >> 24) & 0x03;
+            int statusCode = (status >> 16) & 0x3f;
+            if (errorClass == 0) {
+                // 2 is "delivered"; other codes are progress reports
+                return statusCode == 0x02 ? DELIVERY_COMPLETE : DELIVERY_PENDING;
+            }
+            // Error class 2 is temporary, 3 permanent
+            return errorClass == 2 ? DELIVERY_PENDING : DELIVERY_FAILED;
+        }
+        if (status >= 0x40) {
+            return DELIVERY_FAILED;
+        }
+        // 0x20-0x3f: the SMSC is still trying
+        return status >= 0x20 ? DELIVERY_PENDING : DELIVERY_COMPLETE;
+    }
+
+    private void load() {
+        List<JSONObject> pending = new ArrayList<>();
+        for (String value : store.getAll(KEY_PREFIX).values()) {
+            try {
+                JSONObject message = new JSONObject(value);
+                messages.put(message.optString("id"), message);
+                pending.add(message);
+            } catch (JSONException e) {
+                Log.e(TAG, "Error reading SMS queue: " + e.getMessage());
+            }
+        }
+        for (Map.Entry<String, String> entry : store.getAll(THROTTLE_PREFIX).entrySet()) {
+            try {
+                int subscriptionId = Integer.parseInt(entry.getKey().substring(THROTTLE_PREFIX.length()));
+                JSONArray stored = new JSONArray(entry.getValue());
+                ArrayDeque<Long> times = new ArrayDeque<>();
+                for (int i = 0; i < stored.length(); i++) {
+                    times.addLast(stored.getLong(i));
+                }
+                sendTimes.put(subscriptionId, times);
+            } catch (NumberFormatException | JSONException e) {
+                Log.e(TAG, "Error reading SMS send times: " + e.getMessage());
+            }
+        }
+        for (JSONObject message : pending) {
+            if (STATUS_SENDING.equals(message.optString("status"))) {
+                // Interrupted mid-send; its reports may still be on their way
+                inFlightId = message.optString("id");
+                scheduleSentTimeout(inFlightId);
+                break;
+            }
+        }
+        Log.d(TAG, "Loaded " + messages.size() + " messages");
+        pump();
+    }
+
+    /**
+     * Start the oldest queued message once nothing is in flight and its carrier has room
+     */
+    private void pump() {
+        worker.removeCallbacks(pumpRunnable);
+        if (inFlightId != null) {
+            return;
+        }
+        List<JSONObject> queued = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        long nextRetry = Long.MAX_VALUE;
+        for (JSONObject message : messages.values()) {
+            if (!STATUS_QUEUED.equals(message.optString("status"))) {
+                continue;
+            }
+            long notBefore = message.optLong("notBefore");
+            if (notBefore > now) {
+                nextRetry = Math.min(nextRetry, notBefore);
+                continue;
+            }
+            queued.add(message);
+        }
+        if (queued.isEmpty()) {
+            if (nextRetry != Long.MAX_VALUE) {
+                worker.postDelayed(pumpRunnable, nextRetry - now);
+            }
+            return;
+        }
+        sortByAge(queued);
+        JSONObject message = queued.get(0);
+
+        int subscriptionId = sender.defaultSubscriptionId();
+        long wait = throttleDelay(subscriptionId);
+        if (wait > 0) {
+            Log.d(TAG, "Carrier " + subscriptionId + " at its rate limit, waiting " + wait + "ms");
+            worker.postDelayed(pumpRunnable, wait);
+            return;
+        }
+        send(message, subscriptionId);
+    }
+
+    private void send(JSONObject message, int subscriptionId) {
+        String id = message.optString("id");
+        ArrayList<String> parts;
+        try {
+            parts = sender.divideMessage(subscriptionId, message.optString("body"));
+        } catch (Exception e) {
+            Log.e(TAG, "Error splitting SMS: " + e.getMessage());
+            update(message, STATUS_FAILED, "split");
+            pump();
+            return;
+        }
+        if (parts == null || parts.isEmpty()) {
+            update(message, STATUS_FAILED, "empty");
+            pump();
+            return;
+        }
+
+        ArrayList<PendingIntent> sentIntents = new ArrayList<>();
+        ArrayList<PendingIntent> deliveryIntents = new ArrayList<>();
+        for (int part = 0; part < parts.size(); part++) {
+            sentIntents.add(statusIntent(ACTION_SENT, id, part));
+            deliveryIntents.add(statusIntent(ACTION_DELIVERED, id, part));
+        }
+        try {
+            message.put("parts", parts.size());
+            message.put("sentParts", 0);
+            message.put("deliveredParts", 0);
+            message.put("subscriptionId", subscriptionId);
+            message.put("attempts", message.optInt("attempts") + 1);
+            message.remove("failedParts");
+            message.remove("undeliveredParts");
+        } catch (JSONException e) {
+            Log.e(TAG, "Error updating SMS: " + e.getMessage());
+        }
+        // Persisted as sending before the radio sees it, so a crash can't cause a resend
+        inFlightId = id;
+        update(message, STATUS_SENDING, null);
+        recordSend(subscriptionId);
+        try {
+            sender.send(subscriptionId, message.optString("to"), parts, sentIntents, deliveryIntents);
+            scheduleSentTimeout(id);
+        } catch (Exception e) {
+            Log.e(TAG, "Error sending SMS: " + e.getMessage());
+            inFlightId = null;
+            update(message, STATUS_FAILED, "send");
+            pump();
+        }
+    }
+
+    private void handleSent(String id, int resultCode) {
+        JSONObject message = messages.get(id);
+        if (message == null || !STATUS_SENDING.equals(message.optString("status"))) {
+            return;
+        }
+        try {
+            if (resultCode == Activity.RESULT_OK) {
+                message.put("sentParts", message.optInt("sentParts") + 1);
+            } else {
+                message.put("failedParts", message.optInt("failedParts") + 1);
+                message.put("errorCode", resultCode);
+            }
+            int reported = message.optInt("sentParts") + message.optInt("failedParts");
+            if (reported < message.optInt("parts")) {
+                persist(message);
+                notifyChanged(message);
+                return;
+            }
+            finishSending(message);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error recording SMS status: " + e.getMessage());
+        }
+    }
+
+    private void handleDelivered(String id, int outcome) {
+        JSONObject message = messages.get(id);
+        if (message == null || outcome == DELIVERY_PENDING) {
+            // A pending report is followed by a final one
+            return;
+        }
+        String status = message.optString("status");
+        if (!STATUS_SENT.equals(status) && !STATUS_SENDING.equals(status)) {
+            return;
+        }
+        try {
+            if (outcome == DELIVERY_FAILED) {
+                message.put("undeliveredParts", message.optInt("undeliveredParts") + 1);
+                if (STATUS_SENT.equals(status)) {
+                    update(message, STATUS_FAILED, "undelivered");
+                } else {
+                    // finishSending settles it once every part has its sent report
+                    persist(message);
+                    notifyChanged(message);
+                }
+                return;
+            }
+            message.put("deliveredParts", message.optInt("deliveredParts") + 1);
+            if (STATUS_SENT.equals(status) && message.optInt("deliveredParts") >= message.optInt("parts")) {
+                update(message, STATUS_DELIVERED, null);
+            } else {
+                persist(message);
+                notifyChanged(message);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Error recording SMS status: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Every part has reported: sent, retried later, or failed
+     */
+    private void finishSending(JSONObject message) throws JSONException {
+        String id = message.optString("id");
+        if (id.equals(inFlightId)) {
+            inFlightId = null;
+            worker.removeCallbacksAndMessages(id);
+        }
+        int failed = message.optInt("failedParts");
+        int code = message.optInt("errorCode");
+        boolean radioDown = code == SmsManager.RESULT_ERROR_NO_SERVICE || code == SmsManager.RESULT_ERROR_RADIO_OFF;
+        if (failed == 0 && message.optInt("undeliveredParts") > 0) {
+            update(message, STATUS_FAILED, "undelivered");
+        } else if (failed == 0) {
+            boolean delivered = message.optInt("deliveredParts") >= message.optInt("parts");
+            update(message, delivered ? STATUS_DELIVERED : STATUS_SENT, null);
+        } else if (radioDown && message.optInt("sentParts") == 0 && message.optInt("attempts") < MAX_ATTEMPTS) {
+            // Nothing went out, so trying again can't duplicate a part
+            message.put("notBefore", System.currentTimeMillis() + RETRY_DELAY_MS * message.optInt("attempts"));
+            update(message, STATUS_QUEUED, null);
+        } else {
+            update(message, STATUS_FAILED, errorName(code));
+        }
+        pump();
+    }
+
+    private void scheduleSentTimeout(final String id) {
+        // Tagged with the id so finishSending can cancel it
+        worker.postAtTime(new Runnable() {
+            @Override
+            public void run() {
+                JSONObject message = messages.get(id);
+                if (message == null || !STATUS_SENDING.equals(message.optString("status"))) {
+                    return;
+                }
+                Log.w(TAG, "No sent report for " + id + ", giving up");
+                if (id.equals(inFlightId)) {
+                    inFlightId = null;
+                }
+                // Some parts may have gone out, so it is not retried
+                update(message, STATUS_FAILED, "timeout");
+                pump();
+            }
+        }, id, SystemClock.uptimeMillis() + SENT_TIMEOUT_MS);
+    }
+
+    /**
+     * How long until the carrier's window has room, or 0 if it has now
+     */
+    private long throttleDelay(int subscriptionId) {
+        ArrayDeque<Long> times = sendTimes.get(subscriptionId);
+        if (times == null) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        if (!times.isEmpty() && times.peekLast() > now) {
+            // The clock was set back, so the stored times no longer measure anything
+            times.clear();
+        }
+        while (!times.isEmpty() && now - times.peekFirst() >= RATE_WINDOW_MS) {
+            times.removeFirst();
+        }
+        if (times.size() < RATE_LIMIT_MESSAGES) {
+            return 0;
+        }
+        return times.peekFirst() + RATE_WINDOW_MS - now;
+    }
+
+    private void recordSend(int subscriptionId) {
+        ArrayDeque<Long> times = sendTimes.get(subscriptionId);
+        if (times == null) {
+            times = new ArrayDeque<>();
+            sendTimes.put(subscriptionId, times);
+        }
+        times.addLast(System.currentTimeMillis());
+        while (times.size() > RATE_LIMIT_MESSAGES) {
+            // Only the newest window's worth can still hold the next send back
+            times.removeFirst();
+        }
+        JSONArray stored = new JSONArray();
+        for (long time : times) {
+            stored.put(time);
+        }
+        store.put(THROTTLE_PREFIX + subscriptionId, stored.toString());
+    }
+
+    private void update(JSONObject message, String status, String error) {
+        try {
+            message.put("status", status);
+            message.put("updatedAt", System.currentTimeMillis());
+            if (error != null) {
+                message.put("error", error);
+            } else {
+                message.remove("error");
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Error updating SMS: " + e.getMessage());
+        }
+        persist(message);
+        notifyChanged(message);
+    }
+
+    private void persist(JSONObject message) {
+        store.put(KEY_PREFIX + message.optString("id"), message.toString());
+    }
+
+    private void notifyChanged(JSONObject message) {
+        Listener current = listener;
+        if (current == null) {
+            return;
+        }
+        try {
+            // A copy, since the page's event is built on another thread
+            current.onStatusChanged(message.optString("id"), new JSONObject(message.toString()));
+        } catch (JSONException e) {
+            Log.e(TAG, "Error reporting SMS status: " + e.getMessage());
+        }
+    }
+
+    private PendingIntent statusIntent(String action, String id, int part) {
+        Intent intent = new Intent(action, Uri.parse("basephone-sms://" + id + "/" + part),
+            context, SmsStatusReceiver.class);
+        intent.putExtra(EXTRA_MESSAGE_ID, id);
+        intent.putExtra(EXTRA_PART, part);
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+        if (ACTION_DELIVERED.equals(action)) {
+            // The platform adds the status report PDU to the delivery intent, so it must
+            // stay mutable; the explicit component keeps it from being redirected
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                flags |= PendingIntent.FLAG_MUTABLE;
+            }
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            flags |= PendingIntent.FLAG_IMMUTABLE;
+        }
+        return PendingIntent.getBroadcast(context, 0, intent, flags);
+    }
+
+    private static void sortByAge(List<JSONObject> messages) {
+        Collections.sort(messages, new Comparator<JSONObject>() {
+            @Override
+            public int compare(JSONObject a, JSONObject b) {
+                int byTime = Long.compare(a.optLong("createdAt"), b.optLong("createdAt"));
+                return byTime != 0 ? byTime : Long.compare(a.optLong("seq"), b.optLong("seq"));
+            }
+        });
+    }
+
+    private static String errorName(int code) {
+        switch (code) {
+            case SmsManager.RESULT_ERROR_NO_SERVICE:
+                return "noService";
+            case SmsManager.RESULT_ERROR_RADIO_OFF:
+                return "radioOff";
+            case SmsManager.RESULT_ERROR_NULL_PDU:
+                return "nullPdu";
+            case SmsManager.RESULT_ERROR_GENERIC_FAILURE:
+                return "genericFailure";
+            default:
+                return "error" + code;
+        }
+    }
+
+    /**
+     * Sends through the platform SmsManager for the given subscription
+     */
+    static class SystemSender implements Sender {
+        @Override
+        public ArrayList<String> divideMessage(int subscriptionId, String body) {
+            return manager(subscriptionId).divideMessage(body);
+        }
+
+        @Override
+        public void send(int subscriptionId, String to, ArrayList<String> parts,
+                         ArrayList<PendingIntent> sentIntents, ArrayList<PendingIntent> deliveryIntents) {
+            SmsManager manager = manager(subscriptionId);
+            if (parts.size() == 1) {
+                manager.sendTextMessage(to, null, parts.get(0), sentIntents.get(0), deliveryIntents.get(0));
+            } else {
+                manager.sendMultipartTextMessage(to, null, parts, sentIntents, deliveryIntents);
+            }
+        }
+
+        @Override
+        public int defaultSubscriptionId() {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1) {
+                return SmsManager.getDefaultSmsSubscriptionId();
+            }
+            return -1;
+        }
+
+        private static SmsManager manager(int subscriptionId) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1 && subscriptionId >= 0) {
+                return SmsManager.getSmsManagerForSubscriptionId(subscriptionId);
+            }
+            return SmsManager.getDefault();
+        }
+    }
+}
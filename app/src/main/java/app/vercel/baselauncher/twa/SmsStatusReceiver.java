@@ -0,0 +1,58 @@
+/*
+ * BasePhone SMS Status Receiver
+ * Routes sent and delivered reports for queued SMS parts back to the send queue
+ */
+package app.vercel.baselauncher.twa;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.telephony.SmsMessage;
+import android.util.Log;
+
+/**
+ * Declared in the manifest, so reports for a message sent before the process died still
+ * reach the queue after it restarts
+ */
+public class SmsStatusReceiver extends BroadcastReceiver {
+    private static final String TAG = "SmsStatusReceiver";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String id = intent.getStringExtra(SmsSendQueue.EXTRA_MESSAGE_ID);
+        if (id == null) {
+            return;
+        }
+        int part = intent.getIntExtra(SmsSendQueue.EXTRA_PART, 0);
+        if (SmsSendQueue.ACTION_DELIVERED.equals(intent.getAction())) {
+            SmsSendQueue.get(context).onDeliveryReport(id, part, deliveryOutcome(intent));
+        } else {
+            SmsSendQueue.get(context).onSentReport(id, part, getResultCode());
+        }
+    }
+
+    /**
+     * Read the status out of the status report PDU the platform attached. Without one
+     * there is nothing to contradict the report, so it counts as delivered.
+     */
+    private static int deliveryOutcome(Intent intent) {
+        byte[] pdu = intent.getByteArrayExtra(SmsSendQueue.EXTRA_PDU);
+        if (pdu == null) {
+            return SmsSendQueue.DELIVERY_COMPLETE;
+        }
+        String format = intent.getStringExtra(SmsSendQueue.EXTRA_FORMAT);
+        try {
+            SmsMessage report = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                ? SmsMessage.createFromPdu(pdu, format)
+                : SmsMessage.createFromPdu(pdu);
+            if (report == null) {
+                return SmsSendQueue.DELIVERY_COMPLETE;
+            }
+            return SmsSendQueue.deliveryOutcome(report.getStatus(), format);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error reading delivery report: " + e.getMessage());
+            return SmsSendQueue.DELIVERY_COMPLETE;
+        }
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * BasePhone Stall Watchdog
+ * Catches main-thread and JavaBridge stalls with their stacks before they become ANRs
+ */
+package app.vercel.baselauncher.twa;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+
+/**
+ * A watchdog thread wakes every half threshold. For the main thread it keeps one ping
+ * posted to the main looper; a ping still pending after the threshold means the looper
+ * is stuck. For the JavaBridge thread it checks the bridge call in flight, which
+ * BasePhoneBridge reports around its blocking calls. Either way the stuck thread's stack
+ * is captured while it is still stuck, and the incident is completed with its full
+ * duration once the thread recovers. Recent incidents are kept in a ring, persisted so
+ * stalls that ended in an ANR kill are still there on the next launch.
+ */
+public class StallWatchdog {
+    private static final String TAG = "StallWatchdog";
+
+    static final String PREF_STALL_THRESHOLD_MS = "stallThresholdMs";
+    private static final long DEFAULT_THRESHOLD_MS = 1000;
+    private static final long MIN_THRESHOLD_MS = 100;
+    private static final int MAX_INCIDENTS = 20;
+    private static final int MAX_STACK_FRAMES = 40;
+    private static final String INCIDENTS_FILE = "stall_incidents.json";
+
+    private static StallWatchdog instance;
+
+    private final File incidentsFile;
+    private final SharedPreferences settings;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile long thresholdMs;
+
+    // Guarded by this
+    private final ArrayDeque<Incident> incidents = new ArrayDeque<>();
+    private Thread watchdogThread;
+    // Set under this when incidents change; the file is written outside it, under saveLock
+    private boolean dirty = false;
+    private final Object saveLock = new Object();
+
+    // Main looper ping; posted and answered across threads
+    private volatile long pingPostedAt = 0;
+    private volatile boolean pingAnswered = true;
+    private Incident mainIncident;
+    private long mainStalledMs;
+
+    // Bridge call in flight; the JavaBridge thread runs one call at a time
+    private volatile Thread bridgeThread;
+    private volatile String bridgeCall;
+    private volatile long bridgeCallStart = 0;
+    private Incident bridgeIncident;
+    private long bridgeStalledMs;
+
+    /**
+     * One stall; only the duration and the ongoing flag change once it is captured
+     */
+    private static final class Incident {
+        final String thread;
+        final long timestamp;
+        final String bridgeCall;
+        final String[] stack;
+        long durationMs;
+        boolean ongoing;
+        boolean killed;
+
+        Incident(String thread, long timestamp, long durationMs, String bridgeCall, String[] stack) {
+            this.thread = thread;
+            this.timestamp = timestamp;
+            this.durationMs = durationMs;
+            this.bridgeCall = bridgeCall;
+            this.stack = stack;
+        }
+    }
+
+    private final Runnable pingRunnable = new Runnable() {
+        @Override
+        public void run() {
+            pingAnswered = true;
+        }
+    };
+
+    public static synchronized StallWatchdog get(Context context) {
+        if (instance == null) {
+            instance = new StallWatchdog(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private StallWatchdog(Context context) {
+        this.incidentsFile = new File(context.getFilesDir(), INCIDENTS_FILE);
+        this.settings = context.getSharedPreferences(WebViewActivity.SETTINGS_PREFS, Context.MODE_PRIVATE);
+        this.thresholdMs = settings.getLong(PREF_STALL_THRESHOLD_MS, DEFAULT_THRESHOLD_MS);
+        load();
+    }
+
+    /**
+     * Start watching; idempotent
+     */
+    public synchronized void start() {
+        if (watchdogThread != null) {
+            return;
+        }
+        pingAnswered = true;
+        watchdogThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, TAG);
+        watchdogThread.setDaemon(true);
+        watchdogThread.start();
+    }
+
+    /**
+     * Stop watching. Open incidents are closed with the duration last observed, since
+     * nothing will be watching when their thread recovers.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (watchdogThread != null) {
+                watchdogThread.interrupt();
+                watchdogThread = null;
+            }
+            mainHandler.removeCallbacks(pingRunnable);
+            if (mainIncident != null) {
+                finish(mainIncident, mainStalledMs);
+                mainIncident = null;
+            }
+            if (bridgeIncident != null) {
+                finish(bridgeIncident, bridgeStalledMs);
+                bridgeIncident = null;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Report stalls longer than this many milliseconds
+     */
+    public void setThresholdMs(long ms) {
+        thresholdMs = Math.max(MIN_THRESHOLD_MS, ms);
+        settings.edit().putLong(PREF_STALL_THRESHOLD_MS, thresholdMs).apply();
+    }
+
+    /**
+     * Called on the JavaBridge thread as a bridge call starts
+     */
+    public void beginBridgeCall(String name) {
+        bridgeThread = Thread.currentThread();
+        bridgeCall = name;
+        bridgeCallStart = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Called on the JavaBridge thread as a bridge call returns
+     */
+    public void endBridgeCall() {
+        boolean finished = false;
+        // Cleared under the lock checkBridge captures under, so a check that read this call's
+        // start before it returned sees it gone and captures nothing
+        synchronized (this) {
+            long start = bridgeCallStart;
+            bridgeCallStart = 0;
+            bridgeCall = null;
+            if (bridgeIncident != null) {
+                finish(bridgeIncident, SystemClock.uptimeMillis() - start);
+                bridgeIncident = null;
+                finished = true;
+            }
+        }
+        if (finished) {
+            flush();
+        }
+    }
+
+    /**
+     * Recent incidents, newest first, as a JSON array
+     */
+    public synchronized String getIncidentsJson() {
+        return serialize();
+    }
+
+    public void clear() {
+        synchronized (this) {
+            incidents.clear();
+            dirty = true;
+        }
+        flush();
+    }
+
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("StallWatchdog: threshold " + thresholdMs + "ms, " + incidents.size() + " incidents");
+        for (Incident incident : incidents) {
+            writer.print(prefix);
+            writer.println("  " + incident.thread
+                + " " + incident.durationMs + "ms"
+                + (incident.ongoing ? " (ongoing)" : "")
+                + (incident.killed ? " (killed)" : "")
+                + " at " + incident.timestamp
+                + (incident.bridgeCall != null ? " bridgeCall=" + incident.bridgeCall : ""));
+            for (int i = 0; i < Math.min(incident.stack.length, 8); i++) {
+                writer.print(prefix);
+                writer.println("      at " + incident.stack[i]);
+            }
+        }
+    }
+
+    private void watch() {
+        Thread mainThread = Looper.getMainLooper().getThread();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long threshold = thresholdMs;
+                long now = SystemClock.uptimeMillis();
+                checkMain(mainThread, now, threshold);
+                checkBridge(now, threshold);
+                Thread.sleep(Math.max(50, threshold / 2));
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        }
+    }
+
+    private void checkMain(Thread mainThread, long now, long threshold) {
+        if (pingAnswered) {
+            synchronized (this) {
+                if (mainIncident != null) {
+                    // The looper recovered; the ping's age is how long it was stuck
+                    finish(mainIncident, now - pingPostedAt);
+                    mainIncident = null;
+                }
+            }
+            flush();
+            pingAnswered = false;
+            pingPostedAt = now;
+            mainHandler.post(pingRunnable);
+            return;
+        }
+        long stalled = now - pingPostedAt;
+        synchronized (this) {
+            mainStalledMs = stalled;
+            if (stalled >= threshold && mainIncident == null) {
+                mainIncident = capture("main", mainThread, stalled, bridgeCall);
+                Log.w(TAG, "Main thread stalled for " + stalled + "ms");
+            }
+        }
+        // Saved while still stuck, in case the system kills us for it
+        flush();
+    }
+
+    private void checkBridge(long now, long threshold) {
+        long start = bridgeCallStart;
+        Thread thread = bridgeThread;
+        if (start == 0 || thread == null) {
+            return;
+        }
+        long stalled = now - start;
+        synchronized (this) {
+            // The call may have returned since start was read; endBridgeCall clears it under
+            // this lock, so a mismatch means there is nothing left to capture
+            if (bridgeCallStart != start) {
+                return;
+            }
+            bridgeStalledMs = stalled;
+            if (stalled >= threshold && bridgeIncident == null) {
+                String call = bridgeCall;
+                bridgeIncident = capture("bridge", thread, stalled, call);
+                Log.w(TAG, "Bridge call " + call + " stalled for " + stalled + "ms");
+            }
+        }
+        flush();
+    }
+
+    // Caller holds the lock
+    private Incident capture(String threadName, Thread thread, long stalledMs, String call) {
+        StackTraceElement[] frames = thread.getStackTrace();
+        String[] stack = new String[Math.min(frames.length, MAX_STACK_FRAMES)];
+        for (int i = 0; i < stack.length; i++) {
+            stack[i] = frames[i].toString();
+        }
+        Incident incident = new Incident(threadName, System.currentTimeMillis() - stalledMs,
+            stalledMs, call, stack);
+        incident.ongoing = true;
+        incidents.addFirst(incident);
+        while (incidents.size() > MAX_INCIDENTS) {
+            incidents.removeLast();
+        }
+        dirty = true;
+        return incident;
+    }
+
+    // Caller holds the lock
+    private void finish(Incident incident, long durationMs) {
+        incident.durationMs = Math.max(incident.durationMs, durationMs);
+        incident.ongoing = false;
+        dirty = true;
+    }
+
+    // Caller holds the lock
+    private String serialize() {
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        try {
+            out.beginArray();
+            for (Incident incident : incidents) {
+                out.beginObject()
+                    .name("thread").value(incident.thread)
+                    .name("timestamp").value(incident.timestamp)
+                    .name("durationMs").value(incident.durationMs)
+                    .name("ongoing").value(incident.ongoing);
+                if (incident.killed) {
+                    out.name("killed").value(true);
+                }
+                if (incident.bridgeCall != null) {
+                    out.name("bridgeCall").value(incident.bridgeCall);
+                }
+                out.name("stack").beginArray();
+                for (String frame : incident.stack) {
+                    out.value(frame);
+                }
+                out.endArray().endObject();
+            }
+            out.endArray();
+            return out.finish();
+        } catch (RuntimeException e) {
+            out.reset();
+            throw e;
+        }
+    }
+
+    /**
+     * Write the incidents if they changed. Called without holding this, so a bridge call
+     * ending never waits on the file; incidents are rare, so writing on the watchdog or
+     * bridge thread is fine.
+     */
+    private void flush() {
+        synchronized (saveLock) {
+            String json;
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                dirty = false;
+                json = serialize();
+            }
+            write(json);
+        }
+    }
+
+    // Caller holds saveLock, so writes land in the order they were serialized
+    private void write(String json) {
+        File tmp = new File(incidentsFile.getPath() + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(json.getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(incidentsFile)) {
+                Log.e(TAG, "Error saving stall incidents: rename failed");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving stall incidents: " + e.getMessage());
+        }
+    }
+
+    private synchronized void load() {
+        if (!incidentsFile.exists()) {
+            return;
+        }
+        try {
+            FileInputStream in = new FileInputStream(incidentsFile);
+            byte[] bytes;
+            try {
+                bytes = new byte[(int) incidentsFile.length()];
+                int read = 0;
+                while (read < bytes.length) {
+                    int n = in.read(bytes, read, bytes.length - read);
+                    if (n < 0) {
+                        break;
+                    }
+                    read += n;
+                }
+            } finally {
+                in.close();
+            }
+            JSONArray array = new JSONArray(new String(bytes, "UTF-8"));
+            for (int i = 0; i < array.length() && i < MAX_INCIDENTS; i++) {
+                JSONObject json = array.getJSONObject(i);
+                JSONArray frames = json.optJSONArray("stack");
+                String[] stack = new String[frames != null ? frames.length() : 0];
+                for (int f = 0; f < stack.length; f++) {
+                    stack[f] = frames.optString(f);
+                }
+                Incident incident = new Incident(json.optString("thread"), json.optLong("timestamp"),
+                    json.optLong("durationMs"),
+                    json.has("bridgeCall") ? json.optString("bridgeCall") : null, stack);
+                // Still ongoing when the process died: the stall ended in a kill
+                incident.killed = json.optBoolean("killed") || json.optBoolean("ongoing");
+                incidents.addLast(incident);
+            }
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Error loading stall incidents: " + e.getMessage());
+        }
+    }
+}
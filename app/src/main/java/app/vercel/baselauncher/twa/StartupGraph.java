@@ -0,0 +1,268 @@
+/*
+ * BasePhone Startup Graph
+ * Runs startup work in dependency order at the point in cold start where it belongs
+ */
+package app.vercel.baselauncher.twa;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Tasks are added in Application.onCreate, then {@link #start} runs each priority in turn:
+ * BEFORE_FIRST_FRAME immediately, AFTER_FIRST_FRAME once the first activity has drawn,
+ * and IDLE when the main looper next goes idle after that. A process started for a
+ * receiver, job or service never shows an activity, so it runs the deferred tasks after
+ * {@link #NO_ACTIVITY_TIMEOUT_MS} instead. A task's dependencies always finish first, even
+ * if they have a later priority, and each task logs how long it took.
+ */
+public class StartupGraph {
+    private static final String TAG = "StartupGraph";
+
+    // Long enough that a cold start's first activity is always resumed by then
+    static final long NO_ACTIVITY_TIMEOUT_MS = 5000;
+
+    public enum Priority {
+        BEFORE_FIRST_FRAME,
+        AFTER_FIRST_FRAME,
+        IDLE
+    }
+
+    /**
+     * One unit of startup work
+     */
+    public abstract static class Task {
+        final String name;
+        final Priority priority;
+        final boolean mainThread;
+        final List<String> dependencies;
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private boolean started = false;
+
+        /**
+         * @param mainThread run on the main thread; otherwise on the startup worker
+         */
+        public Task(String name, Priority priority, boolean mainThread, String... dependencies) {
+            this.name = name;
+            this.priority = priority;
+            this.mainThread = mainThread;
+            this.dependencies = Arrays.asList(dependencies);
+        }
+
+        protected abstract void run();
+    }
+
+    private final Map<String, Task> tasks = new LinkedHashMap<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final long startTime = SystemClock.uptimeMillis();
+    private ExecutorService worker;
+    private boolean firstFrameSeen = false;
+
+    public StartupGraph add(Task task) {
+        tasks.put(task.name, task);
+        return this;
+    }
+
+    /**
+     * Run BEFORE_FIRST_FRAME tasks now and schedule the rest around the first frame
+     */
+    public void start(final android.app.Application application) {
+        for (Task task : tasks.values()) {
+            for (String dependency : task.dependencies) {
+                if (!tasks.containsKey(dependency)) {
+                    throw new IllegalStateException(task.name + " depends on unknown task " + dependency);
+                }
+            }
+        }
+
+        runPriority(Priority.BEFORE_FIRST_FRAME);
+
+        final ActivityCallbacks callbacks = new ActivityCallbacks() {
+            @Override
+            public void onActivityResumed(Activity activity) {
+                if (firstFrameSeen) {
+                    return;
+                }
+                firstFrameSeen = true;
+                application.unregisterActivityLifecycleCallbacks(this);
+                // The frame callback fires before the frame is drawn; the post lands after it
+                Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                onFirstFrame();
+                            }
+                        });
+                    }
+                });
+            }
+        };
+        application.registerActivityLifecycleCallbacks(callbacks);
+
+        // Both run on the main thread, so whichever comes first wins
+        mainHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (firstFrameSeen) {
+                    return;
+                }
+                firstFrameSeen = true;
+                application.unregisterActivityLifecycleCallbacks(callbacks);
+                Log.d(TAG, "No activity after " + NO_ACTIVITY_TIMEOUT_MS + "ms");
+                runDeferred();
+            }
+        }, NO_ACTIVITY_TIMEOUT_MS);
+    }
+
+    private void onFirstFrame() {
+        Log.d(TAG, "First frame after " + (SystemClock.uptimeMillis() - startTime) + "ms");
+        runDeferred();
+    }
+
+    private void runDeferred() {
+        runPriority(Priority.AFTER_FIRST_FRAME);
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                runPriority(Priority.IDLE);
+                return false;
+            }
+        });
+    }
+
+    private void runPriority(Priority priority) {
+        List<Task> background = new ArrayList<>();
+        for (Task task : tasks.values()) {
+            if (task.priority != priority) {
+                continue;
+            }
+            if (task.mainThread) {
+                ensure(task);
+            } else {
+                background.add(task);
+            }
+        }
+        for (final Task task : background) {
+            getWorker().execute(new Runnable() {
+                @Override
+                public void run() {
+                    ensure(task);
+                }
+            });
+        }
+    }
+
+    /**
+     * Run a task's dependencies and then the task, or wait for whoever is already running it
+     */
+    private void ensure(final Task task) {
+        boolean runHere;
+        synchronized (task) {
+            runHere = !task.started;
+            task.started = true;
+        }
+        if (!runHere) {
+            await(task);
+            return;
+        }
+
+        for (String dependency : task.dependencies) {
+            ensure(tasks.get(dependency));
+        }
+
+        boolean onMain = Looper.myLooper() == Looper.getMainLooper();
+        if (task.mainThread && !onMain) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    execute(task);
+                }
+            });
+            await(task);
+        } else {
+            execute(task);
+        }
+    }
+
+    private void execute(Task task) {
+        long begin = SystemClock.uptimeMillis();
+        Trace.beginSection("startup:" + task.name);
+        try {
+            task.run();
+        } catch (Exception e) {
+            Log.e(TAG, "Error in startup task " + task.name + ": " + e.getMessage());
+        } finally {
+            Trace.endSection();
+            task.done.countDown();
+        }
+        Log.d(TAG, task.name + " (" + task.priority + ") took "
+            + (SystemClock.uptimeMillis() - begin) + "ms on " + Thread.currentThread().getName());
+    }
+
+    private void await(Task task) {
+        try {
+            task.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized ExecutorService getWorker() {
+        if (worker == null) {
+            worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return worker;
+    }
+
+    private abstract static class ActivityCallbacks implements android.app.Application.ActivityLifecycleCallbacks {
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+}
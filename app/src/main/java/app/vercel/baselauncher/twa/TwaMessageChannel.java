@@ -0,0 +1,276 @@
+/*
+ * BasePhone TWA Message Channel
+ * App list, contact search and app launch for the page over the Custom Tabs postMessage channel
+ */
+package app.vercel.baselauncher.twa;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import androidx.browser.customtabs.CustomTabsCallback;
+import androidx.browser.customtabs.CustomTabsClient;
+import androidx.browser.customtabs.CustomTabsService;
+import androidx.browser.customtabs.CustomTabsSession;
+
+import com.google.androidbrowserhelper.trusted.QualityEnforcer;
+import com.google.androidbrowserhelper.trusted.TwaLauncher;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * In TWA mode there is no JavaScript interface, so the page reaches these through the port
+ * the browser hands it with the first message. Requests are {id, method, args}; replies are
+ * {id, result} or {id, error}, with results in the same shape as the BasePhoneBridge method
+ * of the same name.
+ */
+public class TwaMessageChannel {
+    private static final String TAG = "TwaMessageChannel";
+
+    static final String METHOD_GET_INSTALLED_APPS = "getInstalledApps";
+    static final String METHOD_SEARCH_CONTACTS = "searchContacts";
+    static final String METHOD_LAUNCH_APP = "launchApp";
+
+    private static TwaMessageChannel instance;
+
+    private final Context context;
+    private final Uri origin;
+    private final Handler worker;
+
+    // Guarded by this
+    private CustomTabsSession session;
+    private boolean channelReady = false;
+
+    public static synchronized TwaMessageChannel get(Context context) {
+        if (instance == null) {
+            instance = new TwaMessageChannel(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private TwaMessageChannel(Context context) {
+        this.context = context;
+        Uri launchUrl = Uri.parse(context.getString(R.string.launchUrl));
+        this.origin = new Uri.Builder()
+            .scheme(launchUrl.getScheme())
+            .authority(launchUrl.getAuthority())
+            .build();
+
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        this.worker = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Open our handle on the TWA's session. A session created with the same id by the same
+     * app is the same session in the browser, and the last callback registered receives its
+     * events, so this callback and the launcher's both wrap the quality enforcer.
+     */
+    void attach(CustomTabsClient client) {
+        CustomTabsSession attached = client.newSession(wrap(new QualityEnforcer()),
+            TwaLauncher.DEFAULT_SESSION_ID);
+        synchronized (this) {
+            session = attached;
+            channelReady = false;
+        }
+    }
+
+    void detach() {
+        synchronized (this) {
+            session = null;
+            channelReady = false;
+        }
+    }
+
+    /**
+     * Forward every event to the delegate and serve the channel on top of it
+     */
+    public CustomTabsCallback wrap(final CustomTabsCallback delegate) {
+        return new CustomTabsCallback() {
+            @Override
+            public void onNavigationEvent(int navigationEvent, Bundle extras) {
+                delegate.onNavigationEvent(navigationEvent, extras);
+                if (navigationEvent == NAVIGATION_FINISHED) {
+                    requestChannel();
+                }
+            }
+
+            @Override
+            public void extraCallback(String callbackName, Bundle args) {
+                delegate.extraCallback(callbackName, args);
+            }
+
+            @Override
+            public void onRelationshipValidationResult(int relation, Uri requestedOrigin,
+                    boolean result, Bundle extras) {
+                delegate.onRelationshipValidationResult(relation, requestedOrigin, result, extras);
+            }
+
+            @Override
+            public void onMessageChannelReady(Bundle extras) {
+                delegate.onMessageChannelReady(extras);
+                onChannelReady();
+            }
+
+            @Override
+            public void onPostMessage(String message, Bundle extras) {
+                delegate.onPostMessage(message, extras);
+                onMessage(message);
+            }
+        };
+    }
+
+    /**
+     * Each document gets its own port, so every finished navigation asks for a new channel
+     */
+    private void requestChannel() {
+        CustomTabsSession current;
+        synchronized (this) {
+            current = session;
+            channelReady = false;
+        }
+        if (current == null) {
+            return;
+        }
+        try {
+            // The browser checks the origin against the site's Digital Asset Links first
+            if (!current.requestPostMessageChannel(origin)) {
+                Log.w(TAG, "postMessage channel refused for " + origin);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error requesting postMessage channel: " + e.getMessage());
+        }
+    }
+
+    private void onChannelReady() {
+        synchronized (this) {
+            channelReady = true;
+        }
+        // The page receives the port with the first message
+        send("{\"type\":\"ready\"}");
+    }
+
+    private void onMessage(final String message) {
+        // Callbacks arrive on the main thread; contact search and the app list hit providers
+        worker.post(new Runnable() {
+            @Override
+            public void run() {
+                String reply = respond(message);
+                if (reply != null) {
+                    send(reply);
+                }
+            }
+        });
+    }
+
+    /**
+     * Build the reply to one request, or null if the message isn't a request
+     */
+    String respond(String message) {
+        long id;
+        String method;
+        JSONObject args;
+        try {
+            JSONObject request = new JSONObject(message);
+            if (!request.has("id") || !request.has("method")) {
+                return null;
+            }
+            id = request.getLong("id");
+            method = request.getString("method");
+            args = request.optJSONObject("args");
+        } catch (JSONException e) {
+            Log.w(TAG, "Ignoring malformed message: " + e.getMessage());
+            return null;
+        }
+        if (args == null) {
+            args = new JSONObject();
+        }
+
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        try {
+            out.beginObject().name("id").value(id);
+            if (METHOD_GET_INSTALLED_APPS.equals(method)) {
+                out.name("result").rawValue(InstalledAppsCache.get(context).getJson());
+            } else if (METHOD_SEARCH_CONTACTS.equals(method)) {
+                // No UI to prompt from here; the page falls back to asking in WebView mode
+                if (!hasContactsPermission()) {
+                    out.name("error").value("READ_CONTACTS not granted");
+                } else {
+                    out.name("result");
+                    BasePhoneBridge.writeContactSearch(context.getContentResolver(),
+                        args.optString("query", ""), out);
+                }
+            } else if (METHOD_LAUNCH_APP.equals(method)) {
+                out.name("result").value(launchApp(args.optString("packageName", null)));
+            } else {
+                out.name("error").value("Unknown method: " + method);
+            }
+            out.endObject();
+            return out.finish();
+        } catch (Exception e) {
+            Log.e(TAG, "Error handling " + method + ": " + e.getMessage());
+            out.reset();
+            return errorReply(id, e.getMessage());
+        }
+    }
+
+    private static String errorReply(long id, String error) {
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        try {
+            out.beginObject()
+                .name("id").value(id)
+                .name("error").value(error != null ? error : "Error")
+                .endObject();
+            return out.finish();
+        } catch (RuntimeException e) {
+            out.reset();
+            throw e;
+        }
+    }
+
+    private boolean hasContactsPermission() {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.M
+            || context.checkSelfPermission(Manifest.permission.READ_CONTACTS)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private boolean launchApp(String packageName) {
+        if (packageName == null) {
+            return false;
+        }
+        Intent launchIntent = context.getPackageManager().getLaunchIntentForPackage(packageName);
+        if (launchIntent == null) {
+            Log.w(TAG, "App not installed: " + packageName);
+            return false;
+        }
+        launchIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        context.startActivity(launchIntent);
+        return true;
+    }
+
+    private void send(String message) {
+        CustomTabsSession current;
+        synchronized (this) {
+            current = channelReady ? session : null;
+        }
+        if (current == null) {
+            return;
+        }
+        try {
+            int result = current.postMessage(message, null);
+            if (result != CustomTabsService.RESULT_SUCCESS) {
+                Log.w(TAG, "postMessage failed: " + result);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error posting message: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,536 @@
+/*
+ * BasePhone Wallet RPC Client
+ * Batched, cached JSON-RPC reads of wallet balances from the Base RPC endpoint
+ */
+package app.vercel.baselauncher.twa;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Balances are read in one JSON-RPC batch pinned to a block number, so a snapshot is
+ * consistent and never needs re-fetching while the chain hasn't moved. The latest block
+ * number is itself cached for one block time. Identical requests that overlap share one
+ * network round trip, and the last snapshot per wallet survives restarts.
+ *
+ * The endpoint is configurable, so it can be pointed at a local stand-in node
+ * (e.g. anvil behind "adb reverse tcp:8545 tcp:8545" and http://127.0.0.1:8545). Plain
+ * HTTP is only accepted in debug builds, which also carry the matching cleartext config.
+ */
+public class WalletRpcClient {
+    private static final String TAG = "WalletRpcClient";
+
+    public static final String DEFAULT_ENDPOINT = "https://mainnet.base.org";
+    static final String PREF_RPC_ENDPOINT = "rpcEndpoint";
+    private static final String CACHE_PREFS = "basephone_wallet_rpc";
+
+    // Base produces a block every 2 seconds
+    private static final long BLOCK_TIME_MS = 2000;
+    // Even on a new block, don't re-read balances more often than this
+    private static final long MIN_BALANCE_AGE_MS = 10000;
+    private static final long VISIBLE_REFRESH_MS = 15000;
+    // Stop refreshing a wallet the page hasn't asked about for this long
+    private static final long WATCH_EXPIRY_MS = 5 * 60 * 1000;
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 15000;
+    private static final int MAX_BODY_BYTES = 256 * 1024;
+    // balanceOf(address)
+    private static final String BALANCE_OF_SELECTOR = "0x70a08231";
+
+    /**
+     * Receives every refreshed snapshot, on the RPC worker thread
+     */
+    public interface Listener {
+        void onBalances(String snapshotJson);
+    }
+
+    static class Snapshot {
+        final String address;
+        final long blockNumber;
+        final long fetchedAt;
+        final String eth;
+        final Map<String, String> tokens;
+        // Uptime of the last time this snapshot was confirmed current
+        volatile long checkedAt;
+
+        Snapshot(String address, long blockNumber, long fetchedAt, String eth, Map<String, String> tokens) {
+            this.address = address;
+            this.blockNumber = blockNumber;
+            this.fetchedAt = fetchedAt;
+            this.eth = eth;
+            this.tokens = tokens;
+        }
+    }
+
+    static class Watch {
+        final String address;
+        final List<String> tokens;
+        // Uptime of the page's last request for this wallet
+        volatile long requestedAt;
+
+        Watch(String address, List<String> tokens) {
+            this.address = address;
+            this.tokens = tokens;
+        }
+    }
+
+    private static WalletRpcClient instance;
+
+    private final SharedPreferences settings;
+    private final SharedPreferences cachePrefs;
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor();
+
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    // Keyed by generation and cache key, so a refresh from before an endpoint change
+    // doesn't hold back one for the new endpoint
+    private final Map<String, Future<?>> inFlight = new ConcurrentHashMap<>();
+    // Wallet and token sets the page asked for recently; refreshed in the background
+    private final Map<String, Watch> watched = new ConcurrentHashMap<>();
+    private final boolean debuggable;
+
+    // Bumped by setEndpoint; results fetched under an older generation are dropped
+    private volatile int generation = 0;
+    private volatile long latestBlock = -1;
+    private volatile long latestBlockCheckedAt = 0;
+    private volatile Listener listener;
+    private ScheduledFuture<?> visibleRefresh;
+
+    public static synchronized WalletRpcClient get(Context context) {
+        if (instance == null) {
+            instance = new WalletRpcClient(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    WalletRpcClient(Context context) {
+        this.debuggable = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        this.settings = context.getSharedPreferences(WebViewActivity.SETTINGS_PREFS, Context.MODE_PRIVATE);
+        this.cachePrefs = context.getSharedPreferences(CACHE_PREFS, Context.MODE_PRIVATE);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public String getEndpoint() {
+        String endpoint = settings.getString(PREF_RPC_ENDPOINT, DEFAULT_ENDPOINT);
+        return isAllowedEndpoint(endpoint) ? endpoint : DEFAULT_ENDPOINT;
+    }
+
+    /**
+     * Point the client at another RPC endpoint; null or empty restores the default.
+     *
+     * @return false, leaving the endpoint unchanged, unless it is https (or http in a debug build)
+     */
+    public synchronized boolean setEndpoint(String endpoint) {
+        SharedPreferences.Editor editor = settings.edit();
+        if (endpoint == null || endpoint.isEmpty()) {
+            editor.remove(PREF_RPC_ENDPOINT);
+        } else if (isAllowedEndpoint(endpoint)) {
+            editor.putString(PREF_RPC_ENDPOINT, endpoint);
+        } else {
+            Log.w(TAG, "Rejected RPC endpoint: " + endpoint);
+            return false;
+        }
+        editor.apply();
+        // Cached data came from the old chain, and so will anything still in flight
+        generation++;
+        snapshots.clear();
+        cachePrefs.edit().clear().apply();
+        latestBlock = -1;
+        latestBlockCheckedAt = 0;
+        return true;
+    }
+
+    private boolean isAllowedEndpoint(String endpoint) {
+        try {
+            String scheme = new URL(endpoint).getProtocol();
+            return "https".equals(scheme) || (debuggable && "http".equals(scheme));
+        } catch (MalformedURLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Last known balances for a wallet, without waiting for the network. Starts a refresh
+     * when they may be out of date; the result arrives through the listener.
+     *
+     * @return {address, blockNumber, fetchedAt, ageMs, stale, eth, tokens: {contract: hex}},
+     *         or {} if nothing is cached yet
+     */
+    public String getBalances(String address, List<String> tokenContracts) {
+        final String key = cacheKey(address, tokenContracts);
+        final List<String> tokens = normalizeTokens(tokenContracts);
+        Watch watch = watched.get(key);
+        if (watch == null) {
+            watch = new Watch(address.toLowerCase(Locale.US), tokens);
+            watched.put(key, watch);
+        }
+        watch.requestedAt = SystemClock.uptimeMillis();
+
+        Snapshot snapshot = snapshots.get(key);
+        if (snapshot == null) {
+            snapshot = loadPersisted(key);
+        }
+        boolean stale = snapshot == null || isStale(snapshot);
+        if (stale) {
+            refreshAsync(key, address.toLowerCase(Locale.US), tokens);
+        }
+        return snapshot == null ? "{}" : toJson(snapshot, stale);
+    }
+
+    /**
+     * Refresh watched wallets periodically while the launcher is in the foreground
+     */
+    public synchronized void setVisible(boolean visible) {
+        if (visible && visibleRefresh == null) {
+            visibleRefresh = worker.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    pruneWatched();
+                    for (Map.Entry<String, Watch> entry : watched.entrySet()) {
+                        refreshAsync(entry.getKey(), entry.getValue().address, entry.getValue().tokens);
+                    }
+                }
+            }, VISIBLE_REFRESH_MS, VISIBLE_REFRESH_MS, TimeUnit.MILLISECONDS);
+        } else if (!visible && visibleRefresh != null) {
+            visibleRefresh.cancel(false);
+            visibleRefresh = null;
+        }
+    }
+
+    /**
+     * Forget wallets the page stopped asking about, e.g. after switching accounts
+     */
+    void pruneWatched() {
+        long now = SystemClock.uptimeMillis();
+        Iterator<Watch> it = watched.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().requestedAt > WATCH_EXPIRY_MS) {
+                it.remove();
+            }
+        }
+    }
+
+    int watchedCount() {
+        return watched.size();
+    }
+
+    private boolean isStale(Snapshot snapshot) {
+        long now = SystemClock.uptimeMillis();
+        return snapshot.checkedAt == 0 || now - snapshot.checkedAt > MIN_BALANCE_AGE_MS;
+    }
+
+    /**
+     * Start a refresh unless an identical one is already running
+     */
+    private void refreshAsync(final String key, final String address, final List<String> tokens) {
+        final int requestGeneration = generation;
+        final String flightKey = requestGeneration + ":" + key;
+        FutureTask<Void> task = new FutureTask<>(new Callable<Void>() {
+            @Override
+            public Void call() {
+                try {
+                    Snapshot snapshot = refresh(key, address, tokens, requestGeneration);
+                    Listener current = listener;
+                    if (snapshot != null && current != null) {
+                        current.onBalances(toJson(snapshot, false));
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "Error refreshing balances: " + e.getMessage());
+                } finally {
+                    inFlight.remove(flightKey);
+                }
+                return null;
+            }
+        });
+        if (inFlight.putIfAbsent(flightKey, task) == null) {
+            worker.execute(task);
+        }
+    }
+
+    /**
+     * Blocking refresh. Only re-reads balances when the chain has moved past the snapshot.
+     *
+     * @return the current snapshot, or null if the endpoint changed since requestGeneration
+     */
+    Snapshot refresh(String key, String address, List<String> tokens, int requestGeneration)
+            throws IOException, JSONException {
+        long block = getLatestBlock(requestGeneration);
+        if (block < 0) {
+            return null;
+        }
+        Snapshot previous = snapshots.get(key);
+        if (previous == null) {
+            previous = loadPersisted(key);
+        }
+        if (previous != null && previous.blockNumber == block) {
+            // Chain hasn't moved, so neither have the balances
+            previous.checkedAt = SystemClock.uptimeMillis();
+            return previous;
+        }
+
+        String blockTag = "0x" + Long.toHexString(block);
+        JSONArray batch = new JSONArray();
+        batch.put(request(0, "eth_getBalance", new JSONArray().put(address).put(blockTag)));
+        for (int i = 0; i < tokens.size(); i++) {
+            JSONObject call = new JSONObject()
+                .put("to", tokens.get(i))
+                .put("data", BALANCE_OF_SELECTOR + "000000000000000000000000" + address.substring(2));
+            batch.put(request(i + 1, "eth_call", new JSONArray().put(call).put(blockTag)));
+        }
+
+        Map<Integer, String> results = postBatch(batch);
+        String eth = results.get(0);
+        if (eth == null) {
+            throw new IOException("eth_getBalance failed");
+        }
+        Map<String, String> tokenBalances = new LinkedHashMap<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String value = results.get(i + 1);
+            if (value == null && previous != null) {
+                // Keep the last good value for a token whose call failed
+                value = previous.tokens.get(tokens.get(i));
+            }
+            if (value != null) {
+                tokenBalances.put(tokens.get(i), value);
+            }
+        }
+
+        Snapshot snapshot = new Snapshot(address, block, System.currentTimeMillis(), eth, tokenBalances);
+        snapshot.checkedAt = SystemClock.uptimeMillis();
+        synchronized (this) {
+            // Checked under the lock setEndpoint clears the caches with
+            if (generation != requestGeneration) {
+                return null;
+            }
+            snapshots.put(key, snapshot);
+            persist(key, snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Latest block number, cached for one block time
+     *
+     * @return the block number, or -1 if the endpoint changed since requestGeneration
+     */
+    long getLatestBlock(int requestGeneration) throws IOException, JSONException {
+        long now = SystemClock.uptimeMillis();
+        if (latestBlock >= 0 && now - latestBlockCheckedAt < BLOCK_TIME_MS) {
+            return latestBlock;
+        }
+        JSONArray batch = new JSONArray().put(request(0, "eth_blockNumber", new JSONArray()));
+        String result = postBatch(batch).get(0);
+        if (result == null) {
+            throw new IOException("eth_blockNumber failed");
+        }
+        long block = Long.parseLong(result.substring(2), 16);
+        synchronized (this) {
+            if (generation != requestGeneration) {
+                return -1;
+            }
+            latestBlock = block;
+            latestBlockCheckedAt = now;
+        }
+        return block;
+    }
+
+    private static JSONObject request(int id, String method, JSONArray params) throws JSONException {
+        return new JSONObject()
+            .put("jsonrpc", "2.0")
+            .put("id", id)
+            .put("method", method)
+            .put("params", params);
+    }
+
+    /**
+     * Send a batch and map results by id. Failed items are left out.
+     */
+    Map<Integer, String> postBatch(JSONArray batch) throws IOException, JSONException {
+        String body = post(getEndpoint(), batch.toString());
+        Object parsed = new JSONTokener(body).nextValue();
+        JSONArray responses;
+        if (parsed instanceof JSONArray) {
+            responses = (JSONArray) parsed;
+        } else if (parsed instanceof JSONObject && batch.length() == 1) {
+            // Some nodes answer a one-item batch with a bare object
+            responses = new JSONArray().put(parsed);
+        } else {
+            throw new IOException("Unexpected batch response");
+        }
+
+        Map<Integer, String> results = new HashMap<>();
+        for (int i = 0; i < responses.length(); i++) {
+            JSONObject response = responses.getJSONObject(i);
+            if (response.has("error")) {
+                Log.w(TAG, "RPC error for id " + response.opt("id") + ": " + response.opt("error"));
+                continue;
+            }
+            String result = response.optString("result", null);
+            if (result != null && result.startsWith("0x")) {
+                results.put(response.getInt("id"), result);
+            }
+        }
+        return results;
+    }
+
+    private String post(String endpoint, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(endpoint).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setRequestProperty("Accept", "application/json");
+        try {
+            byte[] payload = body.getBytes("UTF-8");
+            connection.setFixedLengthStreamingMode(payload.length);
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(payload);
+            } finally {
+                out.close();
+            }
+
+            int status = connection.getResponseCode();
+            if (status < 200 || status >= 300) {
+                throw new IOException("HTTP " + status);
+            }
+            InputStream in = connection.getInputStream();
+            try {
+                ByteArrayOutputStream response = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    response.write(buffer, 0, read);
+                    if (response.size() > MAX_BODY_BYTES) {
+                        throw new IOException("Response too large");
+                    }
+                }
+                return response.toString("UTF-8");
+            } finally {
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static String cacheKey(String address, List<String> tokenContracts) {
+        StringBuilder key = new StringBuilder(address.toLowerCase(Locale.US)).append('|');
+        for (String token : normalizeTokens(tokenContracts)) {
+            key.append(token).append(',');
+        }
+        return key.toString();
+    }
+
+    private static List<String> normalizeTokens(List<String> tokenContracts) {
+        List<String> tokens = new ArrayList<>();
+        if (tokenContracts != null) {
+            for (String token : tokenContracts) {
+                String normalized = token.toLowerCase(Locale.US);
+                if (!tokens.contains(normalized)) {
+                    tokens.add(normalized);
+                }
+            }
+        }
+        Collections.sort(tokens);
+        return tokens;
+    }
+
+    private String toJson(Snapshot snapshot, boolean stale) {
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        try {
+            out.beginObject()
+                .name("address").value(snapshot.address)
+                .name("blockNumber").value(snapshot.blockNumber)
+                .name("fetchedAt").value(snapshot.fetchedAt)
+                .name("ageMs").value(System.currentTimeMillis() - snapshot.fetchedAt)
+                .name("stale").value(stale)
+                .name("eth").value(snapshot.eth)
+                .name("tokens").beginObject();
+            for (Map.Entry<String, String> token : snapshot.tokens.entrySet()) {
+                out.name(token.getKey()).value(token.getValue());
+            }
+            out.endObject().endObject();
+            return out.finish();
+        } catch (RuntimeException e) {
+            out.reset();
+            throw e;
+        }
+    }
+
+    private void persist(String key, Snapshot snapshot) {
+        try {
+            JSONObject json = new JSONObject()
+                .put("address", snapshot.address)
+                .put("blockNumber", snapshot.blockNumber)
+                .put("fetchedAt", snapshot.fetchedAt)
+                .put("eth", snapshot.eth)
+                .put("tokens", new JSONObject(snapshot.tokens));
+            cachePrefs.edit().putString(key, json.toString()).apply();
+        } catch (JSONException e) {
+            Log.e(TAG, "Error saving balances: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Snapshot from a previous launch; shown immediately but always treated as stale
+     */
+    private Snapshot loadPersisted(String key) {
+        String stored = cachePrefs.getString(key, null);
+        if (stored == null) {
+            return null;
+        }
+        try {
+            JSONObject json = new JSONObject(stored);
+            JSONObject tokensJson = json.getJSONObject("tokens");
+            Map<String, String> tokens = new LinkedHashMap<>();
+            Iterator<String> keys = tokensJson.keys();
+            while (keys.hasNext()) {
+                String token = keys.next();
+                tokens.put(token, tokensJson.getString(token));
+            }
+            Snapshot snapshot = new Snapshot(json.getString("address"), json.getLong("blockNumber"),
+                json.getLong("fetchedAt"), json.getString("eth"), tokens);
+            snapshots.putIfAbsent(key, snapshot);
+            return snapshots.get(key);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error loading saved balances: " + e.getMessage());
+            return null;
+        }
+    }
+}
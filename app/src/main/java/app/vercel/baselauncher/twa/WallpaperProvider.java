@@ -0,0 +1,358 @@
+/*
+ * BasePhone Wallpaper Provider
+ * The system wallpaper, scaled to the screen once and served to the page from disk
+ */
+package app.vercel.baselauncher.twa;
+
+import android.app.WallpaperColors;
+import android.app.WallpaperManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.WindowManager;
+import android.webkit.WebResourceResponse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The wallpaper is decoded on a worker thread straight to screen size: a region decoder
+ * reads only the centered, screen-shaped crop of the file, subsampled by a power of two,
+ * so the full-resolution image is never in memory. The JPEG result is cached on disk
+ * with a version that changes whenever the wallpaper does, and requests for
+ * {@link #WALLPAPER_PATH} are served from that file.
+ */
+public class WallpaperProvider {
+    private static final String TAG = "WallpaperProvider";
+
+    static final String WALLPAPER_PATH = "/__basephone/wallpaper.jpg";
+    private static final String CACHE_FILE = "wallpaper_cache.jpg";
+    private static final String PREFS_NAME = "basephone_wallpaper";
+    private static final String PREF_VERSION = "version";
+    private static final String PREF_SIZE = "size";
+    private static final int JPEG_QUALITY = 90;
+
+    /**
+     * Told on the main thread when a new wallpaper has been cached, with its URL path,
+     * or null when there is no static wallpaper to show
+     */
+    public interface Listener {
+        void onWallpaperChanged(String url);
+    }
+
+    private static WallpaperProvider instance;
+
+    private final Context context;
+    private final File cacheFile;
+    private final SharedPreferences prefs;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    // The broadcast and the colors listener both fire for one change; decode once
+    private final AtomicBoolean refreshQueued = new AtomicBoolean(false);
+    private boolean observing = false;
+    private volatile Listener listener;
+
+    private final BroadcastReceiver wallpaperReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            refresh();
+        }
+    };
+
+    public static synchronized WallpaperProvider get(Context context) {
+        if (instance == null) {
+            instance = new WallpaperProvider(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private WallpaperProvider(Context context) {
+        this.context = context;
+        this.cacheFile = new File(context.getFilesDir(), CACHE_FILE);
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * URL path of the cached wallpaper with its version, or null if there is none yet.
+     * Starts a decode in the background when the cache is missing or the wrong size.
+     */
+    public String getUrl() {
+        startObserving();
+        if (cacheFile.exists() && screenSizeKey().equals(prefs.getString(PREF_SIZE, null))) {
+            return urlFor(prefs.getInt(PREF_VERSION, 0));
+        }
+        refresh();
+        return null;
+    }
+
+    /**
+     * Serve the cached wallpaper for an intercepted request, or null if the URL isn't it.
+     * Called on the WebView's IO thread.
+     */
+    public WebResourceResponse interceptWallpaper(Uri uri) {
+        if (!WALLPAPER_PATH.equals(uri.getPath())) {
+            return null;
+        }
+        try {
+            // Versioned URLs never change content, so the WebView may cache them
+            return new WebResourceResponse("image/jpeg", null, 200, "OK",
+                Collections.singletonMap("Cache-Control", "max-age=31536000"),
+                new FileInputStream(cacheFile));
+        } catch (IOException e) {
+            return new WebResourceResponse("image/jpeg", null, 404, "Not Found",
+                Collections.<String, String>emptyMap(), null);
+        }
+    }
+
+    /**
+     * Re-decode the wallpaper in the background and tell the listener
+     */
+    public void refresh() {
+        if (!refreshQueued.compareAndSet(false, true)) {
+            return;
+        }
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                refreshQueued.set(false);
+                final String url = decodeToCache() ? urlFor(prefs.getInt(PREF_VERSION, 0)) : null;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Listener current = listener;
+                        if (current != null) {
+                            current.onWallpaperChanged(url);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private synchronized void startObserving() {
+        if (observing) {
+            return;
+        }
+        observing = true;
+        // Deprecated on R+, but still the only signal below O_MR1
+        context.registerReceiver(wallpaperReceiver, new IntentFilter(Intent.ACTION_WALLPAPER_CHANGED));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            WallpaperManager.getInstance(context).addOnColorsChangedListener(
+                new WallpaperManager.OnColorsChangedListener() {
+                    @Override
+                    public void onColorsChanged(WallpaperColors colors, int which) {
+                        if ((which & WallpaperManager.FLAG_SYSTEM) != 0) {
+                            refresh();
+                        }
+                    }
+                }, mainHandler);
+        }
+    }
+
+    /**
+     * Decode the current static wallpaper at screen size into the cache file.
+     * Returns false for live wallpapers, or when the wallpaper can't be read.
+     */
+    private boolean decodeToCache() {
+        WallpaperManager manager = WallpaperManager.getInstance(context);
+        if (manager.getWallpaperInfo() != null) {
+            Log.d(TAG, "Live wallpaper set, nothing to serve");
+            cacheFile.delete();
+            return false;
+        }
+        DisplayMetrics screen = screenMetrics();
+        Bitmap bitmap = null;
+        try {
+            bitmap = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                ? decodeFromFile(manager, screen.widthPixels, screen.heightPixels)
+                : null;
+            if (bitmap == null) {
+                bitmap = decodeFromDrawable(manager, screen.widthPixels, screen.heightPixels);
+            }
+            if (bitmap == null) {
+                return false;
+            }
+            writeCache(bitmap);
+            prefs.edit()
+                .putInt(PREF_VERSION, prefs.getInt(PREF_VERSION, 0) + 1)
+                .putString(PREF_SIZE, screenSizeKey())
+                .apply();
+            Log.d(TAG, "Cached wallpaper at " + bitmap.getWidth() + "x" + bitmap.getHeight());
+            return true;
+        } catch (SecurityException e) {
+            // Reading the wallpaper needs storage access on O_MR1+
+            Log.w(TAG, "No permission to read wallpaper");
+            return false;
+        } catch (Exception e) {
+            Log.e(TAG, "Error decoding wallpaper: " + e.getMessage());
+            return false;
+        } finally {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+        }
+    }
+
+    /**
+     * Decode only the screen-shaped center of the wallpaper file, subsampled to about
+     * screen size
+     */
+    private Bitmap decodeFromFile(WallpaperManager manager, int screenWidth, int screenHeight) throws IOException {
+        ParcelFileDescriptor pfd = manager.getWallpaperFile(WallpaperManager.FLAG_SYSTEM);
+        if (pfd == null) {
+            // Default wallpaper; it has no file
+            return null;
+        }
+        try {
+            BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(pfd.getFileDescriptor(), false);
+            try {
+                Rect crop = centerCrop(decoder.getWidth(), decoder.getHeight(), screenWidth, screenHeight);
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = sampleSize(crop.width(), crop.height(), screenWidth, screenHeight);
+                Bitmap region = decoder.decodeRegion(crop, options);
+                return scaleTo(region, screenWidth, screenHeight);
+            } finally {
+                decoder.recycle();
+            }
+        } finally {
+            pfd.close();
+        }
+    }
+
+    /**
+     * The default wallpaper has no file, and below N there is no file access at all. The
+     * built-in one comes pre-cropped to screen size; otherwise the system decodes it.
+     */
+    private Bitmap decodeFromDrawable(WallpaperManager manager, int screenWidth, int screenHeight) {
+        Drawable drawable = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+            ? manager.getBuiltInDrawable(screenWidth, screenHeight, true, 0.5f, 0.5f)
+            : null;
+        if (drawable == null) {
+            drawable = manager.getDrawable();
+        }
+        if (drawable == null) {
+            return null;
+        }
+        if (drawable instanceof BitmapDrawable) {
+            Bitmap source = ((BitmapDrawable) drawable).getBitmap();
+            Rect crop = centerCrop(source.getWidth(), source.getHeight(), screenWidth, screenHeight);
+            Bitmap cropped = Bitmap.createBitmap(source, crop.left, crop.top, crop.width(), crop.height());
+            if (cropped != source) {
+                return scaleTo(cropped, screenWidth, screenHeight);
+            }
+            // A full-size crop hands back the drawable's own bitmap, which WallpaperManager
+            // keeps cached; the caller recycles what we return, so it must be a copy
+            if (source.getWidth() > screenWidth || source.getHeight() > screenHeight) {
+                return Bitmap.createScaledBitmap(source, screenWidth, screenHeight, true);
+            }
+            return source.copy(source.getConfig() != null ? source.getConfig() : Bitmap.Config.ARGB_8888, false);
+        }
+        Bitmap bitmap = Bitmap.createBitmap(screenWidth, screenHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, screenWidth, screenHeight);
+        drawable.draw(canvas);
+        return bitmap;
+    }
+
+    private void writeCache(Bitmap bitmap) throws IOException {
+        File tmp = new File(cacheFile.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(cacheFile)) {
+            throw new IOException("Could not replace wallpaper cache");
+        }
+    }
+
+    /**
+     * The largest centered rect of the source with the screen's aspect ratio
+     */
+    static Rect centerCrop(int sourceWidth, int sourceHeight, int screenWidth, int screenHeight) {
+        float screenAspect = (float) screenWidth / screenHeight;
+        int width = sourceWidth;
+        int height = Math.round(width / screenAspect);
+        if (height > sourceHeight) {
+            height = sourceHeight;
+            width = Math.round(height * screenAspect);
+        }
+        int left = (sourceWidth - width) / 2;
+        int top = (sourceHeight - height) / 2;
+        return new Rect(left, top, left + width, top + height);
+    }
+
+    /**
+     * Largest power of two that keeps the decoded crop at least screen size
+     */
+    static int sampleSize(int width, int height, int screenWidth, int screenHeight) {
+        int sample = 1;
+        while (width / (sample * 2) >= screenWidth && height / (sample * 2) >= screenHeight) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    /**
+     * Scale a bitmap we own down to at most width x height, recycling the original
+     */
+    private static Bitmap scaleTo(Bitmap bitmap, int width, int height) {
+        if (bitmap.getWidth() <= width && bitmap.getHeight() <= height) {
+            return bitmap;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    private DisplayMetrics screenMetrics() {
+        DisplayMetrics metrics = new DisplayMetrics();
+        WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        windowManager.getDefaultDisplay().getRealMetrics(metrics);
+        // Portrait size, so rotating doesn't invalidate the cache
+        if (metrics.widthPixels > metrics.heightPixels) {
+            int width = metrics.widthPixels;
+            metrics.widthPixels = metrics.heightPixels;
+            metrics.heightPixels = width;
+        }
+        return metrics;
+    }
+
+    private String screenSizeKey() {
+        DisplayMetrics screen = screenMetrics();
+        return screen.widthPixels + "x" + screen.heightPixels;
+    }
+
+    private static String urlFor(int version) {
+        return WALLPAPER_PATH + "?v=" + version;
+    }
+}
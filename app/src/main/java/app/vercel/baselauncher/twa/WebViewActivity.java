@@ -16,6 +16,7 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Message;
 import android.view.Gravity;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.Window;
@@ -23,6 +24,7 @@ import android.view.WindowManager;
 import android.webkit.CookieManager;
 import android.webkit.WebChromeClient;
 import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
@@ -33,16 +35,43 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.util.Log;
 
+import org.json.JSONObject;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 public class WebViewActivity extends Activity {
     private static final String TAG = "WebViewActivity";
     private WebView webView;
     private BasePhoneBridge bridge;
+    private NativeEventDispatcher dispatcher;
+    private HomeSnapshot homeSnapshot;
+    private JankMonitor jankMonitor;
+    private NativeAudioCapture audioCapture;
+    private LauncherWidgetHost widgetHost;
     private static final String URL = "https://baselauncher.vercel.app";
     
     // Auth popup dialog
     private Dialog authDialog;
     private WebView authWebView;
     
+    // Catches a popup's first navigation when auth runs in its own process
+    private static final long POPUP_CATCHER_TIMEOUT_MS = 10000;
+    private WebView popupCatcher;
+    private final Runnable popupCatcherTimeout = new Runnable() {
+        @Override
+        public void run() {
+            Log.w(TAG, "Popup never navigated, dropping it");
+            destroyPopupCatcher();
+        }
+    };
+    
     // Domains that need special handling for auth
     private static final String[] AUTH_DOMAINS = {
         "keys.coinbase.com",
@@ -51,6 +80,67 @@ public class WebViewActivity extends Activity {
         "accounts.google.com",
         "appleid.apple.com"
     };
+    
+    // Origins the auth popup may visit; the success handler only runs there
+    static final Set<String> AUTH_ORIGIN_RULES = new HashSet<>(Arrays.asList(
+        URL,
+        "https://coinbase.com",
+        "https://*.coinbase.com",
+        "https://accounts.google.com",
+        "https://appleid.apple.com"
+    ));
+    
+    // Helper to handle auth flows in the launcher page
+    private static final String AUTH_HELPER_JS =
+        "(function() {" +
+        "  if (window._authHelperInjected) return;" +
+        "  window._authHelperInjected = true;" +
+        "  " +
+        "  /* Listen for wallet connection events */" +
+        "  window.addEventListener('walletConnected', function(e) {" +
+        "    console.log('walletConnected event received');" +
+        "  });" +
+        "  " +
+        "  console.log('Auth helper injected - using in-app browser');" +
+        "})();";
+    
+    // Detects successful auth in the popup and hands the wallet address back
+    static final String AUTH_SUCCESS_HANDLER_JS =
+        "(function() {" +
+        "  if (window._authSuccessHandlerInjected) return;" +
+        "  window._authSuccessHandlerInjected = true;" +
+        "  " +
+        "  /* Watch for wallet address in localStorage */" +
+        "  var checkInterval = setInterval(function() {" +
+        "    var address = localStorage.getItem('baseAccount_address');" +
+        "    if (address && address.startsWith('0x')) {" +
+        "      console.log('Wallet connected:', address);" +
+        "      clearInterval(checkInterval);" +
+        "      /* Notify parent via URL */" +
+        "      window.location.href = 'basephone://auth?address=' + encodeURIComponent(address);" +
+        "    }" +
+        "  }, 500);" +
+        "  " +
+        "  /* Clear after 60 seconds */" +
+        "  setTimeout(function() { clearInterval(checkInterval); }, 60000);" +
+        "})();";
+    
+    // Paths the page opens without a reload; keep in sync with lib/routes.ts
+    private static final Set<String> CLIENT_ROUTES = new HashSet<>(Arrays.asList(
+        "/",
+        "/apps",
+        "/wallet",
+        "/dialer",
+        "/settings",
+        "/rewards"
+    ));
+    
+    // Settings shared with the bridge
+    static final String SETTINGS_PREFS = "basephone_settings";
+    static final String PREF_AUTH_IN_SEPARATE_PROCESS = "authInSeparateProcess";
+    
+    private DocumentStartScripts documentStartScripts;
+    private DocumentStartScripts authDocumentStartScripts;
 
     @SuppressLint("SetJavaScriptEnabled")
     @Override
@@ -80,12 +170,116 @@ public class WebViewActivity extends Activity {
         
         // Create WebView
         webView = new WebView(this);
-        setContentView(webView);
+        
+        // Cover the WebView with the last home screen until the page is ready
+        homeSnapshot = new HomeSnapshot(this, webView);
+        setContentView(homeSnapshot.createContentView());
+        
+        // All native-to-page messages go through one ready-aware queue
+        dispatcher = new NativeEventDispatcher(webView);
+        dispatcher.setPageReadyListener(new Runnable() {
+            @Override
+            public void run() {
+                homeSnapshot.onPageReady();
+            }
+        });
         
         // Create and attach JavaScript bridge
         bridge = new BasePhoneBridge(this, this);
+        bridge.setDispatcher(dispatcher);
+        jankMonitor = new JankMonitor(this);
+        bridge.setJankMonitor(jankMonitor);
+        audioCapture = new NativeAudioCapture(webView, URL);
+        audioCapture.setListener(new NativeAudioCapture.Listener() {
+            @Override
+            public void onCaptureError(String reason) {
+                JSONObject detail = new JSONObject();
+                try {
+                    detail.put("reason", reason);
+                } catch (org.json.JSONException e) {
+                    Log.e(TAG, "Error building audio error: " + e.getMessage());
+                }
+                dispatcher.dispatchEvent("nativeAudioError", detail);
+            }
+        });
+        bridge.setAudioCapture(audioCapture);
+        
+        // App widgets render off-screen; the page is told when a new frame can be fetched
+        widgetHost = new LauncherWidgetHost(this);
+        bridge.setWidgetHost(widgetHost);
+        widgetHost.setListener(new LauncherWidgetHost.Listener() {
+            @Override
+            public void onWidgetFrame(int appWidgetId, int version) {
+                Map<String, Integer> frame = Collections.singletonMap(String.valueOf(appWidgetId), version);
+                dispatcher.dispatchMergedEvent("widgetFrames", new JSONObject(frame));
+            }
+            
+            @Override
+            public void onWidgetAdded(int appWidgetId, String provider, boolean success) {
+                JSONObject detail = new JSONObject();
+                try {
+                    detail.put("id", appWidgetId);
+                    detail.put("provider", provider);
+                    detail.put("success", success);
+                } catch (org.json.JSONException e) {
+                    Log.e(TAG, "Error building widget event: " + e.getMessage());
+                }
+                dispatcher.dispatchEvent("widgetAdded", detail);
+            }
+        });
+        
+        // Refreshed wallet balances are pushed to the page as they arrive
+        WalletRpcClient.get(this).setListener(new WalletRpcClient.Listener() {
+            @Override
+            public void onBalances(String snapshotJson) {
+                try {
+                    dispatcher.dispatchEvent("walletBalances", new JSONObject(snapshotJson));
+                } catch (org.json.JSONException e) {
+                    Log.e(TAG, "Error dispatching wallet balances: " + e.getMessage());
+                }
+            }
+        });
+        
+        // Badge changes reach the page as one merged event per dispatcher flush
+        BadgeStore.get(this).setListener(new BadgeStore.Listener() {
+            @Override
+            public void onBadgesChanged(Map<String, Integer> changed) {
+                dispatcher.dispatchMergedEvent("badgesChanged", new JSONObject(changed));
+            }
+        });
+        
+        // A new wallpaper is decoded in the background; the page swaps its background URL
+        WallpaperProvider.get(this).setListener(new WallpaperProvider.Listener() {
+            @Override
+            public void onWallpaperChanged(String url) {
+                JSONObject detail = new JSONObject();
+                try {
+                    detail.put("url", url != null ? url : "");
+                } catch (org.json.JSONException e) {
+                    Log.e(TAG, "Error building wallpaper event: " + e.getMessage());
+                }
+                dispatcher.dispatchEvent("wallpaperChanged", detail);
+            }
+        });
+        
+        // SMS queue states reach the page as one merged event of id to state
+        SmsSendQueue.get(this).setListener(new SmsSendQueue.Listener() {
+            @Override
+            public void onStatusChanged(String id, JSONObject state) {
+                JSONObject changed = new JSONObject();
+                try {
+                    changed.put(id, state);
+                } catch (org.json.JSONException e) {
+                    Log.e(TAG, "Error building SMS event: " + e.getMessage());
+                }
+                dispatcher.dispatchMergedEvent("smsStatus", changed);
+            }
+        });
         webView.addJavascriptInterface(bridge, "Android");
         
+        // Seed the location cache now so the weather widget never waits on a fix
+        CachedLocationProvider.get(this).start();
+        
         // Configure WebView settings
         WebSettings settings = webView.getSettings();
         settings.setJavaScriptEnabled(true);
@@ -113,8 +307,29 @@ public class WebViewActivity extends Activity {
             settings.setSafeBrowsingEnabled(false);
         }
         
+        // Native scripts run at document start, installed once instead of on every load
+        documentStartScripts = new DocumentStartScripts(webView);
+        documentStartScripts.add("authHelper", AUTH_HELPER_JS, Collections.singleton(URL));
+        
         // Handle page loading
         webView.setWebViewClient(new WebViewClient() {
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                // Widget frames and the wallpaper are served locally; everything else goes to the network
+                if (widgetHost != null && request.getUrl().toString().startsWith(URL)) {
+                    WebResourceResponse frame = widgetHost.interceptFrame(request.getUrl());
+                    if (frame != null) {
+                        return frame;
+                    }
+                    WebResourceResponse wallpaper = WallpaperProvider.get(WebViewActivity.this)
+                        .interceptWallpaper(request.getUrl());
+                    if (wallpaper != null) {
+                        return wallpaper;
+                    }
+                }
+                return super.shouldInterceptRequest(view, request);
+            }
+            
             @Override
             public boolean shouldOverrideUrlLoading(WebView view, String url) {
                 return handleUrl(url);
@@ -132,6 +347,7 @@ public class WebViewActivity extends Activity {
             public void onPageStarted(WebView view, String url, Bitmap favicon) {
                 super.onPageStarted(view, url, favicon);
                 Log.d(TAG, "Page started: " + url);
+                dispatcher.onPageStarted();
             }
             
             @Override
@@ -139,19 +355,13 @@ public class WebViewActivity extends Activity {
                 super.onPageFinished(view, url);
                 Log.d(TAG, "Page finished: " + url);
                 
-                // Inject notification that Android bridge is available
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                    webView.evaluateJavascript(
-                        "if(window.dispatchEvent) { window.dispatchEvent(new CustomEvent('androidBridgeReady')); }",
-                        null
-                    );
-                    
-                    // Inject helper to open auth URLs in Chrome
-                    injectAuthHelper(view);
-                    
-                    // Apply any pending wallet address from deep link
-                    applyPendingWalletAddress();
-                }
+                // Only evaluates scripts on WebViews without document-start support
+                documentStartScripts.onPageFinished(url);
+                
+                // Notify that Android bridge is available. Queued and flushed once the page
+                // is ready, along with any wallet address that arrived while it was loading.
+                dispatcher.dispatchEvent("androidBridgeReady", null);
+                dispatcher.onPageFinished();
             }
         });
         
@@ -169,6 +379,16 @@ public class WebViewActivity extends Activity {
                     Log.d(TAG, "Popup URL from HitTestResult: " + url);
                 }
                 
+                // Optionally keep the auth flow out of the launcher process entirely
+                if (isAuthInSeparateProcess()) {
+                    if (url != null) {
+                        AuthActivity.start(WebViewActivity.this, url);
+                        return false;
+                    }
+                    launchAuthFromPopup(resultMsg);
+                    return true;
+                }
+                
                 // Create an in-app popup WebView for auth
                 showAuthPopup(resultMsg);
                 return true;
@@ -193,9 +413,6 @@ public class WebViewActivity extends Activity {
         handleIntent(getIntent());
     }
     
-    // Store pending wallet address to save after page loads
-    private String pendingWalletAddress = null;
-    
     /**
      * Handle URL navigation - decide whether to load in WebView or external browser
      */
@@ -326,6 +543,10 @@ public class WebViewActivity extends Activity {
             CookieManager.getInstance().setAcceptThirdPartyCookies(authWebView, true);
         }
         
+        // Detect successful auth from document start on every popup page
+        authDocumentStartScripts = new DocumentStartScripts(authWebView);
+        authDocumentStartScripts.add("authSuccessHandler", AUTH_SUCCESS_HANDLER_JS, AUTH_ORIGIN_RULES);
+        
         // Handle page events
         authWebView.setWebViewClient(new WebViewClient() {
             @Override
@@ -352,8 +573,10 @@ public class WebViewActivity extends Activity {
                 Log.d(TAG, "Auth popup page finished: " + url);
                 progressBar.setVisibility(View.GONE);
                 
-                // Inject script to handle successful auth
-                injectAuthSuccessHandler(view);
+                // Only evaluates the success handler where document-start scripts are unsupported
+                if (authDocumentStartScripts != null) {
+                    authDocumentStartScripts.onPageFinished(url);
+                }
             }
             
             @Override
@@ -425,6 +648,7 @@ public class WebViewActivity extends Activity {
         authDialog.setContentView(layout);
         authDialog.setOnDismissListener(dialog -> {
             Log.d(TAG, "Auth dialog dismissed");
+            authDocumentStartScripts = null;
             if (authWebView != null) {
                 authWebView.destroy();
                 authWebView = null;
@@ -440,30 +664,50 @@ public class WebViewActivity extends Activity {
         authDialog.show();
     }
     
+    private boolean isAuthInSeparateProcess() {
+        return getSharedPreferences(SETTINGS_PREFS, MODE_PRIVATE)
+            .getBoolean(PREF_AUTH_IN_SEPARATE_PROCESS, false);
+    }
+    
     /**
-     * Inject script to detect successful auth and extract wallet address
+     * Catch the popup's first navigation with a throwaway WebView that never renders,
+     * then open that URL in the auth process
      */
-    private void injectAuthSuccessHandler(WebView view) {
-        String js = 
-            "(function() {" +
-            "  // Watch for wallet address in localStorage" +
-            "  var checkInterval = setInterval(function() {" +
-            "    var address = localStorage.getItem('baseAccount_address');" +
-            "    if (address && address.startsWith('0x')) {" +
-            "      console.log('Wallet connected:', address);" +
-            "      clearInterval(checkInterval);" +
-            "      // Notify parent via URL" +
-            "      window.location.href = 'basephone://auth?address=' + encodeURIComponent(address);" +
-            "    }" +
-            "  }, 500);" +
-            "  " +
-            "  // Clear after 60 seconds" +
-            "  setTimeout(function() { clearInterval(checkInterval); }, 60000);" +
-            "})();";
-        
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            view.evaluateJavascript(js, null);
+    private void launchAuthFromPopup(Message resultMsg) {
+        // Only one popup can be pending; a newer one replaces it
+        destroyPopupCatcher();
+        final WebView catcher = new WebView(this);
+        popupCatcher = catcher;
+        catcher.setWebViewClient(new WebViewClient() {
+            @Override
+            public boolean shouldOverrideUrlLoading(WebView view, String url) {
+                Log.d(TAG, "Handing popup to auth process: " + url);
+                AuthActivity.start(WebViewActivity.this, url);
+                view.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (popupCatcher == catcher) {
+                            destroyPopupCatcher();
+                        }
+                    }
+                });
+                return true;
+            }
+        });
+        WebView.WebViewTransport transport = (WebView.WebViewTransport) resultMsg.obj;
+        transport.setWebView(catcher);
+        resultMsg.sendToTarget();
+        // window.open() without a navigation never reaches shouldOverrideUrlLoading
+        catcher.postDelayed(popupCatcherTimeout, POPUP_CATCHER_TIMEOUT_MS);
+    }
+    
+    private void destroyPopupCatcher() {
+        if (popupCatcher == null) {
+            return;
         }
+        popupCatcher.removeCallbacks(popupCatcherTimeout);
+        popupCatcher.destroy();
+        popupCatcher = null;
     }
     
     /**
@@ -475,6 +719,7 @@ public class WebViewActivity extends Activity {
             authDialog.dismiss();
         }
         authDialog = null;
+        authDocumentStartScripts = null;
         if (authWebView != null) {
             authWebView.destroy();
             authWebView = null;
@@ -486,6 +731,10 @@ public class WebViewActivity extends Activity {
      */
     private void openInChrome(String url) {
         Log.d(TAG, "Opening in Chrome: " + url);
+        // Reuse the warm Custom Tabs session so passkey flows skip browser cold start
+        if (CustomTabsSessionManager.get(this).launch(this, url)) {
+            return;
+        }
         try {
             // Try Chrome first
             Intent chromeIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
@@ -505,28 +754,6 @@ public class WebViewActivity extends Activity {
         }
     }
     
-    /**
-     * Inject JavaScript helper to handle auth flows
-     */
-    private void injectAuthHelper(WebView view) {
-        String js = 
-            "(function() {" +
-            "  if (window._authHelperInjected) return;" +
-            "  window._authHelperInjected = true;" +
-            "  " +
-            "  // Listen for wallet connection events" +
-            "  window.addEventListener('walletConnected', function(e) {" +
-            "    console.log('walletConnected event received');" +
-            "  });" +
-            "  " +
-            "  console.log('Auth helper injected - using in-app browser');" +
-            "})();";
-        
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            view.evaluateJavascript(js, null);
-        }
-    }
-    
     private void requestNecessaryPermissions() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             String[] permissions = {
@@ -553,12 +780,7 @@ public class WebViewActivity extends Activity {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         if (requestCode == BasePhoneBridge.PERMISSION_REQUEST_CODE) {
             // Notify WebView that permissions may have changed
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                webView.evaluateJavascript(
-                    "if(window.dispatchEvent) { window.dispatchEvent(new CustomEvent('permissionsUpdated')); }",
-                    null
-                );
-            }
+            dispatcher.dispatchEvent("permissionsUpdated", null);
         }
     }
     
@@ -602,61 +824,82 @@ public class WebViewActivity extends Activity {
         
         // Handle other baselauncher URLs
         if (url.contains("baselauncher.vercel.app")) {
-            webView.loadUrl(url);
+            routeDeepLink(uri, url);
         }
     }
     
     /**
-     * Save wallet address to WebView localStorage and notify the app
+     * Hand a launcher deep link to the running page as a client-side navigation.
+     * Only paths the page routes itself skip the reload; anything else is loaded in full.
      */
-    private void saveWalletAddress(final String address) {
-        Log.d(TAG, "saveWalletAddress called with: " + address);
+    private void routeDeepLink(Uri uri, String url) {
+        String path = uri.getPath();
+        if (path == null || path.isEmpty()) {
+            path = "/";
+        } else if (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
         
-        // Store for later in case page isn't ready
-        pendingWalletAddress = address;
-        
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && webView != null) {
-            // Inject the address save script
-            String js = String.format(
-                "(function() {" +
-                "  try {" +
-                "    localStorage.setItem('baseAccount_address', '%s');" +
-                "    localStorage.setItem('baseAccount_connected', 'true');" +
-                "    localStorage.setItem('baseAccount_setupComplete', 'true');" +
-                "    console.log('Wallet address saved from Android:', '%s');" +
-                "    " +
-                "    // Dispatch event to notify React app" +
-                "    if(window.dispatchEvent) {" +
-                "      window.dispatchEvent(new CustomEvent('walletConnected', { detail: { address: '%s' } }));" +
-                "    }" +
-                "    " +
-                "    // Force reload to pick up the new state" +
-                "    setTimeout(function() { window.location.reload(); }, 100);" +
-                "  } catch(e) { console.error('Failed to save wallet:', e); }" +
-                "})();",
-                address, address, address
-            );
-            webView.evaluateJavascript(js, null);
+        if (!CLIENT_ROUTES.contains(path) || dispatcher == null) {
+            Log.d(TAG, "Full load for deep link: " + url);
+            webView.loadUrl(url);
+            return;
         }
+        
+        // Queued until the page is ready, so a cold start needs no second load. A newer
+        // link replaces an undelivered one. Bundles without the route listener reload instead.
+        // Query and hash stay percent-encoded, as in location.search and location.hash, so a
+        // decoded "&" or "#" inside a value can't split it.
+        String query = uri.getEncodedQuery();
+        String hash = uri.getEncodedFragment();
+        String detail = "{path:" + JSONObject.quote(path)
+            + ",query:" + JSONObject.quote(query != null ? query : "")
+            + ",hash:" + JSONObject.quote(hash != null ? hash : "")
+            + "}";
+        String js = "if (window.__basephoneRoutes) {"
+            + "  window.dispatchEvent(new CustomEvent('nativeNavigate', { detail: " + detail + " }));"
+            + "} else {"
+            + "  window.location.assign(" + JSONObject.quote(url) + ");"
+            + "}";
+        Log.d(TAG, "Routing deep link in page: " + path);
+        dispatcher.dispatchScript("route", js);
     }
     
     /**
-     * Apply any pending wallet address after page loads
+     * Save wallet address to WebView localStorage and notify the app
      */
-    private void applyPendingWalletAddress() {
-        if (pendingWalletAddress != null && !pendingWalletAddress.isEmpty()) {
-            Log.d(TAG, "Applying pending wallet address: " + pendingWalletAddress);
-            final String address = pendingWalletAddress;
-            pendingWalletAddress = null; // Clear to avoid double-apply
-            
-            // Small delay to ensure page is ready
-            webView.postDelayed(new Runnable() {
-                @Override
-                public void run() {
-                    saveWalletAddress(address);
-                }
-            }, 500);
-        }
+    private void saveWalletAddress(final String address) {
+        Log.d(TAG, "saveWalletAddress called with: " + address);
+        
+        if (dispatcher == null) return;
+        
+        // The page reads these from the native store first, so it must not keep an old address
+        Map<String, String> state = new HashMap<>();
+        state.put("baseAccount_address", address);
+        state.put("baseAccount_connected", "true");
+        state.put("baseAccount_setupComplete", "true");
+        MappedKeyValueStore.get(this).apply(state);
+        
+        // Queued until the page is ready; a newer address replaces an undelivered one.
+        // The script is a single line, so comments inside it must be block comments.
+        String quoted = JSONObject.quote(address);
+        String js = String.format(
+            "(function() {" +
+            "  try {" +
+            "    localStorage.setItem('baseAccount_address', %s);" +
+            "    localStorage.setItem('baseAccount_connected', 'true');" +
+            "    localStorage.setItem('baseAccount_setupComplete', 'true');" +
+            "    console.log('Wallet address saved from Android:', %s);" +
+            "    " +
+            "    /* useAutoSetupBaseAccount listens for this and updates the app state in place */" +
+            "    if(window.dispatchEvent) {" +
+            "      window.dispatchEvent(new CustomEvent('walletConnected', { detail: { address: %s } }));" +
+            "    }" +
+            "  } catch(e) { console.error('Failed to save wallet:', e); }" +
+            "})();",
+            quoted, quoted, quoted
+        );
+        dispatcher.dispatchScript("wallet", js);
     }
     
     @Override
@@ -691,24 +934,89 @@ public class WebViewActivity extends Activity {
         super.onResume();
         if (webView != null) {
             webView.onResume();
-            // Re-inject auth helper in case page was reloaded
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                injectAuthHelper(webView);
-            }
+        }
+        if (jankMonitor != null) {
+            jankMonitor.start();
+        }
+        StallWatchdog.get(this).start();
+        WalletRpcClient.get(this).setVisible(true);
+        if (widgetHost != null) {
+            widgetHost.setVisible(true);
         }
     }
     
     @Override
     protected void onPause() {
         super.onPause();
+        if (jankMonitor != null) {
+            jankMonitor.stop();
+        }
+        StallWatchdog.get(this).stop();
+        WalletRpcClient.get(this).setVisible(false);
+        if (widgetHost != null) {
+            widgetHost.setVisible(false);
+        }
+        // Don't hold the microphone in the background; the page starts capture again when
+        // it becomes visible
+        if (audioCapture != null) {
+            audioCapture.stop();
+        }
+        // Capture before the WebView pauses, and only the home page itself
+        if (homeSnapshot != null && webView != null && webView.getUrl() != null
+                && webView.getUrl().startsWith(URL)) {
+            homeSnapshot.capture();
+        }
         if (webView != null) {
             webView.onPause();
         }
     }
     
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (widgetHost != null) {
+            widgetHost.onActivityResult(requestCode, resultCode);
+        }
+    }
+    
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent event) {
+        if (jankMonitor != null) {
+            jankMonitor.onTouchEvent(event);
+        }
+        return super.dispatchTouchEvent(event);
+    }
+    
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        if (jankMonitor != null) {
+            jankMonitor.dump(prefix, writer);
+        }
+        StallWatchdog.get(this).dump(prefix, writer);
+    }
+    
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        CachedLocationProvider.get(this).stop();
+        BadgeStore.get(this).setListener(null);
+        if (audioCapture != null) {
+            audioCapture.stop();
+        }
+        WalletRpcClient.get(this).setListener(null);
+        WallpaperProvider.get(this).setListener(null);
+        SmsSendQueue.get(this).setListener(null);
+        if (widgetHost != null) {
+            widgetHost.destroy();
+        }
+        if (dispatcher != null) {
+            dispatcher.destroy();
+        }
+        if (homeSnapshot != null) {
+            homeSnapshot.destroy();
+        }
+        destroyPopupCatcher();
         if (webView != null) {
             webView.destroy();
         }
@@ -0,0 +1,79 @@
+/*
+ * BasePhone Widget Prefetch Job
+ * Periodically refreshes widget data while the network is up and the battery is healthy
+ */
+package app.vercel.baselauncher.twa;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+public class WidgetPrefetchJobService extends JobService {
+    private static final String TAG = "WidgetPrefetchJob";
+    private static final int JOB_ID = 2701;
+    private static final long PERIOD_MS = 30 * 60 * 1000L;
+
+    private Thread worker;
+
+    /**
+     * Schedule the periodic prefetch job if it isn't scheduled already
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && scheduler.getPendingJob(JOB_ID) != null) {
+            return;
+        }
+
+        JobInfo.Builder builder = new JobInfo.Builder(JOB_ID,
+            new ComponentName(context, WidgetPrefetchJobService.class))
+            .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+            .setPeriodic(PERIOD_MS)
+            .setPersisted(false);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder.setRequiresBatteryNotLow(true);
+        }
+
+        try {
+            scheduler.schedule(builder.build());
+        } catch (Exception e) {
+            Log.e(TAG, "Error scheduling prefetch job: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                WidgetPrefetcher prefetcher = new WidgetPrefetcher(
+                    WidgetPrefetchJobService.this,
+                    new WidgetPrefetchStore(WidgetPrefetchJobService.this)
+                );
+                boolean ok = prefetcher.prefetchAll();
+                if (!Thread.currentThread().isInterrupted()) {
+                    jobFinished(params, !ok);
+                }
+            }
+        }, TAG);
+        worker.start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (worker != null) {
+            worker.interrupt();
+            worker = null;
+        }
+        // Constraints went away mid-run; retry when they are met again
+        return true;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * BasePhone Widget Prefetch Store
+ * Declared widget endpoints and the last response fetched for each of them
+ */
+package app.vercel.baselauncher.twa;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class WidgetPrefetchStore {
+    private static final String ENDPOINTS_PREFS = "widget_prefetch_endpoints";
+    private static final String DATA_PREFS = "widget_prefetch_data";
+    private static final String URL_PREFIX = "url:";
+    private static final String FETCHED_AT_PREFIX = "fetchedAt:";
+
+    private final SharedPreferences endpoints;
+    private final SharedPreferences data;
+
+    public WidgetPrefetchStore(Context context) {
+        Context app = context.getApplicationContext();
+        this.endpoints = app.getSharedPreferences(ENDPOINTS_PREFS, Context.MODE_PRIVATE);
+        this.data = app.getSharedPreferences(DATA_PREFS, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Declare an endpoint to keep warm. The URL may contain {lat} and {lon} placeholders,
+     * which are filled from the cached device location at fetch time.
+     */
+    public void putEndpoint(String key, String urlTemplate) {
+        endpoints.edit().putString(key, urlTemplate).apply();
+    }
+
+    public void removeEndpoint(String key) {
+        endpoints.edit().remove(key).apply();
+        data.edit()
+            .remove(key)
+            .remove(URL_PREFIX + key)
+            .remove(FETCHED_AT_PREFIX + key)
+            .apply();
+    }
+
+    public Map<String, String> getEndpoints() {
+        Map<String, String> result = new HashMap<>();
+        for (Map.Entry<String, ?> entry : endpoints.getAll().entrySet()) {
+            if (entry.getValue() instanceof String) {
+                result.put(entry.getKey(), (String) entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Store a fetched response body for a key. The fields are kept apart so reads can
+     * encode them without parsing the body.
+     */
+    public void putResponse(String key, String url, String body) {
+        data.edit()
+            .putString(key, body)
+            .putString(URL_PREFIX + key, url)
+            .putLong(FETCHED_AT_PREFIX + key, System.currentTimeMillis())
+            .apply();
+    }
+
+    /**
+     * Get the cached response for a key as {url, fetchedAt, ageMs, body}, or "{}" if none
+     */
+    public String getResponseJson(String key) {
+        String body = data.getString(key, null);
+        long fetchedAt = data.getLong(FETCHED_AT_PREFIX + key, -1);
+        if (body == null || fetchedAt < 0) {
+            // Nothing fetched yet, or an entry from before the fields were split
+            return "{}";
+        }
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        try {
+            return out.beginObject()
+                .name("url").value(data.getString(URL_PREFIX + key, null))
+                .name("fetchedAt").value(fetchedAt)
+                .name("ageMs").value(System.currentTimeMillis() - fetchedAt)
+                .name("body").value(body)
+                .endObject()
+                .finish();
+        } catch (RuntimeException e) {
+            out.reset();
+            throw e;
+        }
+    }
+}
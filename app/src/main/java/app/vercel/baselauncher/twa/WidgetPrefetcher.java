@@ -0,0 +1,122 @@
+/*
+ * BasePhone Widget Prefetcher
+ * Fetches every declared widget endpoint and stores the responses
+ */
+package app.vercel.baselauncher.twa;
+
+import android.content.Context;
+import android.location.Location;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Map;
+
+public class WidgetPrefetcher {
+    private static final String TAG = "WidgetPrefetcher";
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 15000;
+    // Widget payloads are small; refuse anything that would bloat SharedPreferences
+    private static final int MAX_BODY_BYTES = 256 * 1024;
+
+    private final Context context;
+    private final WidgetPrefetchStore store;
+
+    public WidgetPrefetcher(Context context, WidgetPrefetchStore store) {
+        this.context = context.getApplicationContext();
+        this.store = store;
+    }
+
+    /**
+     * Refresh all declared endpoints. Blocks, so call it off the main thread.
+     *
+     * @return true if every endpoint was fetched successfully
+     */
+    public boolean prefetchAll() {
+        boolean allOk = true;
+        for (Map.Entry<String, String> endpoint : store.getEndpoints().entrySet()) {
+            String url = resolveUrl(endpoint.getValue());
+            if (url == null) {
+                // Needs a location we don't have yet; try again next run
+                continue;
+            }
+            try {
+                store.putResponse(endpoint.getKey(), url, fetch(url));
+            } catch (IOException | RuntimeException e) {
+                // One bad endpoint must not take down the job, or the rest never refresh
+                Log.e(TAG, "Error prefetching " + endpoint.getKey() + ": " + e.getMessage());
+                allOk = false;
+            }
+        }
+        return allOk;
+    }
+
+    /**
+     * Fill {lat} and {lon} placeholders from the cached location
+     */
+    String resolveUrl(String template) {
+        if (!template.contains("{lat}") && !template.contains("{lon}")) {
+            return template;
+        }
+        return resolveUrl(template, CachedLocationProvider.get(context).getCachedLocation());
+    }
+
+    /**
+     * Fill placeholders from a given fix, or return null when there is none
+     */
+    static String resolveUrl(String template, Location location) {
+        if (location == null) {
+            return null;
+        }
+        return template
+            .replace("{lat}", String.format(Locale.US, "%.4f", location.getLatitude()))
+            .replace("{lon}", String.format(Locale.US, "%.4f", location.getLongitude()));
+    }
+
+    /**
+     * Whether a URL or template uses http or https; other schemes (file:, jar:, ...) are
+     * never fetched
+     */
+    static boolean isHttpUrl(String url) {
+        String lower = url.trim().toLowerCase(Locale.US);
+        return lower.startsWith("https://") || lower.startsWith("http://");
+    }
+
+    String fetch(String url) throws IOException {
+        // Endpoints stored before the bridge checked schemes may still be anything
+        if (!isHttpUrl(url)) {
+            throw new IOException("Not an http(s) URL");
+        }
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setRequestProperty("Accept", "application/json");
+        try {
+            int status = connection.getResponseCode();
+            if (status < 200 || status >= 300) {
+                throw new IOException("HTTP " + status);
+            }
+            InputStream in = connection.getInputStream();
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    if (out.size() > MAX_BODY_BYTES) {
+                        throw new IOException("Response too large");
+                    }
+                }
+                return out.toString("UTF-8");
+            } finally {
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * BasePhone Bridge JSON Writer Benchmark Test
+ * Encoding correctness and allocation budget of the pooled writer against org.json
+ */
+package app.vercel.baselauncher.twa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class BridgeJsonWriterBenchmarkTest {
+    private static final int ROWS = 5000;
+
+    @Test
+    public void escapesLikeOrgJson() throws Exception {
+        String tricky = "quote\" slash\\ tab\t nl\n cr\r nul\u0000 ls\u2028 ps\u2029 é";
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        out.beginObject().name(tricky).value(tricky).endObject();
+        String json = out.finish();
+
+        assertEquals(tricky, new JSONObject(json).getString(tricky));
+        // Raw line separators would end the line if the page evaluates the result as script
+        assertFalse(json.contains("\u2028"));
+        assertFalse(json.contains("\u2029"));
+    }
+
+    @Test
+    public void writesNestedValues() throws Exception {
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        out.beginObject()
+            .name("list").beginArray().value(1).value(2.5).value(true).nullValue().endArray()
+            .name("nan").value(Double.NaN)
+            .name("raw").rawValue("{\"a\":1}")
+            .endObject();
+        JSONObject json = new JSONObject(out.finish());
+
+        assertEquals(4, json.getJSONArray("list").length());
+        assertEquals(2.5, json.getJSONArray("list").getDouble(1), 0);
+        assertTrue(json.isNull("nan"));
+        assertEquals(1, json.getJSONObject("raw").getInt("a"));
+    }
+
+    @Test
+    public void resetReleasesWriterAfterFailure() {
+        BridgeJsonWriter first = BridgeJsonWriter.obtain();
+        try {
+            first.beginObject().name("rows").beginArray();
+            throw new IllegalStateException("cursor closed");
+        } catch (IllegalStateException e) {
+            first.reset();
+        }
+        // A writer left in use would make every later call on this thread allocate a new buffer
+        BridgeJsonWriter second = BridgeJsonWriter.obtain();
+        second.beginArray().value("ok").endArray();
+        assertTrue(first == second);
+        assertEquals("[\"ok\"]", second.finish());
+    }
+
+    @Test
+    public void nestedObtainGetsSeparateWriter() {
+        BridgeJsonWriter outer = BridgeJsonWriter.obtain();
+        BridgeJsonWriter inner = BridgeJsonWriter.obtain();
+        assertFalse(outer == inner);
+        inner.reset();
+        outer.reset();
+    }
+
+    @Test
+    public void matchesOrgJsonOutput() throws Exception {
+        JSONArray expected = new JSONArray(writeRows());
+        JSONArray actual = buildWithOrgJson();
+        assertEquals(ROWS, expected.length());
+        for (int i = 0; i < ROWS; i += 997) {
+            assertEquals(actual.getJSONObject(i).toString(), expected.getJSONObject(i).toString());
+        }
+    }
+
+    @Test
+    public void allocatesLessThanOrgJson() {
+        PerfBudget writer = PerfBudget.measure(new Runnable() {
+            @Override
+            public void run() {
+                writeRows();
+            }
+        });
+        PerfBudget tree = PerfBudget.measure(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    buildWithOrgJson().toString();
+                } catch (JSONException e) {
+                    fail(e.getMessage());
+                }
+            }
+        });
+        if (tree.medianAllocatedBytes > 0) {
+            // The writer allocates little more than the result string; the tree allocates a
+            // map and boxed values per row on top of it
+            assertTrue("writer allocated " + writer.medianAllocatedBytes + " bytes, org.json "
+                    + tree.medianAllocatedBytes,
+                writer.medianAllocatedBytes * 2 < tree.medianAllocatedBytes);
+        }
+        assertTrue("writer took " + writer.medianMillis() + "ms", writer.medianMillis() < 1000);
+    }
+
+    private static String writeRows() {
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        try {
+            out.beginArray();
+            for (int i = 0; i < ROWS; i++) {
+                out.beginObject()
+                    .name("id").value(i)
+                    .name("name").value("Contact \"" + i + "\"")
+                    .name("number").value("+1 415 555 " + (i % 10000))
+                    .name("starred").value(i % 5 == 0)
+                    .endObject();
+            }
+            out.endArray();
+            return out.finish();
+        } catch (RuntimeException e) {
+            out.reset();
+            throw e;
+        }
+    }
+
+    private static JSONArray buildWithOrgJson() throws JSONException {
+        JSONArray rows = new JSONArray();
+        for (int i = 0; i < ROWS; i++) {
+            JSONObject row = new JSONObject();
+            row.put("id", i);
+            row.put("name", "Contact \"" + i + "\"");
+            row.put("number", "+1 415 555 " + (i % 10000));
+            row.put("starred", i % 5 == 0);
+            rows.put(row);
+        }
+        return rows;
+    }
+}
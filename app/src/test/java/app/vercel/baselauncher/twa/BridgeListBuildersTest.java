@@ -0,0 +1,365 @@
+/*
+ * BasePhone Bridge List Builders Test
+ * Scale, latency and allocation budgets for the bridge's list-returning paths
+ */
+package app.vercel.baselauncher.twa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.Manifest;
+import android.app.Activity;
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.net.Uri;
+import android.provider.CallLog;
+import android.provider.ContactsContract;
+import android.provider.Telephony;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Locale;
+
+@RunWith(RobolectricTestRunner.class)
+public class BridgeListBuildersTest {
+    private static final int APP_COUNT = 3000;
+    private static final int PHONE_ROWS = 20000;
+    private static final int CONVERSATION_THREADS = 2000;
+    private static final int CONTACTS_PAGE = 100;
+
+    private Application application;
+    private ContentResolver resolver;
+    private int seededApps = 0;
+
+    @Before
+    public void setUp() {
+        application = RuntimeEnvironment.getApplication();
+        resolver = application.getContentResolver();
+        Robolectric.setupContentProvider(FakeContactsProvider.class, ContactsContract.AUTHORITY);
+        Robolectric.setupContentProvider(FakeCallLogProvider.class, CallLog.AUTHORITY);
+        Robolectric.setupContentProvider(FakeSmsProvider.class, "sms");
+        FakeContactsProvider.seed(PHONE_ROWS);
+        shadowOf(application).grantPermissions(Manifest.permission.READ_CONTACTS);
+    }
+
+    @Test
+    public void installedAppsAreSortedWithSections() throws Exception {
+        PackageManager pm = seedLauncherApps(50);
+        JSONArray apps = new JSONArray(writeInstalledApps(pm));
+
+        assertEquals(50, apps.length());
+        LocaleCollation.Sorter sorter = new LocaleCollation.Sorter(Locale.US);
+        for (int i = 1; i < apps.length(); i++) {
+            String previous = apps.getJSONObject(i - 1).getString("appName");
+            String current = apps.getJSONObject(i).getString("appName");
+            assertTrue(previous + " before " + current,
+                sorter.key(0, previous).key.compareTo(sorter.key(0, current).key) <= 0);
+            assertTrue(apps.getJSONObject(i).getString("section").length() > 0);
+        }
+    }
+
+    @Test
+    public void installedAppsStayWithinBudget() {
+        final PackageManager pm = seedLauncherApps(APP_COUNT);
+        PerfBudget budget = PerfBudget.measure(new Runnable() {
+            @Override
+            public void run() {
+                writeInstalledApps(pm);
+            }
+        });
+        assertTrue("getInstalledApps took " + budget.medianMillis() + "ms", budget.medianMillis() < 2000);
+        assertAllocationPerRow("getInstalledApps", budget, APP_COUNT, 4096);
+    }
+
+    @Test
+    public void installedAppsScaleLinearithmically() {
+        final PackageManager small = seedLauncherApps(APP_COUNT / 4);
+        PerfBudget smallBudget = PerfBudget.measure(new Runnable() {
+            @Override
+            public void run() {
+                writeInstalledApps(small);
+            }
+        });
+        final PackageManager large = seedLauncherApps(APP_COUNT);
+        PerfBudget largeBudget = PerfBudget.measure(new Runnable() {
+            @Override
+            public void run() {
+                writeInstalledApps(large);
+            }
+        });
+        // 4x the apps: n log n stays well under 8x, a quadratic pass lands near 16x
+        assertScaling("getInstalledApps", smallBudget, largeBudget);
+    }
+
+    @Test
+    public void contactPagesAreInLocaleOrderWithSections() throws Exception {
+        ContactListIndex index = new ContactListIndex(application);
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        index.writePage(100, 50, out);
+        JSONArray rows = new JSONArray(out.finish());
+
+        assertEquals(50, rows.length());
+        LocaleCollation.Sorter sorter = new LocaleCollation.Sorter(Locale.getDefault());
+        for (int i = 1; i < rows.length(); i++) {
+            String previous = rows.getJSONObject(i - 1).getString("name");
+            String current = rows.getJSONObject(i).getString("name");
+            assertTrue(previous + " before " + current,
+                sorter.key(0, previous).key.compareTo(sorter.key(0, current).key) <= 0);
+        }
+
+        out = BridgeJsonWriter.obtain();
+        index.writeSections(out);
+        JSONArray sections = new JSONArray(out.finish());
+        int total = 0;
+        for (int i = 0; i < sections.length(); i++) {
+            assertEquals(total, sections.getJSONObject(i).getInt("offset"));
+            total += sections.getJSONObject(i).getInt("count");
+        }
+        assertEquals(PHONE_ROWS, total);
+    }
+
+    @Test
+    public void contactIndexBuildStaysWithinBudget() {
+        PerfBudget budget = PerfBudget.measure(new Runnable() {
+            @Override
+            public void run() {
+                // A fresh index, so every run reads and sorts the whole phone table
+                BridgeJsonWriter out = BridgeJsonWriter.obtain();
+                new ContactListIndex(application).writePage(0, CONTACTS_PAGE, out);
+                out.finish();
+            }
+        });
+        assertTrue("ContactListIndex build took " + budget.medianMillis() + "ms", budget.medianMillis() < 3000);
+        assertAllocationPerRow("ContactListIndex build", budget, PHONE_ROWS, 4096);
+    }
+
+    @Test
+    public void contactIndexBuildScalesLinearithmically() {
+        FakeContactsProvider.seed(PHONE_ROWS / 4);
+        PerfBudget smallBudget = PerfBudget.measure(new Runnable() {
+            @Override
+            public void run() {
+                new ContactListIndex(application).warm();
+            }
+        });
+        FakeContactsProvider.seed(PHONE_ROWS);
+        PerfBudget largeBudget = PerfBudget.measure(new Runnable() {
+            @Override
+            public void run() {
+                new ContactListIndex(application).warm();
+            }
+        });
+        assertScaling("ContactListIndex build", smallBudget, largeBudget);
+    }
+
+    @Test
+    public void warmContactPagesAndSectionsStayWithinBudget() {
+        final ContactListIndex index = new ContactListIndex(application);
+        index.warm();
+        PerfBudget fullList = PerfBudget.measure(new Runnable() {
+            @Override
+            public void run() {
+                BridgeJsonWriter out = BridgeJsonWriter.obtain();
+                index.writePage(0, 0, out);
+                out.finish();
+            }
+        });
+        assertTrue("getContactsPage took " + fullList.medianMillis() + "ms", fullList.medianMillis() < 1000);
+        assertAllocationPerRow("getContactsPage", fullList, PHONE_ROWS, 1024);
+
+        PerfBudget sections = PerfBudget.measure(new Runnable() {
+            @Override
+            public void run() {
+                BridgeJsonWriter out = BridgeJsonWriter.obtain();
+                index.writeSections(out);
+                out.finish();
+            }
+        });
+        assertTrue("getContactSections took " + sections.medianMillis() + "ms", sections.medianMillis() < 100);
+        // Only the section list is encoded; nothing per contact
+        assertTrue("getContactSections allocated " + sections.medianAllocatedBytes + " bytes",
+            sections.medianAllocatedBytes < 64 * 1024);
+    }
+
+    @Test
+    public void recentCallsReadOnlyTheRequestedRows() throws Exception {
+        FakeCallLogProvider.seed(PHONE_ROWS);
+        CallLogRepository repository = new CallLogRepository(application);
+
+        JSONObject first = new JSONObject(repository.getPage(0, 50));
+        assertEquals(50, first.getJSONArray("calls").length());
+        // The in-memory head, never the whole log
+        assertTrue(FakeCallLogProvider.rowsMaterialized <= 200);
+
+        FakeCallLogProvider.rowsMaterialized = 0;
+        JSONObject deep = new JSONObject(repository.getPage(PHONE_ROWS / 2, 100));
+        assertEquals(100, deep.getJSONArray("calls").length());
+        assertEquals(PHONE_ROWS / 2 - 1, deep.getJSONArray("calls").getJSONObject(0).getLong("id"));
+        assertEquals(100, FakeCallLogProvider.rowsMaterialized);
+    }
+
+    @Test
+    public void recentCallsStayWithinBudget() {
+        FakeCallLogProvider.seed(PHONE_ROWS);
+        PerfBudget coldHead = PerfBudget.measure(new Runnable() {
+            @Override
+            public void run() {
+                new CallLogRepository(application).getPage(0, 50);
+            }
+        });
+        assertTrue("getRecentCalls took " + coldHead.medianMillis() + "ms", coldHead.medianMillis() < 500);
+
+        final CallLogRepository repository = new CallLogRepository(application);
+        PerfBudget deepPage = PerfBudget.measure(new Runnable() {
+            @Override
+            public void run() {
+                repository.getPage(PHONE_ROWS / 2, 200);
+            }
+        });
+        assertTrue("getRecentCalls page took " + deepPage.medianMillis() + "ms", deepPage.medianMillis() < 500);
+        assertAllocationPerRow("getRecentCalls", deepPage, 200, 4096);
+    }
+
+    @Test
+    public void conversationsStayWithinBudget() {
+        FakeSmsProvider.seed(PHONE_ROWS, CONVERSATION_THREADS);
+        PerfBudget cold = PerfBudget.measure(new Runnable() {
+            @Override
+            public void run() {
+                new SmsConversationIndex(application).getPage(0, 50);
+            }
+        });
+        assertTrue("getConversations took " + cold.medianMillis() + "ms", cold.medianMillis() < 2000);
+        assertAllocationPerRow("getConversations", cold, CONVERSATION_THREADS, 8192);
+
+        final SmsConversationIndex index = new SmsConversationIndex(application);
+        index.getPage(0, 50);
+        final FakeSmsProvider.Message message = FakeSmsProvider.MESSAGES.get(PHONE_ROWS / 2);
+        final Uri changed = Uri.withAppendedPath(Telephony.Sms.CONTENT_URI, String.valueOf(message.id));
+        PerfBudget readFlip = PerfBudget.measure(new Runnable() {
+            @Override
+            public void run() {
+                message.read ^= 1;
+                index.onSmsChanged(changed);
+                index.sync();
+            }
+        });
+        assertTrue("conversation sync took " + readFlip.medianMillis() + "ms", readFlip.medianMillis() < 200);
+    }
+
+    @Test
+    public void contactSearchStaysWithinBudget() {
+        PerfBudget budget = PerfBudget.measure(new Runnable() {
+            @Override
+            public void run() {
+                BridgeJsonWriter out = BridgeJsonWriter.obtain();
+                // Matches one name in ten, so about 2000 rows are written
+                BasePhoneBridge.writeContactSearch(resolver, "grace", out);
+                out.finish();
+            }
+        });
+        assertTrue("searchContacts took " + budget.medianMillis() + "ms", budget.medianMillis() < 2000);
+        assertAllocationPerRow("searchContacts", budget, PHONE_ROWS / 10, 2048);
+    }
+
+    @Test
+    public void contactSearchScalesLinearly() {
+        FakeContactsProvider.seed(PHONE_ROWS / 4);
+        PerfBudget smallBudget = PerfBudget.measure(new Runnable() {
+            @Override
+            public void run() {
+                BridgeJsonWriter out = BridgeJsonWriter.obtain();
+                BasePhoneBridge.writeContactSearch(resolver, "a", out);
+                out.finish();
+            }
+        });
+        FakeContactsProvider.seed(PHONE_ROWS);
+        PerfBudget largeBudget = PerfBudget.measure(new Runnable() {
+            @Override
+            public void run() {
+                BridgeJsonWriter out = BridgeJsonWriter.obtain();
+                BasePhoneBridge.writeContactSearch(resolver, "a", out);
+                out.finish();
+            }
+        });
+        assertScaling("searchContacts", smallBudget, largeBudget);
+    }
+
+    @Test
+    public void bridgeSearchContactsReturnsMatches() throws Exception {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        BasePhoneBridge bridge = new BasePhoneBridge(application, activity);
+
+        JSONArray rows = new JSONArray(bridge.searchContacts("Contact12345"));
+
+        assertEquals(1, rows.length());
+        assertEquals("mobile", rows.getJSONObject(0).getString("type"));
+    }
+
+    @Test
+    public void writerIsReleasedAfterEveryBuilder() {
+        BridgeJsonWriter first = BridgeJsonWriter.obtain();
+        BasePhoneBridge.writeContactSearch(resolver, "Contact1", first);
+        first.finish();
+        // The pooled writer must come back; a leaked one would force a new buffer per call
+        BridgeJsonWriter second = BridgeJsonWriter.obtain();
+        second.reset();
+        assertTrue(first == second);
+    }
+
+    private PackageManager seedLauncherApps(int count) {
+        PackageManager pm = application.getPackageManager();
+        Intent launcher = new Intent(Intent.ACTION_MAIN, null);
+        launcher.addCategory(Intent.CATEGORY_LAUNCHER);
+        for (int i = 0; i < seededApps; i++) {
+            shadowOf(pm).removeResolveInfosForIntent(launcher, "com.example.app" + i);
+        }
+        seededApps = count;
+        for (int i = 0; i < count; i++) {
+            ResolveInfo info = new ResolveInfo();
+            info.activityInfo = new ActivityInfo();
+            info.activityInfo.packageName = "com.example.app" + i;
+            info.activityInfo.name = "com.example.app" + i + ".Main";
+            info.activityInfo.applicationInfo = new ApplicationInfo();
+            info.activityInfo.applicationInfo.packageName = info.activityInfo.packageName;
+            info.activityInfo.applicationInfo.flags = i % 7 == 0 ? ApplicationInfo.FLAG_SYSTEM : 0;
+            // Labels mix case and accents so collation does real work
+            info.nonLocalizedLabel = (i % 3 == 0 ? "é" : i % 3 == 1 ? "B" : "a") + "pp " + (count - i);
+            shadowOf(pm).addResolveInfoForIntent(launcher, info);
+        }
+        return pm;
+    }
+
+    private static String writeInstalledApps(PackageManager pm) {
+        BridgeJsonWriter out = BridgeJsonWriter.obtain();
+        BasePhoneBridge.writeInstalledApps(pm, new LocaleCollation.Sorter(Locale.US), out);
+        return out.finish();
+    }
+
+    private static void assertAllocationPerRow(String method, PerfBudget budget, int rows, long bytesPerRow) {
+        long perRow = budget.medianAllocatedBytes / rows;
+        assertTrue(method + " allocated " + perRow + " bytes per row", perRow < bytesPerRow);
+    }
+
+    private static void assertScaling(String method, PerfBudget small, PerfBudget large) {
+        double timeRatio = (double) large.medianNanos / Math.max(1, small.medianNanos);
+        assertTrue(method + " grew " + timeRatio + "x in time for 4x the rows", timeRatio < 8);
+        if (small.medianAllocatedBytes > 0) {
+            double allocRatio = (double) large.medianAllocatedBytes / small.medianAllocatedBytes;
+            assertTrue(method + " grew " + allocRatio + "x in allocations for 4x the rows", allocRatio < 8);
+        }
+    }
+}
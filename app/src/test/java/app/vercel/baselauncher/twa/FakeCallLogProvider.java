@@ -0,0 +1,101 @@
+/*
+ * BasePhone Fake Call Log Provider
+ * Synthetic call log standing in for the call log provider in JVM tests
+ */
+package app.vercel.baselauncher.twa;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.CallLog;
+
+import java.util.Locale;
+
+/**
+ * Serves calls with ids 1..count, newest (highest id) first, filtered by "_id < ?" or
+ * "_id > ?" and capped by the limit query parameter, which is all the call log repository
+ * uses. Counts queried rows so tests can check the limit reaches the provider.
+ */
+public class FakeCallLogProvider extends ContentProvider {
+    private static final int[] TYPES = {
+        CallLog.Calls.INCOMING_TYPE, CallLog.Calls.OUTGOING_TYPE, CallLog.Calls.MISSED_TYPE
+    };
+
+    static int callCount = 0;
+    static int rowsMaterialized = 0;
+
+    static void seed(int count) {
+        callCount = count;
+        rowsMaterialized = 0;
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        long below = Long.MAX_VALUE;
+        long above = 0;
+        if (selection != null && selection.startsWith(CallLog.Calls._ID + " < ")) {
+            below = Long.parseLong(selectionArgs[0]);
+        } else if (selection != null && selection.startsWith(CallLog.Calls._ID + " > ")) {
+            above = Long.parseLong(selectionArgs[0]);
+        } else if (selection != null) {
+            throw new IllegalArgumentException("Unsupported selection: " + selection);
+        }
+        String limitParam = uri.getQueryParameter("limit");
+        int limit = limitParam != null ? Integer.parseInt(limitParam) : Integer.MAX_VALUE;
+
+        MatrixCursor cursor = new MatrixCursor(projection);
+        int added = 0;
+        for (long id = Math.min(callCount, below - 1); id > above && added < limit; id--) {
+            Object[] values = new Object[projection.length];
+            for (int c = 0; c < projection.length; c++) {
+                values[c] = column(id, projection[c]);
+            }
+            cursor.addRow(values);
+            added++;
+            rowsMaterialized++;
+        }
+        return cursor;
+    }
+
+    private static Object column(long id, String name) {
+        if (CallLog.Calls._ID.equals(name)) {
+            return id;
+        } else if (CallLog.Calls.NUMBER.equals(name)) {
+            return String.format(Locale.US, "+1 415 555 %04d", id % 10000);
+        } else if (CallLog.Calls.TYPE.equals(name)) {
+            return TYPES[(int) (id % TYPES.length)];
+        } else if (CallLog.Calls.DATE.equals(name)) {
+            return 1000000L + id * 60000L;
+        } else if (CallLog.Calls.DURATION.equals(name)) {
+            return id % 600;
+        }
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * BasePhone Fake Contacts Provider
+ * Synthetic phone table standing in for the contacts provider in JVM tests
+ */
+package app.vercel.baselauncher.twa;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.ContactsContract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Serves the phone table only: projection, a single "DISPLAY_NAME LIKE ?" selection and a
+ * DISPLAY_NAME sort, which is all the bridge builders and contact indexes use.
+ */
+public class FakeContactsProvider extends ContentProvider {
+    private static final String[] FIRST_NAMES = {
+        "Ada", "Émile", "Grace", "Zoë", "Linus", "Ängel", "Barbara", "Ken", "Margaret", "Dennis"
+    };
+
+    static final List<Object[]> ROWS = new ArrayList<>();
+
+    /**
+     * Replace the table with count synthetic phone rows
+     */
+    static void seed(int count) {
+        ROWS.clear();
+        for (int i = 0; i < count; i++) {
+            String name = FIRST_NAMES[i % FIRST_NAMES.length] + " Contact" + i;
+            ROWS.add(new Object[]{
+                String.valueOf(i / 2),
+                name,
+                String.format(Locale.US, "+1 415 555 %04d", i % 10000),
+                ContactsContract.CommonDataKinds.Phone.TYPE_MOBILE
+            });
+        }
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        List<Object[]> rows = new ArrayList<>();
+        String needle = null;
+        if (selection != null && selection.contains("LIKE") && selectionArgs != null) {
+            needle = selectionArgs[0].replace("%", "").toLowerCase(Locale.ROOT);
+        }
+        for (Object[] row : ROWS) {
+            if (needle == null || ((String) row[1]).toLowerCase(Locale.ROOT).contains(needle)) {
+                rows.add(row);
+            }
+        }
+        if (sortOrder != null && sortOrder.startsWith(ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME)) {
+            Collections.sort(rows, new Comparator<Object[]>() {
+                @Override
+                public int compare(Object[] a, Object[] b) {
+                    return ((String) a[1]).compareTo((String) b[1]);
+                }
+            });
+        }
+        MatrixCursor cursor = new MatrixCursor(projection);
+        for (Object[] row : rows) {
+            Object[] values = new Object[projection.length];
+            for (int c = 0; c < projection.length; c++) {
+                values[c] = column(row, projection[c]);
+            }
+            cursor.addRow(values);
+        }
+        return cursor;
+    }
+
+    private static Object column(Object[] row, String name) {
+        if (ContactsContract.CommonDataKinds.Phone.CONTACT_ID.equals(name)) {
+            return row[0];
+        } else if (ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME.equals(name)) {
+            return row[1];
+        } else if (ContactsContract.CommonDataKinds.Phone.NUMBER.equals(name)) {
+            return row[2];
+        } else if (ContactsContract.CommonDataKinds.Phone.TYPE.equals(name)) {
+            return row[3];
+        }
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+}
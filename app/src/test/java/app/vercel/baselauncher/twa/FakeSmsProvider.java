@@ -0,0 +1,212 @@
+/*
+ * BasePhone Fake SMS Provider
+ * Synthetic SMS table standing in for the telephony provider in JVM tests
+ */
+package app.vercel.baselauncher.twa;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.Telephony;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Serves content://sms, content://sms/inbox and content://sms/conversations (the latest
+ * message per thread), with selections made of "_id > ?", "_id IN (...)",
+ * "thread_id IN (...)" and "read = 0" joined by AND, which is all the conversation index
+ * uses. Counts rows and message bodies returned so tests can check what a sync reads.
+ */
+public class FakeSmsProvider extends ContentProvider {
+    static final List<Message> MESSAGES = new ArrayList<>();
+    static int rowsMaterialized = 0;
+    static int bodiesMaterialized = 0;
+
+    static class Message {
+        final long id;
+        final long threadId;
+        final String address;
+        final String body;
+        final long date;
+        int read;
+        int type;
+
+        Message(long id, long threadId, String address, String body, long date, int read, int type) {
+            this.id = id;
+            this.threadId = threadId;
+            this.address = address;
+            this.body = body;
+            this.date = date;
+            this.read = read;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Replace the table with count messages spread over threadCount threads. Every fifth
+     * message is outgoing and every third incoming one is unread.
+     */
+    static void seed(int count, int threadCount) {
+        MESSAGES.clear();
+        resetCounters();
+        for (int i = 1; i <= count; i++) {
+            long threadId = 1 + (i % threadCount);
+            boolean outgoing = i % 5 == 0;
+            MESSAGES.add(new Message(i, threadId,
+                String.format(Locale.US, "+1 415 555 %04d", threadId % 10000),
+                "Message " + i + " in thread " + threadId + ", long enough to look like a real text",
+                1000000L + i * 1000L,
+                !outgoing && i % 3 == 0 ? 0 : 1,
+                outgoing ? Telephony.Sms.MESSAGE_TYPE_SENT : Telephony.Sms.MESSAGE_TYPE_INBOX));
+        }
+    }
+
+    static Message add(long threadId, String body, int type) {
+        long id = MESSAGES.isEmpty() ? 1 : MESSAGES.get(MESSAGES.size() - 1).id + 1;
+        Message message = new Message(id, threadId, "+1 415 555 " + threadId, body,
+            1000000L + id * 1000L, type == Telephony.Sms.MESSAGE_TYPE_INBOX ? 0 : 1, type);
+        MESSAGES.add(message);
+        return message;
+    }
+
+    static Message find(long id) {
+        for (Message message : MESSAGES) {
+            if (message.id == id) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    static void resetCounters() {
+        rowsMaterialized = 0;
+        bodiesMaterialized = 0;
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        List<String> segments = uri.getPathSegments();
+        String box = segments.isEmpty() ? null : segments.get(0);
+        List<Message> matches = new ArrayList<>();
+        for (Message message : MESSAGES) {
+            if ("inbox".equals(box) && message.type != Telephony.Sms.MESSAGE_TYPE_INBOX) {
+                continue;
+            }
+            if (matches(message, selection, selectionArgs)) {
+                matches.add(message);
+            }
+        }
+        if ("conversations".equals(box)) {
+            Map<Long, Message> latest = new HashMap<>();
+            for (Message message : matches) {
+                Message current = latest.get(message.threadId);
+                if (current == null || message.date > current.date) {
+                    latest.put(message.threadId, message);
+                }
+            }
+            matches = new ArrayList<>(latest.values());
+        }
+
+        MatrixCursor cursor = new MatrixCursor(projection);
+        for (Message message : matches) {
+            Object[] values = new Object[projection.length];
+            for (int c = 0; c < projection.length; c++) {
+                values[c] = column(message, projection[c]);
+            }
+            cursor.addRow(values);
+            rowsMaterialized++;
+        }
+        return cursor;
+    }
+
+    private static boolean matches(Message message, String selection, String[] selectionArgs) {
+        if (selection == null) {
+            return true;
+        }
+        for (String clause : selection.split(" AND ")) {
+            clause = clause.trim();
+            if (clause.startsWith(Telephony.Sms._ID + " > ")) {
+                if (message.id <= Long.parseLong(selectionArgs[0])) {
+                    return false;
+                }
+            } else if (clause.startsWith(Telephony.Sms._ID + " IN ")) {
+                if (!ids(clause).contains(message.id)) {
+                    return false;
+                }
+            } else if (clause.startsWith(Telephony.Sms.THREAD_ID + " IN ")) {
+                if (!ids(clause).contains(message.threadId)) {
+                    return false;
+                }
+            } else if (clause.equals(Telephony.Sms.READ + " = 0")) {
+                if (message.read != 0) {
+                    return false;
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported selection: " + clause);
+            }
+        }
+        return true;
+    }
+
+    private static Set<Long> ids(String clause) {
+        Set<Long> ids = new HashSet<>();
+        String list = clause.substring(clause.indexOf('(') + 1, clause.lastIndexOf(')'));
+        for (String id : list.split(",")) {
+            ids.add(Long.parseLong(id.trim()));
+        }
+        return ids;
+    }
+
+    private static Object column(Message message, String name) {
+        if (Telephony.Sms._ID.equals(name)) {
+            return message.id;
+        } else if (Telephony.Sms.THREAD_ID.equals(name)) {
+            return message.threadId;
+        } else if (Telephony.Sms.ADDRESS.equals(name)) {
+            return message.address;
+        } else if (Telephony.Sms.BODY.equals(name) || Telephony.Sms.Conversations.SNIPPET.equals(name)) {
+            bodiesMaterialized++;
+            return message.body;
+        } else if (Telephony.Sms.DATE.equals(name)) {
+            return message.date;
+        } else if (Telephony.Sms.READ.equals(name)) {
+            return message.read;
+        } else if (Telephony.Sms.TYPE.equals(name)) {
+            return message.type;
+        }
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * BasePhone Mapped Key-Value Store Test
+ * Replay after torn or corrupt records, batch atomicity and compaction
+ */
+package app.vercel.baselauncher.twa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public class MappedKeyValueStoreTest {
+    // Same layout as MappedKeyValueStore: file header, then [length][crc][ops] records
+    private static final int FILE_HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int INITIAL_CAPACITY = 256 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File storeFile;
+
+    @Before
+    public void setUp() throws IOException {
+        storeFile = new File(folder.getRoot(), "kv.log");
+    }
+
+    @Test
+    public void reopenRestoresEveryWrite() {
+        MappedKeyValueStore store = new MappedKeyValueStore(storeFile);
+        store.put("theme", "dark");
+        store.put("dock", "[\"phone\",\"wallet\"]");
+        store.put("name", "Ada \u00e9\u4e2d");
+        store.put("dock", null);
+
+        MappedKeyValueStore reopened = new MappedKeyValueStore(storeFile);
+        assertEquals("dark", reopened.get("theme"));
+        assertEquals("Ada \u00e9\u4e2d", reopened.get("name"));
+        assertNull(reopened.get("dock"));
+    }
+
+    @Test
+    public void corruptTailRecordIsDiscarded() throws IOException {
+        MappedKeyValueStore store = new MappedKeyValueStore(storeFile);
+        store.put("kept", "1");
+        store.put("lost", "2");
+
+        List<Integer> records = recordOffsets();
+        flipPayloadByte(records.get(1));
+
+        MappedKeyValueStore reopened = new MappedKeyValueStore(storeFile);
+        assertEquals("1", reopened.get("kept"));
+        assertNull(reopened.get("lost"));
+    }
+
+    @Test
+    public void tornTailRecordIsDiscarded() throws IOException {
+        MappedKeyValueStore store = new MappedKeyValueStore(storeFile);
+        store.put("kept", "1");
+        store.put("torn", "a value long enough to be cut off halfway");
+
+        // The header landed but only half of the payload did
+        List<Integer> records = recordOffsets();
+        int torn = records.get(1);
+        int length = readInt(torn);
+        zero(torn + RECORD_HEADER_BYTES + length / 2, length - length / 2);
+
+        MappedKeyValueStore reopened = new MappedKeyValueStore(storeFile);
+        assertEquals("1", reopened.get("kept"));
+        assertNull(reopened.get("torn"));
+    }
+
+    @Test
+    public void writesAfterATornRecordSurviveTheNextOpen() throws IOException {
+        MappedKeyValueStore store = new MappedKeyValueStore(storeFile);
+        store.put("kept", "1");
+        store.put("torn", "a value long enough that its leftovers outlast a shorter record");
+        flipPayloadByte(recordOffsets().get(1));
+
+        // Overwrites the torn record's space with a shorter one
+        MappedKeyValueStore reopened = new MappedKeyValueStore(storeFile);
+        reopened.put("after", "2");
+
+        MappedKeyValueStore again = new MappedKeyValueStore(storeFile);
+        assertEquals("1", again.get("kept"));
+        assertEquals("2", again.get("after"));
+        assertNull(again.get("torn"));
+        assertEquals(2, recordOffsets().size());
+    }
+
+    @Test
+    public void batchIsAllOrNothing() throws IOException {
+        MappedKeyValueStore store = new MappedKeyValueStore(storeFile);
+        store.put("before", "0");
+        Map<String, String> batch = new HashMap<>();
+        batch.put("a", "1");
+        batch.put("b", "2");
+        batch.put("before", null);
+        store.apply(batch);
+
+        MappedKeyValueStore intact = new MappedKeyValueStore(storeFile);
+        assertEquals("1", intact.get("a"));
+        assertEquals("2", intact.get("b"));
+        assertNull(intact.get("before"));
+
+        // Damage the batch anywhere and none of it applies
+        List<Integer> records = recordOffsets();
+        assertEquals(2, records.size());
+        flipPayloadByte(records.get(1));
+
+        MappedKeyValueStore reopened = new MappedKeyValueStore(storeFile);
+        assertNull(reopened.get("a"));
+        assertNull(reopened.get("b"));
+        assertEquals("0", reopened.get("before"));
+    }
+
+    @Test
+    public void churnCompactsWithoutGrowingTheFile() {
+        MappedKeyValueStore store = new MappedKeyValueStore(storeFile);
+        String value = repeat('x', 1000);
+        // About 2 MB of appends over ten live keys, so the log compacts several times
+        for (int i = 0; i < 2000; i++) {
+            store.put("key" + (i % 10), value + i);
+        }
+
+        assertEquals(INITIAL_CAPACITY, storeFile.length());
+        MappedKeyValueStore reopened = new MappedKeyValueStore(storeFile);
+        for (int k = 0; k < 10; k++) {
+            assertEquals(value + (1990 + k), reopened.get("key" + k));
+        }
+    }
+
+    @Test
+    public void compactionGrowsPastTheInitialCapacity() {
+        MappedKeyValueStore store = new MappedKeyValueStore(storeFile);
+        String value = repeat('y', 1000);
+        // About 400 KB of live entries, more than the initial file holds
+        for (int i = 0; i < 400; i++) {
+            store.put("key" + i, value + i);
+        }
+
+        assertTrue("file is " + storeFile.length() + " bytes", storeFile.length() > INITIAL_CAPACITY);
+        MappedKeyValueStore reopened = new MappedKeyValueStore(storeFile);
+        assertEquals(400, reopened.getAll("key").size());
+        for (int i = 0; i < 400; i++) {
+            assertEquals(value + i, reopened.get("key" + i));
+        }
+
+        // Appends after the grown file was reopened land after the snapshot record
+        reopened.put("key7", "changed");
+        assertEquals("changed", new MappedKeyValueStore(storeFile).get("key7"));
+    }
+
+    /**
+     * Offsets of every record the store would replay
+     */
+    private List<Integer> recordOffsets() throws IOException {
+        List<Integer> offsets = new ArrayList<>();
+        RandomAccessFile raf = new RandomAccessFile(storeFile, "r");
+        try {
+            long position = FILE_HEADER_BYTES;
+            while (position + RECORD_HEADER_BYTES <= raf.length()) {
+                raf.seek(position);
+                int length = raf.readInt();
+                if (length <= 0) {
+                    break;
+                }
+                offsets.add((int) position);
+                position += RECORD_HEADER_BYTES + length;
+            }
+        } finally {
+            raf.close();
+        }
+        return offsets;
+    }
+
+    private int readInt(int position) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(storeFile, "r");
+        try {
+            raf.seek(position);
+            return raf.readInt();
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void flipPayloadByte(int record) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(storeFile, "rw");
+        try {
+            long position = record + RECORD_HEADER_BYTES + 1;
+            raf.seek(position);
+            int original = raf.read();
+            raf.seek(position);
+            raf.write(original ^ 0xff);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void zero(int position, int count) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(storeFile, "rw");
+        try {
+            raf.seek(position);
+            raf.write(new byte[count]);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * BasePhone Perf Budget
+ * Latency and allocation measurement for JVM performance tests
+ */
+package app.vercel.baselauncher.twa;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Runs a block a few times after warming it up and reports the median wall time and the
+ * bytes it allocated on the calling thread. Budgets are deliberately loose; they exist to
+ * catch an order-of-magnitude regression (a quadratic loop, a per-row tree of objects), not
+ * to benchmark the machine.
+ */
+final class PerfBudget {
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+
+    final long medianNanos;
+    final long medianAllocatedBytes;
+
+    private PerfBudget(long medianNanos, long medianAllocatedBytes) {
+        this.medianNanos = medianNanos;
+        this.medianAllocatedBytes = medianAllocatedBytes;
+    }
+
+    static PerfBudget measure(Runnable block) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            block.run();
+        }
+        long[] nanos = new long[MEASURED_RUNS];
+        long[] bytes = new long[MEASURED_RUNS];
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            block.run();
+            nanos[i] = System.nanoTime() - start;
+            bytes[i] = allocatedBytes() - allocatedBefore;
+        }
+        return new PerfBudget(median(nanos), median(bytes));
+    }
+
+    long medianMillis() {
+        return medianNanos / 1000000L;
+    }
+
+    /**
+     * Bytes allocated so far by this thread, or 0 where the JVM can't tell
+     */
+    static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
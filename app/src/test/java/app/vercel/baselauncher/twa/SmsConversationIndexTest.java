@@ -0,0 +1,153 @@
+/*
+ * BasePhone SMS Conversation Index Test
+ * Seeding from per-thread summaries and syncing only the threads a change touched
+ */
+package app.vercel.baselauncher.twa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Application;
+import android.net.Uri;
+import android.provider.Telephony;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class SmsConversationIndexTest {
+    private static final int MESSAGES = 20000;
+    private static final int THREADS = 400;
+
+    private SmsConversationIndex index;
+
+    @Before
+    public void setUp() {
+        Application application = RuntimeEnvironment.getApplication();
+        Robolectric.setupContentProvider(FakeSmsProvider.class, "sms");
+        FakeSmsProvider.seed(MESSAGES, THREADS);
+        index = new SmsConversationIndex(application);
+    }
+
+    @Test
+    public void firstBuildReadsOneBodyPerThread() throws Exception {
+        JSONObject page = new JSONObject(index.getPage(0, 50));
+
+        assertEquals(THREADS, page.getInt("total"));
+        assertEquals(50, page.getJSONArray("conversations").length());
+        assertEquals(THREADS, FakeSmsProvider.bodiesMaterialized);
+        // Thread summaries plus the unread inbox rows; never the whole table
+        assertTrue("read " + FakeSmsProvider.rowsMaterialized + " rows",
+            FakeSmsProvider.rowsMaterialized < MESSAGES / 2);
+    }
+
+    @Test
+    public void readFlipSyncsOnlyItsThread() throws Exception {
+        index.getPage(0, 50);
+        FakeSmsProvider.Message unread = firstUnread();
+        int before = unreadCount(unread.threadId);
+        FakeSmsProvider.resetCounters();
+
+        unread.read = 1;
+        index.onSmsChanged(Uri.withAppendedPath(Telephony.Sms.CONTENT_URI, String.valueOf(unread.id)));
+        index.sync();
+
+        assertEquals(before - 1, unreadCount(unread.threadId));
+        assertEquals(1, FakeSmsProvider.bodiesMaterialized);
+        assertTrue("read " + FakeSmsProvider.rowsMaterialized + " rows",
+            FakeSmsProvider.rowsMaterialized < MESSAGES / THREADS);
+    }
+
+    @Test
+    public void newMessageMovesItsThreadToTheTop() throws Exception {
+        index.getPage(0, 10);
+        FakeSmsProvider.Message added = FakeSmsProvider.add(7, "Running late", Telephony.Sms.MESSAGE_TYPE_INBOX);
+
+        index.onSmsChanged(Uri.withAppendedPath(Telephony.Sms.CONTENT_URI, String.valueOf(added.id)));
+        index.sync();
+
+        JSONObject top = new JSONObject(index.getPage(0, 1)).getJSONArray("conversations").getJSONObject(0);
+        assertEquals(7, top.getLong("threadId"));
+        assertEquals("Running late", top.getString("snippet"));
+        assertFalse(top.getBoolean("outgoing"));
+    }
+
+    @Test
+    public void outboxToSentUpdatesDirection() throws Exception {
+        FakeSmsProvider.Message sending = FakeSmsProvider.add(9, "On my way", Telephony.Sms.MESSAGE_TYPE_OUTBOX);
+        index.getPage(0, 10);
+
+        sending.type = Telephony.Sms.MESSAGE_TYPE_SENT;
+        index.onSmsChanged(Uri.withAppendedPath(Telephony.Sms.CONTENT_URI, String.valueOf(sending.id)));
+        index.sync();
+
+        JSONObject top = new JSONObject(index.getPage(0, 1)).getJSONArray("conversations").getJSONObject(0);
+        assertEquals(9, top.getLong("threadId"));
+        assertTrue(top.getBoolean("outgoing"));
+    }
+
+    @Test
+    public void deletedThreadIsDropped() throws Exception {
+        index.getPage(0, 10);
+        for (int i = FakeSmsProvider.MESSAGES.size() - 1; i >= 0; i--) {
+            if (FakeSmsProvider.MESSAGES.get(i).threadId == 3) {
+                FakeSmsProvider.MESSAGES.remove(i);
+            }
+        }
+
+        index.onSmsChanged(Uri.parse("content://sms/conversations/3"));
+        index.sync();
+
+        assertEquals(THREADS - 1, new JSONObject(index.getPage(0, 1)).getInt("total"));
+    }
+
+    @Test
+    public void unplacedChangeReseeds() throws Exception {
+        index.getPage(0, 10);
+        for (FakeSmsProvider.Message message : FakeSmsProvider.MESSAGES) {
+            message.read = 1;
+        }
+
+        index.onSmsChanged(Telephony.Sms.Inbox.CONTENT_URI);
+        index.sync();
+
+        JSONArray conversations = new JSONObject(index.getPage(0, 100)).getJSONArray("conversations");
+        for (int i = 0; i < conversations.length(); i++) {
+            assertEquals(0, conversations.getJSONObject(i).getInt("unreadCount"));
+        }
+    }
+
+    private FakeSmsProvider.Message firstUnread() {
+        for (FakeSmsProvider.Message message : FakeSmsProvider.MESSAGES) {
+            if (message.read == 0) {
+                return message;
+            }
+        }
+        throw new AssertionError("No unread message");
+    }
+
+    private int unreadCount(long threadId) throws Exception {
+        JSONArray conversations = new JSONObject(index.getPage(0, 100)).getJSONArray("conversations");
+        int offset = 0;
+        while (true) {
+            for (int i = 0; i < conversations.length(); i++) {
+                JSONObject conversation = conversations.getJSONObject(i);
+                if (conversation.getLong("threadId") == threadId) {
+                    return conversation.getInt("unreadCount");
+                }
+            }
+            offset += conversations.length();
+            if (conversations.length() == 0) {
+                throw new AssertionError("No thread " + threadId);
+            }
+            conversations = new JSONObject(index.getPage(offset, 100)).getJSONArray("conversations");
+        }
+    }
+}
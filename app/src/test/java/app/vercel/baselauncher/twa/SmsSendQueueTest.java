@@ -0,0 +1,223 @@
+/*
+ * BasePhone SMS Send Queue Test
+ * Ordering, multipart, retry, delivery and throttle behavior against a stand-in radio
+ */
+package app.vercel.baselauncher.twa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Activity;
+import android.app.Application;
+import android.app.PendingIntent;
+import android.os.Looper;
+import android.telephony.SmsManager;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public class SmsSendQueueTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Application application;
+    private File storeFile;
+
+    /**
+     * Records what would have gone to the radio; tests answer with the queue's report calls
+     */
+    private static class StandInSender implements SmsSendQueue.Sender {
+        final List<String> sentTo = new ArrayList<>();
+        int partsPerMessage = 1;
+
+        @Override
+        public ArrayList<String> divideMessage(int subscriptionId, String body) {
+            ArrayList<String> parts = new ArrayList<>();
+            for (int i = 0; i < partsPerMessage; i++) {
+                parts.add(body + " (" + (i + 1) + "/" + partsPerMessage + ")");
+            }
+            return parts;
+        }
+
+        @Override
+        public void send(int subscriptionId, String to, ArrayList<String> parts,
+                         ArrayList<PendingIntent> sentIntents, ArrayList<PendingIntent> deliveryIntents) {
+            assertEquals(parts.size(), sentIntents.size());
+            assertEquals(parts.size(), deliveryIntents.size());
+            sentTo.add(to);
+        }
+
+        @Override
+        public int defaultSubscriptionId() {
+            return 1;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        application = RuntimeEnvironment.getApplication();
+        storeFile = new File(folder.getRoot(), "store.bin");
+    }
+
+    @Test
+    public void sendsOneMessageAtATimeInOrder() throws Exception {
+        StandInSender sender = new StandInSender();
+        SmsSendQueue queue = newQueue(sender);
+
+        List<String> ids = queue.enqueue(Arrays.asList("+1 (415) 555-0001", "4155550002", " "), "hi");
+        idle();
+
+        // The blank recipient is skipped and the number is cleaned up
+        assertEquals(2, ids.size());
+        assertEquals(Collections.singletonList("+14155550001"), sender.sentTo);
+        assertEquals("sending", status(queue, ids.get(0)));
+        assertEquals("queued", status(queue, ids.get(1)));
+
+        queue.onSentReport(ids.get(0), 0, Activity.RESULT_OK);
+        idle();
+        assertEquals("sent", status(queue, ids.get(0)));
+        assertEquals(Arrays.asList("+14155550001", "4155550002"), sender.sentTo);
+    }
+
+    @Test
+    public void multipartMessageIsSentOnceEveryPartReports() throws Exception {
+        StandInSender sender = new StandInSender();
+        sender.partsPerMessage = 3;
+        SmsSendQueue queue = newQueue(sender);
+        String id = queue.enqueue(Collections.singletonList("4155550001"), "long").get(0);
+        idle();
+
+        queue.onSentReport(id, 0, Activity.RESULT_OK);
+        queue.onSentReport(id, 1, Activity.RESULT_OK);
+        idle();
+        assertEquals("sending", status(queue, id));
+
+        queue.onSentReport(id, 2, Activity.RESULT_OK);
+        queue.onDeliveryReport(id, 0, SmsSendQueue.DELIVERY_COMPLETE);
+        queue.onDeliveryReport(id, 1, SmsSendQueue.DELIVERY_COMPLETE);
+        idle();
+        assertEquals("sent", status(queue, id));
+
+        queue.onDeliveryReport(id, 2, SmsSendQueue.DELIVERY_COMPLETE);
+        idle();
+        assertEquals("delivered", status(queue, id));
+    }
+
+    @Test
+    public void failedDeliveryReportFailsTheMessage() throws Exception {
+        SmsSendQueue queue = newQueue(new StandInSender());
+        String id = queue.enqueue(Collections.singletonList("4155550001"), "hi").get(0);
+        idle();
+        queue.onSentReport(id, 0, Activity.RESULT_OK);
+        // The SMSC is still trying; only the final report counts
+        queue.onDeliveryReport(id, 0, SmsSendQueue.DELIVERY_PENDING);
+        idle();
+        assertEquals("sent", status(queue, id));
+
+        queue.onDeliveryReport(id, 0, SmsSendQueue.DELIVERY_FAILED);
+        idle();
+        JSONObject message = find(queue, id);
+        assertEquals("failed", message.getString("status"));
+        assertEquals("undelivered", message.getString("error"));
+    }
+
+    @Test
+    public void radioOffIsRetriedLater() throws Exception {
+        StandInSender sender = new StandInSender();
+        SmsSendQueue queue = newQueue(sender);
+        String id = queue.enqueue(Collections.singletonList("4155550001"), "hi").get(0);
+        idle();
+
+        queue.onSentReport(id, 0, SmsManager.RESULT_ERROR_RADIO_OFF);
+        idle();
+        // Nothing went out, so it goes back in the queue with a backoff instead of failing
+        JSONObject message = find(queue, id);
+        assertEquals("queued", message.getString("status"));
+        assertEquals(1, message.getInt("attempts"));
+        assertTrue(message.getLong("notBefore") > System.currentTimeMillis() + 25000);
+        assertEquals(1, sender.sentTo.size());
+    }
+
+    @Test
+    public void throttleWindowSurvivesRestart() throws Exception {
+        StandInSender sender = new StandInSender();
+        SmsSendQueue queue = newQueue(sender);
+        List<String> recipients = new ArrayList<>();
+        for (int i = 0; i < 31; i++) {
+            recipients.add("41555500" + (10 + i));
+        }
+        List<String> ids = queue.enqueue(recipients, "hi");
+        idle();
+        for (int i = 0; i < 30; i++) {
+            queue.onSentReport(ids.get(i), 0, Activity.RESULT_OK);
+            idle();
+        }
+        // The 31st would trigger the platform's premium SMS prompt
+        assertEquals(30, sender.sentTo.size());
+        assertEquals("queued", status(queue, ids.get(30)));
+
+        // A new process over the same store still sees the full window
+        StandInSender restarted = new StandInSender();
+        SmsSendQueue reloaded = new SmsSendQueue(application, new MappedKeyValueStore(storeFile),
+            restarted, Looper.getMainLooper());
+        idle();
+        assertTrue(restarted.sentTo.isEmpty());
+        assertEquals("queued", status(reloaded, ids.get(30)));
+    }
+
+    @Test
+    public void deliveryOutcomeReadsGsmAndCdmaStatus() {
+        assertEquals(SmsSendQueue.DELIVERY_COMPLETE, SmsSendQueue.deliveryOutcome(0x00, "3gpp"));
+        assertEquals(SmsSendQueue.DELIVERY_PENDING, SmsSendQueue.deliveryOutcome(0x20, "3gpp"));
+        assertEquals(SmsSendQueue.DELIVERY_FAILED, SmsSendQueue.deliveryOutcome(0x41, "3gpp"));
+        assertEquals(SmsSendQueue.DELIVERY_FAILED, SmsSendQueue.deliveryOutcome(0x60, null));
+
+        // CDMA: error class in bits 24-25, status code in bits 16-21
+        assertEquals(SmsSendQueue.DELIVERY_COMPLETE, SmsSendQueue.deliveryOutcome(0x02 << 16, "3gpp2"));
+        assertEquals(SmsSendQueue.DELIVERY_PENDING, SmsSendQueue.deliveryOutcome(0x01 << 16, "3gpp2"));
+        assertEquals(SmsSendQueue.DELIVERY_PENDING, SmsSendQueue.deliveryOutcome(2 << 24, "3gpp2"));
+        assertEquals(SmsSendQueue.DELIVERY_FAILED, SmsSendQueue.deliveryOutcome(3 << 24, "3gpp2"));
+    }
+
+    private SmsSendQueue newQueue(StandInSender sender) {
+        SmsSendQueue queue = new SmsSendQueue(application, new MappedKeyValueStore(storeFile),
+            sender, Looper.getMainLooper());
+        idle();
+        return queue;
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private static String status(SmsSendQueue queue, String id) throws Exception {
+        return find(queue, id).getString("status");
+    }
+
+    private static JSONObject find(SmsSendQueue queue, String id) throws Exception {
+        JSONArray all = new JSONArray(queue.getQueueJson());
+        Map<String, JSONObject> byId = new HashMap<>();
+        for (int i = 0; i < all.length(); i++) {
+            byId.put(all.getJSONObject(i).getString("id"), all.getJSONObject(i));
+        }
+        assertTrue("no message " + id, byId.containsKey(id));
+        return byId.get(id);
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * BasePhone Wallet RPC Client Test
+ * Batching, endpoint checks and stale-result handling against a stand-in JSON-RPC server
+ */
+package app.vercel.baselauncher.twa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.os.Looper;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+public class WalletRpcClientTest {
+    private static final String WALLET = "0x00000000000000000000000000000000000000aa";
+    private static final String TOKEN = "0x00000000000000000000000000000000000000bb";
+
+    private Application application;
+    private HttpServer server;
+    private String endpoint;
+    private final AtomicInteger posts = new AtomicInteger();
+    private final AtomicInteger balanceBatches = new AtomicInteger();
+    // Set by a test to hold balance batches until it has changed the endpoint
+    private volatile CountDownLatch balanceReceived;
+    private volatile CountDownLatch releaseBalance;
+
+    @Before
+    public void setUp() throws IOException {
+        application = RuntimeEnvironment.getApplication();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange);
+            }
+        });
+        server.start();
+        endpoint = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void releaseBuildsOnlyAcceptHttps() {
+        WalletRpcClient client = newClient(false);
+
+        assertFalse(client.setEndpoint(endpoint));
+        assertFalse(client.setEndpoint("ftp://rpc.example.com"));
+        assertFalse(client.setEndpoint("not a url"));
+        assertEquals(WalletRpcClient.DEFAULT_ENDPOINT, client.getEndpoint());
+
+        assertTrue(client.setEndpoint("https://rpc.example.com"));
+        assertEquals("https://rpc.example.com", client.getEndpoint());
+        assertTrue(client.setEndpoint(""));
+        assertEquals(WalletRpcClient.DEFAULT_ENDPOINT, client.getEndpoint());
+    }
+
+    @Test
+    public void debugBuildsAcceptLocalHttp() {
+        WalletRpcClient client = newClient(true);
+        assertTrue(client.setEndpoint(endpoint));
+        assertEquals(endpoint, client.getEndpoint());
+    }
+
+    @Test
+    public void balancesArePinnedToTheLatestBlock() throws Exception {
+        WalletRpcClient client = newClient(true);
+        client.setEndpoint(endpoint);
+
+        // Generation 1: the client has seen one endpoint change
+        WalletRpcClient.Snapshot snapshot = client.refresh("key", WALLET, Collections.singletonList(TOKEN), 1);
+        assertNotNull(snapshot);
+        assertEquals(0x10, snapshot.blockNumber);
+        assertEquals("0x64", snapshot.eth);
+        assertEquals("0x01", snapshot.tokens.get(TOKEN));
+        // One block number read, then every balance in one batch
+        assertEquals(2, posts.get());
+        assertEquals(1, balanceBatches.get());
+
+        // Same block within one block time: no network at all
+        assertNotNull(client.refresh("key", WALLET, Collections.singletonList(TOKEN), 1));
+        assertEquals(2, posts.get());
+    }
+
+    @Test
+    public void refreshFromBeforeAnEndpointChangeIsDropped() throws Exception {
+        final WalletRpcClient client = newClient(true);
+        client.setEndpoint(endpoint);
+        balanceReceived = new CountDownLatch(1);
+        releaseBalance = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<WalletRpcClient.Snapshot> result = executor.submit(new Callable<WalletRpcClient.Snapshot>() {
+                @Override
+                public WalletRpcClient.Snapshot call() throws Exception {
+                    return client.refresh("key", WALLET, Collections.<String>emptyList(), 1);
+                }
+            });
+            assertTrue(balanceReceived.await(10, TimeUnit.SECONDS));
+            client.setEndpoint("https://rpc.example.com");
+            releaseBalance.countDown();
+
+            assertNull(result.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(application.getSharedPreferences("basephone_wallet_rpc", Context.MODE_PRIVATE)
+            .getAll().isEmpty());
+    }
+
+    @Test
+    public void walletsThePageStopsAskingAboutArePruned() {
+        WalletRpcClient client = newClient(true);
+        client.setEndpoint(endpoint);
+        List<String> tokens = Arrays.asList(TOKEN);
+
+        client.getBalances(WALLET, tokens);
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMinutes(4));
+        client.getBalances("0x00000000000000000000000000000000000000cc", tokens);
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMinutes(2));
+        client.pruneWatched();
+
+        // The first wallet went six minutes without a request, the second only two
+        assertEquals(1, client.watchedCount());
+    }
+
+    private WalletRpcClient newClient(boolean debuggable) {
+        ApplicationInfo info = application.getApplicationInfo();
+        if (debuggable) {
+            info.flags |= ApplicationInfo.FLAG_DEBUGGABLE;
+        } else {
+            info.flags &= ~ApplicationInfo.FLAG_DEBUGGABLE;
+        }
+        return new WalletRpcClient(application);
+    }
+
+    /**
+     * Minimal node: block 0x10, 100 wei of ETH and a token balance of 1 for everyone
+     */
+    private void respond(HttpExchange exchange) throws IOException {
+        posts.incrementAndGet();
+        JSONArray response = new JSONArray();
+        try {
+            JSONArray batch = new JSONArray(readBody(exchange.getRequestBody()));
+            boolean balances = false;
+            for (int i = 0; i < batch.length(); i++) {
+                JSONObject request = batch.getJSONObject(i);
+                String method = request.getString("method");
+                String result;
+                if ("eth_blockNumber".equals(method)) {
+                    result = "0x10";
+                } else if ("eth_getBalance".equals(method)) {
+                    balances = true;
+                    result = "0x64";
+                } else {
+                    result = "0x01";
+                }
+                response.put(new JSONObject().put("jsonrpc", "2.0").put("id", request.getInt("id")).put("result", result));
+            }
+            if (balances) {
+                balanceBatches.incrementAndGet();
+                CountDownLatch received = balanceReceived;
+                if (received != null) {
+                    received.countDown();
+                    releaseBalance.await(10, TimeUnit.SECONDS);
+                }
+            }
+        } catch (Exception e) {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+            return;
+        }
+        byte[] body = response.toString().getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(body);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return body.toString("UTF-8");
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * BasePhone Widget Prefetcher Test
+ * Fetching, storing and endpoint checks against a stand-in HTTP server
+ */
+package app.vercel.baselauncher.twa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.app.Application;
+import android.location.Location;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+@RunWith(RobolectricTestRunner.class)
+public class WidgetPrefetcherTest {
+    private static final int OVERSIZED_BYTES = 300 * 1024;
+
+    private Application application;
+    private HttpServer server;
+    private String base;
+    private WidgetPrefetchStore store;
+    private WidgetPrefetcher prefetcher;
+    private volatile String lastQuery;
+
+    @Before
+    public void setUp() throws IOException {
+        application = RuntimeEnvironment.getApplication();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange);
+            }
+        });
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+        store = new WidgetPrefetchStore(application);
+        prefetcher = new WidgetPrefetcher(application, store);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void successfulFetchIsStored() throws Exception {
+        store.putEndpoint("weather", base + "/ok");
+
+        assertTrue(prefetcher.prefetchAll());
+
+        JSONObject entry = new JSONObject(store.getResponseJson("weather"));
+        assertEquals(base + "/ok", entry.getString("url"));
+        assertEquals("{\"temp\":21}", entry.getString("body"));
+        assertTrue(entry.getLong("fetchedAt") > 0);
+        assertTrue(entry.has("ageMs"));
+    }
+
+    @Test
+    public void nonSuccessStatusIsNotStored() {
+        store.putEndpoint("news", base + "/unavailable");
+
+        assertFalse(prefetcher.prefetchAll());
+        assertEquals("{}", store.getResponseJson("news"));
+    }
+
+    @Test
+    public void oversizedBodyIsRefused() {
+        store.putEndpoint("big", base + "/big");
+
+        assertFalse(prefetcher.prefetchAll());
+        assertEquals("{}", store.getResponseJson("big"));
+    }
+
+    @Test
+    public void oneFailingEndpointDoesNotStopTheRest() throws Exception {
+        store.putEndpoint("broken", base + "/unavailable");
+        store.putEndpoint("weather", base + "/ok");
+
+        assertFalse(prefetcher.prefetchAll());
+        assertEquals("{\"temp\":21}", new JSONObject(store.getResponseJson("weather")).getString("body"));
+    }
+
+    @Test
+    public void locationPlaceholdersAreFilled() throws Exception {
+        Location location = new Location("network");
+        location.setLatitude(52.52001);
+        location.setLongitude(-13.40512);
+
+        String url = WidgetPrefetcher.resolveUrl(base + "/ok?lat={lat}&lon={lon}", location);
+        assertEquals(base + "/ok?lat=52.5200&lon=-13.4051", url);
+
+        prefetcher.fetch(url);
+        assertEquals("lat=52.5200&lon=-13.4051", lastQuery);
+    }
+
+    @Test
+    public void placeholdersWithoutAFixAreSkipped() {
+        assertNull(WidgetPrefetcher.resolveUrl(base + "/ok?lat={lat}", null));
+    }
+
+    @Test
+    public void onlyHttpSchemesAreFetched() throws Exception {
+        assertTrue(WidgetPrefetcher.isHttpUrl("https://example.com/data"));
+        assertTrue(WidgetPrefetcher.isHttpUrl(" HTTP://example.com/data"));
+        for (String url : Arrays.asList(
+                "file:///data/data/app.vercel.baselauncher.twa/shared_prefs/x.xml",
+                "jar:file:///sdcard/x.jar!/a",
+                "content://contacts/people",
+                "ftp://example.com/data")) {
+            assertFalse(url, WidgetPrefetcher.isHttpUrl(url));
+            try {
+                prefetcher.fetch(url);
+                fail("Fetched " + url);
+            } catch (IOException expected) {
+                // Refused before any connection is opened
+            }
+        }
+
+        // Stored before the bridge checked schemes: skipped by the job, never read
+        store.putEndpoint("legacy", "file:///etc/hosts");
+        assertFalse(prefetcher.prefetchAll());
+        assertEquals("{}", store.getResponseJson("legacy"));
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        lastQuery = exchange.getRequestURI().getRawQuery();
+        byte[] body;
+        int status = 200;
+        if ("/ok".equals(path)) {
+            body = "{\"temp\":21}".getBytes("UTF-8");
+        } else if ("/big".equals(path)) {
+            body = new byte[OVERSIZED_BYTES];
+            Arrays.fill(body, (byte) ' ');
+        } else {
+            status = 503;
+            body = "down".getBytes("UTF-8");
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(body);
+        } catch (IOException e) {
+            // The client hung up after hitting its size cap
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -6,6 +6,9 @@ import { useState, useRef, useEffect, useCallback } from 'react';
 import Modal from './Modal';
 import { useUI } from '@/lib/state';
 import { hasAndroidBridge, launchAndroidApp } from '@/lib/android-bridge';
+import { twaRequest, whenTwaChannelReady } from '@/lib/twa-channel';
+import { useBadgeCounts } from '@/hooks/useBadgeCounts';
+import { storeBatch, storeGet, storeGetAll, storeSet } from '@/lib/native-store';
 import c from 'classnames';
 
 // Base ecosystem apps (always shown first)
@@ -71,39 +74,47 @@ interface InstalledApp {
   packageName: string;
   appName: string;
   isSystemApp: boolean;
+  // Section header in the user's locale; the native list is already in locale order
+  section?: string;
 }
 
 // Storage keys
 const USAGE_STORAGE_KEY = 'basephone_app_usage';
+const USAGE_KEY_PREFIX = 'basephone_app_usage:';
 const INSTALLED_APPS_KEY = 'basephone_installed_apps';
 
-// Get app usage from localStorage
-const getAppUsage = (): Record<string, number> => {
+// Older builds kept every count in one JSON map; split it into per-app keys once
+const migrateAppUsage = () => {
   try {
-    const stored = localStorage.getItem(USAGE_STORAGE_KEY);
-    return stored ? JSON.parse(stored) : {};
-  } catch {
-    return {};
+    const legacy = localStorage.getItem(USAGE_STORAGE_KEY);
+    if (!legacy) return;
+    const changes: Record<string, string | null> = { [USAGE_STORAGE_KEY]: null };
+    for (const [appId, count] of Object.entries(JSON.parse(legacy) as Record<string, number>)) {
+      changes[USAGE_KEY_PREFIX + appId] = String(count);
+    }
+    storeBatch(changes);
+  } catch (e) {
+    console.error('Failed to migrate app usage:', e);
   }
 };
 
-// Save app usage to localStorage
-const saveAppUsage = (usage: Record<string, number>) => {
-  try {
-    localStorage.setItem(USAGE_STORAGE_KEY, JSON.stringify(usage));
-  } catch (e) {
-    console.error('Failed to save app usage:', e);
+// Get app usage counts, one stored key per app
+const getAppUsage = (): Record<string, number> => {
+  migrateAppUsage();
+  const usage: Record<string, number> = {};
+  for (const [key, value] of Object.entries(storeGetAll(USAGE_KEY_PREFIX))) {
+    usage[key.slice(USAGE_KEY_PREFIX.length)] = Number(value) || 0;
   }
+  return usage;
 };
 
-// Increment usage count for an app
+// Increment usage count for an app; only that app's key is rewritten
 const incrementUsage = (appId: string) => {
-  const usage = getAppUsage();
-  usage[appId] = (usage[appId] || 0) + 1;
-  saveAppUsage(usage);
+  const key = USAGE_KEY_PREFIX + appId;
+  storeSet(key, String((Number(storeGet(key)) || 0) + 1));
 };
 
-// Get installed apps from Android (if available) or localStorage
+// Get installed apps from Android (if available) or the stored fallback list
 const getInstalledApps = (): InstalledApp[] => {
   try {
     // Check if running in Android WebView with JS interface
@@ -113,17 +124,52 @@ const getInstalledApps = (): InstalledApp[] => {
     }
     
     // Fallback to stored list
-    const stored = localStorage.getItem(INSTALLED_APPS_KEY);
+    const stored = storeGet(INSTALLED_APPS_KEY);
     return stored ? JSON.parse(stored) : [];
   } catch {
     return [];
   }
 };
 
+// Base apps first, then installed device apps by usage, then system apps
+const organizeApps = (installedApps: InstalledApp[]): AppInfo[] => {
+  const usage = getAppUsage();
+
+  // Create a set of installed package names for quick lookup
+  const installedPackages = new Set(installedApps.map(a => a.packageName));
+  
+  // Start with Base apps (always first)
+  const apps: AppInfo[] = [...BASE_APPS.map(app => ({ ...app, usageCount: usage[app.id] || 0 }))];
+  
+  // Add device apps that are "installed" (matched or simulated)
+  const deviceApps = COMMON_DEVICE_APPS
+    .map(app => ({
+      ...app,
+      isBase: false,
+      usageCount: usage[app.id] || 0,
+    }))
+    .filter(app => {
+      // If we have real installed apps data, filter by it
+      if (installedApps.length > 0) {
+        return installedPackages.has(app.package || '');
+      }
+      // Otherwise show common apps (simulated)
+      return true;
+    })
+    .sort((a, b) => (b.usageCount || 0) - (a.usageCount || 0));
+  
+  // Add system apps
+  const systemApps = SYSTEM_APPS.map(app => ({ ...app, usageCount: usage[app.id] || 0 }));
+  
+  // Combine: Base apps first, then most used device apps, then system apps
+  return [...apps, ...deviceApps, ...systemApps];
+};
+
 const ITEMS_PER_PAGE = 20;
 
 export default function AppDrawer() {
   const { setShowAppDrawer, setShowUserConfig } = useUI();
+  const badgeCounts = useBadgeCounts();
   const [currentPage, setCurrentPage] = useState(0);
   const [allApps, setAllApps] = useState<AppInfo[]>([]);
   const [touchStart, setTouchStart] = useState<number | null>(null);
@@ -135,37 +181,23 @@ export default function AppDrawer() {
 
   // Load and organize apps
   useEffect(() => {
-    const usage = getAppUsage();
-    const installedApps = getInstalledApps();
-    
-    // Create a set of installed package names for quick lookup
-    const installedPackages = new Set(installedApps.map(a => a.packageName));
-    
-    // Start with Base apps (always first)
-    const apps: AppInfo[] = [...BASE_APPS.map(app => ({ ...app, usageCount: usage[app.id] || 0 }))];
-    
-    // Add device apps that are "installed" (matched or simulated)
-    const deviceApps = COMMON_DEVICE_APPS
-      .map(app => ({
-        ...app,
-        isBase: false,
-        usageCount: usage[app.id] || 0,
-      }))
-      .filter(app => {
-        // If we have real installed apps data, filter by it
-        if (installedApps.length > 0) {
-          return installedPackages.has(app.package || '');
-        }
-        // Otherwise show common apps (simulated)
-        return true;
-      })
-      .sort((a, b) => (b.usageCount || 0) - (a.usageCount || 0));
-    
-    // Add system apps
-    const systemApps = SYSTEM_APPS.map(app => ({ ...app, usageCount: usage[app.id] || 0 }));
-    
-    // Combine: Base apps first, then most used device apps, then system apps
-    setAllApps([...apps, ...deviceApps, ...systemApps]);
+    setAllApps(organizeApps(getInstalledApps()));
+
+    // In a TWA the real list comes over the message channel; keep it for the next open
+    if (hasAndroidBridge()) return;
+    let cancelled = false;
+    whenTwaChannelReady().then(ready => {
+      if (!ready || cancelled) return;
+      twaRequest<InstalledApp[]>('getInstalledApps')
+        .then(installedApps => {
+          storeSet(INSTALLED_APPS_KEY, JSON.stringify(installedApps));
+          if (!cancelled) setAllApps(organizeApps(installedApps));
+        })
+        .catch(e => console.error('Error getting installed apps:', e));
+    });
+    return () => {
+      cancelled = true;
+    };
   }, []);
 
   // Create pages
@@ -274,6 +306,11 @@ export default function AppDrawer() {
                     >
                       <span className="icon material-symbols-outlined">{app.icon}</span>
                       {app.isBase && <span className="base-badge">◆</span>}
+                      {app.package && badgeCounts[app.package] > 0 && (
+                        <span className="unread-badge">
+                          {badgeCounts[app.package] > 99 ? '99+' : badgeCounts[app.package]}
+                        </span>
+                      )}
                     </div>
                     <span className="app-label">{app.name}</span>
                   </button>
@@ -6,11 +6,16 @@
 import { useState } from 'react';
 import Modal from './Modal';
 import { useUI } from '@/lib/state';
+import { getRecentCalls, RecentCall } from '@/lib/android-bridge';
+
+const RECENTS_SHOWN = 5;
 
 export default function Dialer() {
   const { setShowDialer } = useUI();
   const [number, setNumber] = useState('');
   const [status, setStatus] = useState<'idle' | 'calling' | 'connected'>('idle');
+  // Served from the native in-memory head, so this is cheap on every open
+  const [recents] = useState<RecentCall[]>(() => getRecentCalls(0, RECENTS_SHOWN).calls);
 
   const handleClick = (digit: string) => {
     if (status === 'idle') {
@@ -46,6 +51,19 @@ export default function Dialer() {
             {status !== 'idle' && <div className="dialer-number">{number}</div>}
         </div>
         
+        {status === 'idle' && number.length === 0 && recents.length > 0 && (
+          <div className="dialer-recents">
+            {recents.map(call => (
+              <button key={call.id} className="dialer-recent" onClick={() => setNumber(call.number)}>
+                <span className={`icon ${call.type === 'missed' ? 'missed' : ''}`}>
+                  {call.type === 'outgoing' ? 'call_made' : call.type === 'missed' ? 'call_missed' : 'call_received'}
+                </span>
+                <span className="dialer-recent-name">{call.name || call.number}</span>
+              </button>
+            ))}
+          </div>
+        )}
+
         <div className="dialer-grid">
           {digits.map(d => (
             <button key={d} className="dialer-key" onClick={() => handleClick(d)} disabled={status !== 'idle'}>
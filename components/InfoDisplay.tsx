@@ -58,9 +58,73 @@ const cacheWeather = (data: WeatherData) => {
   }
 };
 
+// Open-Meteo URL for a location; {lat}/{lon} are filled natively when prefetching
+const WEATHER_URL_TEMPLATE =
+  'https://api.open-meteo.com/v1/forecast?latitude={lat}&longitude={lon}&current=temperature_2m,weather_code&timezone=auto';
+
+// Convert an Open-Meteo response into display data
+const parseWeather = (data: any): WeatherData => {
+  const temp = Math.round(data.current.temperature_2m);
+  const weatherCode = data.current.weather_code;
+
+  // Weather code to condition mapping (WMO codes)
+  const conditionMap: Record<number, string> = {
+    0: 'Clear',
+    1: 'Mainly Clear',
+    2: 'Partly Cloudy',
+    3: 'Overcast',
+    45: 'Foggy',
+    48: 'Foggy',
+    51: 'Light Drizzle',
+    53: 'Drizzle',
+    55: 'Heavy Drizzle',
+    61: 'Light Rain',
+    63: 'Rain',
+    65: 'Heavy Rain',
+    71: 'Light Snow',
+    73: 'Snow',
+    75: 'Heavy Snow',
+    77: 'Snow Grains',
+    80: 'Light Showers',
+    81: 'Showers',
+    82: 'Heavy Showers',
+    85: 'Snow Showers',
+    86: 'Heavy Snow Showers',
+    95: 'Thunderstorm',
+    96: 'Thunderstorm with Hail',
+    99: 'Thunderstorm with Heavy Hail',
+  };
+
+  const condition = conditionMap[weatherCode] || 'Partly Cloudy';
+
+  return {
+    temp,
+    condition,
+    icon: getWeatherIcon(condition),
+    location: 'Current Location',
+  };
+};
+
+// Get weather fetched natively in the background, if fresh enough
+const getPrefetchedWeather = (): WeatherData | null => {
+  try {
+    if ((window as any).Android?.getPrefetchedData) {
+      const entry = JSON.parse((window as any).Android.getPrefetchedData('weather'));
+      if (entry.body && entry.ageMs < WEATHER_CACHE_DURATION) {
+        return parseWeather(JSON.parse(entry.body));
+      }
+    }
+  } catch {
+    // Ignore prefetch errors
+  }
+  return null;
+};
+
 export default function InfoDisplay() {
   const [date, setDate] = useState(new Date());
-  const [weather, setWeather] = useState<WeatherData | null>(getCachedWeather());
+  const [weather, setWeather] = useState<WeatherData | null>(
+    () => getCachedWeather() || getPrefetchedWeather()
+  );
   const [useCelsius, setUseCelsius] = useState(true);
 
   // Update time every second
@@ -74,51 +138,13 @@ export default function InfoDisplay() {
     try {
       // Using Open-Meteo API (free, no API key required)
       const response = await fetch(
-        `https://api.open-meteo.com/v1/forecast?latitude=${lat}&longitude=${lon}&current=temperature_2m,weather_code&timezone=auto`
+        WEATHER_URL_TEMPLATE.replace('{lat}', String(lat)).replace('{lon}', String(lon))
       );
       
       if (!response.ok) throw new Error('Weather fetch failed');
       
       const data = await response.json();
-      const temp = Math.round(data.current.temperature_2m);
-      const weatherCode = data.current.weather_code;
-      
-      // Weather code to condition mapping (WMO codes)
-      const conditionMap: Record<number, string> = {
-        0: 'Clear',
-        1: 'Mainly Clear',
-        2: 'Partly Cloudy',
-        3: 'Overcast',
-        45: 'Foggy',
-        48: 'Foggy',
-        51: 'Light Drizzle',
-        53: 'Drizzle',
-        55: 'Heavy Drizzle',
-        61: 'Light Rain',
-        63: 'Rain',
-        65: 'Heavy Rain',
-        71: 'Light Snow',
-        73: 'Snow',
-        75: 'Heavy Snow',
-        77: 'Snow Grains',
-        80: 'Light Showers',
-        81: 'Showers',
-        82: 'Heavy Showers',
-        85: 'Snow Showers',
-        86: 'Heavy Snow Showers',
-        95: 'Thunderstorm',
-        96: 'Thunderstorm with Hail',
-        99: 'Thunderstorm with Heavy Hail',
-      };
-      
-      const condition = conditionMap[weatherCode] || 'Partly Cloudy';
-      
-      const weatherData: WeatherData = {
-        temp,
-        condition,
-        icon: getWeatherIcon(condition),
-        location: 'Current Location',
-      };
+      const weatherData = parseWeather(data);
       
       setWeather(weatherData);
       cacheWeather(weatherData);
@@ -130,8 +156,13 @@ export default function InfoDisplay() {
 
   // Get location and fetch weather
   useEffect(() => {
+    // Let the native side keep weather warm for the next unlock
+    if ((window as any).Android?.setPrefetchEndpoint) {
+      (window as any).Android.setPrefetchEndpoint('weather', WEATHER_URL_TEMPLATE);
+    }
+
     // Check if we have fresh cached data
-    const cached = getCachedWeather();
+    const cached = getCachedWeather() || getPrefetchedWeather();
     if (cached) {
       setWeather(cached);
       return;
@@ -175,6 +206,17 @@ export default function InfoDisplay() {
 
     // Refresh weather every 30 minutes
     const weatherInterval = setInterval(() => {
+      if ((window as any).Android?.getLocation) {
+        try {
+          const location = JSON.parse((window as any).Android.getLocation());
+          if (location.latitude && location.longitude) {
+            fetchWeather(location.latitude, location.longitude);
+            return;
+          }
+        } catch {
+          // Fallback to browser geolocation
+        }
+      }
       if (navigator.geolocation) {
         navigator.geolocation.getCurrentPosition(
           (position) => {
@@ -22,6 +22,7 @@ import cn from 'classnames';
 
 import { memo, ReactNode, useEffect, useRef, useState } from 'react';
 import { AudioRecorder } from '../../../lib/audio-recorder';
+import { NativeAudioRecorder } from '../../../lib/native-audio-recorder';
 
 import { useLiveAPIContext } from '../../../contexts/LiveAPIContext';
 import { useUI } from '@/lib/state';
@@ -31,7 +32,9 @@ export type ControlTrayProps = {
 };
 
 function ControlTray({ children }: ControlTrayProps) {
-  const [audioRecorder] = useState(() => new AudioRecorder());
+  const [audioRecorder] = useState(() =>
+    window.Android?.startNativeAudio ? new NativeAudioRecorder() : new AudioRecorder()
+  );
   const [muted, setMuted] = useState(false);
   const connectButtonRef = useRef<HTMLButtonElement>(null);
 
@@ -21,7 +21,7 @@ import {
   makePhoneCall,
   sendSMS,
   sendWhatsAppMessage,
-  searchContacts,
+  searchContactsAsync,
   getContacts,
   navigateTo,
   openContactsApp,
@@ -401,7 +401,7 @@ export default function KeynoteCompanion() {
             case 'search_contacts': {
               const { query } = fc.args as any;
               if (query) {
-                const contacts = searchContacts(query);
+                const contacts = await searchContactsAsync(query);
                 if (contacts.length > 0) {
                   const contactList = contacts.map(c => `${c.name}: ${c.phone} (${c.type})`).join('; ');
                   result = { 
@@ -0,0 +1,35 @@
+/**
+ * @license
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * useBadgeCounts Hook
+ * Unread notification counts by package, kept current by badgesChanged events
+ */
+import { useEffect, useState } from 'react';
+import { getBadgeCounts } from '@/lib/android-bridge';
+
+export function useBadgeCounts(): Record<string, number> {
+  const [counts, setCounts] = useState<Record<string, number>>(getBadgeCounts);
+
+  useEffect(() => {
+    // Only changed packages arrive; a count of 0 clears the badge
+    const onChanged = (e: Event) => {
+      const changed = (e as CustomEvent<Record<string, number>>).detail || {};
+      setCounts(prev => {
+        const next = { ...prev };
+        for (const [pkg, count] of Object.entries(changed)) {
+          if (count > 0) {
+            next[pkg] = count;
+          } else {
+            delete next[pkg];
+          }
+        }
+        return next;
+      });
+    };
+    window.addEventListener('badgesChanged', onChanged);
+    return () => window.removeEventListener('badgesChanged', onChanged);
+  }, []);
+
+  return counts;
+}
@@ -0,0 +1,34 @@
+/**
+ * @license
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * useSmsQueue Hook
+ * Native SMS queue, kept current by smsStatus events
+ */
+import { useEffect, useState } from 'react';
+import { getSmsQueue, QueuedSms } from '@/lib/android-bridge';
+
+export function useSmsQueue(): QueuedSms[] {
+  const [queue, setQueue] = useState<QueuedSms[]>(getSmsQueue);
+
+  useEffect(() => {
+    // Only changed messages arrive, keyed by id
+    const onStatus = (e: Event) => {
+      const changed = (e as CustomEvent<Record<string, QueuedSms>>).detail || {};
+      setQueue(prev => {
+        const next = prev.map(sms => changed[sms.id] || sms);
+        const known = new Set(prev.map(sms => sms.id));
+        for (const sms of Object.values(changed)) {
+          if (!known.has(sms.id)) {
+            next.push(sms);
+          }
+        }
+        return next;
+      });
+    };
+    window.addEventListener('smsStatus', onStatus);
+    return () => window.removeEventListener('smsStatus', onStatus);
+  }, []);
+
+  return queue;
+}
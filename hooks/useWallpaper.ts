@@ -0,0 +1,36 @@
+/**
+ * @license
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * useWallpaper Hook
+ * URL of the system wallpaper served by the Android shell, or null to keep the theme
+ */
+import { useEffect, useState } from 'react';
+import { hasAndroidBridge } from '@/lib/android-bridge';
+
+const readWallpaperUrl = (): string | null => {
+  if (hasAndroidBridge() && window.Android?.getWallpaperUrl) {
+    try {
+      return window.Android.getWallpaperUrl() || null;
+    } catch (e) {
+      console.error('Error getting wallpaper:', e);
+    }
+  }
+  return null;
+};
+
+export function useWallpaper(): string | null {
+  const [url, setUrl] = useState<string | null>(readWallpaperUrl);
+
+  useEffect(() => {
+    // Sent once the first decode finishes and again on every wallpaper change
+    const onChanged = (e: Event) => {
+      const detail = (e as CustomEvent<{ url: string }>).detail;
+      setUrl(detail?.url || null);
+    };
+    window.addEventListener('wallpaperChanged', onChanged);
+    return () => window.removeEventListener('wallpaperChanged', onChanged);
+  }, []);
+
+  return url;
+}
@@ -0,0 +1,34 @@
+/**
+ * @license
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * useWidgets Hook
+ * Hosted app widgets, with frame versions kept current by widgetFrames events
+ */
+import { useEffect, useState } from 'react';
+import { getWidgets, HostedWidget } from '@/lib/android-bridge';
+
+export function useWidgets(): HostedWidget[] {
+  const [widgets, setWidgets] = useState<HostedWidget[]>(getWidgets);
+
+  useEffect(() => {
+    // Only widgets with a new frame arrive, as id -> version
+    const onFrames = (e: Event) => {
+      const versions = (e as CustomEvent<Record<string, number>>).detail || {};
+      setWidgets(prev =>
+        prev.map(widget =>
+          versions[widget.id] !== undefined ? { ...widget, version: versions[widget.id] } : widget
+        )
+      );
+    };
+    const onAdded = () => setWidgets(getWidgets());
+    window.addEventListener('widgetFrames', onFrames);
+    window.addEventListener('widgetAdded', onAdded);
+    return () => {
+      window.removeEventListener('widgetFrames', onFrames);
+      window.removeEventListener('widgetAdded', onAdded);
+    };
+  }, []);
+
+  return widgets;
+}
@@ -25,6 +25,9 @@ import './index.css';
 
 import App from './App';
 
+// Ask the Android shell to hold native events until App signals it is ready
+window.Android?.expectPageReady?.();
+
 const root = ReactDOM.createRoot(
   document.getElementById('root') as HTMLElement
 );
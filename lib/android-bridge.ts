@@ -2,6 +2,7 @@
  * Android Bridge Interface
  * Defines the JavaScript interface exposed by the Android WebView
  */
+import { hasTwaChannel, twaRequest } from './twa-channel';
 
 // Declare the Android bridge interface globally
 declare global {
@@ -21,6 +22,10 @@ export interface AndroidBridge {
   
   // SMS
   sendSMS: (phoneNumber: string, message: string) => boolean;
+  queueSms: (recipientsJson: string, message: string) => string;
+  getSmsQueue: () => string;
+  cancelSms: (id: string) => void;
+  clearSmsQueue: () => void;
   
   // WhatsApp
   sendWhatsApp: (phoneNumber: string, message: string) => boolean;
@@ -28,11 +33,28 @@ export interface AndroidBridge {
   // Contacts
   searchContacts: (query: string) => string;
   getContacts: () => string;
+  getContactsPage: (offset: number, limit: number) => string;
+  getContactSections: () => string;
+  applyContactBatch: (opsJson: string) => string;
   openContacts: () => boolean;
   
+  // Call log
+  getRecentCalls: (beforeId: number, limit: number) => string;
+  
+  // SMS conversations
+  getConversations: (offset: number, limit: number) => string;
+  
   // Navigation
   navigateTo: (destination: string) => boolean;
   
+  // Location
+  getLocation: () => string;
+  setLocationPolicy: (freshnessMs: number, accuracy: 'passive' | 'coarse' | 'fine') => void;
+  
+  // Background widget data
+  setPrefetchEndpoint: (key: string, urlTemplate: string) => boolean;
+  getPrefetchedData: (key: string) => string;
+  
   // Alarms & Timers
   setAlarm: (hour: number, minute: number, label: string) => boolean;
   setTimer: (seconds: number, label: string) => boolean;
@@ -41,6 +63,56 @@ export interface AndroidBridge {
   openUrl: (url: string) => boolean;
   searchWeb: (query: string) => boolean;
   
+  // Page lifecycle
+  expectPageReady: () => void;
+  notifyPageReady: () => void;
+  
+  // Wallet auth
+  setAuthInSeparateProcess: (enabled: boolean) => void;
+  
+  // Wallet data
+  getWalletBalances: (address: string, tokenContractsJson: string) => string;
+  setRpcEndpoint: (endpoint: string) => boolean;
+  
+  // Notification badges
+  getBadgeCounts: () => string;
+  hasNotificationAccess: () => boolean;
+  openNotificationAccessSettings: () => boolean;
+  
+  // Frame-time stats
+  beginInteraction: (name: string) => void;
+  endInteraction: (name: string) => void;
+  getFrameStats: () => string;
+  resetFrameStats: () => void;
+  
+  // App widgets
+  getWidgetProviders: () => string;
+  getWidgets: () => string;
+  addWidget: (provider: string, widthDp: number, heightDp: number) => boolean;
+  removeWidget: (appWidgetId: number) => void;
+  resizeWidget: (appWidgetId: number, widthDp: number, heightDp: number) => void;
+  setWidgetFrameRate: (appWidgetId: number, fps: number) => void;
+  tapWidget: (appWidgetId: number, xDp: number, yDp: number) => void;
+  
+  // System wallpaper
+  getWallpaperUrl: () => string;
+  
+  // Native key-value store
+  kvGet: (key: string) => string | null;
+  kvGetAll: (prefix: string) => string;
+  kvPut: (key: string, value: string | null) => boolean;
+  kvBatch: (changesJson: string) => boolean;
+  
+  // Native microphone capture
+  startNativeAudio: (sampleRate: number, frameSamples: number) => boolean;
+  stopNativeAudio: () => void;
+  getNativeAudioStats: () => string;
+  
+  // Stall watchdog
+  getStallIncidents: () => string;
+  clearStallIncidents: () => void;
+  setStallThreshold: (thresholdMs: number) => void;
+  
   // Utilities
   showToast: (message: string) => void;
   requestPermissions: () => void;
@@ -64,6 +136,20 @@ export const launchAndroidApp = (packageName: string): boolean => {
     }
   }
   
+  // In a TWA the app launches it; the intent URL is the fallback if it can't
+  if (!hasAndroidBridge() && hasTwaChannel()) {
+    twaRequest<boolean>('launchApp', { packageName })
+      .then(success => {
+        if (!success) launchViaIntent(packageName);
+      })
+      .catch(() => launchViaIntent(packageName));
+    return true;
+  }
+  
+  return launchViaIntent(packageName);
+};
+
+const launchViaIntent = (packageName: string): boolean => {
   // Fallback: Try Android intent URL with launch action
   try {
     const intentUrl = `intent://launch/#Intent;package=${packageName};action=android.intent.action.MAIN;category=android.intent.category.LAUNCHER;end`;
@@ -102,6 +188,72 @@ export const sendSMS = (phoneNumber: string, message: string): boolean => {
   return true;
 };
 
+export interface QueuedSms {
+  id: string;
+  to: string;
+  body: string;
+  status: 'queued' | 'sending' | 'sent' | 'delivered' | 'failed' | 'cancelled';
+  createdAt: number;
+  attempts: number;
+  parts?: number;
+  sentParts?: number;
+  deliveredParts?: number;
+  error?: string;
+}
+
+// Helper to send one SMS per recipient directly through the native queue. The user
+// confirms each batch in a native dialog; resolves with the queued message ids, or an
+// empty array if they declined or there is no bridge or SEND_SMS permission.
+export const queueSms = (recipients: string[], message: string): Promise<string[]> => {
+  if (!hasAndroidBridge() || !window.Android?.queueSms) {
+    return Promise.resolve([]);
+  }
+  let batchId = '';
+  try {
+    batchId = window.Android.queueSms(JSON.stringify(recipients), message);
+  } catch (e) {
+    console.error('Error queueing SMS:', e);
+  }
+  if (!batchId) {
+    return Promise.resolve([]);
+  }
+  return new Promise((resolve) => {
+    const handleBatch = (event: Event) => {
+      const batch = (event as CustomEvent).detail?.[batchId];
+      if (!batch) {
+        return;
+      }
+      window.removeEventListener('smsBatch', handleBatch);
+      resolve(batch.confirmed ? batch.ids : []);
+    };
+    window.addEventListener('smsBatch', handleBatch);
+  });
+};
+
+// Helper to get the native SMS queue, oldest first
+export const getSmsQueue = (): QueuedSms[] => {
+  if (hasAndroidBridge() && window.Android?.getSmsQueue) {
+    try {
+      return JSON.parse(window.Android.getSmsQueue());
+    } catch (e) {
+      console.error('Error getting SMS queue:', e);
+    }
+  }
+  return [];
+};
+
+export const cancelSms = (id: string): void => {
+  if (hasAndroidBridge() && window.Android?.cancelSms) {
+    window.Android.cancelSms(id);
+  }
+};
+
+export const clearSmsQueue = (): void => {
+  if (hasAndroidBridge() && window.Android?.clearSmsQueue) {
+    window.Android.clearSmsQueue();
+  }
+};
+
 // Helper to send WhatsApp message
 export const sendWhatsAppMessage = (phoneNumber: string, message: string): boolean => {
   const cleanNumber = phoneNumber.replace(/[^\d+]/g, '').replace('+', '');
@@ -129,6 +281,19 @@ export const searchContacts = (query: string): any[] => {
   return [];
 };
 
+// Contact search that also works in a TWA, where only the message channel reaches native code
+export const searchContactsAsync = async (query: string): Promise<any[]> => {
+  if (!hasAndroidBridge() && hasTwaChannel()) {
+    try {
+      return await twaRequest<any[]>('searchContacts', { query });
+    } catch (e) {
+      console.error('Error searching contacts:', e);
+      return [];
+    }
+  }
+  return searchContacts(query);
+};
+
 // Helper to get all contacts
 export const getContacts = (): any[] => {
   if (hasAndroidBridge() && window.Android?.getContacts) {
@@ -142,6 +307,141 @@ export const getContacts = (): any[] => {
   return [];
 };
 
+export interface ContactSection {
+  label: string;
+  offset: number;
+  count: number;
+}
+
+// Helper to get a page of contacts in locale order; each has a `section` header label
+export const getContactsPage = (offset: number, limit: number): any[] => {
+  if (hasAndroidBridge() && window.Android?.getContactsPage) {
+    try {
+      return JSON.parse(window.Android.getContactsPage(offset, limit));
+    } catch (e) {
+      console.error('Error getting contacts page:', e);
+    }
+  }
+  return [];
+};
+
+// Helper to get contact section headers, for an A-Z index that jumps straight to a page
+export const getContactSections = (): ContactSection[] => {
+  if (hasAndroidBridge() && window.Android?.getContactSections) {
+    try {
+      return JSON.parse(window.Android.getContactSections());
+    } catch (e) {
+      console.error('Error getting contact sections:', e);
+    }
+  }
+  return [];
+};
+
+export type ContactPhoneType = 'home' | 'mobile' | 'work' | 'other';
+
+// Contact ids are the `id` of contact rows; phone updates name the number they replace
+export type ContactBatchOp =
+  | { op: 'insert'; name: string; phone: string; type?: ContactPhoneType }
+  | { op: 'update'; id: string; name?: string; phone?: string; oldPhone?: string; type?: ContactPhoneType }
+  | { op: 'delete'; id: string };
+
+export interface ContactBatchResult {
+  index: number;
+  ok: boolean;
+  id?: string;
+  error?: string;
+}
+
+// Helper to write many contacts in background transactions. Resolves with one result per
+// op, in order, or null if the bridge or WRITE_CONTACTS permission is missing.
+export const applyContactBatch = (
+  ops: ContactBatchOp[],
+  onProgress?: (done: number, total: number) => void
+): Promise<ContactBatchResult[] | null> => {
+  if (!hasAndroidBridge() || !window.Android?.applyContactBatch) {
+    return Promise.resolve(null);
+  }
+  let jobId = '';
+  try {
+    jobId = window.Android.applyContactBatch(JSON.stringify(ops));
+  } catch (e) {
+    console.error('Error applying contact batch:', e);
+  }
+  if (!jobId) {
+    return Promise.resolve(null);
+  }
+  return new Promise((resolve) => {
+    const handleProgress = (event: Event) => {
+      const detail = (event as CustomEvent).detail;
+      if (detail?.jobId === jobId) {
+        onProgress?.(detail.done, detail.total);
+      }
+    };
+    const handleComplete = (event: Event) => {
+      const results = (event as CustomEvent).detail?.[jobId];
+      if (!results) {
+        return;
+      }
+      window.removeEventListener('contactBatchProgress', handleProgress);
+      window.removeEventListener('contactBatchComplete', handleComplete);
+      resolve(results);
+    };
+    window.addEventListener('contactBatchProgress', handleProgress);
+    window.addEventListener('contactBatchComplete', handleComplete);
+  });
+};
+
+export interface RecentCall {
+  id: number;
+  number: string;
+  type: 'incoming' | 'outgoing' | 'missed' | 'rejected' | 'other';
+  date: number;
+  duration: number;
+  name?: string;
+  contactId?: string;
+}
+
+// Helper to get a page of recent calls (pass nextBeforeId from the previous page)
+export const getRecentCalls = (
+  beforeId = 0,
+  limit = 30
+): { calls: RecentCall[]; nextBeforeId: number } => {
+  if (hasAndroidBridge() && window.Android?.getRecentCalls) {
+    try {
+      return JSON.parse(window.Android.getRecentCalls(beforeId, limit));
+    } catch (e) {
+      console.error('Error getting recent calls:', e);
+    }
+  }
+  return { calls: [], nextBeforeId: -1 };
+};
+
+export interface SmsConversation {
+  threadId: number;
+  address: string;
+  snippet: string;
+  date: number;
+  outgoing: boolean;
+  unreadCount: number;
+  name?: string;
+  contactId?: string;
+}
+
+// Helper to get a page of SMS conversations, most recent first
+export const getConversations = (
+  offset = 0,
+  limit = 20
+): { conversations: SmsConversation[]; total: number; nextOffset: number } => {
+  if (hasAndroidBridge() && window.Android?.getConversations) {
+    try {
+      return JSON.parse(window.Android.getConversations(offset, limit));
+    } catch (e) {
+      console.error('Error getting conversations:', e);
+    }
+  }
+  return { conversations: [], total: 0, nextOffset: -1 };
+};
+
 // Helper to navigate to destination
 export const navigateTo = (destination: string): boolean => {
   console.log('Navigating to:', destination);
@@ -162,3 +462,147 @@ export const openContactsApp = (): boolean => {
   }
   return launchAndroidApp('com.google.android.contacts');
 };
+
+// Helper to measure one interaction, e.g. trackInteraction('drawerScroll', () => ...)
+export const trackInteraction = <T>(name: string, fn: () => T): T => {
+  window.Android?.beginInteraction?.(name);
+  try {
+    return fn();
+  } finally {
+    window.Android?.endInteraction?.(name);
+  }
+};
+
+// Helper to read unread notification counts by package name
+export const getBadgeCounts = (): Record<string, number> => {
+  if (hasAndroidBridge() && window.Android?.getBadgeCounts) {
+    try {
+      return JSON.parse(window.Android.getBadgeCounts());
+    } catch (e) {
+      console.error('Error getting badge counts:', e);
+    }
+  }
+  return {};
+};
+
+export interface WidgetProvider {
+  provider: string;
+  packageName: string;
+  label: string;
+  minWidth: number;
+  minHeight: number;
+  resizeMode: number;
+}
+
+export interface HostedWidget {
+  id: number;
+  provider: string;
+  widthDp: number;
+  heightDp: number;
+  fps: number;
+  version: number;
+  frameUrl: string;
+}
+
+// Helper to list app widget providers
+export const getWidgetProviders = (): WidgetProvider[] => {
+  if (hasAndroidBridge() && window.Android?.getWidgetProviders) {
+    try {
+      return JSON.parse(window.Android.getWidgetProviders());
+    } catch (e) {
+      console.error('Error getting widget providers:', e);
+    }
+  }
+  return [];
+};
+
+// Helper to list hosted app widgets
+export const getWidgets = (): HostedWidget[] => {
+  if (hasAndroidBridge() && window.Android?.getWidgets) {
+    try {
+      return JSON.parse(window.Android.getWidgets());
+    } catch (e) {
+      console.error('Error getting widgets:', e);
+    }
+  }
+  return [];
+};
+
+// Image URL for a widget frame; the version makes each frame a distinct, cacheable URL
+export const widgetFrameSrc = (widget: HostedWidget): string =>
+  `${widget.frameUrl}?v=${widget.version}`;
+
+export interface StallIncident {
+  thread: 'main' | 'bridge';
+  timestamp: number;
+  durationMs: number;
+  ongoing: boolean;
+  killed?: boolean;
+  bridgeCall?: string;
+  stack: string[];
+}
+
+// Helper to read recent main-thread and bridge stalls, newest first
+export const getStallIncidents = (): StallIncident[] => {
+  if (hasAndroidBridge() && window.Android?.getStallIncidents) {
+    try {
+      return JSON.parse(window.Android.getStallIncidents());
+    } catch (e) {
+      console.error('Error getting stall incidents:', e);
+    }
+  }
+  return [];
+};
+
+export interface NativeBalanceSnapshot {
+  address: string;
+  blockNumber: number;
+  fetchedAt: number;
+  ageMs: number;
+  stale: boolean;
+  eth: string;
+  tokens: Record<string, string>;
+}
+
+// Helper to read wallet balances (raw hex) through the native batched RPC client.
+// Resolves with the cached snapshot if it is fresh, otherwise with the next refresh,
+// falling back to the stale snapshot (or null) if the refresh takes too long.
+export const getNativeWalletBalances = (
+  address: string,
+  tokenContracts: string[],
+  timeoutMs = 8000
+): Promise<NativeBalanceSnapshot | null> => {
+  if (!hasAndroidBridge() || !window.Android?.getWalletBalances) {
+    return Promise.resolve(null);
+  }
+  let cached: NativeBalanceSnapshot | null = null;
+  try {
+    const parsed = JSON.parse(
+      window.Android.getWalletBalances(address, JSON.stringify(tokenContracts))
+    );
+    cached = parsed.address ? parsed : null;
+  } catch (e) {
+    console.error('Error getting native wallet balances:', e);
+    return Promise.resolve(null);
+  }
+  if (cached && !cached.stale) {
+    return Promise.resolve(cached);
+  }
+  return new Promise(resolve => {
+    const onBalances = (e: Event) => {
+      const snapshot = (e as CustomEvent<NativeBalanceSnapshot>).detail;
+      if (snapshot?.address?.toLowerCase() !== address.toLowerCase()) return;
+      cleanup();
+      resolve(snapshot);
+    };
+    const timer = setTimeout(() => {
+      cleanup();
+      resolve(cached);
+    }, timeoutMs);
+    const cleanup = () => {
+      clearTimeout(timer);
+      window.removeEventListener('walletBalances', onBalances);
+    };
+    window.addEventListener('walletBalances', onBalances);
+  });
+};
@@ -6,6 +6,8 @@
  * Provides automatic wallet setup with passkey backup support
  */
 import { createBaseAccountSDK, pay, getPaymentStatus } from '@base-org/account';
+import { getNativeWalletBalances } from './android-bridge';
+import { storeBatch, storeGet, storeSet } from './native-store';
 
 // Storage keys for persistence
 const STORAGE_KEYS = {
@@ -130,11 +132,11 @@ export function getProvider() {
 }
 
 /**
- * Check if Base Account is already set up (from localStorage)
+ * Check if Base Account is already set up (from the native store or localStorage)
  */
 export function isAccountSetUp(): boolean {
   try {
-    return localStorage.getItem(STORAGE_KEYS.SETUP_COMPLETE) === 'true';
+    return storeGet(STORAGE_KEYS.SETUP_COMPLETE) === 'true';
   } catch {
     return false;
   }
@@ -145,17 +147,22 @@ export function isAccountSetUp(): boolean {
  */
 export function getStoredAddress(): string | null {
   try {
-    return localStorage.getItem(STORAGE_KEYS.WALLET_ADDRESS);
+    return storeGet(STORAGE_KEYS.WALLET_ADDRESS);
   } catch {
     return null;
   }
 }
 
 /**
- * Save wallet connection state to localStorage
+ * Save wallet connection state. Mirrored to localStorage, which the auth popup polls.
  */
 function saveConnectionState(address: string) {
   try {
+    storeBatch({
+      [STORAGE_KEYS.WALLET_ADDRESS]: address,
+      [STORAGE_KEYS.IS_CONNECTED]: 'true',
+      [STORAGE_KEYS.SETUP_COMPLETE]: 'true',
+    });
     localStorage.setItem(STORAGE_KEYS.WALLET_ADDRESS, address);
     localStorage.setItem(STORAGE_KEYS.IS_CONNECTED, 'true');
     localStorage.setItem(STORAGE_KEYS.SETUP_COMPLETE, 'true');
@@ -169,9 +176,11 @@ function saveConnectionState(address: string) {
  */
 export function clearConnectionState() {
   try {
-    localStorage.removeItem(STORAGE_KEYS.WALLET_ADDRESS);
-    localStorage.removeItem(STORAGE_KEYS.IS_CONNECTED);
-    localStorage.removeItem(STORAGE_KEYS.SETUP_COMPLETE);
+    storeBatch({
+      [STORAGE_KEYS.WALLET_ADDRESS]: null,
+      [STORAGE_KEYS.IS_CONNECTED]: null,
+      [STORAGE_KEYS.SETUP_COMPLETE]: null,
+    });
   } catch (error) {
     console.error('Failed to clear connection state:', error);
   }
@@ -404,6 +413,17 @@ function getTokenDecimals(tokenAddress: string): number {
   }
 }
 
+/**
+ * Format a raw hex amount with the same precision as the provider reads
+ */
+function formatTokenAmount(hex: string | undefined, decimals: number): string {
+  if (!hex) return '0';
+  const balance = parseInt(hex, 16) / Math.pow(10, decimals);
+  if (decimals === 6) return balance.toFixed(2);
+  if (decimals === 8) return balance.toFixed(8);
+  return balance.toFixed(6);
+}
+
 /**
  * Get ERC20 token balance
  */
@@ -486,13 +506,24 @@ export async function fetchTokenPrices(): Promise<Record<string, number>> {
 export async function getWalletBalances(address: string): Promise<WalletBalances> {
   try {
     // Fetch balances and prices in parallel
-    const [eth, usdc, cbBTC, prices] = await Promise.all([
-      getEthBalance(address),
-      getTokenBalance(TOKEN_CONTRACTS.USDC, address),
-      getTokenBalance(TOKEN_CONTRACTS.cbBTC, address),
+    const [native, prices] = await Promise.all([
+      getNativeWalletBalances(address, [TOKEN_CONTRACTS.USDC, TOKEN_CONTRACTS.cbBTC]),
       fetchTokenPrices(),
     ]);
     
+    // The Android shell batches and caches these reads; otherwise ask the provider
+    const [eth, usdc, cbBTC] = native
+      ? [
+          formatTokenAmount(native.eth, 18),
+          formatTokenAmount(native.tokens[TOKEN_CONTRACTS.USDC.toLowerCase()], 6),
+          formatTokenAmount(native.tokens[TOKEN_CONTRACTS.cbBTC.toLowerCase()], 8),
+        ]
+      : await Promise.all([
+          getEthBalance(address),
+          getTokenBalance(TOKEN_CONTRACTS.USDC, address),
+          getTokenBalance(TOKEN_CONTRACTS.cbBTC, address),
+        ]);
+    
     const ethBalance = parseFloat(eth);
     const usdcBalance = parseFloat(usdc);
     const cbBTCBalance = parseFloat(cbBTC);
@@ -717,7 +748,7 @@ function saveTransaction(tx: Transaction) {
     history.unshift(tx);
     // Keep only last 50 transactions
     const trimmed = history.slice(0, 50);
-    localStorage.setItem(STORAGE_KEYS.TRANSACTION_HISTORY, JSON.stringify(trimmed));
+    storeSet(STORAGE_KEYS.TRANSACTION_HISTORY, JSON.stringify(trimmed));
   } catch (error) {
     console.error('Failed to save transaction:', error);
   }
@@ -728,7 +759,7 @@ function saveTransaction(tx: Transaction) {
  */
 export function getTransactionHistory(): Transaction[] {
   try {
-    const stored = localStorage.getItem(STORAGE_KEYS.TRANSACTION_HISTORY);
+    const stored = storeGet(STORAGE_KEYS.TRANSACTION_HISTORY);
     return stored ? JSON.parse(stored) : [];
   } catch {
     return [];
@@ -3,6 +3,8 @@
  * Maps user locale to language settings and Gemini voices
  */
 
+import { storeGet, storeSet } from './native-store';
+
 export type LanguageConfig = {
   code: string;           // ISO language code (e.g., 'en', 'es', 'fr')
   name: string;           // Language name in English
@@ -306,8 +308,8 @@ export function getLanguageFromLocale(locale?: string): LanguageConfig {
  * Detect user's preferred language from multiple sources
  */
 export function detectUserLanguage(): LanguageConfig {
-  // Check localStorage for saved preference
-  const savedLanguage = localStorage.getItem('preferredLanguage');
+  // Check for a saved preference
+  const savedLanguage = storeGet('preferredLanguage');
   if (savedLanguage && LANGUAGE_CONFIGS[savedLanguage]) {
     return LANGUAGE_CONFIGS[savedLanguage];
   }
@@ -320,7 +322,7 @@ export function detectUserLanguage(): LanguageConfig {
  * Save language preference
  */
 export function saveLanguagePreference(languageCode: string): void {
-  localStorage.setItem('preferredLanguage', languageCode);
+  storeSet('preferredLanguage', languageCode);
 }
 
 /**
@@ -0,0 +1,137 @@
+/**
+ * Microphone capture through the Android bridge.
+ *
+ * The native side records with AudioRecord and hands the page a MessagePort in a
+ * "basephone-audio" window message; each message on the port is one frame of 16-bit
+ * mono PCM, as an ArrayBuffer or (on older WebViews) a base64 string. Emits the same
+ * 'data' and 'volume' events as AudioRecorder, and falls back to it whenever the
+ * native path is unavailable. The launcher stops native capture while it is paused, so
+ * capture is started again whenever the page becomes visible.
+ */
+
+import { EventEmitter } from 'eventemitter3';
+import { AudioRecorder } from './audio-recorder';
+
+const PORT_MESSAGE = 'basephone-audio';
+// 20 ms frames at 16 kHz
+const FRAME_SAMPLES = 320;
+
+function arrayBufferToBase64(buffer: ArrayBuffer) {
+  let binary = '';
+  const bytes = new Uint8Array(buffer);
+  for (let i = 0; i < bytes.byteLength; i++) {
+    binary += String.fromCharCode(bytes[i]);
+  }
+  return window.btoa(binary);
+}
+
+function base64ToArrayBuffer(base64: string) {
+  const binary = window.atob(base64);
+  const bytes = new Uint8Array(binary.length);
+  for (let i = 0; i < binary.length; i++) {
+    bytes[i] = binary.charCodeAt(i);
+  }
+  return bytes.buffer;
+}
+
+function rms(buffer: ArrayBuffer) {
+  const samples = new Int16Array(buffer);
+  if (samples.length === 0) return 0;
+  let sum = 0;
+  for (let i = 0; i < samples.length; i++) {
+    const s = samples[i] / 32768;
+    sum += s * s;
+  }
+  return Math.sqrt(sum / samples.length);
+}
+
+export class NativeAudioRecorder extends EventEmitter {
+  recording: boolean = false;
+
+  private port: MessagePort | null = null;
+  private fallback: AudioRecorder | null = null;
+
+  constructor(public sampleRate = 16000) {
+    super();
+  }
+
+  private onWindowMessage = (e: MessageEvent) => {
+    if (e.data !== PORT_MESSAGE || !e.ports || !e.ports[0]) return;
+    this.closePort();
+    if (!this.recording) {
+      e.ports[0].close();
+      return;
+    }
+    this.port = e.ports[0];
+    this.port.onmessage = this.onFrame;
+  };
+
+  private onFrame = (e: MessageEvent) => {
+    const buffer: ArrayBuffer =
+      typeof e.data === 'string' ? base64ToArrayBuffer(e.data) : e.data;
+    (this as any).emit('data', typeof e.data === 'string' ? e.data : arrayBufferToBase64(buffer));
+    (this as any).emit('volume', rms(buffer));
+  };
+
+  private onNativeError = () => {
+    if (this.recording) this.startFallback();
+  };
+
+  private onVisibilityChange = () => {
+    if (document.visibilityState !== 'visible' || !this.recording || this.fallback) return;
+    this.startNative();
+  };
+
+  async start() {
+    if (this.recording) return;
+    this.recording = true;
+    window.addEventListener('message', this.onWindowMessage);
+    window.addEventListener('nativeAudioError', this.onNativeError);
+    document.addEventListener('visibilitychange', this.onVisibilityChange);
+    this.startNative();
+  }
+
+  stop() {
+    this.recording = false;
+    window.removeEventListener('message', this.onWindowMessage);
+    window.removeEventListener('nativeAudioError', this.onNativeError);
+    document.removeEventListener('visibilitychange', this.onVisibilityChange);
+    this.closePort();
+    window.Android?.stopNativeAudio?.();
+    if (this.fallback) {
+      this.fallback.removeAllListeners();
+      this.fallback.stop();
+      this.fallback = null;
+    }
+  }
+
+  private startNative() {
+    let started = false;
+    try {
+      started = !!window.Android?.startNativeAudio(this.sampleRate, FRAME_SAMPLES);
+    } catch (error) {
+      console.error('Error starting native audio:', error);
+    }
+    if (!started) {
+      this.startFallback();
+    }
+  }
+
+  private startFallback() {
+    if (this.fallback) return;
+    this.closePort();
+    const recorder = new AudioRecorder(this.sampleRate);
+    recorder.on('data', (data: string) => (this as any).emit('data', data));
+    recorder.on('volume', (volume: number) => (this as any).emit('volume', volume));
+    this.fallback = recorder;
+    recorder.start();
+  }
+
+  private closePort() {
+    if (this.port) {
+      this.port.onmessage = null;
+      this.port.close();
+      this.port = null;
+    }
+  }
+}
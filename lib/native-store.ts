@@ -0,0 +1,80 @@
+/**
+ * @license
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Native Store
+ * Synchronous key-value storage backed by the Android bridge's memory-mapped store,
+ * which survives WebView storage being cleared. Falls back to localStorage in a browser.
+ * A key missing natively is read once from localStorage and copied over, so existing
+ * state carries across.
+ */
+import { hasAndroidBridge } from './android-bridge';
+
+const hasNativeStore = (): boolean => hasAndroidBridge() && !!window.Android?.kvGet;
+
+export const storeGet = (key: string): string | null => {
+  if (hasNativeStore()) {
+    const value = window.Android!.kvGet(key);
+    if (value !== null && value !== undefined) return value;
+    const legacy = localStorage.getItem(key);
+    if (legacy !== null) {
+      window.Android!.kvPut(key, legacy);
+    }
+    return legacy;
+  }
+  return localStorage.getItem(key);
+};
+
+export const storeSet = (key: string, value: string): void => {
+  if (hasNativeStore()) {
+    window.Android!.kvPut(key, value);
+    return;
+  }
+  localStorage.setItem(key, value);
+};
+
+export const storeRemove = (key: string): void => {
+  if (hasNativeStore()) {
+    window.Android!.kvPut(key, null);
+  }
+  // Also drop any legacy copy, or the next read would migrate it back
+  localStorage.removeItem(key);
+};
+
+// Apply several changes at once; natively they land together or not at all
+export const storeBatch = (changes: Record<string, string | null>): void => {
+  if (hasNativeStore()) {
+    window.Android!.kvBatch(JSON.stringify(changes));
+    for (const [key, value] of Object.entries(changes)) {
+      if (value === null) localStorage.removeItem(key);
+    }
+    return;
+  }
+  for (const [key, value] of Object.entries(changes)) {
+    if (value === null) {
+      localStorage.removeItem(key);
+    } else {
+      localStorage.setItem(key, value);
+    }
+  }
+};
+
+// Every entry whose key starts with prefix
+export const storeGetAll = (prefix: string): Record<string, string> => {
+  if (hasNativeStore()) {
+    try {
+      return JSON.parse(window.Android!.kvGetAll(prefix));
+    } catch (e) {
+      console.error('Error reading native store:', e);
+      return {};
+    }
+  }
+  const result: Record<string, string> = {};
+  for (let i = 0; i < localStorage.length; i++) {
+    const key = localStorage.key(i);
+    if (key && key.startsWith(prefix)) {
+      result[key] = localStorage.getItem(key) as string;
+    }
+  }
+  return result;
+};
@@ -0,0 +1,73 @@
+/**
+ * Client-side routes
+ * Deep links into the launcher open a panel instead of reloading the page.
+ * Keep in sync with CLIENT_ROUTES in WebViewActivity.java.
+ */
+
+import { useUI } from './state';
+
+declare global {
+  interface Window {
+    // Set once the route listener is attached; the Android shell falls back to a full load without it
+    __basephoneRoutes?: boolean;
+  }
+}
+
+export interface NativeNavigateDetail {
+  path: string;
+  // Without the leading "?" or "#", still percent-encoded; parse with URLSearchParams
+  query?: string;
+  hash?: string;
+}
+
+const PANELS = {
+  '/apps': 'showAppDrawer',
+  '/wallet': 'showWallet',
+  '/dialer': 'showDialer',
+  '/settings': 'showSettings',
+  '/rewards': 'showRewards',
+} as const;
+
+const normalizePath = (path: string): string => {
+  const trimmed = path.replace(/\/+$/, '');
+  return trimmed === '' ? '/' : trimmed;
+};
+
+// Open the panel for a path, closing any other; '/' returns to the home screen
+export const applyRoute = (path: string): boolean => {
+  const normalized = normalizePath(path);
+  if (normalized !== '/' && !(normalized in PANELS)) {
+    return false;
+  }
+  const target = PANELS[normalized as keyof typeof PANELS];
+  useUI.setState({
+    showAppDrawer: target === 'showAppDrawer',
+    showWallet: target === 'showWallet',
+    showDialer: target === 'showDialer',
+    showSettings: target === 'showSettings',
+    showRewards: target === 'showRewards',
+    showUserConfig: false,
+    showAgentEdit: false,
+  });
+  return true;
+};
+
+// Listen for deep links routed by the Android shell; returns a cleanup function
+export const listenForNativeRoutes = (): (() => void) => {
+  const onNavigate = (e: Event) => {
+    const detail = (e as CustomEvent<NativeNavigateDetail>).detail;
+    if (detail && !applyRoute(detail.path)) {
+      console.warn('Unknown route from Android shell:', detail.path);
+    }
+  };
+  window.addEventListener('nativeNavigate', onNavigate);
+  window.__basephoneRoutes = true;
+
+  // A cold start may have loaded a deep link directly
+  applyRoute(window.location.pathname);
+
+  return () => {
+    window.removeEventListener('nativeNavigate', onNavigate);
+    window.__basephoneRoutes = false;
+  };
+};
@@ -0,0 +1,88 @@
+/**
+ * @license
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * TWA Channel
+ * Native requests over the port the Trusted Web Activity hands the page. There is no
+ * window.Android in TWA mode; the app opens a postMessage channel instead and answers
+ * getInstalledApps, searchContacts and launchApp with the same JSON as the bridge.
+ */
+
+type TwaMethod = 'getInstalledApps' | 'searchContacts' | 'launchApp';
+
+interface Pending {
+  resolve: (value: any) => void;
+  reject: (error: Error) => void;
+  timer: number;
+}
+
+// A reply that never comes (app killed, channel torn down) must not hang the caller
+const REQUEST_TIMEOUT_MS = 5000;
+
+let port: MessagePort | null = null;
+let nextId = 1;
+const pending = new Map<number, Pending>();
+const readyWaiters: Array<() => void> = [];
+
+const onPortMessage = (event: MessageEvent) => {
+  let reply: any;
+  try {
+    reply = typeof event.data === 'string' ? JSON.parse(event.data) : event.data;
+  } catch {
+    return;
+  }
+  if (!reply || typeof reply.id !== 'number') return;
+  const request = pending.get(reply.id);
+  if (!request) return;
+  pending.delete(reply.id);
+  window.clearTimeout(request.timer);
+  if (reply.error !== undefined) {
+    request.reject(new Error(String(reply.error)));
+  } else {
+    request.resolve(reply.result);
+  }
+};
+
+if (typeof window !== 'undefined') {
+  // The port arrives with the app's first message on the channel
+  window.addEventListener('message', (event: MessageEvent) => {
+    if (!event.ports || event.ports.length === 0) return;
+    port = event.ports[0];
+    port.onmessage = onPortMessage;
+    readyWaiters.splice(0).forEach(resolve => resolve());
+  });
+}
+
+export const hasTwaChannel = (): boolean => port !== null;
+
+/**
+ * Resolve once the channel is open, or with false after timeoutMs (e.g. in a plain browser)
+ */
+export const whenTwaChannelReady = (timeoutMs = 3000): Promise<boolean> => {
+  if (port) return Promise.resolve(true);
+  return new Promise(resolve => {
+    const timer = window.setTimeout(() => {
+      const index = readyWaiters.indexOf(ready);
+      if (index >= 0) readyWaiters.splice(index, 1);
+      resolve(false);
+    }, timeoutMs);
+    const ready = () => {
+      window.clearTimeout(timer);
+      resolve(true);
+    };
+    readyWaiters.push(ready);
+  });
+};
+
+export const twaRequest = <T>(method: TwaMethod, args?: Record<string, unknown>): Promise<T> => {
+  if (!port) return Promise.reject(new Error('TWA channel not open'));
+  const id = nextId++;
+  return new Promise<T>((resolve, reject) => {
+    const timer = window.setTimeout(() => {
+      pending.delete(id);
+      reject(new Error(`${method} timed out`));
+    }, REQUEST_TIMEOUT_MS);
+    pending.set(id, { resolve, reject, timer });
+    port!.postMessage(JSON.stringify({ id, method, args: args || {} }));
+  });
+};